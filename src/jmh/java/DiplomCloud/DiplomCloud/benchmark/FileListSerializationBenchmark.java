@@ -0,0 +1,40 @@
+package DiplomCloud.DiplomCloud.benchmark;
+
+import DiplomCloud.DiplomCloud.dto.FileInfoResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Сериализация ответа /list в JSON для списков разного размера
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileListSerializationBenchmark {
+    @Param({"100", "10000", "100000"})
+    private int files;
+
+    private ObjectWriter writer;
+    private List<FileInfoResponse> list;
+
+    @Setup
+    public void setUp() {
+        writer = new ObjectMapper().writerFor(
+                new ObjectMapper().getTypeFactory().constructCollectionType(List.class, FileInfoResponse.class));
+        list = new ArrayList<>(files);
+        for (int i = 0; i < files; i++) {
+            list.add(new FileInfoResponse("file-" + i + ".txt", 1024L * i));
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return writer.writeValueAsBytes(list);
+    }
+}
@@ -0,0 +1,123 @@
+package DiplomCloud.DiplomCloud.benchmark;
+
+import DiplomCloud.DiplomCloud.repositories.BlobRepository;
+import DiplomCloud.DiplomCloud.services.BlobService;
+import DiplomCloud.DiplomCloud.services.CompressionPolicy;
+import DiplomCloud.DiplomCloud.services.FileDownloadService;
+import DiplomCloud.DiplomCloud.services.FileSystemStorageService;
+import DiplomCloud.DiplomCloud.services.HashShardedLayout;
+import DiplomCloud.DiplomCloud.services.StorageMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.UrlResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*Загрузка и отдача через файловое хранилище для файлов разного размера.
+upload - хеширование и запись блоба (BlobService.store), БД заменена заглушкой.
+downloadUrlResource - прежняя отдача через UrlResource и поток,
+downloadSendFile - FileDownloadService без sendfile (копирование блоками по 64 КБ), полный файл и Range
+* */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileStorageBenchmark {
+    @Param({"65536", "1048576", "16777216"})
+    private int size;
+
+    private Path storageDir;
+    private byte[] content;
+    private Path file;
+    private BlobService blobService;
+    private FileDownloadService fileDownloadService;
+    private HttpServletRequest fullRequest;
+    private HttpServletRequest rangeRequest;
+    private HttpServletResponse response;
+
+    @Setup
+    public void setUp() throws IOException {
+        storageDir = Files.createTempDirectory("jmh-storage-");
+        content = new byte[size];
+        new Random(42).nextBytes(content);
+        file = storageDir.resolve("download.bin");
+        Files.write(file, content);
+
+        FileSystemStorageService fileSystemStorageService =
+                new FileSystemStorageService(storageDir.toString(), new HashShardedLayout(2, 2));
+        blobService = new BlobService(Mockito.mock(BlobRepository.class), fileSystemStorageService, null,
+                new StorageMetrics(new SimpleMeterRegistry()), new CompressionPolicy("auto", 6, 0.9));
+        fileDownloadService = new FileDownloadService(new StorageMetrics(new SimpleMeterRegistry()));
+
+        // stubOnly: заглушки не запоминают вызовы; тело ответа не накапливается в памяти
+        fullRequest = Mockito.mock(HttpServletRequest.class, Mockito.withSettings().stubOnly());
+        rangeRequest = Mockito.mock(HttpServletRequest.class, Mockito.withSettings().stubOnly());
+        Mockito.when(rangeRequest.getHeader(HttpHeaders.RANGE)).thenReturn("bytes=0-" + (size / 2));
+        response = Mockito.mock(HttpServletResponse.class, Mockito.withSettings().stubOnly());
+        Mockito.when(response.getOutputStream()).thenReturn(new DiscardingOutputStream());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(storageDir);
+    }
+
+    @Benchmark
+    public Object upload() throws IOException {
+        return blobService.store(new ByteArrayInputStream(content), size);
+    }
+
+    @Benchmark
+    public long downloadUrlResource() throws IOException {
+        try (InputStream in = new UrlResource(file.toUri()).getInputStream()) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    @Benchmark
+    public HttpServletResponse downloadSendFile() throws IOException {
+        fileDownloadService.sendFile(file, "download.bin", fullRequest, response);
+        return response;
+    }
+
+    @Benchmark
+    public HttpServletResponse downloadRange() throws IOException {
+        fileDownloadService.sendFile(file, "download.bin", rangeRequest, response);
+        return response;
+    }
+
+    private static final class DiscardingOutputStream extends ServletOutputStream {
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package DiplomCloud.DiplomCloud.benchmark;
+
+import DiplomCloud.DiplomCloud.security.JwtTokenFilter;
+import DiplomCloud.DiplomCloud.security.JwtTokenProvider;
+import DiplomCloud.DiplomCloud.security.TokenRevocationStore;
+import DiplomCloud.DiplomCloud.services.UserCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.concurrent.TimeUnit;
+
+// Полный проход запроса через JwtTokenFilter: токен из заголовка, проверка, SecurityContext
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtTokenFilterBenchmark {
+    private static final String SECRET = "mysecretkeywithatleast32characterslength123";
+    private static final FilterChain NO_OP_CHAIN = (request, response) -> { };
+
+    private JwtTokenFilter filter;
+    private HttpServletRequest authenticated;
+    private HttpServletRequest anonymous;
+    private HttpServletResponse response;
+
+    @Setup
+    public void setUp() {
+        JwtTokenProvider provider = new JwtTokenProvider(SECRET, 3_600_000, 10_000,
+                new TokenRevocationStore(null, 60_000));
+        UserCache userCache = new UserCache(null, 10_000, 3_600_000);
+        userCache.remember("benchmarkUser", 1L);
+        filter = new JwtTokenFilter(provider, userCache, new SimpleMeterRegistry());
+
+        // stubOnly: заглушки не запоминают вызовы и не растут за время замера
+        authenticated = Mockito.mock(HttpServletRequest.class, Mockito.withSettings().stubOnly());
+        Mockito.when(authenticated.getHeader("auth-token")).thenReturn(provider.generateToken("benchmarkUser", 1L));
+        anonymous = Mockito.mock(HttpServletRequest.class, Mockito.withSettings().stubOnly());
+        response = Mockito.mock(HttpServletResponse.class, Mockito.withSettings().stubOnly());
+    }
+
+    @Benchmark
+    public Object authenticatedRequest() throws Exception {
+        filter.doFilter(authenticated, response, NO_OP_CHAIN);
+        Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        SecurityContextHolder.clearContext();
+        return principal;
+    }
+
+    @Benchmark
+    public Object anonymousRequest() throws Exception {
+        filter.doFilter(anonymous, response, NO_OP_CHAIN);
+        Object authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+        return authentication;
+    }
+}
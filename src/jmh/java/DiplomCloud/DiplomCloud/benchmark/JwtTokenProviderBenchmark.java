@@ -0,0 +1,52 @@
+package DiplomCloud.DiplomCloud.benchmark;
+
+import DiplomCloud.DiplomCloud.security.JwtTokenProvider;
+import DiplomCloud.DiplomCloud.security.TokenRevocationStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*Выпуск и проверка JWT. verifyCold - проверка подписи без кеша проверенных токенов
+(первый запрос с новым токеном), validateToken и getUsername - повторные запросы
+* */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtTokenProviderBenchmark {
+    private static final String SECRET = "mysecretkeywithatleast32characterslength123";
+
+    private JwtTokenProvider provider;
+    private JwtTokenProvider uncachedProvider;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        TokenRevocationStore revocationStore = new TokenRevocationStore(null, 60_000);
+        provider = new JwtTokenProvider(SECRET, 3_600_000, 10_000, revocationStore);
+        uncachedProvider = new JwtTokenProvider(SECRET, 3_600_000, 0, revocationStore);
+        token = provider.generateToken("benchmarkUser", 1L);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return provider.generateToken("benchmarkUser", 1L);
+    }
+
+    @Benchmark
+    public boolean validateToken() {
+        return provider.validateToken(token);
+    }
+
+    @Benchmark
+    public String getUsername() {
+        return provider.getUsername(token);
+    }
+
+    @Benchmark
+    public boolean verifyCold() {
+        return uncachedProvider.validateToken(token);
+    }
+}
@@ -0,0 +1,42 @@
+package DiplomCloud.DiplomCloud.benchmark;
+
+import DiplomCloud.DiplomCloud.services.FileStorageService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Проверка и нормализация имени файла, с которых начинается каждая загрузка и отдача
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PathResolutionBenchmark {
+    private FileStorageService fileStorageService;
+
+    @Setup
+    public void setUp() {
+        fileStorageService = new FileStorageService(null, null, null, null, null, null, null, null, null, null);
+    }
+
+    @Benchmark
+    public String plainName() {
+        return fileStorageService.resolveSafeKey("benchmarkUser", "report-2024.pdf");
+    }
+
+    @Benchmark
+    public String nestedName() {
+        return fileStorageService.resolveSafeKey("benchmarkUser", "docs/./2024/../2024/report.pdf");
+    }
+
+    @Benchmark
+    public boolean traversalRejected() {
+        try {
+            fileStorageService.resolveSafeKey("benchmarkUser", "../otherUser/secret.txt");
+            return false;
+        } catch (SecurityException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package DiplomCloud.DiplomCloud.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// HTTP-клиент виртуального пользователя: каждый вызов замеряется и попадает в LatencyRecorder
+final class CloudClient {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpClient http;
+    private final String baseUrl;
+    private final LatencyRecorder recorder;
+    private String token;
+
+    CloudClient(HttpClient http, String baseUrl, LatencyRecorder recorder) {
+        this.http = http;
+        this.baseUrl = baseUrl;
+        this.recorder = recorder;
+    }
+
+    boolean login(String login, String password) throws IOException, InterruptedException {
+        byte[] body = MAPPER.writeValueAsBytes(Map.of("login", login, "password", password));
+        HttpResponse<byte[]> response = send("login", HttpRequest.newBuilder(uri("/cloud/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body)), HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            return false;
+        }
+        token = MAPPER.readTree(response.body()).path("auth-token").asText(null);
+        return token != null;
+    }
+
+    boolean upload(String filename, Payload content) throws IOException, InterruptedException {
+        return ok(send("upload", authorized("/api/file/stream?filename=" + encode(filename))
+                .header("Content-Type", "application/octet-stream")
+                .POST(content.publisher()), HttpResponse.BodyHandlers.discarding()));
+    }
+
+    boolean list() throws IOException, InterruptedException {
+        return ok(send("list", authorized("/api/files?limit=100").GET(), HttpResponse.BodyHandlers.discarding()));
+    }
+
+    boolean download(String filename) throws IOException, InterruptedException {
+        return ok(send("download", authorized("/api/file/download?filename=" + encode(filename)).GET(),
+                HttpResponse.BodyHandlers.discarding()));
+    }
+
+    boolean rename(String filename, String newName) throws IOException, InterruptedException {
+        byte[] body = MAPPER.writeValueAsBytes(Map.of("name", newName));
+        return ok(send("rename", authorized("/api/file?filename=" + encode(filename))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(body)), HttpResponse.BodyHandlers.discarding()));
+    }
+
+    boolean delete(String filename) throws IOException, InterruptedException {
+        return ok(send("delete", authorized("/api/file?filename=" + encode(filename)).DELETE(),
+                HttpResponse.BodyHandlers.discarding()));
+    }
+
+    private <T> HttpResponse<T> send(String operation, HttpRequest.Builder request,
+                                     HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpResponse<T> response;
+        try {
+            response = http.send(request.build(), handler);
+        } catch (IOException e) {
+            recorder.record(operation, System.nanoTime() - start, false);
+            throw e;
+        }
+        recorder.record(operation, System.nanoTime() - start, response.statusCode() < 400);
+        return response;
+    }
+
+    private HttpRequest.Builder authorized(String path) {
+        return HttpRequest.newBuilder(uri(path))
+                .header("auth-token", token);
+    }
+
+    private URI uri(String path) {
+        return URI.create(baseUrl + path);
+    }
+
+    private static boolean ok(HttpResponse<?> response) {
+        return response.statusCode() < 400;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
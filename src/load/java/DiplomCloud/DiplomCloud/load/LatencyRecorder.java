@@ -0,0 +1,47 @@
+package DiplomCloud.DiplomCloud.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Задержки и ошибки по каждой операции; запись из многих потоков без блокировок
+final class LatencyRecorder {
+    private static final long MAX_LATENCY = TimeUnit.MINUTES.toNanos(10);
+
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private volatile boolean recording;
+
+    void start() {
+        recording = true;
+    }
+
+    void stop() {
+        recording = false;
+    }
+
+    void record(String operation, long nanos, boolean success) {
+        if (!recording) {
+            return;
+        }
+        if (success) {
+            histograms.computeIfAbsent(operation, key -> new ConcurrentHistogram(MAX_LATENCY, 3))
+                    .recordValue(Math.min(nanos, MAX_LATENCY));
+        } else {
+            errors.computeIfAbsent(operation, key -> new LongAdder()).increment();
+        }
+    }
+
+    Map<String, Histogram> histograms() {
+        return histograms;
+    }
+
+    long errors(String operation) {
+        LongAdder adder = errors.get(operation);
+        return adder == null ? 0 : adder.sum();
+    }
+}
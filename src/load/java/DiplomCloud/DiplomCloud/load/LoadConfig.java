@@ -0,0 +1,76 @@
+package DiplomCloud.DiplomCloud.load;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*Параметры нагрузочного прогона из системных свойств (-Dload.*):
+load.mix - сценарии и число виртуальных пользователей, например crud:10,browse:8,upload:2;
+load.duration / load.warmup - длительность замера и прогрева, с;
+load.file-size - размер загружаемого файла, байт;
+load.pool-size - пул соединений Hikari; 0 - по соединению на пользователя, не меньше 10;
+load.budgets - бюджеты задержек, например list.p99=100,download.p95=250 (мс);
+load.report - куда записать JSON-отчет
+* */
+final class LoadConfig {
+    final Map<Scenario, Integer> mix;
+    final long durationSeconds;
+    final long warmupSeconds;
+    final long fileSize;
+    final int poolSize;
+    final Map<String, Double> budgets;
+    final Path report;
+
+    private LoadConfig(Map<Scenario, Integer> mix, long durationSeconds, long warmupSeconds,
+                       long fileSize, int poolSize, Map<String, Double> budgets, Path report) {
+        this.mix = mix;
+        this.durationSeconds = durationSeconds;
+        this.warmupSeconds = warmupSeconds;
+        this.fileSize = fileSize;
+        this.poolSize = poolSize;
+        this.budgets = budgets;
+        this.report = report;
+    }
+
+    static LoadConfig fromSystemProperties() {
+        Map<Scenario, Integer> mix = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : pairs(System.getProperty("load.mix", "crud:10,browse:10"), ":").entrySet()) {
+            mix.put(Scenario.valueOf(entry.getKey().toUpperCase()), Integer.parseInt(entry.getValue()));
+        }
+
+        Map<String, Double> budgets = new LinkedHashMap<>();
+        pairs(System.getProperty("load.budgets", ""), "=")
+                .forEach((key, value) -> budgets.put(key, Double.parseDouble(value)));
+
+        return new LoadConfig(mix,
+                Long.getLong("load.duration", 30),
+                Long.getLong("load.warmup", 5),
+                Long.getLong("load.file-size", 256 * 1024),
+                Integer.getInteger("load.pool-size", 0),
+                budgets,
+                Path.of(System.getProperty("load.report", "target/load-report.json")));
+    }
+
+    int poolSize() {
+        return poolSize > 0 ? poolSize : Math.max(10, totalUsers());
+    }
+
+    int totalUsers() {
+        return mix.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    private static Map<String, String> pairs(String value, String separator) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String item : value.split(",")) {
+            if (item.isBlank()) {
+                continue;
+            }
+            String[] parts = item.trim().split(separator, 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Ожидается ключ" + separator + "значение: " + item);
+            }
+            result.put(parts[0].trim(), parts[1].trim());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,81 @@
+package DiplomCloud.DiplomCloud.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Пропускная способность и перцентили по операциям, проверка бюджетов задержек
+final class LoadReport {
+    private static final Map<String, Double> PERCENTILES = Map.of(
+            "p50", 50.0, "p95", 95.0, "p99", 99.0, "p999", 99.9);
+
+    private final Map<String, Map<String, Object>> operations = new TreeMap<>();
+    private final Map<String, Object> resources;
+
+    LoadReport(LatencyRecorder recorder, double seconds, Map<String, Object> resources) {
+        this.resources = resources;
+        recorder.histograms().forEach((operation, histogram) ->
+                operations.put(operation, summarize(histogram, recorder.errors(operation), seconds)));
+    }
+
+    void print() {
+        System.out.printf("%-10s %10s %10s %8s %9s %9s %9s %9s%n",
+                "operation", "requests", "req/s", "errors", "p50 ms", "p95 ms", "p99 ms", "p999 ms");
+        operations.forEach((operation, stats) -> System.out.printf("%-10s %10d %10.1f %8d %9.2f %9.2f %9.2f %9.2f%n",
+                operation, stats.get("requests"), stats.get("throughput"), stats.get("errors"),
+                stats.get("p50"), stats.get("p95"), stats.get("p99"), stats.get("p999")));
+        resources.forEach((name, value) -> System.out.printf("%-28s %s%n", name, value));
+    }
+
+    void write(LoadConfig config) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("mix", config.mix);
+        report.put("durationSeconds", config.durationSeconds);
+        report.put("fileSize", config.fileSize);
+        report.put("operations", operations);
+        report.put("resources", resources);
+        report.put("budgetViolations", violations(config.budgets));
+        if (config.report.getParent() != null) {
+            Files.createDirectories(config.report.getParent());
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(config.report.toFile(), report);
+    }
+
+    // Бюджет вида "list.p99" -> мс; операция без замеров тоже нарушение: ее нельзя подтвердить
+    List<String> violations(Map<String, Double> budgets) {
+        List<String> violations = new ArrayList<>();
+        budgets.forEach((key, limit) -> {
+            String[] parts = key.split("\\.", 2);
+            Map<String, Object> stats = operations.get(parts[0]);
+            if (stats == null || !stats.containsKey(parts[1])) {
+                violations.add(key + ": нет замеров");
+                return;
+            }
+            double actual = (Double) stats.get(parts[1]);
+            if (actual > limit) {
+                violations.add(String.format("%s: %.2f мс > %.2f мс", key, actual, limit));
+            }
+        });
+        return violations;
+    }
+
+    private static Map<String, Object> summarize(Histogram histogram, long errors, double seconds) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", histogram.getTotalCount());
+        stats.put("throughput", histogram.getTotalCount() / seconds);
+        stats.put("errors", errors);
+        PERCENTILES.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue())
+                .forEach(entry -> stats.put(entry.getKey(), histogram.getValueAtPercentile(entry.getValue()) / 1e6));
+        stats.put("max", histogram.getMaxValue() / 1e6);
+        return stats;
+    }
+}
@@ -0,0 +1,106 @@
+package DiplomCloud.DiplomCloud.load;
+
+import DiplomCloud.DiplomCloud.DiplomCloudApplication;
+import DiplomCloud.DiplomCloud.services.AuthService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*Сквозной нагрузочный прогон без внешней инфраструктуры: встроенный PostgreSQL
+(те же миграции и нативные запросы, что в бою), временный каталог хранилища и приложение
+на случайном порту. Виртуальные пользователи ходят через HTTP, как FRONT.
+Код выхода 1, если нарушен хотя бы один бюджет задержек - так прогон может уронить сборку
+* */
+public final class LoadTestRunner {
+    private LoadTestRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadConfig config = LoadConfig.fromSystemProperties();
+        Path storage = Files.createTempDirectory("load-storage-");
+        List<String> violations;
+
+        try (EmbeddedPostgres postgres = EmbeddedPostgres.builder().start()) {
+            ConfigurableApplicationContext context = SpringApplication.run(DiplomCloudApplication.class,
+                    "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                    "--spring.datasource.username=postgres",
+                    "--spring.datasource.password=",
+                    "--spring.datasource.hikari.maximum-pool-size=" + config.poolSize(),
+                    "--spring.jpa.show-sql=false",
+                    "--logging.level.root=WARN",
+                    "--logging.level.org.springframework=WARN",
+                    "--server.port=0",
+                    "--file.storage.path=" + storage);
+            try {
+                int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+                violations = run(config, context, "http://localhost:" + port + "/cloud");
+            } finally {
+                context.close();
+            }
+        } finally {
+            FileSystemUtils.deleteRecursively(storage);
+        }
+
+        if (!violations.isEmpty()) {
+            violations.forEach(violation -> System.err.println("Бюджет нарушен - " + violation));
+            System.exit(1);
+        }
+    }
+
+    private static List<String> run(LoadConfig config, ConfigurableApplicationContext context, String baseUrl)
+            throws Exception {
+        AuthService authService = context.getBean(AuthService.class);
+        for (int id = 0; id < config.totalUsers(); id++) {
+            authService.createUser(VirtualUser.login(id), VirtualUser.PASSWORD);
+        }
+
+        Payload content = new Payload(config.fileSize);
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        LatencyRecorder recorder = new LatencyRecorder();
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(config.warmupSeconds);
+        long deadline = warmupEnd + TimeUnit.SECONDS.toNanos(config.durationSeconds);
+
+        List<Thread> users = new ArrayList<>();
+        int id = 0;
+        for (Map.Entry<Scenario, Integer> entry : config.mix.entrySet()) {
+            for (int i = 0; i < entry.getValue(); i++, id++) {
+                Thread user = new Thread(new VirtualUser(id, entry.getKey(), http, baseUrl, recorder, content, deadline),
+                        "vu-" + entry.getKey().name().toLowerCase() + "-" + id);
+                users.add(user);
+                user.start();
+            }
+        }
+
+        // Замер начинается после прогрева: JIT, пул соединений и кеши уже в рабочем состоянии
+        TimeUnit.NANOSECONDS.sleep(Math.max(0, warmupEnd - System.nanoTime()));
+        ResourceUsage usage = new ResourceUsage(context.getBean(MeterRegistry.class));
+        recorder.start();
+        long started = System.nanoTime();
+        for (Thread user : users) {
+            user.join();
+        }
+        recorder.stop();
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        LoadReport report = new LoadReport(recorder, seconds, usage.finish());
+        report.print();
+        report.write(config);
+        System.out.println("Отчет: " + config.report.toAbsolutePath());
+        return report.violations(config.budgets);
+    }
+}
@@ -0,0 +1,48 @@
+package DiplomCloud.DiplomCloud.load;
+
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.util.Random;
+
+/*Тело загрузки: блок случайных байт, повторенный до нужного размера. Файл в гигабайт
+не держится в памяти клиента целиком, а Content-Length известен заранее, как у браузера
+* */
+final class Payload {
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    private final byte[] block;
+    private final long size;
+
+    Payload(long size) {
+        this.block = new byte[(int) Math.min(size, BLOCK_SIZE)];
+        this.size = size;
+        new Random(42).nextBytes(block);
+    }
+
+    HttpRequest.BodyPublisher publisher() {
+        return HttpRequest.BodyPublishers.fromPublisher(HttpRequest.BodyPublishers.ofInputStream(this::stream), size);
+    }
+
+    private InputStream stream() {
+        return new InputStream() {
+            private long position;
+
+            @Override
+            public int read() {
+                return position < size ? block[(int) (position++ % block.length)] & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) {
+                if (position >= size) {
+                    return -1;
+                }
+                int from = (int) (position % block.length);
+                int count = (int) Math.min(Math.min(length, block.length - from), size - position);
+                System.arraycopy(block, from, buffer, offset, count);
+                position += count;
+                return count;
+            }
+        };
+    }
+}
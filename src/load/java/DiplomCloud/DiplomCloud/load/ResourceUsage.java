@@ -0,0 +1,65 @@
+package DiplomCloud.DiplomCloud.load;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*Цена прогона помимо задержек: сколько байт процесс записал на диск (/proc/self/io, только Linux)
+и как долго запросы держали соединение из пула Hikari. Приложение работает в том же процессе,
+что и прогон, поэтому запись на диск - это запись хранилища
+* */
+final class ResourceUsage {
+    private static final Path PROC_IO = Path.of("/proc/self/io");
+
+    private final MeterRegistry registry;
+    private final long writeBytes;
+    private final long connections;
+    private final double connectionNanos;
+
+    ResourceUsage(MeterRegistry registry) {
+        this.registry = registry;
+        this.writeBytes = writeBytes();
+        Timer usage = connectionUsage();
+        this.connections = usage == null ? 0 : usage.count();
+        this.connectionNanos = usage == null ? 0 : usage.totalTime(TimeUnit.NANOSECONDS);
+    }
+
+    Map<String, Object> finish() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        long written = writeBytes();
+        if (written >= 0 && writeBytes >= 0) {
+            result.put("diskWriteBytes", written - writeBytes);
+        }
+        Timer usage = connectionUsage();
+        if (usage != null && usage.count() > connections) {
+            result.put("connectionHoldMeanMs",
+                    (usage.totalTime(TimeUnit.NANOSECONDS) - connectionNanos) / (usage.count() - connections) / 1e6);
+            // Максимум Micrometer считает по скользящему окну, в него может попасть и прогрев
+            result.put("connectionHoldMaxMs", usage.max(TimeUnit.MILLISECONDS));
+        }
+        return result;
+    }
+
+    private Timer connectionUsage() {
+        return registry.find("hikaricp.connections.usage").timer();
+    }
+
+    private static long writeBytes() {
+        try {
+            for (String line : Files.readAllLines(PROC_IO)) {
+                if (line.startsWith("write_bytes:")) {
+                    return Long.parseLong(line.substring("write_bytes:".length()).trim());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Не Linux или нет доступа - запись на диск не отчитывается
+        }
+        return -1;
+    }
+}
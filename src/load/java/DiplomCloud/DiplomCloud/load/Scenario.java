@@ -0,0 +1,13 @@
+package DiplomCloud.DiplomCloud.load;
+
+// Поведение виртуального пользователя
+enum Scenario {
+    // Полный цикл на каждой итерации: вход -> загрузка -> список -> отдача -> переименование -> удаление
+    CRUD,
+    // Один вход и один файл, затем только список и отдача
+    BROWSE,
+    // Один вход, затем загрузка и удаление
+    UPLOAD,
+    // Один вход, затем только список файлов: метаданные, которые не должны ждать диска
+    LIST
+}
@@ -0,0 +1,91 @@
+package DiplomCloud.DiplomCloud.load;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.http.HttpClient;
+
+// Один виртуальный пользователь: крутит свой сценарий, пока не истечет время прогона
+@Slf4j
+final class VirtualUser implements Runnable {
+    static final String PASSWORD = "load-password";
+
+    private final int id;
+    private final Scenario scenario;
+    private final CloudClient client;
+    private final Payload content;
+    private final long deadline;
+
+    VirtualUser(int id, Scenario scenario, HttpClient http, String baseUrl, LatencyRecorder recorder,
+                Payload content, long deadline) {
+        this.id = id;
+        this.scenario = scenario;
+        this.client = new CloudClient(http, baseUrl, recorder);
+        this.content = content;
+        this.deadline = deadline;
+    }
+
+    static String login(int id) {
+        return "load-user-" + id;
+    }
+
+    @Override
+    public void run() {
+        try {
+            switch (scenario) {
+                case CRUD -> runCrud();
+                case BROWSE -> runBrowse();
+                case UPLOAD -> runUpload();
+                case LIST -> runList();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Виртуальный пользователь {} остановлен: {}", id, e.getMessage());
+        }
+    }
+
+    private void runCrud() throws Exception {
+        for (long iteration = 0; System.nanoTime() < deadline; iteration++) {
+            String filename = "crud-" + iteration + ".bin";
+            if (!client.login(login(id), PASSWORD) || !client.upload(filename, content)) {
+                continue;
+            }
+            client.list();
+            client.download(filename);
+            String renamed = "renamed-" + iteration + ".bin";
+            client.delete(client.rename(filename, renamed) ? renamed : filename);
+        }
+    }
+
+    private void runBrowse() throws Exception {
+        String filename = "browse.bin";
+        if (!client.login(login(id), PASSWORD) || !client.upload(filename, content)) {
+            throw new IllegalStateException("Не удалось подготовить файл для чтения");
+        }
+        while (System.nanoTime() < deadline) {
+            client.list();
+            client.download(filename);
+        }
+    }
+
+    private void runUpload() throws Exception {
+        if (!client.login(login(id), PASSWORD)) {
+            throw new IllegalStateException("Не удалось войти");
+        }
+        for (long iteration = 0; System.nanoTime() < deadline; iteration++) {
+            String filename = "upload-" + iteration + ".bin";
+            if (client.upload(filename, content)) {
+                client.delete(filename);
+            }
+        }
+    }
+
+    private void runList() throws Exception {
+        if (!client.login(login(id), PASSWORD)) {
+            throw new IllegalStateException("Не удалось войти");
+        }
+        while (System.nanoTime() < deadline) {
+            client.list();
+        }
+    }
+}
@@ -8,12 +8,14 @@ import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfi
 import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.context.annotation.Bean;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import java.nio.file.Files;
 import java.nio.file.Paths;
 
 @SpringBootApplication
 @EnableJpaRepositories
+@EnableScheduling
 @ConfigurationPropertiesScan  // Важно для работы с @Value
 public class DiplomCloudApplication {
 
@@ -0,0 +1,30 @@
+package DiplomCloud.DiplomCloud.config;
+
+import DiplomCloud.DiplomCloud.services.DiskScheduler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// /actuator/diskio: очередь дискового планировщика и выполняемые задачи. Эндпоинт доступен любому
+// вошедшему пользователю, поэтому логины не раскрываются - только число пользователей и самый занятый
+@Component
+@Endpoint(id = "diskio")
+@RequiredArgsConstructor
+public class DiskIoEndpoint {
+    private final DiskScheduler diskScheduler;
+
+    @ReadOperation
+    public Map<String, Object> diskIo() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("queueDepth", diskScheduler.queueDepth());
+        state.put("inFlight", diskScheduler.inFlight());
+        Map<String, Integer> byUser = diskScheduler.inFlightByUser();
+        state.put("activeUsers", byUser.size());
+        state.put("maxInFlightPerUser", byUser.values().stream().mapToInt(Integer::intValue).max().orElse(0));
+        return state;
+    }
+}
@@ -0,0 +1,20 @@
+package DiplomCloud.DiplomCloud.config;
+
+import DiplomCloud.DiplomCloud.security.TokenRevocationStore;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Метрики компонентов, которые сами не зависят от MeterRegistry
+@Configuration
+public class MetricsConfig {
+
+    // Размер набора отозванных токенов, с которым JwtTokenProvider сверяет каждый запрос
+    @Bean
+    public MeterBinder revokedTokensMetrics(TokenRevocationStore revocationStore) {
+        return registry -> Gauge.builder("jwt.revoked.tokens", revocationStore, TokenRevocationStore::size)
+                .description("Отозванные токены с неистекшим сроком действия")
+                .register(registry);
+    }
+}
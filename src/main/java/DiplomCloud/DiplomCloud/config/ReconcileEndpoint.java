@@ -0,0 +1,30 @@
+package DiplomCloud.DiplomCloud.config;
+
+import DiplomCloud.DiplomCloud.services.ReconcileReport;
+import DiplomCloud.DiplomCloud.services.StorageReconciler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// /actuator/reconcile: ход текущей сверки хранилища и итог последней завершенной
+@Component
+@Endpoint(id = "reconcile")
+@RequiredArgsConstructor
+public class ReconcileEndpoint {
+    private final StorageReconciler storageReconciler;
+
+    @ReadOperation
+    public Map<String, Object> reconcile() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("running", storageReconciler.isRunning());
+        ReconcileReport current = storageReconciler.currentReport();
+        state.put("current", current == null ? null : current.toMap());
+        ReconcileReport last = storageReconciler.lastReport();
+        state.put("last", last == null ? null : last.toMap());
+        return state;
+    }
+}
@@ -0,0 +1,36 @@
+package DiplomCloud.DiplomCloud.config;
+
+import DiplomCloud.DiplomCloud.services.LocalStorageBackend;
+import DiplomCloud.DiplomCloud.services.S3StorageBackend;
+import DiplomCloud.DiplomCloud.services.StorageBackend;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Хранилище содержимого выбирается для развертывания: file.storage.backend = local | s3
+@Configuration
+public class StorageBackendConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "file.storage.backend", havingValue = "local", matchIfMissing = true)
+    public StorageBackend localStorageBackend(@Value("${file.storage.path}") String storagePath) {
+        return new LocalStorageBackend(storagePath);
+    }
+
+    // Каталог file.storage.path остается нужен и здесь: в нем копятся загрузки до отправки в бакет
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "file.storage.backend", havingValue = "s3")
+    public StorageBackend s3StorageBackend(@Value("${file.storage.s3.endpoint}") String endpoint,
+                                           @Value("${file.storage.s3.region}") String region,
+                                           @Value("${file.storage.s3.bucket}") String bucket,
+                                           @Value("${file.storage.s3.access-key}") String accessKey,
+                                           @Value("${file.storage.s3.secret-key}") String secretKey,
+                                           @Value("${file.storage.s3.prefix}") String prefix,
+                                           @Value("${file.storage.s3.part-size}") long partSize,
+                                           @Value("${file.storage.s3.upload-threads}") int uploadThreads,
+                                           @Value("${file.storage.s3.timeout}") long timeoutMillis) {
+        return new S3StorageBackend(endpoint, region, bucket, accessKey, secretKey, prefix, partSize,
+                uploadThreads, timeoutMillis);
+    }
+}
@@ -0,0 +1,103 @@
+package DiplomCloud.DiplomCloud.controller;
+
+import DiplomCloud.DiplomCloud.dto.ArchiveRequest;
+import DiplomCloud.DiplomCloud.dto.ErrorResponse;
+import DiplomCloud.DiplomCloud.exception.FolderNotFoundException;
+import DiplomCloud.DiplomCloud.exception.UserNotFoundException;
+import DiplomCloud.DiplomCloud.security.JwtPrincipal;
+import DiplomCloud.DiplomCloud.services.ArchiveFormat;
+import DiplomCloud.DiplomCloud.services.ArchiveService;
+import DiplomCloud.DiplomCloud.services.DiskScheduler;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+// Несколько файлов одним ответом: ZIP или TAR пишется прямо в ответ
+@RestController
+@RequestMapping("/api/file")
+@RequiredArgsConstructor
+@Slf4j
+public class ArchiveController {
+    private final ArchiveService archiveService;
+    private final DiskScheduler diskScheduler;
+
+    @Value("${file.io.async-timeout}")
+    private long asyncTimeout;
+
+    @PostMapping("/archive")
+    public ResponseEntity<?> downloadArchive(
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @RequestBody ArchiveRequest archiveRequest,
+            HttpServletRequest request,
+            HttpServletResponse response) throws Exception {
+
+        log.info("Запрос на скачивание архива - каталог: {}, файлов: {}, формат: {}", archiveRequest.getFolder(),
+                archiveRequest.getFilenames() != null ? archiveRequest.getFilenames().size() : 0,
+                archiveRequest.getFormat());
+        String username = principal.getUsername();
+        ArchiveService.Selection selection;
+        try {
+            selection = archiveService.select(username, archiveRequest.getFilenames(), archiveRequest.getFolder(),
+                    ArchiveFormat.fromParam(archiveRequest.getFormat()));
+        } catch (UserNotFoundException e) {
+            log.error("Попытка несанкционированного доступа");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new ErrorResponse(e.getMessage(), 401));
+        } catch (FolderNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new ErrorResponse(e.getMessage(), 404));
+        } catch (IllegalArgumentException e) {
+            log.warn("Некорректный запрос архива: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(new ErrorResponse(e.getMessage(), 400));
+        }
+
+        // Архив пишет поток дискового планировщика в очереди пользователя, а не поток запросов Tomcat
+        DiskScheduler.RequestExecutor executor = diskScheduler.forUser(username);
+        WebAsyncTask<ResponseEntity<?>> task = new WebAsyncTask<>(
+                asyncTimeout, executor, () -> sendArchive(selection, response));
+        // По тайм-ауту запись архива прерывается и освобождает поток планировщика
+        task.onTimeout(() -> {
+            log.warn("Архив для пользователя {} не записан за {} мс, задача отменена", username, asyncTimeout);
+            executor.cancel();
+            throw new AsyncRequestTimeoutException();
+        });
+        WebAsyncUtils.getAsyncManager(request).startCallableProcessing(task);
+        return null;
+    }
+
+    private ResponseEntity<?> sendArchive(ArchiveService.Selection selection, HttpServletResponse response) {
+        ArchiveFormat format = selection.getFormat();
+        response.setContentType(format.contentType());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(selection.getName() + format.extension(), StandardCharsets.UTF_8)
+                .build()
+                .toString());
+        try {
+            archiveService.write(selection, response.getOutputStream());
+            // Ответ уже сформирован напрямую в HttpServletResponse
+            return null;
+        } catch (IOException e) {
+            log.error("Ошибка при отдаче архива: {}", e.getMessage());
+            if (response.isCommitted()) {
+                return null;
+            }
+            return ResponseEntity.internalServerError()
+                    .body(new ErrorResponse("Ошибка при отдаче архива", 500));
+        }
+    }
+}
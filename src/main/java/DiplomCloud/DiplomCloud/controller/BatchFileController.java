@@ -0,0 +1,81 @@
+package DiplomCloud.DiplomCloud.controller;
+
+import DiplomCloud.DiplomCloud.dto.BatchFilesRequest;
+import DiplomCloud.DiplomCloud.dto.BatchMoveRequest;
+import DiplomCloud.DiplomCloud.dto.ErrorResponse;
+import DiplomCloud.DiplomCloud.exception.UserNotFoundException;
+import DiplomCloud.DiplomCloud.security.JwtPrincipal;
+import DiplomCloud.DiplomCloud.services.FileBatchService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+// Пакетные операции: ответ 200 со статусом по каждому файлу, даже если часть элементов не выполнена
+@RestController
+@RequestMapping("/api/file/batch")
+@RequiredArgsConstructor
+@Slf4j
+public class BatchFileController {
+    private final FileBatchService fileBatchService;
+
+    @PostMapping("/delete")
+    public ResponseEntity<?> deleteFiles(
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @RequestBody @Valid BatchFilesRequest request) {
+
+        log.info("Запрос на пакетное удаление - файлов: {}", request.getFilenames().size());
+        try {
+            return ResponseEntity.ok(fileBatchService.deleteFiles(principal.getUsername(), request.getFilenames()));
+        } catch (UserNotFoundException e) {
+            log.error("Попытка несанкционированного доступа");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new ErrorResponse(e.getMessage(), 401));
+        } catch (IllegalArgumentException e) {
+            log.warn("Некорректный пакетный запрос: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(new ErrorResponse(e.getMessage(), 400));
+        }
+    }
+
+    @PostMapping("/move")
+    public ResponseEntity<?> moveFiles(
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @RequestBody @Valid BatchMoveRequest request) {
+
+        log.info("Запрос на пакетное переименование - файлов: {}", request.getMoves().size());
+        try {
+            return ResponseEntity.ok(fileBatchService.moveFiles(principal.getUsername(), request.getMoves()));
+        } catch (UserNotFoundException e) {
+            log.error("Попытка несанкционированного доступа");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new ErrorResponse(e.getMessage(), 401));
+        } catch (IllegalArgumentException e) {
+            log.warn("Некорректный пакетный запрос: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(new ErrorResponse(e.getMessage(), 400));
+        }
+    }
+
+    @PostMapping("/stat")
+    public ResponseEntity<?> statFiles(
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @RequestBody @Valid BatchFilesRequest request) {
+
+        log.debug("Запрос сведений о файлах - файлов: {}", request.getFilenames().size());
+        try {
+            return ResponseEntity.ok(fileBatchService.statFiles(principal.getUsername(), request.getFilenames()));
+        } catch (UserNotFoundException e) {
+            log.error("Попытка несанкционированного доступа");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new ErrorResponse(e.getMessage(), 401));
+        } catch (IllegalArgumentException e) {
+            log.warn("Некорректный пакетный запрос: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(new ErrorResponse(e.getMessage(), 400));
+        }
+    }
+}
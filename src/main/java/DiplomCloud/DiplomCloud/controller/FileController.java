@@ -5,43 +5,127 @@ import DiplomCloud.DiplomCloud.dto.ErrorResponse;
 import DiplomCloud.DiplomCloud.dto.FileRenameRequest;
 import DiplomCloud.DiplomCloud.exception.FileStorageException;
 import DiplomCloud.DiplomCloud.exception.UserNotFoundException;
-import DiplomCloud.DiplomCloud.security.JwtTokenProvider;
+import DiplomCloud.DiplomCloud.security.JwtPrincipal;
+import DiplomCloud.DiplomCloud.services.CompressionMode;
+import DiplomCloud.DiplomCloud.services.DiskScheduler;
+import DiplomCloud.DiplomCloud.services.FileAccessTracker;
+import DiplomCloud.DiplomCloud.services.FileDownloadService;
 import DiplomCloud.DiplomCloud.services.FileStorageService;
+import DiplomCloud.DiplomCloud.services.StoredFile;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.Resource;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
 @RestController
 @RequestMapping("/api/file")
 @RequiredArgsConstructor
 @Slf4j
 public class FileController {
     private final FileStorageService fileStorageService;
-    private final JwtTokenProvider jwtTokenProvider;
+    private final FileDownloadService fileDownloadService;
+    private final DiskScheduler diskScheduler;
+    private final FileAccessTracker fileAccessTracker;
+
+    @Value("${file.io.async-timeout}")
+    private long asyncTimeout;
 
+    // Тело multipart разбирает контейнер еще в потоке запросов Tomcat, до передачи задачи планировщику;
+    // размер ограничен spring.servlet.multipart (10MB). Большие файлы - через /stream или сессии загрузки
     @PostMapping
-    public ResponseEntity<?> uploadFile(
-            @RequestHeader("auth-token") String token,
+    public WebAsyncTask<ResponseEntity<?>> uploadFile(
+            @AuthenticationPrincipal JwtPrincipal principal,
             @RequestParam("filename") String filename,
-            @RequestParam("file") MultipartFile file) {
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "compression", required = false) String compression) {
 
         log.info("Запрос на загрузку файла - имя файла: {}, размер: {} bytes", filename, file.getSize());
+        String username = principal.getUsername();
+        return onDisk(username, () -> {
+            try {
+                fileStorageService.uploadFile(username, filename, file, compressionMode(compression));
+                return ResponseEntity.ok().build();
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage(), 400));
+            } catch (UserNotFoundException e) {
+                log.error("Попытка несанкционированного доступа");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body(new ErrorResponse(e.getMessage(), 401));
+            } catch (FileStorageException e) {
+                log.error("Ошибка при загрузке файла: {}", e.getMessage());
+                return ResponseEntity.internalServerError()
+                        .body(new ErrorResponse(e.getMessage(), 500));
+            }
+        });
+    }
+
+    // Тело запроса - содержимое файла (application/octet-stream), без временных файлов multipart
+    @PostMapping(value = "/stream", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public WebAsyncTask<ResponseEntity<?>> uploadFileStream(
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @RequestParam("filename") String filename,
+            @RequestParam(value = "compression", required = false) String compression,
+            HttpServletRequest request) {
+
+        log.info("Запрос на потоковую загрузку файла - имя файла: {}, размер: {} bytes",
+                filename, request.getContentLengthLong());
+        String username = principal.getUsername();
+        return onDisk(username, () -> {
+            try {
+                fileStorageService.uploadFile(username, filename, request.getInputStream(),
+                        request.getContentLengthLong(), compressionMode(compression));
+                return ResponseEntity.ok().build();
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage(), 400));
+            } catch (UserNotFoundException e) {
+                log.error("Попытка несанкционированного доступа");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body(new ErrorResponse(e.getMessage(), 401));
+            } catch (FileStorageException | IOException e) {
+                log.error("Ошибка при загрузке файла: {}", e.getMessage());
+                return ResponseEntity.internalServerError()
+                        .body(new ErrorResponse(e.getMessage(), 500));
+            }
+        });
+    }
+
+    // Клиент сначала присылает SHA-256 и размер; 404 означает, что нужно загрузить содержимое
+    @PostMapping("/by-hash")
+    public ResponseEntity<?> uploadFileByHash(
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @RequestParam("filename") String filename,
+            @RequestParam("hash") String hash,
+            @RequestParam("size") long size) {
+
+        log.info("Запрос на загрузку файла по хешу - имя файла: {}, хеш: {}", filename, hash);
         try {
-            String username = jwtTokenProvider.getUsername(token);
-            fileStorageService.uploadFile(username, filename, file);
-            return ResponseEntity.ok().build();
+            String username = principal.getUsername();
+            if (fileStorageService.uploadFileByHash(username, filename, hash, size)) {
+                return ResponseEntity.ok().build();
+            }
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new ErrorResponse("Содержимое с таким хешем не найдено", 404));
         } catch (UserNotFoundException e) {
             log.error("Попытка несанкционированного доступа");
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(new ErrorResponse(e.getMessage(), 401));
         } catch (FileStorageException e) {
-            log.error("Ошибка при загрузке файла: {}", e.getMessage());
+            log.error("Ошибка при загрузке файла по хешу: {}", e.getMessage());
             return ResponseEntity.internalServerError()
                     .body(new ErrorResponse(e.getMessage(), 500));
         }
@@ -49,16 +133,31 @@ public class FileController {
 
     @GetMapping("/download")
     public ResponseEntity<?> downloadFile(
-            @RequestHeader("auth-token") String token,
-            @RequestParam("filename") String filename) {
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @RequestParam("filename") String filename,
+            HttpServletRequest request,
+            HttpServletResponse response) throws Exception {
+
+        log.info("Запрос на загрузку файла - имя файла: {}, диапазон: {}", filename, request.getHeader(HttpHeaders.RANGE));
+        String username = principal.getUsername();
+        if (!fileDownloadService.supportsSendfile(request)) {
+            // Без sendfile байты копирует поток дискового планировщика, а не поток запросов Tomcat.
+            // Обработка запускается вручную: с sendfile ответ остается синхронным
+            WebAsyncUtils.getAsyncManager(request).startCallableProcessing(
+                    onDisk(username, () -> sendFile(username, filename, request, response)));
+            return null;
+        }
+        return sendFile(username, filename, request, response);
+    }
 
-        log.info("Запрос на загрузку файла - имя файла: {}", filename);
+    private ResponseEntity<?> sendFile(String username, String filename,
+                                       HttpServletRequest request, HttpServletResponse response) {
         try {
-            String username = jwtTokenProvider.getUsername(token);
-            Resource resource = fileStorageService.downloadFile(username, filename);
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                    .body(resource);
+            StoredFile storedFile = fileStorageService.resolveStoredFile(username, filename);
+            fileAccessTracker.record(storedFile);
+            fileDownloadService.sendFile(storedFile, filename, request, response);
+            // Ответ уже сформирован напрямую в HttpServletResponse
+            return null;
         } catch (UserNotFoundException e) {
             log.error("Попытка несанкционированного доступа");
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
@@ -67,17 +166,24 @@ public class FileController {
             log.error("Ошибка при загрузке файла: {}", e.getMessage());
             return ResponseEntity.internalServerError()
                     .body(new ErrorResponse(e.getMessage(), 500));
+        } catch (IOException e) {
+            log.error("Ошибка при отдаче файла: {}", e.getMessage());
+            if (response.isCommitted()) {
+                return null;
+            }
+            return ResponseEntity.internalServerError()
+                    .body(new ErrorResponse("Ошибка при отдаче файла " + filename, 500));
         }
     }
 
     @DeleteMapping
     public ResponseEntity<?> deleteFile(
-            @RequestHeader("auth-token") String token,
+            @AuthenticationPrincipal JwtPrincipal principal,
             @RequestParam("filename") String filename) {
 
         log.info("Запрос на удаление файла - имя файла: {}", filename);
         try {
-            String username = jwtTokenProvider.getUsername(token);
+            String username = principal.getUsername();
             fileStorageService.deleteFile(username, filename);
             return ResponseEntity.ok().build();
         } catch (UserNotFoundException e) {
@@ -93,13 +199,13 @@ public class FileController {
 
     @PutMapping
     public ResponseEntity<?> renameFile(
-            @RequestHeader("auth-token") String token,
+            @AuthenticationPrincipal JwtPrincipal principal,
             @RequestParam("filename") String filename,
             @RequestBody @Valid FileRenameRequest request) {
 
         log.info("Запрос на переименование файла - старое имя файла: {}, новое имя файла: {}", filename, request.getName());
         try {
-            String username = jwtTokenProvider.getUsername(token);
+            String username = principal.getUsername();
             fileStorageService.renameFile(username, filename, request.getName());
             return ResponseEntity.ok().build();
         } catch (UserNotFoundException e) {
@@ -113,5 +219,21 @@ public class FileController {
         }
     }
 
+    // Без параметра действует режим по умолчанию из настроек
+    private static CompressionMode compressionMode(String compression) {
+        return compression != null ? CompressionMode.fromParam(compression) : null;
+    }
 
+    // Дисковая работа запроса уходит в очередь пользователя; поток запросов Tomcat освобождается.
+    // По тайм-ауту задача снимается с потока: зависший клиент не держит долю потоков пользователя
+    private WebAsyncTask<ResponseEntity<?>> onDisk(String username, Callable<ResponseEntity<?>> work) {
+        DiskScheduler.RequestExecutor executor = diskScheduler.forUser(username);
+        WebAsyncTask<ResponseEntity<?>> task = new WebAsyncTask<>(asyncTimeout, executor, work);
+        task.onTimeout(() -> {
+            log.warn("Дисковая задача пользователя {} не завершилась за {} мс и отменена", username, asyncTimeout);
+            executor.cancel();
+            throw new AsyncRequestTimeoutException();
+        });
+        return task;
+    }
 }
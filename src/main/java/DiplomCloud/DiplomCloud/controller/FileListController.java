@@ -1,51 +1,120 @@
 package DiplomCloud.DiplomCloud.controller;
 
 import DiplomCloud.DiplomCloud.dto.ErrorResponse;
-import DiplomCloud.DiplomCloud.dto.FileInfoResponse;
+import DiplomCloud.DiplomCloud.dto.FileListPage;
+import DiplomCloud.DiplomCloud.exception.FolderNotFoundException;
 import DiplomCloud.DiplomCloud.exception.UserNotFoundException;
-import DiplomCloud.DiplomCloud.models.FileEntity;
-import DiplomCloud.DiplomCloud.security.JwtTokenProvider;
+import DiplomCloud.DiplomCloud.repositories.FileSearchMode;
+import DiplomCloud.DiplomCloud.repositories.FileSort;
+import DiplomCloud.DiplomCloud.security.JwtPrincipal;
+import DiplomCloud.DiplomCloud.services.FileSearchService;
 import DiplomCloud.DiplomCloud.services.FileStorageService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
-
-import java.util.List;
-import java.util.stream.Collectors;
+import org.springframework.web.context.request.WebRequest;
 
 @RestController
 @RequestMapping("/api/files")
 @RequiredArgsConstructor
 @Slf4j
 public class FileListController {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final FileStorageService fileStorageService;
-    private final JwtTokenProvider jwtTokenProvider;
+    private final FileSearchService fileSearchService;
 
     @GetMapping
     public ResponseEntity<?> listFiles(
-            @RequestHeader("auth-token") String token,
-            @RequestParam(value = "limit", defaultValue = "0") int limit) {
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @RequestParam(value = "limit", defaultValue = "0") int limit,
+            @RequestParam(value = "sort", defaultValue = "name") String sort,
+            @RequestParam(value = "order", defaultValue = "asc") String order,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "folder", required = false) String folder,
+            WebRequest webRequest) {
 
-        log.info("Запрос списка файлов - лимит: {}", limit);
+        log.info("Запрос списка файлов - каталог: {}, лимит: {}, сортировка: {} {}", folder, limit, sort, order);
         try {
-            String username = jwtTokenProvider.getUsername(token);
-            List<FileEntity> files = fileStorageService.listFiles(username, limit);
-            List<FileInfoResponse> response = files.stream()
-                    .map(file -> new FileInfoResponse(file.getFilename(), file.getSize()))
-                    .collect(Collectors.toList());
-
-            log.debug("{} файлов для пользователя: {}", response.size(), username);
-            return ResponseEntity.ok(response);
+            String username = principal.getUsername();
+            // Список не менялся с прошлого запроса - 304 без обращения к таблице files
+            String etag = fileStorageService.listingEtag(username);
+            if (webRequest.checkNotModified(etag)) {
+                log.debug("Список файлов не изменился, 304 - пользователь: {}", username);
+                return null;
+            }
+            FileListPage page = fileStorageService.listFiles(username, folder, limit, FileSort.fromParam(sort),
+                    "desc".equalsIgnoreCase(order), cursor);
+
+            log.debug("{} файлов для пользователя: {}", page.getFiles().size(), username);
+            // ETag в ответ уже записал checkNotModified
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .cacheControl(CacheControl.noCache().cachePrivate());
+            if (page.getNextCursor() != null) {
+                // Тело остается массивом, как ожидает FRONT; курсор следующей страницы - в заголовке
+                response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+            }
+            return response.body(page.getFiles());
         } catch (UserNotFoundException e) {
             log.error("Попытка несанкционированного доступа");
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(new ErrorResponse(e.getMessage(), 401));
+        } catch (FolderNotFoundException e) {
+            log.warn("Каталог не найден: {}", folder);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new ErrorResponse(e.getMessage(), 404));
+        } catch (IllegalArgumentException e) {
+            log.warn("Некорректные параметры списка файлов: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(new ErrorResponse(e.getMessage(), 400));
         } catch (Exception e) {
             log.error("Ошибка в списке файлов: {}", e.getMessage());
             return ResponseEntity.internalServerError()
                     .body(new ErrorResponse("Ошибка при получении списка файлов", 500));
         }
     }
+
+    // Поиск по имени во всех каталогах: mode = prefix | substring | extension
+    @GetMapping("/search")
+    public ResponseEntity<?> searchFiles(
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @RequestParam("q") String query,
+            @RequestParam(value = "mode", defaultValue = "substring") String mode,
+            @RequestParam(value = "limit", defaultValue = "50") int limit,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            WebRequest webRequest) {
+
+        log.info("Поиск файлов - запрос: {}, вид: {}, лимит: {}", query, mode, limit);
+        try {
+            String username = principal.getUsername();
+            // Результат поиска меняется вместе со списком файлов - ETag у них общий
+            if (webRequest.checkNotModified(fileStorageService.listingEtag(username))) {
+                return null;
+            }
+            FileListPage page = fileSearchService.search(username, query, FileSearchMode.fromParam(mode),
+                    limit, cursor);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .cacheControl(CacheControl.noCache().cachePrivate());
+            if (page.getNextCursor() != null) {
+                response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+            }
+            return response.body(page.getFiles());
+        } catch (UserNotFoundException e) {
+            log.error("Попытка несанкционированного доступа");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new ErrorResponse(e.getMessage(), 401));
+        } catch (IllegalArgumentException e) {
+            log.warn("Некорректный поисковый запрос: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(new ErrorResponse(e.getMessage(), 400));
+        } catch (Exception e) {
+            log.error("Ошибка поиска файлов: {}", e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(new ErrorResponse("Ошибка при поиске файлов", 500));
+        }
+    }
 }
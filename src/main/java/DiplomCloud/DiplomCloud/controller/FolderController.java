@@ -0,0 +1,153 @@
+package DiplomCloud.DiplomCloud.controller;
+
+import DiplomCloud.DiplomCloud.dto.ErrorResponse;
+import DiplomCloud.DiplomCloud.dto.FolderMoveRequest;
+import DiplomCloud.DiplomCloud.dto.FolderResponse;
+import DiplomCloud.DiplomCloud.exception.FileAlreadyExistsRuntimeException;
+import DiplomCloud.DiplomCloud.exception.FolderNotFoundException;
+import DiplomCloud.DiplomCloud.exception.UserNotFoundException;
+import DiplomCloud.DiplomCloud.models.Folder;
+import DiplomCloud.DiplomCloud.security.JwtPrincipal;
+import DiplomCloud.DiplomCloud.services.FolderPaths;
+import DiplomCloud.DiplomCloud.services.FolderService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+// Каталоги: путь передается как "docs/2024"; файлы каталога отдает /api/files?folder=
+@RestController
+@RequestMapping("/api/folder")
+@RequiredArgsConstructor
+@Slf4j
+public class FolderController {
+    private final FolderService folderService;
+
+    @PostMapping
+    public ResponseEntity<?> createFolder(
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @RequestParam("path") String path) {
+
+        log.info("Запрос на создание каталога: {}", path);
+        try {
+            Folder folder = folderService.createFolder(principal.getUsername(), path);
+            return ResponseEntity.status(HttpStatus.CREATED).body(toResponse(folder));
+        } catch (UserNotFoundException e) {
+            log.error("Попытка несанкционированного доступа");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new ErrorResponse(e.getMessage(), 401));
+        } catch (IllegalArgumentException e) {
+            log.warn("Некорректный путь каталога: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(new ErrorResponse(e.getMessage(), 400));
+        }
+    }
+
+    @GetMapping
+    public ResponseEntity<?> getFolder(
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @RequestParam("path") String path) {
+
+        log.debug("Запрос сведений о каталоге: {}", path);
+        try {
+            return ResponseEntity.ok(folderService.stat(principal.getUsername(), path));
+        } catch (UserNotFoundException e) {
+            log.error("Попытка несанкционированного доступа");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new ErrorResponse(e.getMessage(), 401));
+        } catch (FolderNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new ErrorResponse(e.getMessage(), 404));
+        } catch (IllegalArgumentException e) {
+            log.warn("Некорректный путь каталога: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(new ErrorResponse(e.getMessage(), 400));
+        }
+    }
+
+    // Без path - каталоги в корне
+    @GetMapping("/children")
+    public ResponseEntity<?> listChildren(
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @RequestParam(value = "path", required = false) String path) {
+
+        log.debug("Запрос вложенных каталогов: {}", path);
+        try {
+            List<FolderResponse> children = folderService.children(principal.getUsername(), path).stream()
+                    .map(this::toResponse)
+                    .toList();
+            return ResponseEntity.ok(children);
+        } catch (UserNotFoundException e) {
+            log.error("Попытка несанкционированного доступа");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new ErrorResponse(e.getMessage(), 401));
+        } catch (FolderNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new ErrorResponse(e.getMessage(), 404));
+        } catch (IllegalArgumentException e) {
+            log.warn("Некорректный путь каталога: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(new ErrorResponse(e.getMessage(), 400));
+        }
+    }
+
+    // Перенос и переименование: меняются только пути каталогов, файлы остаются на месте
+    @PutMapping
+    public ResponseEntity<?> moveFolder(
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @RequestParam("path") String path,
+            @RequestBody @Valid FolderMoveRequest request) {
+
+        log.info("Запрос на перенос каталога: {} -> {}", path, request.getPath());
+        try {
+            folderService.moveFolder(principal.getUsername(), path, request.getPath());
+            return ResponseEntity.ok().build();
+        } catch (UserNotFoundException e) {
+            log.error("Попытка несанкционированного доступа");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new ErrorResponse(e.getMessage(), 401));
+        } catch (FolderNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new ErrorResponse(e.getMessage(), 404));
+        } catch (FileAlreadyExistsRuntimeException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new ErrorResponse(e.getMessage(), 409));
+        } catch (IllegalArgumentException e) {
+            log.warn("Некорректный перенос каталога: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(new ErrorResponse(e.getMessage(), 400));
+        }
+    }
+
+    @DeleteMapping
+    public ResponseEntity<?> deleteFolder(
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @RequestParam("path") String path) {
+
+        log.info("Запрос на удаление каталога: {}", path);
+        try {
+            folderService.deleteFolder(principal.getUsername(), path);
+            return ResponseEntity.ok().build();
+        } catch (UserNotFoundException e) {
+            log.error("Попытка несанкционированного доступа");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new ErrorResponse(e.getMessage(), 401));
+        } catch (FolderNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new ErrorResponse(e.getMessage(), 404));
+        } catch (IllegalArgumentException e) {
+            log.warn("Некорректный путь каталога: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(new ErrorResponse(e.getMessage(), 400));
+        }
+    }
+
+    private FolderResponse toResponse(Folder folder) {
+        return new FolderResponse(folder.getName(), FolderPaths.displayFolder(folder.getPath()));
+    }
+}
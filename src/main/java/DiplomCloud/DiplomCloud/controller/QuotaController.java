@@ -0,0 +1,35 @@
+package DiplomCloud.DiplomCloud.controller;
+
+import DiplomCloud.DiplomCloud.dto.ErrorResponse;
+import DiplomCloud.DiplomCloud.exception.UserNotFoundException;
+import DiplomCloud.DiplomCloud.security.JwtPrincipal;
+import DiplomCloud.DiplomCloud.services.QuotaService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+// Занятое место и квота: одна строка user_usage, без подсчета по файлам
+@RestController
+@RequestMapping("/api/quota")
+@RequiredArgsConstructor
+@Slf4j
+public class QuotaController {
+    private final QuotaService quotaService;
+
+    @GetMapping
+    public ResponseEntity<?> getUsage(@AuthenticationPrincipal JwtPrincipal principal) {
+        log.debug("Запрос занятого места");
+        try {
+            return ResponseEntity.ok(quotaService.usage(principal.getUsername()));
+        } catch (UserNotFoundException e) {
+            log.error("Попытка несанкционированного доступа");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new ErrorResponse(e.getMessage(), 401));
+        }
+    }
+}
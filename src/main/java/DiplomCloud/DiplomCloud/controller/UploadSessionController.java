@@ -0,0 +1,108 @@
+package DiplomCloud.DiplomCloud.controller;
+
+import DiplomCloud.DiplomCloud.dto.ErrorResponse;
+import DiplomCloud.DiplomCloud.dto.UploadSessionResponse;
+import DiplomCloud.DiplomCloud.exception.FileStorageException;
+import DiplomCloud.DiplomCloud.exception.UserNotFoundException;
+import DiplomCloud.DiplomCloud.security.JwtPrincipal;
+import DiplomCloud.DiplomCloud.services.UploadSession;
+import DiplomCloud.DiplomCloud.services.UploadSessionService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/upload")
+@RequiredArgsConstructor
+@Slf4j
+public class UploadSessionController {
+    private final UploadSessionService uploadSessionService;
+
+    @PostMapping
+    public ResponseEntity<?> openSession(
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @RequestParam("filename") String filename,
+            @RequestParam("size") long size) {
+
+        log.info("Запрос на открытие сессии загрузки - имя файла: {}, размер: {} bytes", filename, size);
+        String username = principal.getUsername();
+        UploadSession session = uploadSessionService.openSession(username, filename, size);
+        return ResponseEntity.status(HttpStatus.CREATED).body(toResponse(session));
+    }
+
+    @PutMapping("/{sessionId}")
+    public ResponseEntity<?> uploadChunk(
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @PathVariable("sessionId") String sessionId,
+            @RequestParam("offset") long offset,
+            HttpServletRequest request) {
+
+        log.debug("Запрос на загрузку части - сессия: {}, смещение: {}", sessionId, offset);
+        try {
+            String username = principal.getUsername();
+            UploadSession session = uploadSessionService.writeChunk(username, sessionId, offset,
+                    request.getContentLengthLong(), request.getInputStream());
+            return ResponseEntity.ok(toResponse(session));
+        } catch (IOException e) {
+            log.error("Ошибка чтения части файла: {}", e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(new ErrorResponse("Не удалось прочитать часть файла", 500));
+        } catch (FileStorageException e) {
+            log.error("Ошибка при загрузке части файла: {}", e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(new ErrorResponse(e.getMessage(), 500));
+        }
+    }
+
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<?> getSession(
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @PathVariable("sessionId") String sessionId) {
+
+        String username = principal.getUsername();
+        return ResponseEntity.ok(toResponse(uploadSessionService.getSession(username, sessionId)));
+    }
+
+    @PostMapping("/{sessionId}/commit")
+    public ResponseEntity<?> commit(
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @PathVariable("sessionId") String sessionId) {
+
+        log.info("Запрос на завершение сессии загрузки: {}", sessionId);
+        try {
+            String username = principal.getUsername();
+            uploadSessionService.commit(username, sessionId);
+            return ResponseEntity.ok().build();
+        } catch (UserNotFoundException e) {
+            log.error("Попытка несанкционированного доступа");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new ErrorResponse(e.getMessage(), 401));
+        } catch (FileStorageException e) {
+            log.error("Ошибка при завершении загрузки: {}", e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(new ErrorResponse(e.getMessage(), 500));
+        }
+    }
+
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<?> abort(
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @PathVariable("sessionId") String sessionId) {
+
+        log.info("Запрос на отмену сессии загрузки: {}", sessionId);
+        String username = principal.getUsername();
+        uploadSessionService.abort(username, sessionId);
+        return ResponseEntity.ok().build();
+    }
+
+    private UploadSessionResponse toResponse(UploadSession session) {
+        return new UploadSessionResponse(session.getId(), session.getFilename(), session.getSize(),
+                session.getReceivedBytes(), session.getReceivedRanges());
+    }
+}
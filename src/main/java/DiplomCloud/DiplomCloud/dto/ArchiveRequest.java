@@ -0,0 +1,37 @@
+package DiplomCloud.DiplomCloud.dto;
+
+import java.util.List;
+
+// Либо список файлов, либо каталог; без того и другого - все файлы пользователя
+public class ArchiveRequest {
+    private List<String> filenames;
+
+    private String folder;
+
+    // zip (по умолчанию) или tar
+    private String format;
+
+    public List<String> getFilenames() {
+        return filenames;
+    }
+
+    public void setFilenames(List<String> filenames) {
+        this.filenames = filenames;
+    }
+
+    public String getFolder() {
+        return folder;
+    }
+
+    public void setFolder(String folder) {
+        this.folder = folder;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+}
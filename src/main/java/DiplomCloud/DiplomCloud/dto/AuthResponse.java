@@ -10,6 +10,7 @@ public class AuthResponse {
     private String authToken;
 
     public AuthResponse(String token) {
+        this.authToken = token;
     }
 
     public String getAuthToken() {
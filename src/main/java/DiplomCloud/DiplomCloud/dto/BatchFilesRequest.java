@@ -0,0 +1,18 @@
+package DiplomCloud.DiplomCloud.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+public class BatchFilesRequest {
+    @NotEmpty
+    private List<String> filenames;
+
+    public List<String> getFilenames() {
+        return filenames;
+    }
+
+    public void setFilenames(List<String> filenames) {
+        this.filenames = filenames;
+    }
+}
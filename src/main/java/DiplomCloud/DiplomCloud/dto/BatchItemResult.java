@@ -0,0 +1,21 @@
+package DiplomCloud.DiplomCloud.dto;
+
+import lombok.Getter;
+
+// Результат одного элемента пакетной операции; message заполняется только при ошибке
+@Getter
+public class BatchItemResult {
+    private final String filename;
+    private final BatchItemStatus status;
+    private final String message;
+
+    public BatchItemResult(String filename, BatchItemStatus status, String message) {
+        this.filename = filename;
+        this.status = status;
+        this.message = message;
+    }
+
+    public static BatchItemResult ok(String filename) {
+        return new BatchItemResult(filename, BatchItemStatus.OK, null);
+    }
+}
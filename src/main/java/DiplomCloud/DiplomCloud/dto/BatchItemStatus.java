@@ -0,0 +1,9 @@
+package DiplomCloud.DiplomCloud.dto;
+
+public enum BatchItemStatus {
+    OK,
+    NOT_FOUND,
+    ALREADY_EXISTS,
+    INVALID,
+    ERROR
+}
@@ -0,0 +1,21 @@
+package DiplomCloud.DiplomCloud.dto;
+
+import lombok.Getter;
+
+import java.time.Instant;
+
+// Для отсутствующего файла exists = false, остальные поля пустые
+@Getter
+public class BatchStatItem {
+    private final String filename;
+    private final boolean exists;
+    private final Long size;
+    private final Instant uploadedAt;
+
+    public BatchStatItem(String filename, boolean exists, Long size, Instant uploadedAt) {
+        this.filename = filename;
+        this.exists = exists;
+        this.size = size;
+        this.uploadedAt = uploadedAt;
+    }
+}
@@ -0,0 +1,21 @@
+package DiplomCloud.DiplomCloud.dto;
+
+import lombok.Getter;
+
+import java.time.Instant;
+
+// Проекция строки files для списка: только нужные поля, без загрузки сущностей
+@Getter
+public class FileListItem {
+    private final Long id;
+    private final String filename;
+    private final Long size;
+    private final Instant uploadedAt;
+
+    public FileListItem(Long id, String filename, Long size, Instant uploadedAt) {
+        this.id = id;
+        this.filename = filename;
+        this.size = size;
+        this.uploadedAt = uploadedAt;
+    }
+}
@@ -0,0 +1,17 @@
+package DiplomCloud.DiplomCloud.dto;
+
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+public class FileListPage {
+    private final List<FileInfoResponse> files;
+    // null, если это последняя страница
+    private final String nextCursor;
+
+    public FileListPage(List<FileInfoResponse> files, String nextCursor) {
+        this.files = files;
+        this.nextCursor = nextCursor;
+    }
+}
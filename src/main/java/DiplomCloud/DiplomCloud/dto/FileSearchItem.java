@@ -0,0 +1,24 @@
+package DiplomCloud.DiplomCloud.dto;
+
+import lombok.Getter;
+
+// Строка результата поиска: имя в каталоге, путь каталога (null - корень),
+// ранг совпадения и ключ сортировки (имя в нижнем регистре, как его считает БД)
+@Getter
+public class FileSearchItem {
+    private final Long id;
+    private final String filename;
+    private final String folderPath;
+    private final Long size;
+    private final int rank;
+    private final String sortKey;
+
+    public FileSearchItem(Long id, String filename, String folderPath, Long size, int rank, String sortKey) {
+        this.id = id;
+        this.filename = filename;
+        this.folderPath = folderPath;
+        this.size = size;
+        this.rank = rank;
+        this.sortKey = sortKey;
+    }
+}
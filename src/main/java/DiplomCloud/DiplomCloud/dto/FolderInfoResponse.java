@@ -0,0 +1,21 @@
+package DiplomCloud.DiplomCloud.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+// Сводка по поддереву каталога: вложенные каталоги, файлы и их суммарный размер
+@Getter
+@Setter
+public class FolderInfoResponse {
+    private String path;
+    private long folders;
+    private long files;
+    private long size;
+
+    public FolderInfoResponse(String path, long folders, long files, long size) {
+        this.path = path;
+        this.folders = folders;
+        this.files = files;
+        this.size = size;
+    }
+}
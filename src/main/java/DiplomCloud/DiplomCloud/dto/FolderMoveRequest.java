@@ -0,0 +1,16 @@
+package DiplomCloud.DiplomCloud.dto;
+
+import jakarta.validation.constraints.NotBlank;
+
+public class FolderMoveRequest {
+    @NotBlank
+    private String path;
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+}
@@ -0,0 +1,16 @@
+package DiplomCloud.DiplomCloud.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class FolderResponse {
+    private String name;
+    private String path;
+
+    public FolderResponse(String name, String path) {
+        this.name = name;
+        this.path = path;
+    }
+}
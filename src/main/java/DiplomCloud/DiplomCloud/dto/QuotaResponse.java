@@ -0,0 +1,19 @@
+package DiplomCloud.DiplomCloud.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+// Занятое место пользователя; quota == null - без ограничения
+@Getter
+@Setter
+public class QuotaResponse {
+    private long used;
+    private long files;
+    private Long quota;
+
+    public QuotaResponse(long used, long files, Long quota) {
+        this.used = used;
+        this.files = files;
+        this.quota = quota;
+    }
+}
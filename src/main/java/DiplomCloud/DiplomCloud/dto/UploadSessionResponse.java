@@ -0,0 +1,24 @@
+package DiplomCloud.DiplomCloud.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+public class UploadSessionResponse {
+    private String sessionId;
+    private String filename;
+    private long size;
+    private long receivedBytes;
+    private List<long[]> received;
+
+    public UploadSessionResponse(String sessionId, String filename, long size, long receivedBytes, List<long[]> received) {
+        this.sessionId = sessionId;
+        this.filename = filename;
+        this.size = size;
+        this.receivedBytes = receivedBytes;
+        this.received = received;
+    }
+}
@@ -1,8 +1,12 @@
 package DiplomCloud.DiplomCloud.exception;
 
 import DiplomCloud.DiplomCloud.dto.ErrorResponse;
+import DiplomCloud.DiplomCloud.repositories.FileRepository;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -46,9 +50,54 @@ public class CustomExceptionHandler {
                 .body(new ErrorResponse(ex.getMessage(), 500));
     }
 
-    @ExceptionHandler(FileAlreadyExistsRuntimeException.class)
-    public ResponseEntity<ErrorResponse> handleFileExists(FileAlreadyExistsRuntimeException ex) {
+    // Переименование в занятое имя: условный UPDATE не изменил ни одной строки
+    @ExceptionHandler({FileAlreadyExistsRuntimeException.class, FileAlreadyExistsException.class})
+    public ResponseEntity<ErrorResponse> handleFileExists(RuntimeException ex) {
         return ResponseEntity.status(HttpStatus.CONFLICT)
                 .body(new ErrorResponse(ex.getMessage(), 409));
     }
+
+    // Гонка за имя, которую поймал уникальный индекс: пакетный перенос, параллельные загрузки
+    @ExceptionHandler(DataIntegrityViolationException.class)
+    public ResponseEntity<ErrorResponse> handleDataIntegrity(DataIntegrityViolationException ex) {
+        if (FileRepository.isNameConflict(ex)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new ErrorResponse("Файл с таким именем уже существует", 409));
+        }
+        return ResponseEntity.internalServerError()
+                .body(new ErrorResponse("Не удалось сохранить изменения", 500));
+    }
+
+    @ExceptionHandler(UploadSessionNotFoundException.class)
+    public ResponseEntity<ErrorResponse> handleUploadSessionNotFound(UploadSessionNotFoundException ex) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(new ErrorResponse(ex.getMessage(), 404));
+    }
+
+    @ExceptionHandler(FolderNotFoundException.class)
+    public ResponseEntity<ErrorResponse> handleFolderNotFound(FolderNotFoundException ex) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(new ErrorResponse(ex.getMessage(), 404));
+    }
+
+    // Объявленный размер не помещается в квоту - тело запроса не читается
+    @ExceptionHandler(QuotaExceededException.class)
+    public ResponseEntity<ErrorResponse> handleQuotaExceeded(QuotaExceededException ex) {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                .body(new ErrorResponse(ex.getMessage(), 413));
+    }
+
+    // Очередь дискового планировщика заполнена: клиенту стоит повторить запрос позже
+    @ExceptionHandler(TaskRejectedException.class)
+    public ResponseEntity<ErrorResponse> handleDiskQueueFull(TaskRejectedException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(new ErrorResponse("Сервер перегружен операциями с диском, повторите запрос позже", 503));
+    }
+
+    @ExceptionHandler(UploadSessionException.class)
+    public ResponseEntity<ErrorResponse> handleUploadSession(UploadSessionException ex) {
+        return ResponseEntity.badRequest()
+                .body(new ErrorResponse(ex.getMessage(), 400));
+    }
 }
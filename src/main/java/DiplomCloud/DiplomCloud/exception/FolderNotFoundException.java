@@ -0,0 +1,7 @@
+package DiplomCloud.DiplomCloud.exception;
+
+public class FolderNotFoundException extends RuntimeException {
+    public FolderNotFoundException(String path) {
+        super("Каталог не найден: " + path);
+    }
+}
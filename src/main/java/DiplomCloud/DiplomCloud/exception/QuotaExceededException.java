@@ -0,0 +1,7 @@
+package DiplomCloud.DiplomCloud.exception;
+
+public class QuotaExceededException extends RuntimeException {
+    public QuotaExceededException(long requested, long available) {
+        super("Недостаточно места: требуется " + requested + " bytes, доступно " + Math.max(available, 0) + " bytes");
+    }
+}
@@ -0,0 +1,7 @@
+package DiplomCloud.DiplomCloud.exception;
+
+public class UploadSessionException extends RuntimeException {
+    public UploadSessionException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package DiplomCloud.DiplomCloud.exception;
+
+public class UploadSessionNotFoundException extends RuntimeException {
+    public UploadSessionNotFoundException(String sessionId) {
+        super("Сессия загрузки не найдена: " + sessionId);
+    }
+}
@@ -0,0 +1,48 @@
+package DiplomCloud.DiplomCloud.models;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Как содержимое файла хранится на диске. Файл блоба в кодеке получает суффикс: <хеш>.gz
+public enum ContentCodec {
+    NONE("", null),
+    GZIP(".gz", "gzip");
+
+    private final String suffix;
+    private final String contentEncoding;
+
+    ContentCodec(String suffix, String contentEncoding) {
+        this.suffix = suffix;
+        this.contentEncoding = contentEncoding;
+    }
+
+    public String suffix() {
+        return suffix;
+    }
+
+    // Значение Content-Encoding, с которым сохраненные байты можно отдать без распаковки
+    public String contentEncoding() {
+        return contentEncoding;
+    }
+
+    public InputStream decode(InputStream stored) throws IOException {
+        return this == GZIP ? new GZIPInputStream(stored, 64 * 1024) : stored;
+    }
+
+    public OutputStream encode(OutputStream target, int level) throws IOException {
+        if (this == NONE) {
+            return target;
+        }
+        return new LeveledGzipOutputStream(target, level);
+    }
+
+    private static final class LeveledGzipOutputStream extends GZIPOutputStream {
+        private LeveledGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out, 64 * 1024);
+            def.setLevel(level);
+        }
+    }
+}
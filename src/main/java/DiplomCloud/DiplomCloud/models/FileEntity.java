@@ -4,6 +4,8 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.time.Instant;
+
 @Entity
 @Table(name = "files")
 @Getter
@@ -13,17 +15,50 @@ public class FileEntity {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // Имя внутри каталога, без пути
     @Column(nullable = false)
     private String filename;
 
-    @Column(nullable = false)
+    // null - файл лежит в корне
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "folder_id")
+    private Folder folder;
+
+    // Физическое расположение содержимого: путь блоба относительно корня хранилища,
+    // у файлов до перехода на блобы - абсолютный путь в каталоге пользователя
+    @Column
     private String filePath;
 
+    // Размер содержимого до сжатия: его видит клиент
     @Column(nullable = false)
     private Long size;
 
-    @ManyToOne
+    // Кодек файла на диске и его фактический размер там
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private ContentCodec codec = ContentCodec.NONE;
+
+    @Column(name = "stored_size")
+    private Long storedSize;
+
+    @Column(name = "uploaded_at", nullable = false)
+    private Instant uploadedAt;
+
+    // Уровень хранения, от корня которого отсчитывается filePath; у всех файлов варианта блоба один и тот же
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 8)
+    private StorageTier tier = StorageTier.HOT;
+
+    // Последнее скачивание; пишется пачками и может отставать на период сброса
+    @Column(name = "last_accessed_at")
+    private Instant lastAccessedAt;
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User owner;
 
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "blob_hash")
+    private Blob blob;
+
 }
@@ -0,0 +1,33 @@
+package DiplomCloud.DiplomCloud.models;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Entity
+@Table(name = "folders")
+@Getter
+@Setter
+@NoArgsConstructor
+public class Folder {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User owner;
+
+    // null - каталог лежит в корне
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "parent_id")
+    private Folder parent;
+
+    @Column(nullable = false)
+    private String name;
+
+    // Полный путь из имен с завершающим '/': '/docs/2024/'
+    @Column(nullable = false, length = 1024)
+    private String path;
+}
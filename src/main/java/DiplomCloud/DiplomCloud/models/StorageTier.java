@@ -0,0 +1,8 @@
+package DiplomCloud.DiplomCloud.models;
+
+// Уровень хранения содержимого: HOT - основной том file.storage.path, COLD - том file.tiering.cold-path.
+// FileEntity.filePath отсчитывается от корня своего уровня
+public enum StorageTier {
+    HOT,
+    COLD
+}
@@ -0,0 +1,29 @@
+package DiplomCloud.DiplomCloud.models;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// Счетчики меняются только запросами UserUsageRepository; сущность - для чтения
+@Entity
+@Table(name = "user_usage")
+@Getter
+@Setter
+@NoArgsConstructor
+public class UserUsage {
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    // Логический размер файлов: дедупликация и сжатие квоту не уменьшают
+    @Column(name = "used_bytes", nullable = false)
+    private long usedBytes;
+
+    @Column(name = "file_count", nullable = false)
+    private long fileCount;
+
+    // null - квота по умолчанию
+    @Column(name = "quota_bytes")
+    private Long quotaBytes;
+}
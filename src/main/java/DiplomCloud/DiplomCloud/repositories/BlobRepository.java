@@ -0,0 +1,90 @@
+package DiplomCloud.DiplomCloud.repositories;
+
+import DiplomCloud.DiplomCloud.models.Blob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface BlobRepository extends JpaRepository<Blob, String> {
+    // Создает блоб или добавляет ссылку; блокирует строку до конца транзакции
+    @Modifying
+    @Query(value = "INSERT INTO blobs (hash, size, ref_count) VALUES (:hash, :size, 1) " +
+            "ON CONFLICT (hash) DO UPDATE SET ref_count = blobs.ref_count + 1", nativeQuery = true)
+    int acquire(@Param("hash") String hash, @Param("size") long size);
+
+    // Та же блокировка строки, что у загрузки и сборщика: файл блоба не меняется параллельно
+    @Query(value = "SELECT hash FROM blobs WHERE hash = :hash FOR UPDATE", nativeQuery = true)
+    Optional<String> lock(@Param("hash") String hash);
+
+    @Modifying
+    @Query("UPDATE Blob b SET b.refCount = b.refCount + 1 WHERE b.hash = :hash AND b.size = :size")
+    int acquireExisting(@Param("hash") String hash, @Param("size") long size);
+
+    @Modifying
+    @Query("UPDATE Blob b SET b.refCount = b.refCount - 1 WHERE b.hash = :hash")
+    int release(@Param("hash") String hash);
+
+    // Пакетное удаление: каждый блоб из списка теряет count ссылок
+    @Modifying
+    @Query("UPDATE Blob b SET b.refCount = b.refCount - :count WHERE b.hash IN :hashes")
+    int releaseAll(@Param("hashes") Collection<String> hashes, @Param("count") int count);
+
+    // Блобы без ссылок; строки, занятые загрузкой, пропускаются
+    @Query(value = "SELECT hash FROM blobs WHERE ref_count <= 0 LIMIT :limit FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<String> lockUnreferenced(@Param("limit") int limit);
+
+    @Modifying
+    @Query("DELETE FROM Blob b WHERE b.hash = :hash AND b.refCount <= 0")
+    int deleteUnreferenced(@Param("hash") String hash);
+
+    // Сверка хранилища: строки диапазона хешей по возрастанию - в том же порядке, что и файлы раскладки
+    @Query(value = "SELECT hash, ref_count AS refCount FROM blobs " +
+            "WHERE hash > :after AND hash < :upper ORDER BY hash LIMIT :limit", nativeQuery = true)
+    List<BlobState> findRange(@Param("after") String after, @Param("upper") String upper, @Param("limit") int limit);
+
+    // Строка без ссылок для файла, у которого строки нет. Незафиксированная загрузка того же
+    // содержимого держит конфликтующую вставку: запрос дождется ее коммита и ничего не вставит
+    @Modifying
+    @Query(value = "INSERT INTO blobs (hash, size, ref_count) VALUES (:hash, :size, 0) " +
+            "ON CONFLICT (hash) DO NOTHING", nativeQuery = true)
+    int claimOrphan(@Param("hash") String hash, @Param("size") long size);
+
+    // Копия варианта блоба на уровне tier, которая после переноса может остаться без строк files.
+    // Повторная запись только отодвигает проверку
+    @Modifying
+    @Query(value = "INSERT INTO tier_cleanup (blob_hash, codec, tier, due_at) VALUES (:hash, :codec, :tier, :dueAt) " +
+            "ON CONFLICT (blob_hash, codec, tier) DO UPDATE SET due_at = greatest(tier_cleanup.due_at, EXCLUDED.due_at)",
+            nativeQuery = true)
+    int scheduleCleanup(@Param("hash") String hash, @Param("codec") String codec, @Param("tier") String tier,
+                        @Param("dueAt") Instant dueAt);
+
+    @Query(value = "SELECT blob_hash AS hash, codec, tier FROM tier_cleanup WHERE due_at <= :now " +
+            "ORDER BY due_at LIMIT :limit", nativeQuery = true)
+    List<TierCleanup> findDueCleanups(@Param("now") Instant now, @Param("limit") int limit);
+
+    @Modifying
+    @Query(value = "DELETE FROM tier_cleanup WHERE blob_hash = :hash AND codec = :codec AND tier = :tier",
+            nativeQuery = true)
+    int deleteCleanup(@Param("hash") String hash, @Param("codec") String codec, @Param("tier") String tier);
+
+    interface TierCleanup {
+        String getHash();
+
+        String getCodec();
+
+        String getTier();
+    }
+
+    interface BlobState {
+        String getHash();
+
+        int getRefCount();
+    }
+}
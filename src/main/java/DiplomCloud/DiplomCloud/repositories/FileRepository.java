@@ -1,19 +1,213 @@
 package DiplomCloud.DiplomCloud.repositories;
 
+import DiplomCloud.DiplomCloud.dto.FileListItem;
+import DiplomCloud.DiplomCloud.models.ContentCodec;
 import DiplomCloud.DiplomCloud.models.FileEntity;
+import DiplomCloud.DiplomCloud.models.StorageTier;
 import DiplomCloud.DiplomCloud.models.User;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
-public interface FileRepository extends JpaRepository<FileEntity, Long> {
-    // Автоматически реализуется Spring Data JPA
-    boolean existsByIdAndFilename(Long id, String filename);
+public interface FileRepository extends JpaRepository<FileEntity, Long>, FileRepositoryCustom {
+    // Уникальный индекс (владелец, каталог, имя) из V12: второй файл с тем же именем не вставится
+    String UNIQUE_NAME_INDEX = "uq_files_user_folder_filename";
+
+    // Запись не прошла из-за занятого имени, а не из-за другого ограничения
+    static boolean isNameConflict(DataIntegrityViolationException e) {
+        return e.getCause() instanceof ConstraintViolationException violation
+                && UNIQUE_NAME_INDEX.equalsIgnoreCase(violation.getConstraintName());
+    }
 
+    // Автоматически реализуется Spring Data JPA
     List<FileEntity> findByOwner(User owner);
 
     Optional<FileEntity> findByOwnerAndFilename(User owner, String filename);
 
+    Optional<FileEntity> findByOwnerLoginAndFilename(String login, String filename);
+
+    boolean existsByOwnerAndFilename(User owner, String filename);
+
+    boolean existsByOwnerLoginAndFilename(String login, String filename);
+
     void deleteByOwnerAndFilename(User owner, String filename);
+
+    // Поиск по имени внутри каталога: корень - folder IS NULL, иначе id каталога
+    @Query("SELECT f FROM FileEntity f WHERE f.owner.id = :ownerId AND f.folder IS NULL AND f.filename = :filename")
+    Optional<FileEntity> findInRoot(@Param("ownerId") Long ownerId, @Param("filename") String filename);
+
+    // Каталог находится по пути в том же запросе: чтение файла - одно обращение к БД
+    @Query("SELECT f FROM FileEntity f JOIN f.folder d " +
+            "WHERE f.owner.id = :ownerId AND d.path = :path AND f.filename = :filename")
+    Optional<FileEntity> findInFolder(@Param("ownerId") Long ownerId, @Param("path") String path,
+                                      @Param("filename") String filename);
+
+    // Переименование одним запросом: строка меняется, только если имя в целевом каталоге свободно.
+    // folderId == null - корень; filePath == null - путь не меняется (файл в блобе).
+    // NOT EXISTS не видит незакоммиченную строку соседней транзакции: такую гонку ловит
+    // уникальный индекс UNIQUE_NAME_INDEX, и UPDATE падает с нарушением уникальности
+    @Modifying
+    @Query(value = "UPDATE files SET filename = :filename, folder_id = :folderId, " +
+            "file_path = COALESCE(:filePath, file_path) " +
+            "WHERE id = :id AND user_id = :ownerId " +
+            // Две проверки вместо OR: каждая - точный поиск по индексу (user_id, folder_id, filename)
+            "AND NOT EXISTS (SELECT 1 FROM files t " +
+            "WHERE t.user_id = :ownerId AND t.folder_id = :folderId AND t.filename = :filename) " +
+            "AND NOT EXISTS (SELECT 1 FROM files t " +
+            "WHERE t.user_id = :ownerId AND t.folder_id IS NULL AND t.filename = :filename " +
+            "AND CAST(:folderId AS BIGINT) IS NULL)",
+            nativeQuery = true)
+    int renameIfAbsent(@Param("ownerId") Long ownerId, @Param("id") Long id, @Param("folderId") Long folderId,
+                       @Param("filename") String filename, @Param("filePath") String filePath);
+
+    // Путь на диске, на который указывает строка: по нему журнал переименований восстанавливает файл
+    @Query("SELECT f.filePath FROM FileEntity f WHERE f.id = :id")
+    Optional<String> findFilePath(@Param("id") Long id);
+
+    // Пакетные операции: одна выборка на пачку имен одного каталога; без folderId - корень
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT f FROM FileEntity f WHERE f.owner.id = :ownerId AND f.folder IS NULL AND f.filename IN :filenames")
+    List<FileEntity> lockByOwnerIdAndFilenameIn(@Param("ownerId") Long ownerId,
+                                                @Param("filenames") Collection<String> filenames);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT f FROM FileEntity f " +
+            "WHERE f.owner.id = :ownerId AND f.folder.id = :folderId AND f.filename IN :filenames")
+    List<FileEntity> lockInFolder(@Param("ownerId") Long ownerId, @Param("folderId") Long folderId,
+                                  @Param("filenames") Collection<String> filenames);
+
+    @Query("SELECT f.filename FROM FileEntity f " +
+            "WHERE f.owner.id = :ownerId AND f.folder IS NULL AND f.filename IN :filenames")
+    List<String> findExistingFilenames(@Param("ownerId") Long ownerId,
+                                       @Param("filenames") Collection<String> filenames);
+
+    @Query("SELECT f.filename FROM FileEntity f " +
+            "WHERE f.owner.id = :ownerId AND f.folder.id = :folderId AND f.filename IN :filenames")
+    List<String> findExistingInFolder(@Param("ownerId") Long ownerId, @Param("folderId") Long folderId,
+                                      @Param("filenames") Collection<String> filenames);
+
+    @Query("SELECT new DiplomCloud.DiplomCloud.dto.FileListItem(f.id, f.filename, f.size, f.uploadedAt) " +
+            "FROM FileEntity f WHERE f.owner.id = :ownerId AND f.folder IS NULL AND f.filename IN :filenames")
+    List<FileListItem> findItems(@Param("ownerId") Long ownerId,
+                                 @Param("filenames") Collection<String> filenames);
+
+    @Query("SELECT new DiplomCloud.DiplomCloud.dto.FileListItem(f.id, f.filename, f.size, f.uploadedAt) " +
+            "FROM FileEntity f WHERE f.owner.id = :ownerId AND f.folder.id = :folderId AND f.filename IN :filenames")
+    List<FileListItem> findItemsInFolder(@Param("ownerId") Long ownerId, @Param("folderId") Long folderId,
+                                         @Param("filenames") Collection<String> filenames);
+
+    @Query("SELECT f.id FROM FileEntity f WHERE f.id > :afterId ORDER BY f.id")
+    List<Long> findIdsAfter(@Param("afterId") long afterId, Pageable pageable);
+
+    // Сверка хранилища: файлы старого формата владельца по id, страницами (индекс idx_files_legacy)
+    @Query("SELECT f.id AS id, f.filePath AS filePath FROM FileEntity f " +
+            "WHERE f.owner.id = :ownerId AND f.blob IS NULL AND f.id > :afterId ORDER BY f.id")
+    List<LegacyFile> findLegacyFiles(@Param("ownerId") Long ownerId, @Param("afterId") long afterId,
+                                     Pageable pageable);
+
+    @Query("SELECT DISTINCT u.id AS id, u.login AS login FROM FileEntity f JOIN f.owner u WHERE f.blob IS NULL")
+    List<LegacyOwner> findLegacyOwners();
+
+    // Архив: файлы каталога по имени, страницами (индекс idx_files_user_folder_filename)
+    @Query("SELECT f.filename AS filename, f.size AS size, f.codec AS codec, f.filePath AS filePath, " +
+            "f.tier AS tier, b.hash AS hash, f.uploadedAt AS uploadedAt FROM FileEntity f LEFT JOIN f.blob b " +
+            "WHERE f.owner.id = :ownerId AND f.folder IS NULL AND f.filename > :after ORDER BY f.filename")
+    List<ArchiveFile> findArchivePageInRoot(@Param("ownerId") Long ownerId, @Param("after") String after,
+                                            Pageable pageable);
+
+    @Query("SELECT f.filename AS filename, f.size AS size, f.codec AS codec, f.filePath AS filePath, " +
+            "f.tier AS tier, b.hash AS hash, f.uploadedAt AS uploadedAt FROM FileEntity f LEFT JOIN f.blob b " +
+            "WHERE f.owner.id = :ownerId AND f.folder.id = :folderId AND f.filename > :after ORDER BY f.filename")
+    List<ArchiveFile> findArchivePageInFolder(@Param("ownerId") Long ownerId, @Param("folderId") Long folderId,
+                                              @Param("after") String after, Pageable pageable);
+
+    @Query("SELECT count(f) FROM FileEntity f WHERE f.owner.id = :ownerId")
+    long countByOwner(@Param("ownerId") Long ownerId);
+
+    // Строка, занятая пользовательской операцией, пропускается
+    @Query(value = "SELECT * FROM files WHERE id = :id FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    Optional<FileEntity> lockById(@Param("id") Long id);
+
+    @Modifying
+    @Query("UPDATE FileEntity f SET f.filePath = :filePath WHERE f.blob.hash = :hash AND f.codec = :codec")
+    int updateFilePathByBlob(@Param("hash") String hash, @Param("codec") ContentCodec codec,
+                             @Param("filePath") String filePath);
+
+    // Кандидаты в холодный уровень по idx_files_hot_access: горячие файлы в блобах, к которым давно не обращались.
+    // Keyset по (время обращения, id), как у страниц списка файлов; уровень - литерал из условия индекса
+    @Query("SELECT f.id AS id, f.blob.hash AS hash, f.codec AS codec, " +
+            "coalesce(f.lastAccessedAt, f.uploadedAt) AS accessedAt FROM FileEntity f " +
+            "WHERE f.tier = DiplomCloud.DiplomCloud.models.StorageTier.HOT AND f.blob IS NOT NULL " +
+            "AND coalesce(f.lastAccessedAt, f.uploadedAt) < :cutoff " +
+            "AND coalesce(f.lastAccessedAt, f.uploadedAt) >= :afterAt " +
+            "AND (coalesce(f.lastAccessedAt, f.uploadedAt) > :afterAt OR f.id > :afterId) " +
+            "ORDER BY coalesce(f.lastAccessedAt, f.uploadedAt), f.id")
+    List<TierCandidate> findColdCandidates(@Param("cutoff") Instant cutoff, @Param("afterAt") Instant afterAt,
+                                           @Param("afterId") Long afterId, Pageable pageable);
+
+    // Последнее обращение к файлам варианта блоба на уровне; null - таких файлов нет (idx_files_blob_hash)
+    @Query("SELECT max(coalesce(f.lastAccessedAt, f.uploadedAt)) FROM FileEntity f " +
+            "WHERE f.blob.hash = :hash AND f.codec = :codec AND f.tier = :tier")
+    Instant findLastAccess(@Param("hash") String hash, @Param("codec") ContentCodec codec,
+                           @Param("tier") StorageTier tier);
+
+    @Query("SELECT count(f) FROM FileEntity f WHERE f.blob.hash = :hash AND f.codec = :codec AND f.tier = :tier")
+    long countOnTier(@Param("hash") String hash, @Param("codec") ContentCodec codec, @Param("tier") StorageTier tier);
+
+    // Переключает уровень всех файлов варианта блоба; строки в прежней раскладке не трогаются -
+    // их содержимое лежит не там, куда скопирован блоб
+    @Modifying
+    @Query("UPDATE FileEntity f SET f.tier = :to WHERE f.blob.hash = :hash AND f.codec = :codec " +
+            "AND f.filePath = :location AND f.tier = :from")
+    int moveTier(@Param("hash") String hash, @Param("codec") ContentCodec codec, @Param("location") String location,
+                 @Param("from") StorageTier from, @Param("to") StorageTier to);
+
+    interface LegacyFile {
+        Long getId();
+
+        String getFilePath();
+    }
+
+    interface ArchiveFile {
+        String getFilename();
+
+        long getSize();
+
+        ContentCodec getCodec();
+
+        String getFilePath();
+
+        StorageTier getTier();
+
+        String getHash();
+
+        Instant getUploadedAt();
+    }
+
+    interface TierCandidate {
+        Long getId();
+
+        String getHash();
+
+        ContentCodec getCodec();
+
+        Instant getAccessedAt();
+    }
+
+    interface LegacyOwner {
+        Long getId();
+
+        String getLogin();
+    }
 }
\ No newline at end of file
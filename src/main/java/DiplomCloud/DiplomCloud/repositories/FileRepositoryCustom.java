@@ -0,0 +1,35 @@
+package DiplomCloud.DiplomCloud.repositories;
+
+import DiplomCloud.DiplomCloud.dto.FileListItem;
+import DiplomCloud.DiplomCloud.dto.FileSearchItem;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+public interface FileRepositoryCustom {
+    // Keyset-страница файлов одного каталога владельца; folderId == null - корень,
+    // afterId == null - первая страница, limit <= 0 - без ограничения
+    List<FileListItem> findPage(Long ownerId, Long folderId, FileSort sort, boolean descending,
+                                Object afterValue, Long afterId, int limit);
+
+    default List<FileListItem> findPage(Long ownerId, FileSort sort, boolean descending,
+                                        Object afterValue, Long afterId, int limit) {
+        return findPage(ownerId, null, sort, descending, afterValue, afterId, limit);
+    }
+
+    // Переименование пачки файлов одного каталога одним UPDATE; ключ - старое имя, значение - новое
+    int renameAll(Long ownerId, Long folderId, Map<String, String> renames);
+
+    default int renameAll(Long ownerId, Map<String, String> renames) {
+        return renameAll(ownerId, null, renames);
+    }
+
+    // Время последнего скачивания пачки файлов одним UPDATE; ключ - id файла. Более раннее время не записывается
+    int touchAll(Map<Long, Instant> accesses);
+
+    // Поиск по имени во всех каталогах владельца; query - в нижнем регистре.
+    // Порядок - ранг, имя, id; afterId == null - первая страница
+    List<FileSearchItem> search(Long ownerId, FileSearchMode mode, String query,
+                                Integer afterRank, String afterKey, Long afterId, int limit);
+}
@@ -0,0 +1,161 @@
+package DiplomCloud.DiplomCloud.repositories;
+
+import DiplomCloud.DiplomCloud.dto.FileListItem;
+import DiplomCloud.DiplomCloud.dto.FileSearchItem;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class FileRepositoryImpl implements FileRepositoryCustom {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<FileListItem> findPage(Long ownerId, Long folderId, FileSort sort, boolean descending,
+                                       Object afterValue, Long afterId, int limit) {
+        String column = "f." + sort.getProperty();
+        String direction = descending ? "DESC" : "ASC";
+        String compare = descending ? "<" : ">";
+
+        StringBuilder jpql = new StringBuilder(
+                "SELECT new DiplomCloud.DiplomCloud.dto.FileListItem(f.id, f.filename, f.size, f.uploadedAt) " +
+                "FROM FileEntity f WHERE f.owner.id = :ownerId")
+                .append(folderId != null ? " AND f.folder.id = :folderId" : " AND f.folder IS NULL");
+        if (afterId != null) {
+            // Первое условие задает начало диапазона по индексу, второе отсекает уже отданные строки
+            jpql.append(" AND ").append(column).append(' ').append(compare).append("= :afterValue")
+                    .append(" AND (").append(column).append(' ').append(compare).append(" :afterValue")
+                    .append(" OR f.id ").append(compare).append(" :afterId)");
+        }
+        jpql.append(" ORDER BY ").append(column).append(' ').append(direction)
+                .append(", f.id ").append(direction);
+
+        TypedQuery<FileListItem> query = entityManager.createQuery(jpql.toString(), FileListItem.class)
+                .setParameter("ownerId", ownerId);
+        if (folderId != null) {
+            query.setParameter("folderId", folderId);
+        }
+        if (afterId != null) {
+            query.setParameter("afterValue", afterValue)
+                    .setParameter("afterId", afterId);
+        }
+        if (limit > 0) {
+            query.setMaxResults(limit);
+        }
+        return query.getResultList();
+    }
+
+    @Override
+    public int renameAll(Long ownerId, Long folderId, Map<String, String> renames) {
+        if (renames.isEmpty()) {
+            return 0;
+        }
+        // UPDATE ... FROM (VALUES ...) - одна команда на всю пачку
+        StringBuilder sql = new StringBuilder("UPDATE files f SET filename = v.new_name FROM (VALUES ");
+        int index = 0;
+        for (int i = 0; i < renames.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append("(:old").append(i).append(", :new").append(i).append(')');
+        }
+        sql.append(") AS v(old_name, new_name) WHERE f.user_id = :ownerId AND f.filename = v.old_name")
+                .append(folderId != null ? " AND f.folder_id = :folderId" : " AND f.folder_id IS NULL");
+
+        Query query = entityManager.createNativeQuery(sql.toString())
+                .setParameter("ownerId", ownerId);
+        if (folderId != null) {
+            query.setParameter("folderId", folderId);
+        }
+        for (Map.Entry<String, String> rename : renames.entrySet()) {
+            query.setParameter("old" + index, rename.getKey())
+                    .setParameter("new" + index, rename.getValue());
+            index++;
+        }
+        return query.executeUpdate();
+    }
+
+    @Override
+    public int touchAll(Map<Long, Instant> accesses) {
+        if (accesses.isEmpty()) {
+            return 0;
+        }
+        StringBuilder sql = new StringBuilder("UPDATE files f SET last_accessed_at = v.accessed_at FROM (VALUES ");
+        for (int i = 0; i < accesses.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append("(:id").append(i)
+                    .append(", CAST(:at").append(i).append(" AS TIMESTAMP WITH TIME ZONE))");
+        }
+        sql.append(") AS v(id, accessed_at) WHERE f.id = v.id ")
+                .append("AND (f.last_accessed_at IS NULL OR f.last_accessed_at < v.accessed_at)");
+
+        Query query = entityManager.createNativeQuery(sql.toString());
+        int index = 0;
+        for (Map.Entry<Long, Instant> access : accesses.entrySet()) {
+            query.setParameter("id" + index, access.getKey())
+                    .setParameter("at" + index, access.getValue());
+            index++;
+        }
+        return query.executeUpdate();
+    }
+
+    @Override
+    public List<FileSearchItem> search(Long ownerId, FileSearchMode mode, String query,
+                                       Integer afterRank, String afterKey, Long afterId, int limit) {
+        // Ключ сортировки с побайтовым сравнением - тот же, что в idx_files_user_name_search
+        String key = "lower(f.filename) COLLATE \"C\"";
+        String escaped = query.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        String pattern = switch (mode) {
+            case PREFIX -> escaped + "%";
+            case SUBSTRING -> "%" + escaped + "%";
+            case EXTENSION -> "%." + escaped;
+        };
+        // Ранг нужен только подстроке: точное совпадение, затем начало имени, затем остальное.
+        // У префикса порядок по имени уже ставит точное совпадение первым
+        String rank = mode == FileSearchMode.SUBSTRING
+                ? "CASE WHEN lower(f.filename) = :query THEN 0 WHEN lower(f.filename) LIKE :prefix THEN 1 ELSE 2 END"
+                : "0";
+
+        StringBuilder sql = new StringBuilder("SELECT f.id, f.filename, d.path, f.size, ")
+                .append(rank).append(" AS match_rank, lower(f.filename) AS sort_key ")
+                .append("FROM files f LEFT JOIN folders d ON d.id = f.folder_id ")
+                // Выражение условия совпадает с выражением нужного индекса, иначе планировщик его не возьмет
+                .append("WHERE f.user_id = :ownerId AND ")
+                .append(mode == FileSearchMode.PREFIX ? key : "lower(f.filename)").append(" LIKE :pattern");
+        if (afterId != null) {
+            sql.append(mode == FileSearchMode.SUBSTRING
+                    ? " AND (" + rank + ", " + key + ", f.id) > (:afterRank, :afterKey, :afterId)"
+                    : " AND (" + key + ", f.id) > (:afterKey, :afterId)");
+        }
+        sql.append(" ORDER BY ").append(mode == FileSearchMode.SUBSTRING ? "match_rank, " : "")
+                .append(key).append(", f.id LIMIT :limit");
+
+        Query nativeQuery = entityManager.createNativeQuery(sql.toString())
+                .setParameter("ownerId", ownerId)
+                .setParameter("pattern", pattern)
+                .setParameter("limit", limit);
+        if (mode == FileSearchMode.SUBSTRING) {
+            nativeQuery.setParameter("query", query)
+                    .setParameter("prefix", escaped + "%");
+        }
+        if (afterId != null) {
+            nativeQuery.setParameter("afterKey", afterKey)
+                    .setParameter("afterId", afterId);
+            if (mode == FileSearchMode.SUBSTRING) {
+                nativeQuery.setParameter("afterRank", afterRank);
+            }
+        }
+
+        List<?> rows = nativeQuery.getResultList();
+        List<FileSearchItem> items = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            Object[] columns = (Object[]) row;
+            items.add(new FileSearchItem(((Number) columns[0]).longValue(), (String) columns[1],
+                    (String) columns[2], ((Number) columns[3]).longValue(), ((Number) columns[4]).intValue(),
+                    (String) columns[5]));
+        }
+        return items;
+    }
+}
@@ -0,0 +1,18 @@
+package DiplomCloud.DiplomCloud.repositories;
+
+import java.util.Locale;
+
+// Виды поиска по имени: префикс идет по btree-индексу, подстрока и расширение - по триграммному
+public enum FileSearchMode {
+    PREFIX,
+    SUBSTRING,
+    EXTENSION;
+
+    public static FileSearchMode fromParam(String value) {
+        try {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неизвестный вид поиска: " + value);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package DiplomCloud.DiplomCloud.repositories;
+
+import java.util.Locale;
+
+// Поля сортировки списка файлов; для каждого есть индекс (user_id, поле, id)
+public enum FileSort {
+    NAME("filename"),
+    SIZE("size"),
+    UPLOADED("uploadedAt");
+
+    private final String property;
+
+    FileSort(String property) {
+        this.property = property;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    public static FileSort fromParam(String value) {
+        try {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неизвестное поле сортировки: " + value);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package DiplomCloud.DiplomCloud.repositories;
+
+import DiplomCloud.DiplomCloud.models.Folder;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+// Поддерево каталога - строки с путем по префиксу; все запросы идут по uq_folders_user_path
+public interface FolderRepository extends JpaRepository<Folder, Long> {
+    @Query("SELECT d FROM Folder d WHERE d.owner.id = :ownerId AND d.path = :path")
+    Optional<Folder> findByPath(@Param("ownerId") Long ownerId, @Param("path") String path);
+
+    @Query("SELECT d FROM Folder d WHERE d.owner.id = :ownerId AND d.path IN :paths")
+    List<Folder> findByPaths(@Param("ownerId") Long ownerId, @Param("paths") Collection<String> paths);
+
+    @Query(value = "SELECT * FROM folders WHERE user_id = :ownerId AND path = :path FOR UPDATE", nativeQuery = true)
+    Optional<Folder> lockByPath(@Param("ownerId") Long ownerId, @Param("path") String path);
+
+    @Query("SELECT d FROM Folder d WHERE d.owner.id = :ownerId AND d.parent IS NULL ORDER BY d.name")
+    List<Folder> findRootChildren(@Param("ownerId") Long ownerId);
+
+    @Query("SELECT d FROM Folder d WHERE d.owner.id = :ownerId AND d.parent.id = :parentId ORDER BY d.name")
+    List<Folder> findChildren(@Param("ownerId") Long ownerId, @Param("parentId") Long parentId);
+
+    // Создание без гонки: параллельный запрос с тем же путем не получит ошибку уникальности
+    @Modifying
+    @Query(value = "INSERT INTO folders (user_id, parent_id, name, path) VALUES (:ownerId, :parentId, :name, :path) " +
+            "ON CONFLICT (user_id, path) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("ownerId") Long ownerId, @Param("parentId") Long parentId,
+                       @Param("name") String name, @Param("path") String path);
+
+    // Блокировка всего поддерева: параллельное создание вложенного каталога ждет переноса или удаления
+    @Query(value = "SELECT id FROM folders WHERE user_id = :ownerId AND path LIKE :pattern FOR UPDATE",
+            nativeQuery = true)
+    List<Long> lockSubtree(@Param("ownerId") Long ownerId, @Param("pattern") String pattern);
+
+    @Query(value = "SELECT count(*) FROM folders WHERE user_id = :ownerId AND path LIKE :pattern",
+            nativeQuery = true)
+    long countSubtree(@Param("ownerId") Long ownerId, @Param("pattern") String pattern);
+
+    // Файлы поддерева находятся через каталоги: диапазон по uq_folders_user_path, затем idx_files_folder
+    @Query(value = "SELECT count(f.id) AS files, coalesce(sum(f.size), 0) AS bytes " +
+            "FROM folders d JOIN files f ON f.folder_id = d.id " +
+            "WHERE d.user_id = :ownerId AND d.path LIKE :pattern", nativeQuery = true)
+    SubtreeUsage sumSubtreeFiles(@Param("ownerId") Long ownerId, @Param("pattern") String pattern);
+
+    @Query(value = "SELECT f.blob_hash AS hash, count(*) AS refs " +
+            "FROM folders d JOIN files f ON f.folder_id = d.id " +
+            "WHERE d.user_id = :ownerId AND d.path LIKE :pattern AND f.blob_hash IS NOT NULL " +
+            "GROUP BY f.blob_hash", nativeQuery = true)
+    List<BlobReferences> countSubtreeBlobs(@Param("ownerId") Long ownerId, @Param("pattern") String pattern);
+
+    // Файлы до перехода на блобы: их содержимое удаляется с диска после коммита
+    @Query(value = "SELECT f.file_path FROM folders d JOIN files f ON f.folder_id = d.id " +
+            "WHERE d.user_id = :ownerId AND d.path LIKE :pattern AND f.blob_hash IS NULL " +
+            "AND f.file_path IS NOT NULL", nativeQuery = true)
+    List<String> findSubtreeLegacyPaths(@Param("ownerId") Long ownerId, @Param("pattern") String pattern);
+
+    @Modifying
+    @Query(value = "DELETE FROM files f USING folders d " +
+            "WHERE f.folder_id = d.id AND d.user_id = :ownerId AND d.path LIKE :pattern", nativeQuery = true)
+    int deleteSubtreeFiles(@Param("ownerId") Long ownerId, @Param("pattern") String pattern);
+
+    // Перенос поддерева: меняется префикс пути у каталога и всех вложенных, файлы не затрагиваются
+    @Modifying
+    @Query(value = "UPDATE folders SET path = :target || substr(path, length(:source) + 1) " +
+            "WHERE user_id = :ownerId AND path LIKE :pattern", nativeQuery = true)
+    int movePaths(@Param("ownerId") Long ownerId, @Param("source") String source,
+                  @Param("target") String target, @Param("pattern") String pattern);
+
+    @Modifying
+    @Query(value = "DELETE FROM folders WHERE user_id = :ownerId AND path LIKE :pattern", nativeQuery = true)
+    int deleteSubtree(@Param("ownerId") Long ownerId, @Param("pattern") String pattern);
+
+    // Каталоги поддерева по возрастанию пути, страницами. ~>~ и ~<~ - побайтовое сравнение
+    // varchar_pattern_ops: диапазон (after, upper) и порядок берутся прямо из uq_folders_user_path
+    @Query(value = "SELECT id, path FROM folders WHERE user_id = :ownerId " +
+            "AND path ~>~ :after AND path ~<~ :upper ORDER BY path USING ~<~ LIMIT :limit", nativeQuery = true)
+    List<FolderRef> findSubtreePage(@Param("ownerId") Long ownerId, @Param("after") String after,
+                                    @Param("upper") String upper, @Param("limit") int limit);
+
+    interface FolderRef {
+        Long getId();
+
+        String getPath();
+    }
+
+    interface SubtreeUsage {
+        long getFiles();
+
+        long getBytes();
+    }
+
+    interface BlobReferences {
+        String getHash();
+
+        int getRefs();
+    }
+}
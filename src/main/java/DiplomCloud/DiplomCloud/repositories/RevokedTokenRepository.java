@@ -0,0 +1,25 @@
+package DiplomCloud.DiplomCloud.repositories;
+
+import DiplomCloud.DiplomCloud.models.RevokedToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, String> {
+    // Время отзыва ставит БД, чтобы расхождение часов узлов не влияло на синхронизацию
+    @Modifying
+    @Query(value = "INSERT INTO revoked_tokens (token_id, expires_at) VALUES (:tokenId, :expiresAt) " +
+            "ON CONFLICT (token_id) DO NOTHING", nativeQuery = true)
+    int revoke(@Param("tokenId") String tokenId, @Param("expiresAt") Instant expiresAt);
+
+    @Query("SELECT r FROM RevokedToken r WHERE r.revokedAt > :since AND r.expiresAt > :now")
+    List<RevokedToken> findRevokedSince(@Param("since") Instant since, @Param("now") Instant now);
+
+    @Modifying
+    @Query("DELETE FROM RevokedToken r WHERE r.expiresAt <= :now")
+    int deleteExpired(@Param("now") Instant now);
+}
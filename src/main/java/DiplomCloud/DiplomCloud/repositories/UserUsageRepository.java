@@ -0,0 +1,43 @@
+package DiplomCloud.DiplomCloud.repositories;
+
+import DiplomCloud.DiplomCloud.models.UserUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface UserUsageRepository extends JpaRepository<UserUsage, Long> {
+    // Приращение счетчиков; рост места проходит, только если укладывается в квоту.
+    // Строка блокируется до конца транзакции, поэтому параллельные загрузки не превысят квоту вдвоем
+    @Modifying
+    @Query(value = "UPDATE user_usage SET used_bytes = used_bytes + :bytes, file_count = file_count + :files " +
+            "WHERE user_id = :userId " +
+            "AND (:bytes <= 0 OR used_bytes + :bytes <= COALESCE(quota_bytes, :defaultQuota))", nativeQuery = true)
+    int add(@Param("userId") Long userId, @Param("bytes") long bytes, @Param("files") long files,
+            @Param("defaultQuota") long defaultQuota);
+
+    // Пользователь, зарегистрированный после миграции
+    @Modifying
+    @Query(value = "INSERT INTO user_usage (user_id) VALUES (:userId) ON CONFLICT (user_id) DO NOTHING",
+            nativeQuery = true)
+    int createIfAbsent(@Param("userId") Long userId);
+
+    @Query(value = "SELECT id FROM users WHERE id > :afterId ORDER BY id LIMIT :limit", nativeQuery = true)
+    List<Long> findUserIds(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    // Строка, занятая незавершенной загрузкой или удалением, пропускается - сверка не ждет пользователя
+    @Query(value = "SELECT user_id FROM user_usage WHERE user_id = :userId FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    Optional<Long> tryLock(@Param("userId") Long userId);
+
+    // Вызывается под блокировкой строки: запрос видит все зафиксированные изменения files,
+    // а незафиксированные еще добавят свое приращение сами. Возвращает 1, если счетчики разошлись
+    @Modifying
+    @Query(value = "UPDATE user_usage u SET used_bytes = s.bytes, file_count = s.files " +
+            "FROM (SELECT COALESCE(SUM(size), 0) AS bytes, COUNT(*) AS files FROM files WHERE user_id = :userId) s " +
+            "WHERE u.user_id = :userId AND (u.used_bytes <> s.bytes OR u.file_count <> s.files)", nativeQuery = true)
+    int recompute(@Param("userId") Long userId);
+}
@@ -0,0 +1,65 @@
+package DiplomCloud.DiplomCloud.security;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Фильтр Блума по строковым ключам: "нет" - точно нет, "да" - возможно.
+// Чтение без блокировок; удаление не поддерживается, фильтр пересобирается целиком
+final class BloomFilter {
+    private static final int BITS_PER_ENTRY = 16;
+    private static final int HASHES = 4;
+    static final int MAX_CAPACITY = 1 << 24;
+
+    private final AtomicLongArray words;
+    private final int bitMask;
+    private final int capacity;
+
+    BloomFilter(int expectedEntries) {
+        this.capacity = Math.min(Math.max(expectedEntries, 1024), MAX_CAPACITY);
+        // Число бит - степень двойки, индекс берется маской
+        int bits = Integer.highestOneBit(capacity * BITS_PER_ENTRY - 1) << 1;
+        this.words = new AtomicLongArray(bits >>> 6);
+        this.bitMask = bits - 1;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    void add(String key) {
+        long hash = mix(key.hashCode());
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & bitMask;
+            long mask = 1L << bit;
+            int index = bit >>> 6;
+            long word;
+            while (((word = words.get(index)) & mask) == 0
+                    && !words.compareAndSet(index, word, word | mask)) {
+                // повтор при одновременной записи соседнего бита
+            }
+        }
+    }
+
+    boolean mightContain(String key) {
+        long hash = mix(key.hashCode());
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & bitMask;
+            if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
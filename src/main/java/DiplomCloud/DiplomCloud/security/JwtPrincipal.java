@@ -0,0 +1,28 @@
+package DiplomCloud.DiplomCloud.security;
+
+import lombok.Getter;
+
+import java.security.Principal;
+
+// Данные проверенного токена; фильтр кладет их в SecurityContext, контроллеры получают через @AuthenticationPrincipal
+@Getter
+public class JwtPrincipal implements Principal {
+    private final String username;
+    // null для токенов, выпущенных до появления uid
+    private final Long userId;
+    // Ключ для отзыва токена
+    private final String tokenId;
+    private final long expiresAt;
+
+    public JwtPrincipal(String username, Long userId, String tokenId, long expiresAt) {
+        this.username = username;
+        this.userId = userId;
+        this.tokenId = tokenId;
+        this.expiresAt = expiresAt;
+    }
+
+    @Override
+    public String getName() {
+        return username;
+    }
+}
@@ -1,48 +1,72 @@
 package DiplomCloud.DiplomCloud.security;
 
 import DiplomCloud.DiplomCloud.exception.InvalidJwtAuthenticationException;
+import DiplomCloud.DiplomCloud.services.UserCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
-@Component
-@RequiredArgsConstructor
+// Не @Component: иначе Spring Boot зарегистрирует фильтр второй раз вне цепочки безопасности
 @Slf4j
 public class JwtTokenFilter extends OncePerRequestFilter {
     private final JwtTokenProvider jwtTokenProvider;
+    private final UserCache userCache;
+    // Время аутентификации запроса: отдельно принятые, отклоненные и запросы без токена
+    private final Timer authenticatedTimer;
+    private final Timer rejectedTimer;
+    private final Timer anonymousTimer;
+
+    public JwtTokenFilter(JwtTokenProvider jwtTokenProvider, UserCache userCache, MeterRegistry meterRegistry) {
+        this.jwtTokenProvider = jwtTokenProvider;
+        this.userCache = userCache;
+        this.authenticatedTimer = authTimer(meterRegistry, "authenticated");
+        this.rejectedTimer = authTimer(meterRegistry, "rejected");
+        this.anonymousTimer = authTimer(meterRegistry, "anonymous");
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
                                     HttpServletResponse response,
                                     FilterChain filterChain) throws ServletException, IOException {
         log.debug("Обработка фильтра JWT токена");
+        long startedAt = System.nanoTime();
         String token = resolveToken(request);
 
         try {
-            if (token != null && jwtTokenProvider.validateToken(token)) {
-                String username = jwtTokenProvider.getUsername(token);
-                log.debug("Пользователь прошедший проверку подлинности : {}", username);
+            // Токен проверяется один раз; контроллеры берут пользователя из SecurityContext
+            JwtPrincipal principal = token != null ? jwtTokenProvider.authenticate(token) : null;
+            if (principal != null && principal.getUserId() != null
+                    && !userCache.isCurrent(principal.getUsername(), principal.getUserId())) {
+                log.warn("Токен выдан удаленному пользователю: {}", principal.getUsername());
+                principal = null;
+            }
+            if (principal != null) {
+                log.debug("Пользователь прошедший проверку подлинности : {}", principal.getUsername());
 
                 Authentication auth = new UsernamePasswordAuthenticationToken(
-                        username,
+                        principal,
                         null,
                         Collections.emptyList()
                 );
                 SecurityContextHolder.getContext().setAuthentication(auth);
             }
+            Timer timer = token == null ? anonymousTimer : principal != null ? authenticatedTimer : rejectedTimer;
+            timer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
         } catch (InvalidJwtAuthenticationException e) {
             log.warn("Недопустимый  JWT токен: {}", e.getMessage());
+            rejectedTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
             response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Недопустимый  JWT токен");
             return;
         }
@@ -50,6 +74,14 @@ public class JwtTokenFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    private static Timer authTimer(MeterRegistry meterRegistry, String result) {
+        return Timer.builder("cloud.auth")
+                .description("Проверка JWT токена в фильтре")
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
     private String resolveToken(HttpServletRequest req) {
         String bearerToken = req.getHeader("auth-token");
         if (bearerToken != null) {
@@ -2,7 +2,12 @@ package DiplomCloud.DiplomCloud.security;
 
 
 import DiplomCloud.DiplomCloud.exception.InvalidJwtAuthenticationException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
@@ -12,18 +17,29 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 @Component
 @Slf4j
 public class JwtTokenProvider {
+    private static final String USER_ID_CLAIM = "uid";
+
     private final SecretKey secretKey;
     private final long validityInMilliseconds;
-    private final Set<String> invalidatedTokens = Collections.synchronizedSet(new HashSet<>()); // Хранилище недействительных токенов
+    private final JwtParser jwtParser;
+    private final TokenRevocationStore revocationStore; // Хранилище недействительных токенов
+    // Уже проверенные токены: повторная проверка подписи не нужна до истечения срока действия
+    private final Cache<String, JwtPrincipal> verifiedTokens;
 
     public JwtTokenProvider(
             @Value("${jwt.secret}") String secret,
-            @Value("${jwt.expiration}") long validityInMilliseconds) {
+            @Value("${jwt.expiration}") long validityInMilliseconds,
+            @Value("${jwt.cache-size}") long cacheSize,
+            TokenRevocationStore revocationStore) {
 
         // Генерация безопасного ключа из секретной строки
         log.info("Инициализация JwtTokenProvider");
@@ -33,55 +49,123 @@ public class JwtTokenProvider {
                 )
         );
         this.validityInMilliseconds = validityInMilliseconds;
+        this.revocationStore = revocationStore;
 
         // Проверка длины ключа
         if (secretKey.getEncoded().length < 32) { // 256 бит = 32 байта
             log.error("Секретный ключ должен быть не менее 256 бит (32 символа)");
             throw new IllegalArgumentException("Секретный ключ должен быть не менее 256 бит (32 символа)");
         }
+
+        this.jwtParser = Jwts.parser()
+                .verifyWith(secretKey)
+                .build();
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfter(new Expiry<String, JwtPrincipal>() {
+                    @Override
+                    public long expireAfterCreate(String token, JwtPrincipal principal, long currentTime) {
+                        long ttl = principal.getExpiresAt() - System.currentTimeMillis();
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(ttl, 0));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String token, JwtPrincipal principal,
+                                                  long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String token, JwtPrincipal principal,
+                                                long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
     }
     public String generateToken(String username) {
+        return generateToken(username, null);
+    }
+
+    public String generateToken(String username, Long userId) {
         log.debug("Генерирование токена для использованияr: {}", username);
         Date now = new Date();
         Date validity = new Date(now.getTime() + validityInMilliseconds);
 
         return Jwts.builder()
+                .id(UUID.randomUUID().toString())
                 .subject(username)
+                .claim(USER_ID_CLAIM, userId)
                 .issuedAt(now)
                 .expiration(validity)
                 .signWith(secretKey)
                 .compact();
     }
 
-    public boolean validateToken(String token) {
+    // Единственная проверка токена за запрос; null - токен недействителен или отозван
+    public JwtPrincipal authenticate(String token) {
         try {
-            Jwts.parser()
-                    .verifyWith(secretKey)
-                    .build()
-                    .parseSignedClaims(token);
-            return !invalidatedTokens.contains(token);
+            JwtPrincipal principal = verify(token);
+            return revocationStore.isRevoked(principal.getTokenId()) ? null : principal;
         } catch (JwtException | IllegalArgumentException e) {
             log.warn("Недопустимый  JWT токен: {}", e.getMessage());
-            return false;
+            return null;
         }
     }
+
+    public boolean validateToken(String token) {
+        return authenticate(token) != null;
+    }
     //Добавляет токен в черный список
     public void invalidateToken(String token) {
         log.debug("Недопустимый токен");
-        invalidatedTokens.add(token);
+        JwtPrincipal principal;
+        try {
+            principal = verify(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            // Поддельный или истекший токен и так не пройдет проверку
+            log.debug("Токен не требует отзыва: {}", e.getMessage());
+            return;
+        }
+        revocationStore.revoke(principal.getTokenId(), principal.getExpiresAt());
+        verifiedTokens.invalidate(token);
     }
 
     public String getUsername(String token) {
         try {
-            return Jwts.parser()
-                    .verifyWith(secretKey)
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload()
-                    .getSubject();
+            return verify(token).getUsername();
         } catch (JwtException e) {
             log.error("Не удалось получить имя пользователя из токена: {}", e.getMessage());
             throw new InvalidJwtAuthenticationException("Недопустимый токен");
         }
     }
+
+    private JwtPrincipal verify(String token) {
+        JwtPrincipal cached = verifiedTokens.getIfPresent(token);
+        if (cached != null && cached.getExpiresAt() > System.currentTimeMillis()) {
+            return cached;
+        }
+
+        Claims claims = jwtParser.parseSignedClaims(token).getPayload();
+        Date expiration = claims.getExpiration();
+        long expiresAt = expiration != null
+                ? expiration.getTime()
+                : System.currentTimeMillis() + validityInMilliseconds;
+        // Токены, выпущенные до появления jti, отзываются по хешу
+        String tokenId = claims.getId() != null ? claims.getId() : sha256(token);
+        Number userId = claims.get(USER_ID_CLAIM, Number.class);
+        JwtPrincipal principal = new JwtPrincipal(claims.getSubject(),
+                userId != null ? userId.longValue() : null, tokenId, expiresAt);
+        verifiedTokens.put(token, principal);
+        return principal;
+    }
+
+    private static String sha256(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
 }
@@ -1,9 +1,14 @@
 package DiplomCloud.DiplomCloud.security;
 
+import DiplomCloud.DiplomCloud.controller.FileListController;
+import DiplomCloud.DiplomCloud.services.UserCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
@@ -23,6 +28,8 @@ import java.util.List;
 @Slf4j
 public class SecurityConfig {
     private final JwtTokenProvider jwtTokenProvider;
+    private final UserCache userCache;
+    private final MeterRegistry meterRegistry;
 
     @Bean
     public PasswordEncoder passwordEncoder() {
@@ -37,12 +44,16 @@ public class SecurityConfig {
                 .csrf(csrf -> csrf.disable())
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/cloud/login").permitAll()
+                        // Сбор метрик без токена; доступ к ним ограничивается на уровне сети
+                        .requestMatchers("/actuator/health", "/actuator/prometheus").permitAll()
+                        // Повторная диспетчеризация после дискового планировщика: запрос уже проверен
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .anyRequest().authenticated()
                 )
                 .sessionManagement(session -> session
                         .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
                 )
-                .addFilterBefore(new JwtTokenFilter(jwtTokenProvider), UsernamePasswordAuthenticationFilter.class);
+                .addFilterBefore(new JwtTokenFilter(jwtTokenProvider, userCache, meterRegistry), UsernamePasswordAuthenticationFilter.class);
 
         return http.build();
     }
@@ -53,7 +64,11 @@ public class SecurityConfig {
         CorsConfiguration configuration = new CorsConfiguration();
         configuration.setAllowedOrigins(List.of("http://localhost:8080"));
         configuration.setAllowedMethods(List.of("GET", "POST", "PUT", "DELETE"));
-        configuration.setAllowedHeaders(List.of("auth-token", "Content-Type"));
+        // Докачка и условные запросы: браузер пропускает эти заголовки только по списку
+        configuration.setAllowedHeaders(List.of("auth-token", HttpHeaders.CONTENT_TYPE,
+                HttpHeaders.RANGE, HttpHeaders.IF_RANGE, HttpHeaders.IF_NONE_MATCH));
+        configuration.setExposedHeaders(List.of(HttpHeaders.ETAG, HttpHeaders.CONTENT_RANGE,
+                HttpHeaders.ACCEPT_RANGES, FileListController.NEXT_CURSOR_HEADER));
         configuration.setAllowCredentials(true);
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
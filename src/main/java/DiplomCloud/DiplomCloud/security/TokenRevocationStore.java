@@ -0,0 +1,155 @@
+package DiplomCloud.DiplomCloud.security;
+
+import DiplomCloud.DiplomCloud.models.RevokedToken;
+import DiplomCloud.DiplomCloud.repositories.RevokedTokenRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*Отозванные токены. Запись живет до истечения срока действия токена и удаляется
+автоматически, поэтому набор ограничен числом выходов за время жизни токена.
+Отзыв пишется в БД, остальные узлы забирают новые строки по расписанию.
+Проверка "не отозван" обычно заканчивается на фильтре Блума без обращения к кешу.
+Если записей больше предельной емкости фильтра, он почти на все отвечает "возможно": проверка
+идет сразу в кеш, а фильтр пересобирается только при очистке истекших записей
+* */
+@Component
+@Slf4j
+public class TokenRevocationStore {
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final long syncOverlap;
+    private final int maxFilterEntries;
+    private final Cache<String, Long> revoked;
+    private volatile BloomFilter filter = new BloomFilter(0);
+    private volatile boolean filterSaturated;
+    private volatile Instant syncedUpTo = Instant.EPOCH;
+
+    @Autowired
+    public TokenRevocationStore(RevokedTokenRepository revokedTokenRepository,
+                                @Value("${jwt.revocation.sync-overlap}") long syncOverlap) {
+        this(revokedTokenRepository, syncOverlap, BloomFilter.MAX_CAPACITY);
+    }
+
+    // Предел емкости фильтра задается явно только в тестах
+    public TokenRevocationStore(RevokedTokenRepository revokedTokenRepository, long syncOverlap,
+                                int maxFilterEntries) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.syncOverlap = syncOverlap;
+        this.maxFilterEntries = Math.min(maxFilterEntries, BloomFilter.MAX_CAPACITY);
+        // Без ограничения по размеру: вытеснение отозванного токена вернуло бы ему силу
+        this.revoked = Caffeine.newBuilder()
+                .expireAfter(new Expiry<String, Long>() {
+                    @Override
+                    public long expireAfterCreate(String tokenId, Long expiresAt, long currentTime) {
+                        long ttl = expiresAt - System.currentTimeMillis();
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(ttl, 0));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String tokenId, Long expiresAt,
+                                                  long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String tokenId, Long expiresAt,
+                                                long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    @PostConstruct
+    public void load() {
+        syncFromDatabase();
+        log.info("Загружено отозванных токенов: {}", size());
+    }
+
+    public boolean isRevoked(String tokenId) {
+        return (filterSaturated || filter.mightContain(tokenId)) && revoked.getIfPresent(tokenId) != null;
+    }
+
+    @Transactional
+    public void revoke(String tokenId, long expiresAt) {
+        if (expiresAt <= System.currentTimeMillis()) {
+            return;
+        }
+        revokedTokenRepository.revoke(tokenId, Instant.ofEpochMilli(expiresAt));
+        remember(tokenId, expiresAt);
+    }
+
+    public long size() {
+        return revoked.estimatedSize();
+    }
+
+    public int filterCapacity() {
+        return filter.capacity();
+    }
+
+    // Строки читаются с перекрытием: отзыв, закоммиченный позже соседнего, не будет пропущен
+    @Scheduled(fixedDelayString = "${jwt.revocation.sync-interval}")
+    public void syncFromDatabase() {
+        Instant since = syncedUpTo.minusMillis(syncOverlap);
+        List<RevokedToken> tokens = revokedTokenRepository.findRevokedSince(since, Instant.now());
+        Instant latest = syncedUpTo;
+        for (RevokedToken token : tokens) {
+            remember(token.getTokenId(), token.getExpiresAt().toEpochMilli());
+            if (token.getRevokedAt().isAfter(latest)) {
+                latest = token.getRevokedAt();
+            }
+        }
+        syncedUpTo = latest;
+    }
+
+    // Удаляет истекшие записи в БД и пересобирает фильтр без них
+    @Scheduled(fixedDelayString = "${jwt.revocation.purge-interval}")
+    @Transactional
+    public void purgeExpired() {
+        int deleted = revokedTokenRepository.deleteExpired(Instant.now());
+        revoked.cleanUp();
+        rebuildFilter(0);
+        if (deleted > 0) {
+            log.info("Удалено истекших отозванных токенов: {}", deleted);
+        }
+    }
+
+    // Запись изменяет фильтр под блокировкой, чтобы не потеряться при его пересборке
+    private synchronized void remember(String tokenId, long expiresAt) {
+        revoked.put(tokenId, expiresAt);
+        filter.add(tokenId);
+        // Заполненный фильтр не пересобирается на каждом отзыве: это полный проход по кешу
+        if (!filterSaturated && revoked.estimatedSize() > filter.capacity()) {
+            rebuildFilter(filter.capacity() * 2);
+        }
+    }
+
+    private synchronized void rebuildFilter(int capacity) {
+        long size = revoked.estimatedSize();
+        if (size > maxFilterEntries) {
+            if (!filterSaturated) {
+                log.warn("Отозванных токенов больше емкости фильтра ({}): проверка идет через кеш", maxFilterEntries);
+            }
+            filterSaturated = true;
+            return;
+        }
+        int required = (int) Math.min(size * 2, maxFilterEntries);
+        BloomFilter rebuilt = new BloomFilter(Math.min(Math.max(capacity, required), maxFilterEntries));
+        for (String tokenId : revoked.asMap().keySet()) {
+            rebuilt.add(tokenId);
+        }
+        filter = rebuilt;
+        filterSaturated = false;
+    }
+}
@@ -0,0 +1,35 @@
+package DiplomCloud.DiplomCloud.services;
+
+// Формат архива для скачивания нескольких файлов одним запросом
+public enum ArchiveFormat {
+    ZIP("application/zip", ".zip"),
+    // Без сжатия и без оглавления в конце: память не зависит от числа файлов
+    TAR("application/x-tar", ".tar");
+
+    private final String contentType;
+    private final String extension;
+
+    ArchiveFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    public static ArchiveFormat fromParam(String value) {
+        if (value == null || value.isBlank()) {
+            return ZIP;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неизвестный формат архива: " + value);
+        }
+    }
+}
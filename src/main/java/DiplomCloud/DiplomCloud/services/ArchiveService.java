@@ -0,0 +1,228 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.exception.FileStorageException;
+import DiplomCloud.DiplomCloud.repositories.FileRepository;
+import DiplomCloud.DiplomCloud.repositories.FolderRepository;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/*Скачивание нескольких файлов одним архивом. Файлы пишутся в ответ по одному, временного архива нет:
+выбор каталога читается страницами по индексам (каталоги поддерева по пути, файлы каталога по имени),
+в памяти - страница строк и буфер копирования. Все проверки выполняются до начала ответа;
+файл, удаленный после чтения его строки, пропускается, а архив продолжается
+* */
+@Service
+@Slf4j
+public class ArchiveService {
+    private static final int PAGE_SIZE = 500;
+    private static final String DEFAULT_NAME = "files";
+
+    private final FileStorageService fileStorageService;
+    private final FileRepository fileRepository;
+    private final FolderRepository folderRepository;
+    private final FolderService folderService;
+    private final UserCache userCache;
+    private final StorageMetrics storageMetrics;
+    private final int maxItems;
+    // Оглавление ZIP пишется в конце и копится в памяти: около сотни байт на файл
+    private final long maxZipEntries;
+
+    public ArchiveService(FileStorageService fileStorageService,
+                          FileRepository fileRepository,
+                          FolderRepository folderRepository,
+                          FolderService folderService,
+                          UserCache userCache,
+                          StorageMetrics storageMetrics,
+                          @Value("${file.batch.max-items}") int maxItems,
+                          @Value("${file.archive.max-zip-entries}") long maxZipEntries) {
+        this.fileStorageService = fileStorageService;
+        this.fileRepository = fileRepository;
+        this.folderRepository = folderRepository;
+        this.folderService = folderService;
+        this.userCache = userCache;
+        this.storageMetrics = storageMetrics;
+        this.maxItems = maxItems;
+        this.maxZipEntries = maxZipEntries;
+    }
+
+    // Список имен или каталог (пустой - корень со всеми каталогами). Ошибки здесь - еще до ответа
+    public Selection select(String username, List<String> filenames, String folder, ArchiveFormat format) {
+        Long userId = userCache.resolveUserId(username);
+        if (filenames != null && !filenames.isEmpty()) {
+            if (folder != null && !folder.isBlank()) {
+                throw new IllegalArgumentException("Укажите либо список файлов, либо каталог");
+            }
+            Set<String> names = new LinkedHashSet<>();
+            for (String filename : filenames) {
+                names.add(canonical(username, filename));
+            }
+            if (names.size() > maxItems) {
+                throw new IllegalArgumentException("Слишком много файлов в архиве: " + names.size()
+                        + ", максимум " + maxItems);
+            }
+            return new Selection(username, userId, format, new ArrayList<>(names), null, null, DEFAULT_NAME);
+        }
+
+        String path = FolderPaths.normalize(folder);
+        Long folderId = path != null ? folderService.require(userId, path).getId() : null;
+        if (format == ArchiveFormat.ZIP) {
+            long files = path != null
+                    ? folderRepository.sumSubtreeFiles(userId, FolderPaths.subtreePattern(path)).getFiles()
+                    : fileRepository.countByOwner(userId);
+            if (files > maxZipEntries) {
+                throw new IllegalArgumentException("Слишком много файлов для ZIP: " + files
+                        + ", максимум " + maxZipEntries + "; используйте формат tar");
+            }
+        }
+        return new Selection(username, userId, format, null, path, folderId,
+                path != null ? FolderPaths.nameOfFolder(path) : DEFAULT_NAME);
+    }
+
+    public void write(Selection selection, OutputStream out) throws IOException {
+        log.info("Отдача архива - пользователь: {}, формат: {}, каталог: {}", selection.username,
+                selection.format, FolderPaths.displayFolder(selection.folder));
+        ArchiveWriter writer = ArchiveWriter.create(selection.format, out);
+        Progress progress = new Progress();
+        long startedAt = storageMetrics.downloadStarted();
+        try {
+            if (selection.filenames != null) {
+                writeFiles(selection, writer, progress);
+            } else {
+                writeTree(selection, writer, progress);
+            }
+            writer.finish();
+        } finally {
+            storageMetrics.downloadFinished(startedAt, progress.bytes);
+        }
+        log.info("Архив отдан - пользователь: {}, файлов: {}, пропущено: {}, bytes: {}",
+                selection.username, progress.entries, progress.skipped, progress.bytes);
+    }
+
+    private void writeFiles(Selection selection, ArchiveWriter writer, Progress progress) throws IOException {
+        for (String filename : selection.filenames) {
+            StoredFile file;
+            try {
+                file = fileStorageService.resolveStoredFile(selection.username, filename);
+            } catch (FileStorageException e) {
+                log.warn("Файл пропущен в архиве - имя файла: {}, причина: {}", filename, e.getMessage());
+                progress.skipped++;
+                continue;
+            }
+            add(writer, filename, file, progress);
+        }
+    }
+
+    // Сначала файлы самого каталога, затем каталоги поддерева по возрастанию пути
+    private void writeTree(Selection selection, ArchiveWriter writer, Progress progress) throws IOException {
+        String path = selection.folder;
+        // Имена в архиве начинаются с выбранного каталога: "docs/2024/a.txt" для каталога "docs"
+        String parent = path != null ? FolderPaths.parentOf(path) : null;
+        int base = parent != null ? parent.length() - 1 : 0;
+        writeFolder(selection, path, selection.folderId, base, writer, progress);
+
+        // Поддерево - пути строго между "/docs/" и "/docs0": '0' следует за '/' в порядке байтов
+        String after = path != null ? path : "/";
+        String upper = path != null ? path.substring(0, path.length() - 1) + "0" : "0";
+        List<FolderRepository.FolderRef> page;
+        do {
+            page = folderRepository.findSubtreePage(selection.userId, after, upper, PAGE_SIZE);
+            for (FolderRepository.FolderRef folder : page) {
+                writeFolder(selection, folder.getPath(), folder.getId(), base, writer, progress);
+                after = folder.getPath();
+            }
+        } while (page.size() == PAGE_SIZE);
+    }
+
+    private void writeFolder(Selection selection, String path, Long folderId, int base,
+                             ArchiveWriter writer, Progress progress) throws IOException {
+        String after = "";
+        List<FileRepository.ArchiveFile> page;
+        do {
+            PageRequest pageable = PageRequest.of(0, PAGE_SIZE);
+            page = folderId == null
+                    ? fileRepository.findArchivePageInRoot(selection.userId, after, pageable)
+                    : fileRepository.findArchivePageInFolder(selection.userId, folderId, after, pageable);
+            for (FileRepository.ArchiveFile row : page) {
+                after = row.getFilename();
+                String filename = FolderPaths.display(path, row.getFilename());
+                StoredFile file;
+                try {
+                    file = fileStorageService.resolveArchiveFile(selection.username, filename, row);
+                } catch (SecurityException e) {
+                    log.warn("Файл пропущен в архиве - имя файла: {}, причина: {}", filename, e.getMessage());
+                    progress.skipped++;
+                    continue;
+                }
+                add(writer, filename.substring(base), file, progress);
+            }
+        } while (page.size() == PAGE_SIZE);
+    }
+
+    // Открытый канал держит содержимое, даже если файл удалят во время записи
+    private void add(ArchiveWriter writer, String name, StoredFile file, Progress progress) throws IOException {
+        FileChannel channel;
+        try {
+            channel = file.channel();
+        } catch (NoSuchFileException e) {
+            log.warn("Файл удален до записи в архив - имя файла: {}", name);
+            progress.skipped++;
+            return;
+        } catch (IOException e) {
+            log.warn("Файл пропущен в архиве - имя файла: {}, причина: {}", name, e.getMessage());
+            progress.skipped++;
+            return;
+        }
+        try (channel) {
+            writer.add(name, file, channel);
+        }
+        progress.entries++;
+        progress.bytes += file.getSize();
+    }
+
+    private String canonical(String username, String filename) {
+        if (filename == null || filename.isBlank()) {
+            throw new IllegalArgumentException("Не указано имя файла");
+        }
+        try {
+            fileStorageService.resolveSafeKey(username, filename);
+        } catch (SecurityException e) {
+            throw new IllegalArgumentException("Недопустимое имя файла: " + filename);
+        }
+        return FolderPaths.display(FolderPaths.folderOf(filename), FolderPaths.nameOf(filename));
+    }
+
+    // Проверенный выбор файлов: строится до начала ответа, пишется в потоке дискового планировщика
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class Selection {
+        private final String username;
+        private final Long userId;
+        @Getter
+        private final ArchiveFormat format;
+        private final List<String> filenames;
+        private final String folder;
+        private final Long folderId;
+        // Имя архива без расширения
+        @Getter
+        private final String name;
+    }
+
+    private static final class Progress {
+        private int entries;
+        private int skipped;
+        private long bytes;
+    }
+}
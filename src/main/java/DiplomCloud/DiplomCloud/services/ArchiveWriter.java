@@ -0,0 +1,19 @@
+package DiplomCloud.DiplomCloud.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+
+/*Потоковая запись архива: каждый файл пишется сразу в ответ, временного архива на диске нет.
+Канал открыт до вызова - удаление файла во время записи его содержимому не мешает
+* */
+interface ArchiveWriter {
+    void add(String name, StoredFile file, FileChannel channel) throws IOException;
+
+    // Завершает архив; сам поток ответа не закрывается
+    void finish() throws IOException;
+
+    static ArchiveWriter create(ArchiveFormat format, OutputStream out) {
+        return format == ArchiveFormat.TAR ? new TarArchiveWriter(out) : new ZipArchiveWriter(out);
+    }
+}
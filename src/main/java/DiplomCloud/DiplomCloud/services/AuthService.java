@@ -18,6 +18,7 @@ public class AuthService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final JwtTokenProvider jwtTokenProvider;
+    private final UserCache userCache;
 
     public User createUser(String username, String password) {
         log.info("Создание нового пользователя: {}", username);
@@ -25,6 +26,7 @@ public class AuthService {
         user.setLogin(username);
         user.setPassword(passwordEncoder.encode(password));
         User savedUser = userRepository.save(user);
+        userCache.invalidate(username);
         log.debug("Пользователь успешно создан с id: {}", savedUser.getId());
         return savedUser;
     }
@@ -42,7 +44,9 @@ public class AuthService {
             throw new BadCredentialsException("Не правильный логин или пароль");
         }
 
-        String token = jwtTokenProvider.generateToken(request.getLogin());
+        // id в токене избавляет файловые операции от поиска пользователя по логину
+        userCache.remember(user.getLogin(), user.getId());
+        String token = jwtTokenProvider.generateToken(user.getLogin(), user.getId());
         log.debug("Проверка подлинности прошла успешно для использования: {}", request.getLogin());
         return token;
     }
@@ -0,0 +1,329 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.exception.FileStorageException;
+import DiplomCloud.DiplomCloud.models.Blob;
+import DiplomCloud.DiplomCloud.models.ContentCodec;
+import DiplomCloud.DiplomCloud.models.StorageTier;
+import DiplomCloud.DiplomCloud.repositories.BlobRepository;
+import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+/*Контент-адресное хранилище: содержимое хранится один раз под своим SHA-256,
+файлы пользователей ссылаются на блоб. Счетчик ссылок меняется в БД атомарными UPDATE,
+а блоб без ссылок удаляет сборщик под блокировкой строки, поэтому одновременная загрузка
+того же содержимого либо дождется удаления и создаст блоб заново, либо сохранит его
+* */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BlobService {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int RECLAIM_BATCH = 100;
+
+    private final BlobRepository blobRepository;
+    private final FileSystemStorageService fileSystemStorageService;
+    private final TransactionTemplate transactionTemplate;
+    private final StorageMetrics storageMetrics;
+    private final CompressionPolicy compressionPolicy;
+
+    // Вызывается внутри транзакции: ссылка на блоб фиксируется вместе с записью файла
+    public Blob store(InputStream content) throws IOException {
+        return store(content, -1);
+    }
+
+    public Blob store(InputStream content, long expectedSize) throws IOException {
+        return store(content, expectedSize, null, CompressionMode.NONE).getBlob();
+    }
+
+    public StoredContent store(InputStream content, long expectedSize, String filename, CompressionMode mode)
+            throws IOException {
+        StagedContent staged = stage(content, expectedSize, filename, mode);
+        try {
+            return publish(staged);
+        } finally {
+            discard(staged);
+        }
+    }
+
+    // Один проход по потоку: каждый буфер обновляет хеш и счетчик размера и пишется во временный файл,
+    // при необходимости через gzip. Хеш считается по исходным байтам, поэтому сжатие не мешает дедупликации.
+    // Вызывается вне транзакции - передача тела не держит соединение с БД. expectedSize < 0 - размер неизвестен
+    public StagedContent stage(InputStream content, long expectedSize, String filename, CompressionMode mode)
+            throws IOException {
+        Path temp = fileSystemStorageService.createBlobTempFile();
+        boolean staged = false;
+        try {
+            MessageDigest digest = sha256();
+            long size = 0;
+            ContentCodec codec;
+            long startedAt = storageMetrics.uploadStarted();
+            try (InputStream in = content) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                // Кодек выбирается по первому буферу, до записи на диск
+                int read = in.readNBytes(buffer, 0, buffer.length);
+                codec = compressionPolicy.choose(filename, mode, buffer, read);
+                try (OutputStream out = codec.encode(Files.newOutputStream(temp), compressionPolicy.level())) {
+                    while (read > 0) {
+                        digest.update(buffer, 0, read);
+                        out.write(buffer, 0, read);
+                        size += read;
+                        read = in.read(buffer);
+                    }
+                }
+            } finally {
+                storageMetrics.uploadFinished(startedAt, size);
+            }
+            if (expectedSize >= 0 && size != expectedSize) {
+                throw new IOException("Получено " + size + " из " + expectedSize + " bytes");
+            }
+            if (codec != ContentCodec.NONE && !compressionPolicy.worthKeeping(size, Files.size(temp))) {
+                log.debug("Сжатие не дало выигрыша, файл хранится как есть: {}", filename);
+                decodeInPlace(temp, codec);
+                codec = ContentCodec.NONE;
+            }
+            // В удаленное хранилище байты уходят тоже до транзакции, под временным ключом
+            String stagedKey = fileSystemStorageService.stageBlob(temp);
+            staged = true;
+            return new StagedContent(HexFormat.of().formatHex(digest.digest()), size, codec,
+                    stagedKey == null ? temp : null, stagedKey, false);
+        } finally {
+            if (!staged) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    // Вызывается внутри транзакции, которая сохранит строку файла: на диске остается только перенос
+    public StoredContent publish(StagedContent staged) throws IOException {
+        String hash = staged.getHash();
+        ContentCodec codec = staged.getCodec();
+        // Сначала ссылка (строка блокируется до коммита), затем файл - сборщик не удалит его между шагами
+        blobRepository.acquire(hash, staged.getSize());
+        long startedAt = System.nanoTime();
+        // Содержимое уже хранится в каком-то варианте - второй вариант того же блоба не нужен
+        ContentCodec existing = fileSystemStorageService.storedCodec(hash).orElse(null);
+        if (existing != null) {
+            codec = existing;
+        } else {
+            if (staged.getStagedKey() != null) {
+                fileSystemStorageService.publishStagedBlob(staged.getStagedKey(), hash, codec);
+            } else if (staged.isKeepFile()) {
+                fileSystemStorageService.linkBlob(staged.getFile(), hash, codec);
+            } else {
+                fileSystemStorageService.publishBlob(staged.getFile(), hash, codec);
+            }
+            staged.markPublished();
+            discardOnRollback(hash);
+        }
+        storageMetrics.publishFinished(startedAt);
+        return stored(hash, codec);
+    }
+
+    // После транзакции: временные байты, которые не понадобились или остались после отката
+    public void discard(StagedContent staged) {
+        if (staged.isPublished() || staged.isKeepFile()) {
+            return;
+        }
+        try {
+            if (staged.getFile() != null) {
+                Files.deleteIfExists(staged.getFile());
+            } else {
+                fileSystemStorageService.discardStagedBlob(staged.getStagedKey());
+            }
+        } catch (IOException e) {
+            log.warn("Не удалось удалить временное содержимое загрузки {}: {}", staged.getHash(), e.getMessage());
+        }
+    }
+
+    // Файл сессии загрузки хешируется на месте, вне транзакции. Он остается у сессии до коммита:
+    // при откате клиент повторяет завершение с тем же файлом. В удаленное хранилище уходит копия
+    public StagedContent stage(Path file) throws IOException {
+        FileDigest digest = digest(file);
+        if (!fileSystemStorageService.remoteStorage()) {
+            return new StagedContent(digest.hash, digest.size, ContentCodec.NONE, file, null, true);
+        }
+        Path temp = fileSystemStorageService.createBlobTempFile();
+        try {
+            Files.copy(file, temp, StandardCopyOption.REPLACE_EXISTING);
+            return new StagedContent(digest.hash, digest.size, ContentCodec.NONE, null,
+                    fileSystemStorageService.stageBlob(temp), false);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Файл остается на месте до коммита (миграция раскладки): в хранилище попадает ссылка на него
+    public Blob adopt(Path file) throws IOException {
+        FileDigest digest = digest(file);
+        blobRepository.acquire(digest.hash, digest.size);
+        fileSystemStorageService.linkBlob(file, digest.hash);
+        discardOnRollback(digest.hash);
+        return blobRepository.getReferenceById(digest.hash);
+    }
+
+    // Мгновенная загрузка: ссылка на уже хранящийся блоб без передачи байтов
+    public Optional<StoredContent> acquireExisting(String hash, long size) {
+        String normalized = hash.toLowerCase();
+        if (blobRepository.acquireExisting(normalized, size) == 0) {
+            return Optional.empty();
+        }
+        Optional<ContentCodec> codec = fileSystemStorageService.storedCodec(normalized);
+        if (codec.isEmpty()) {
+            codec = restoreFromCold(normalized);
+        }
+        if (codec.isEmpty()) {
+            log.warn("Запись блоба есть, а файла нет: {}", normalized);
+            blobRepository.release(normalized);
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(stored(normalized, codec.get()));
+        } catch (IOException e) {
+            blobRepository.release(normalized);
+            throw new FileStorageException("Не удалось прочитать блоб " + normalized, e);
+        }
+    }
+
+    public void release(Blob blob) {
+        blobRepository.release(blob.getHash());
+    }
+
+    @Scheduled(fixedDelayString = "${file.blob.reclaim-interval}")
+    public void reclaimUnreferenced() {
+        int total = 0;
+        Integer reclaimed;
+        do {
+            reclaimed = transactionTemplate.execute(status -> {
+                List<String> hashes = blobRepository.lockUnreferenced(RECLAIM_BATCH);
+                for (String hash : hashes) {
+                    long startedAt = System.nanoTime();
+                    fileSystemStorageService.deleteBlob(hash);
+                    storageMetrics.deleteFinished(startedAt);
+                    blobRepository.deleteUnreferenced(hash);
+                }
+                return hashes.size();
+            });
+            total += reclaimed == null ? 0 : reclaimed;
+        } while (reclaimed != null && reclaimed == RECLAIM_BATCH);
+
+        if (total > 0) {
+            log.info("Удалено блобов без ссылок: {}", total);
+        }
+    }
+
+    // Все файлы блоба на холодном уровне: новая ссылка - тоже обращение, и копия возвращается на основной том.
+    // Строка блоба заблокирована до коммита, поэтому очистка уровней эту копию не тронет
+    private Optional<ContentCodec> restoreFromCold(String hash) {
+        Optional<ContentCodec> cold = fileSystemStorageService.storedCodec(StorageTier.COLD, hash);
+        if (cold.isEmpty()) {
+            return cold;
+        }
+        try {
+            fileSystemStorageService.copyBlob(hash, cold.get(), StorageTier.COLD, StorageTier.HOT);
+            return cold;
+        } catch (IOException e) {
+            log.warn("Не удалось вернуть блоб с холодного уровня {}: {}", hash, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    // Файл блоба уже в хранилище, а строка появится только с коммитом. При откате строки нет,
+    // и без уборки файл нашла бы только сверка хранилища
+    private void discardOnRollback(String hash) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    discard(hash);
+                }
+            }
+        });
+    }
+
+    // Та же строка-заглушка, что у очистки уровней: пока она заблокирована, загрузка того же
+    // содержимого ждет, поэтому файл удаляется, только если на него действительно никто не ссылается
+    private void discard(String hash) {
+        // Исходная транзакция уже завершена - нужна новая
+        TransactionTemplate discardTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        discardTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            discardTransaction.executeWithoutResult(status -> {
+                if (blobRepository.claimOrphan(hash, 0) == 1) {
+                    fileSystemStorageService.deleteBlob(hash);
+                    blobRepository.deleteUnreferenced(hash);
+                    log.debug("Удален блоб откаченной загрузки: {}", hash);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Файл без строки найдет сверка хранилища
+            log.warn("Не удалось удалить блоб откаченной загрузки {}: {}", hash, e.getMessage());
+        }
+    }
+
+    private StoredContent stored(String hash, ContentCodec codec) throws IOException {
+        long storedSize = fileSystemStorageService.storedSize(hash, codec);
+        return new StoredContent(blobRepository.getReferenceById(hash), codec, storedSize);
+    }
+
+    private static void decodeInPlace(Path file, ContentCodec codec) throws IOException {
+        Path decoded = file.resolveSibling(file.getFileName() + ".raw");
+        try {
+            try (InputStream in = codec.decode(Files.newInputStream(file))) {
+                Files.copy(in, decoded, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(decoded, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(decoded);
+        }
+    }
+
+    private static FileDigest digest(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        long size = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                size += read;
+            }
+        }
+        return new FileDigest(HexFormat.of().formatHex(digest.digest()), size);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+
+    @AllArgsConstructor
+    private static final class FileDigest {
+        private final String hash;
+        private final long size;
+    }
+}
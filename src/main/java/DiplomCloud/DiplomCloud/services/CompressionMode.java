@@ -0,0 +1,18 @@
+package DiplomCloud.DiplomCloud.services;
+
+// Режим сжатия, который клиент выбирает для загружаемого файла
+public enum CompressionMode {
+    // Сжимать, если содержимое похоже на текст
+    AUTO,
+    NONE,
+    // Сжимать всегда, кроме заведомо сжатых форматов
+    GZIP;
+
+    public static CompressionMode fromParam(String value) {
+        try {
+            return valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неизвестный режим сжатия: " + value);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.models.ContentCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Set;
+
+/*Решает, сжимать ли загружаемый файл. Решение принимается по имени и первому буферу
+содержимого, до записи на диск, поэтому загрузка остается однопроходной.
+Уже сжатые форматы не трогаются, в режиме AUTO сжимается только текст
+* */
+@Component
+public class CompressionPolicy {
+    private static final Set<String> TEXT_EXTENSIONS = Set.of(
+            "txt", "log", "csv", "tsv", "json", "ndjson", "xml", "html", "htm", "md", "yaml", "yml",
+            "sql", "js", "css", "java", "py", "sh", "ini", "conf", "properties", "svg");
+    private static final Set<String> COMPRESSED_EXTENSIONS = Set.of(
+            "gz", "tgz", "zip", "bz2", "xz", "zst", "7z", "rar", "jar", "jpg", "jpeg", "png", "gif", "webp",
+            "heic", "mp3", "aac", "ogg", "flac", "mp4", "mkv", "avi", "mov", "webm", "pdf", "docx", "xlsx", "pptx");
+    // Доля управляющих байтов, после которой содержимое считается двоичным
+    private static final double MAX_CONTROL_RATIO = 0.02;
+
+    private final CompressionMode defaultMode;
+    private final int level;
+    private final double maxRatio;
+
+    public CompressionPolicy(@Value("${file.compression.default-mode}") String defaultMode,
+                             @Value("${file.compression.level}") int level,
+                             @Value("${file.compression.max-ratio}") double maxRatio) {
+        this.defaultMode = CompressionMode.fromParam(defaultMode);
+        this.level = level;
+        this.maxRatio = maxRatio;
+    }
+
+    public ContentCodec choose(String filename, CompressionMode requested, byte[] head, int length) {
+        CompressionMode mode = requested != null ? requested : defaultMode;
+        String extension = extension(filename);
+        if (mode == CompressionMode.NONE || length == 0 || COMPRESSED_EXTENSIONS.contains(extension)) {
+            return ContentCodec.NONE;
+        }
+        if (mode == CompressionMode.GZIP || TEXT_EXTENSIONS.contains(extension) || looksLikeText(head, length)) {
+            return ContentCodec.GZIP;
+        }
+        return ContentCodec.NONE;
+    }
+
+    public int level() {
+        return level;
+    }
+
+    // Сжатие, которое почти не уменьшило файл, не стоит распаковки при каждой отдаче
+    public boolean worthKeeping(long size, long storedSize) {
+        return storedSize <= size * maxRatio;
+    }
+
+    static boolean looksLikeText(byte[] head, int length) {
+        int control = 0;
+        for (int i = 0; i < length; i++) {
+            int b = head[i] & 0xFF;
+            if (b == 0) {
+                return false;
+            }
+            if (b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f') {
+                control++;
+            }
+        }
+        return control <= length * MAX_CONTROL_RATIO;
+    }
+
+    private static String extension(String filename) {
+        if (filename == null) {
+            return "";
+        }
+        int dot = filename.lastIndexOf('.');
+        return dot < 0 ? "" : filename.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,285 @@
+package DiplomCloud.DiplomCloud.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*Планировщик дисковых операций: ограниченное число потоков, у каждого пользователя своя очередь.
+Потоки выбирают пользователей по кругу, и один пользователь занимает не больше per-user-limit
+потоков, поэтому несколько больших передач одного клиента не задерживают остальных.
+Общая очередь ограничена: при переполнении задача отклоняется (503), а не копится в памяти
+* */
+@Component
+@Slf4j
+public class DiskScheduler {
+    private final int perUserLimit;
+    private final int maxQueued;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition ready = lock.newCondition();
+    private final Map<String, UserQueue> queues = new HashMap<>();
+    private final ArrayDeque<String> readyUsers = new ArrayDeque<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private int queued;
+    private int inFlight;
+    private volatile boolean shutdown;
+
+    public DiskScheduler(@Value("${file.io.threads}") int threads,
+                         @Value("${file.io.queue-capacity}") int maxQueued,
+                         @Value("${file.io.per-user-limit}") int perUserLimit,
+                         MeterRegistry meterRegistry) {
+        this.maxQueued = maxQueued;
+        this.perUserLimit = perUserLimit;
+        for (int i = 1; i <= threads; i++) {
+            Thread worker = new Thread(this::runWorker, "disk-io-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        Gauge.builder("file.io.queue.depth", this, DiskScheduler::queueDepth)
+                .description("Дисковые задачи, ожидающие потока")
+                .register(meterRegistry);
+        Gauge.builder("file.io.in.flight", this, DiskScheduler::inFlight)
+                .description("Выполняемые дисковые задачи")
+                .register(meterRegistry);
+        Gauge.builder("file.io.users.active", this, scheduler -> scheduler.inFlightByUser().size())
+                .description("Пользователи с выполняемыми дисковыми задачами")
+                .register(meterRegistry);
+    }
+
+    public <T> CompletableFuture<T> submit(String username, Callable<T> task) {
+        Submitted<T> submitted = new Submitted<>(task);
+        execute(username, submitted);
+        return submitted.result;
+    }
+
+    public void execute(String username, Runnable task) {
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new RejectedExecutionException("Планировщик дисковых операций остановлен");
+            }
+            if (queued >= maxQueued) {
+                throw new RejectedExecutionException("Очередь дисковых операций переполнена");
+            }
+            UserQueue queue = queues.computeIfAbsent(username, UserQueue::new);
+            queue.tasks.addLast(task);
+            queued++;
+            schedule(queue);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Исполнитель для WebAsyncTask: задачи запроса попадают в очередь пользователя
+    public RequestExecutor forUser(String username) {
+        return new RequestExecutor(username);
+    }
+
+    public int queueDepth() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Integer> inFlightByUser() {
+        lock.lock();
+        try {
+            Map<String, Integer> result = new TreeMap<>();
+            for (UserQueue queue : queues.values()) {
+                if (queue.running > 0) {
+                    result.put(queue.username, queue.running);
+                }
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shutdown = true;
+        workers.forEach(Thread::interrupt);
+    }
+
+    private void runWorker() {
+        while (!shutdown) {
+            UserQueue queue;
+            Runnable task;
+            lock.lock();
+            try {
+                while (readyUsers.isEmpty()) {
+                    ready.await();
+                }
+                queue = queues.get(readyUsers.pollFirst());
+                queue.scheduled = false;
+                task = queue.tasks.pollFirst();
+                queued--;
+                queue.running++;
+                inFlight++;
+                // Следующая задача этого пользователя встает в конец круга
+                schedule(queue);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                task.run();
+            } catch (Throwable e) {
+                // Любая ошибка задачи, включая Error, остается в задаче: поток продолжает работу,
+                // иначе пул молча сокращался бы до полной остановки
+                log.error("Ошибка дисковой задачи пользователя {}", queue.username, e);
+                if (task instanceof Submitted<?> submitted) {
+                    submitted.result.completeExceptionally(e);
+                }
+            } finally {
+                // Прерывание, оставленное задачей, не должно достаться следующей
+                if (!shutdown) {
+                    Thread.interrupted();
+                }
+                finish(queue);
+            }
+        }
+    }
+
+    // Снимает еще не начатую задачу с очереди, чтобы она не занимала место до своей очереди
+    private void remove(String username, Runnable task) {
+        lock.lock();
+        try {
+            UserQueue queue = queues.get(username);
+            if (queue == null || !queue.tasks.remove(task)) {
+                return;
+            }
+            queued--;
+            if (queue.tasks.isEmpty()) {
+                // Пустая очередь не должна достаться потоку
+                if (queue.scheduled) {
+                    queue.scheduled = false;
+                    readyUsers.remove(username);
+                }
+                if (queue.running == 0) {
+                    queues.remove(username);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void finish(UserQueue queue) {
+        lock.lock();
+        try {
+            queue.running--;
+            inFlight--;
+            if (queue.running == 0 && queue.tasks.isEmpty()) {
+                queues.remove(queue.username);
+            } else {
+                schedule(queue);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Вызывается под блокировкой
+    private void schedule(UserQueue queue) {
+        if (!queue.scheduled && !queue.tasks.isEmpty() && queue.running < perUserLimit) {
+            queue.scheduled = true;
+            readyUsers.addLast(queue.username);
+            ready.signal();
+        }
+    }
+
+    /*Исполнитель задач одного запроса. cancel() снимает с очереди еще не начатые задачи и прерывает
+    выполняемые: по тайм-ауту запроса зависшая передача освобождает поток пользователя.
+    Прерывание доставляет FutureTask, и только пока задача выполняется
+    * */
+    public final class RequestExecutor extends TaskExecutorAdapter {
+        private final String username;
+        private final List<FutureTask<?>> submitted = new CopyOnWriteArrayList<>();
+
+        private RequestExecutor(String username) {
+            super(task -> DiskScheduler.this.execute(username, task));
+            this.username = username;
+        }
+
+        @Override
+        public Future<?> submit(Runnable task) {
+            return submit(Executors.callable(task));
+        }
+
+        @Override
+        public <T> Future<T> submit(Callable<T> task) {
+            FutureTask<T> future = new FutureTask<>(task);
+            submitted.add(future);
+            try {
+                execute(future);
+            } catch (RuntimeException e) {
+                submitted.remove(future);
+                throw e;
+            }
+            return future;
+        }
+
+        public void cancel() {
+            for (FutureTask<?> future : submitted) {
+                if (future.cancel(true)) {
+                    remove(username, future);
+                }
+            }
+        }
+    }
+
+    // Задача submit: результат завершает сама задача, а ошибку вне Exception - поток планировщика
+    private static final class Submitted<T> implements Runnable {
+        private final Callable<T> task;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private Submitted(Callable<T> task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                result.complete(task.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static final class UserQueue {
+        private final String username;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private int running;
+        private boolean scheduled;
+
+        private UserQueue(String username) {
+            this.username = username;
+        }
+    }
+}
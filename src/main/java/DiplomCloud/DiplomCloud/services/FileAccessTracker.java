@@ -0,0 +1,120 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.models.ContentCodec;
+import DiplomCloud.DiplomCloud.models.StorageTier;
+import DiplomCloud.DiplomCloud.repositories.FileRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*Учет скачиваний для уровней хранения. Скачивание не пишет в БД: время обращения копится
+в памяти (одна запись на файл, остается самое позднее) и сбрасывается пачками одним UPDATE.
+Очередь ограничена - при переполнении обращение теряется, и файл в худшем случае уйдет
+на холодный уровень раньше. Скачанный холодный файл ставится в очередь на возврат
+* */
+@Service
+@Slf4j
+public class FileAccessTracker {
+    private static final int FLUSH_BATCH = 1000;
+
+    private final FileRepository fileRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxPending;
+    private final Counter droppedAccesses;
+    private final Map<Long, Instant> pendingAccesses = new ConcurrentHashMap<>();
+    private final Set<BlobVariant> pendingPromotions = ConcurrentHashMap.newKeySet();
+
+    public FileAccessTracker(FileRepository fileRepository,
+                             TransactionTemplate transactionTemplate,
+                             MeterRegistry meterRegistry,
+                             @Value("${file.tiering.max-pending-accesses}") int maxPending) {
+        this.fileRepository = fileRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.maxPending = maxPending;
+        this.droppedAccesses = Counter.builder("cloud.tiering.accesses.dropped")
+                .description("Обращения к файлам, не учтенные из-за переполнения очереди")
+                .register(meterRegistry);
+    }
+
+    public void record(StoredFile file) {
+        if (file.getFileId() == null) {
+            return;
+        }
+        Instant now = Instant.now();
+        if (pendingAccesses.size() >= maxPending && !pendingAccesses.containsKey(file.getFileId())) {
+            droppedAccesses.increment();
+        } else {
+            pendingAccesses.merge(file.getFileId(), now, (previous, current) ->
+                    current.isAfter(previous) ? current : previous);
+        }
+        if (file.getTier() == StorageTier.COLD && file.getHash() != null && pendingPromotions.size() < maxPending) {
+            pendingPromotions.add(new BlobVariant(file.getHash(), file.getCodec()));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${file.tiering.access-flush-interval}")
+    public void flush() {
+        int total = 0;
+        while (!pendingAccesses.isEmpty()) {
+            Map<Long, Instant> batch = new HashMap<>();
+            Iterator<Map.Entry<Long, Instant>> iterator = pendingAccesses.entrySet().iterator();
+            while (iterator.hasNext() && batch.size() < FLUSH_BATCH) {
+                Map.Entry<Long, Instant> access = iterator.next();
+                // Обращение, пришедшее после чтения записи, остается в очереди до следующего сброса
+                if (pendingAccesses.remove(access.getKey(), access.getValue())) {
+                    batch.put(access.getKey(), access.getValue());
+                }
+            }
+            if (batch.isEmpty()) {
+                break;
+            }
+            try {
+                Integer updated = transactionTemplate.execute(status -> fileRepository.touchAll(batch));
+                total += updated == null ? 0 : updated;
+            } catch (RuntimeException e) {
+                // Время обращения - подсказка для уровней, повторять запись незачем
+                log.warn("Не удалось записать время обращения к {} файлам: {}", batch.size(), e.getMessage());
+                return;
+            }
+        }
+        if (total > 0) {
+            log.debug("Записано время обращения к файлам: {}", total);
+        }
+    }
+
+    // Блобы холодных файлов, которые скачивали с прошлого вызова
+    public List<BlobVariant> drainPromotions(int limit) {
+        List<BlobVariant> variants = new ArrayList<>();
+        Iterator<BlobVariant> iterator = pendingPromotions.iterator();
+        while (iterator.hasNext() && variants.size() < limit) {
+            variants.add(iterator.next());
+            iterator.remove();
+        }
+        return variants;
+    }
+
+    // Вариант блоба - единица переноса между уровнями: все файлы с этим содержимым и кодеком
+    @Getter
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    public static final class BlobVariant {
+        private final String hash;
+        private final ContentCodec codec;
+    }
+}
@@ -0,0 +1,450 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.dto.BatchItemResult;
+import DiplomCloud.DiplomCloud.dto.BatchItemStatus;
+import DiplomCloud.DiplomCloud.dto.BatchMoveRequest;
+import DiplomCloud.DiplomCloud.dto.BatchStatItem;
+import DiplomCloud.DiplomCloud.dto.FileListItem;
+import DiplomCloud.DiplomCloud.models.FileEntity;
+import DiplomCloud.DiplomCloud.repositories.BlobRepository;
+import DiplomCloud.DiplomCloud.repositories.FileRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/*Пакетные операции над файлами пользователя. Имена группируются по каталогам, id каталогов
+берутся одним запросом; на каждую пачку имен каталога - одна выборка с блокировкой
+строк и одна команда изменения в БД; работа с диском (только у файлов до перехода на блобы)
+распределяется по дисковому планировщику в очереди пользователя. Результат возвращается по каждому элементу
+* */
+@Service
+@Slf4j
+public class FileBatchService {
+    // Размер пачки для IN (...) и VALUES (...)
+    private static final int CHUNK_SIZE = 1000;
+
+    private final FileRepository fileRepository;
+    private final BlobRepository blobRepository;
+    private final FileStorageService fileStorageService;
+    private final FileSystemStorageService fileSystemStorageService;
+    private final UserCache userCache;
+    private final FileListingCache fileListingCache;
+    private final FolderService folderService;
+    private final QuotaService quotaService;
+    private final RenameJournal renameJournal;
+    private final TransactionTemplate transactionTemplate;
+    private final DiskScheduler diskScheduler;
+    private final int maxItems;
+
+    public FileBatchService(FileRepository fileRepository,
+                            BlobRepository blobRepository,
+                            FileStorageService fileStorageService,
+                            FileSystemStorageService fileSystemStorageService,
+                            UserCache userCache,
+                            FileListingCache fileListingCache,
+                            FolderService folderService,
+                            QuotaService quotaService,
+                            RenameJournal renameJournal,
+                            TransactionTemplate transactionTemplate,
+                            DiskScheduler diskScheduler,
+                            @Value("${file.batch.max-items}") int maxItems) {
+        this.fileRepository = fileRepository;
+        this.blobRepository = blobRepository;
+        this.fileStorageService = fileStorageService;
+        this.fileSystemStorageService = fileSystemStorageService;
+        this.userCache = userCache;
+        this.fileListingCache = fileListingCache;
+        this.folderService = folderService;
+        this.quotaService = quotaService;
+        this.renameJournal = renameJournal;
+        this.transactionTemplate = transactionTemplate;
+        this.diskScheduler = diskScheduler;
+        this.maxItems = maxItems;
+    }
+
+    public List<BatchItemResult> deleteFiles(String username, List<String> filenames) {
+        log.info("Пакетное удаление - пользователь: {}, файлов: {}", username, filenames.size());
+        checkSize(filenames.size());
+        Long userId = userCache.resolveUserId(username);
+
+        Map<String, BatchItemResult> results = new LinkedHashMap<>();
+        List<String> valid = new ArrayList<>();
+        for (String requested : new LinkedHashSet<>(filenames)) {
+            String filename = canonical(username, requested);
+            if (filename == null) {
+                results.put(requested, new BatchItemResult(requested, BatchItemStatus.INVALID, "Недопустимое имя файла"));
+            } else if (!results.containsKey(filename)) {
+                results.put(filename, new BatchItemResult(filename, BatchItemStatus.NOT_FOUND, null));
+                valid.add(filename);
+            }
+        }
+
+        Map<String, Path> legacyFiles = transactionTemplate.execute(status -> {
+            Map<String, Path> legacy = new LinkedHashMap<>();
+            long deletedBytes = 0;
+            int deletedFiles = 0;
+            Map<String, List<String>> groups = byFolder(valid);
+            Map<String, Long> folders = folderIds(userId, groups.keySet());
+            for (Map.Entry<String, List<String>> group : groups.entrySet()) {
+                String path = group.getKey();
+                if (!folders.containsKey(path)) {
+                    continue;
+                }
+                for (List<String> chunk : chunks(group.getValue())) {
+                    List<FileEntity> rows = lock(userId, folders.get(path), chunk);
+                    if (rows.isEmpty()) {
+                        continue;
+                    }
+                    Map<String, Integer> references = new HashMap<>();
+                    List<Long> ids = new ArrayList<>(rows.size());
+                    for (FileEntity row : rows) {
+                        String filename = FolderPaths.display(path, row.getFilename());
+                        ids.add(row.getId());
+                        deletedBytes += row.getSize();
+                        results.put(filename, BatchItemResult.ok(filename));
+                        if (row.getBlob() != null) {
+                            references.merge(row.getBlob().getHash(), 1, Integer::sum);
+                        } else {
+                            legacy.put(filename, storedPath(username, filename, row));
+                        }
+                    }
+                    releaseBlobs(references);
+                    fileRepository.deleteAllByIdInBatch(ids);
+                    deletedFiles += ids.size();
+                }
+            }
+            // Счетчики места - одним UPDATE на весь пакет
+            quotaService.release(userId, deletedBytes, deletedFiles);
+            fileListingCache.invalidate(userId);
+            return legacy;
+        });
+
+        // Записи уже удалены: файлы старого формата убираются с диска после коммита
+        Map<String, String> failures = runOnIoPool(username, legacyFiles, Files::deleteIfExists);
+        failures.forEach((filename, error) -> results.put(filename, new BatchItemResult(filename,
+                BatchItemStatus.ERROR, "Запись удалена, файл на диске не удален: " + error)));
+
+        log.info("Пакетное удаление завершено - пользователь: {}", username);
+        return new ArrayList<>(results.values());
+    }
+
+    // Имя с другим путем переносит файл в другой каталог: недостающие каталоги создаются
+    public List<BatchItemResult> moveFiles(String username, List<BatchMoveRequest.Move> moves) {
+        log.info("Пакетное переименование - пользователь: {}, файлов: {}", username, moves.size());
+        checkSize(moves.size());
+        Long userId = userCache.resolveUserId(username);
+
+        Map<String, BatchItemResult> results = new LinkedHashMap<>();
+        Map<String, String> renames = new LinkedHashMap<>();
+        Set<String> targets = new HashSet<>();
+        for (BatchMoveRequest.Move move : moves) {
+            String from = canonical(username, move.getFrom());
+            String to = canonical(username, move.getTo());
+            if (from == null || to == null || results.containsKey(from) || from.equals(to)) {
+                String source = from != null ? from : move.getFrom();
+                results.putIfAbsent(source, new BatchItemResult(source, BatchItemStatus.INVALID, "Недопустимое имя файла"));
+            } else if (!targets.add(to)) {
+                results.put(from, new BatchItemResult(from, BatchItemStatus.ALREADY_EXISTS,
+                        "Имя уже занято другим элементом пакета: " + to));
+            } else {
+                results.put(from, new BatchItemResult(from, BatchItemStatus.NOT_FOUND, null));
+                renames.put(from, to);
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Map<String, List<String>> groups = byFolder(renames.keySet());
+            Set<String> paths = new HashSet<>(groups.keySet());
+            renames.values().forEach(target -> paths.add(FolderPaths.folderOf(target)));
+            Map<String, Long> folders = folderIds(userId, paths);
+            for (Map.Entry<String, List<String>> group : groups.entrySet()) {
+                if (!folders.containsKey(group.getKey())) {
+                    continue;
+                }
+                for (List<String> chunk : chunks(group.getValue())) {
+                    moveChunk(username, userId, group.getKey(), chunk, folders, renames, results);
+                }
+            }
+            fileListingCache.invalidate(userId);
+        });
+
+        log.info("Пакетное переименование завершено - пользователь: {}", username);
+        return new ArrayList<>(results.values());
+    }
+
+    public List<BatchStatItem> statFiles(String username, List<String> filenames) {
+        log.debug("Пакетный запрос сведений - пользователь: {}, файлов: {}", username, filenames.size());
+        checkSize(filenames.size());
+        Long userId = userCache.resolveUserId(username);
+
+        List<String> unique = new ArrayList<>(new LinkedHashSet<>(filenames));
+        // Ответ - по именам запроса, поиск - по единому виду имени
+        Map<String, String> canonicalNames = new HashMap<>();
+        for (String filename : unique) {
+            String canonical = canonical(username, filename);
+            if (canonical != null) {
+                canonicalNames.put(filename, canonical);
+            }
+        }
+        Set<String> valid = new LinkedHashSet<>(canonicalNames.values());
+        Map<String, FileListItem> found = new HashMap<>();
+        Map<String, List<String>> groups = byFolder(valid);
+        Map<String, Long> folders = folderIds(userId, groups.keySet());
+        for (Map.Entry<String, List<String>> group : groups.entrySet()) {
+            String path = group.getKey();
+            if (!folders.containsKey(path)) {
+                continue;
+            }
+            for (List<String> chunk : chunks(group.getValue())) {
+                for (FileListItem item : findItems(userId, folders.get(path), chunk)) {
+                    found.put(FolderPaths.display(path, item.getFilename()), item);
+                }
+            }
+        }
+
+        List<BatchStatItem> stats = new ArrayList<>(unique.size());
+        for (String filename : unique) {
+            FileListItem item = found.get(canonicalNames.get(filename));
+            stats.add(item != null
+                    ? new BatchStatItem(filename, true, item.getSize(), item.getUploadedAt())
+                    : new BatchStatItem(filename, false, null, null));
+        }
+        return stats;
+    }
+
+    // sources - имена внутри каталога path; renames и results - по полным именам
+    private void moveChunk(String username, Long userId, String path, List<String> sources,
+                           Map<String, Long> folders, Map<String, String> renames,
+                           Map<String, BatchItemResult> results) {
+        Long folderId = folders.get(path);
+        Map<String, FileEntity> rows = new HashMap<>();
+        for (FileEntity row : lock(userId, folderId, sources)) {
+            rows.put(FolderPaths.display(path, row.getFilename()), row);
+        }
+        List<String> chunkSources = new ArrayList<>(sources.size());
+        List<String> chunkTargets = new ArrayList<>(sources.size());
+        for (String source : sources) {
+            String filename = FolderPaths.display(path, source);
+            chunkSources.add(filename);
+            chunkTargets.add(renames.get(filename));
+        }
+        Set<String> existing = existingFilenames(userId, chunkTargets, folders);
+
+        Map<String, String> dbRenames = new LinkedHashMap<>();
+        Map<String, FileEntity> crossMoves = new LinkedHashMap<>();
+        Map<String, FileEntity> legacyMoves = new LinkedHashMap<>();
+        for (String source : chunkSources) {
+            String target = renames.get(source);
+            FileEntity row = rows.get(source);
+            if (row == null) {
+                continue;
+            }
+            if (existing.contains(target)) {
+                results.put(source, new BatchItemResult(source, BatchItemStatus.ALREADY_EXISTS,
+                        "Файл уже существует: " + target));
+            } else if (row.getBlob() == null) {
+                legacyMoves.put(source, row);
+            } else if (Objects.equals(path, FolderPaths.folderOf(target))) {
+                // Файл в блобе переименовывается только в БД
+                dbRenames.put(FolderPaths.nameOf(source), FolderPaths.nameOf(target));
+                results.put(source, BatchItemResult.ok(source));
+            } else {
+                crossMoves.put(source, row);
+            }
+        }
+
+        if (!legacyMoves.isEmpty()) {
+            moveLegacyFiles(username, userId, legacyMoves, renames, results);
+        }
+        // Перенос в другой каталог меняет folder_id строки; содержимое блоба остается на месте
+        crossMoves.forEach((source, row) -> {
+            relocate(userId, row, renames.get(source));
+            results.put(source, BatchItemResult.ok(source));
+        });
+        if (folderId == null) {
+            fileRepository.renameAll(userId, dbRenames);
+        } else {
+            fileRepository.renameAll(userId, folderId, dbRenames);
+        }
+    }
+
+    // Занятые имена среди целей: один запрос на каталог назначения; несуществующий каталог пуст
+    private Set<String> existingFilenames(Long userId, List<String> targets, Map<String, Long> folders) {
+        Set<String> existing = new HashSet<>();
+        for (Map.Entry<String, List<String>> group : byFolder(targets).entrySet()) {
+            String path = group.getKey();
+            if (!folders.containsKey(path)) {
+                continue;
+            }
+            Long folderId = folders.get(path);
+            List<String> names = folderId == null
+                    ? fileRepository.findExistingFilenames(userId, group.getValue())
+                    : fileRepository.findExistingInFolder(userId, folderId, group.getValue());
+            names.forEach(name -> existing.add(FolderPaths.display(path, name)));
+        }
+        return existing;
+    }
+
+    private void relocate(Long userId, FileEntity row, String target) {
+        row.setFilename(FolderPaths.nameOf(target));
+        row.setFolder(folderService.ensureFolder(userId, FolderPaths.folderOf(target)));
+    }
+
+    // Файлы старого формата переносятся на диске параллельно. Переносы записываются в журнал
+    // до начала: при откате транзакции или сбое процесса файлы вернутся к путям строк в БД
+    private void moveLegacyFiles(String username, Long userId, Map<String, FileEntity> legacyMoves,
+                                 Map<String, String> renames, Map<String, BatchItemResult> results) {
+        Map<String, Path[]> paths = new LinkedHashMap<>();
+        List<RenameJournal.Intent> intents = new ArrayList<>(legacyMoves.size());
+        legacyMoves.forEach((source, row) -> {
+            Path from = storedPath(username, source, row);
+            Path to = legacyPath(username, renames.get(source));
+            paths.put(source, new Path[]{from, to});
+            intents.add(new RenameJournal.Intent(row.getId(), from.toString(), to.toString()));
+        });
+        renameJournal.begin(intents);
+        Map<String, String> failures = runOnIoPool(username, paths, move ->
+                fileSystemStorageService.moveFile(move[0], move[1]));
+
+        for (Map.Entry<String, FileEntity> entry : legacyMoves.entrySet()) {
+            String source = entry.getKey();
+            if (failures.containsKey(source)) {
+                results.put(source, new BatchItemResult(source, BatchItemStatus.ERROR, failures.get(source)));
+                continue;
+            }
+            FileEntity row = entry.getValue();
+            relocate(userId, row, renames.get(source));
+            row.setFilePath(paths.get(source)[1].toString());
+            results.put(source, BatchItemResult.ok(source));
+        }
+    }
+
+    private void releaseBlobs(Map<String, Integer> references) {
+        // Обычно у каждого блоба одна ссылка из пачки - тогда это один UPDATE
+        Map<Integer, List<String>> byCount = new HashMap<>();
+        references.forEach((hash, count) -> byCount.computeIfAbsent(count, c -> new ArrayList<>()).add(hash));
+        byCount.forEach((count, hashes) -> blobRepository.releaseAll(hashes, count));
+    }
+
+    private <T> Map<String, String> runOnIoPool(String username, Map<String, T> items, IoTask<T> task) {
+        Map<String, Future<?>> futures = new LinkedHashMap<>();
+        items.forEach((name, item) -> futures.put(name, submit(username, item, task)));
+
+        Map<String, String> failures = new HashMap<>();
+        for (Map.Entry<String, Future<?>> entry : futures.entrySet()) {
+            try {
+                entry.getValue().get();
+            } catch (ExecutionException e) {
+                log.error("Ошибка файловой системы для {}: {}", entry.getKey(), e.getCause().getMessage());
+                failures.put(entry.getKey(), e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures.put(entry.getKey(), "Операция прервана");
+            }
+        }
+        return failures;
+    }
+
+    // Очередь переполнена - операция выполняется в потоке запроса, пакет не теряет элементы
+    private <T> Future<?> submit(String username, T item, IoTask<T> task) {
+        try {
+            return diskScheduler.submit(username, () -> {
+                task.run(item);
+                return null;
+            });
+        } catch (RejectedExecutionException e) {
+            try {
+                task.run(item);
+                return CompletableFuture.completedFuture(null);
+            } catch (IOException ioe) {
+                return CompletableFuture.failedFuture(ioe);
+            }
+        }
+    }
+
+    private Path storedPath(String username, String filename, FileEntity row) {
+        return row.getFilePath() != null
+                ? fileSystemStorageService.resolveStoredPath(row.getFilePath())
+                : legacyPath(username, filename);
+    }
+
+    // Файл старого формата на томе хранилища по проверенному ключу
+    private Path legacyPath(String username, String filename) {
+        return fileSystemStorageService.resolveStoredPath(fileStorageService.resolveSafeKey(username, filename));
+    }
+
+    // Имя в едином виде "docs/a.txt"; null - имя недопустимо
+    private String canonical(String username, String filename) {
+        if (filename == null || filename.isBlank()) {
+            return null;
+        }
+        try {
+            fileStorageService.resolveSafeKey(username, filename);
+            return FolderPaths.display(FolderPaths.folderOf(filename), FolderPaths.nameOf(filename));
+        } catch (SecurityException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Имена по каталогам: ключ - путь каталога (null - корень), значение - имена внутри него
+    private static Map<String, List<String>> byFolder(Collection<String> filenames) {
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        for (String filename : filenames) {
+            groups.computeIfAbsent(FolderPaths.folderOf(filename), path -> new ArrayList<>())
+                    .add(FolderPaths.nameOf(filename));
+        }
+        return groups;
+    }
+
+    // Id каталогов пачки одним запросом; корень (null) есть всегда, пачка из корня обходится без запроса
+    private Map<String, Long> folderIds(Long userId, Set<String> paths) {
+        Map<String, Long> ids = new HashMap<>();
+        ids.put(null, null);
+        List<String> nested = paths.stream().filter(Objects::nonNull).toList();
+        if (!nested.isEmpty()) {
+            folderService.findAll(userId, nested).forEach((path, folder) -> ids.put(path, folder.getId()));
+        }
+        return ids;
+    }
+
+    private List<FileEntity> lock(Long userId, Long folderId, List<String> names) {
+        return folderId == null
+                ? fileRepository.lockByOwnerIdAndFilenameIn(userId, names)
+                : fileRepository.lockInFolder(userId, folderId, names);
+    }
+
+    private List<FileListItem> findItems(Long userId, Long folderId, List<String> names) {
+        return folderId == null
+                ? fileRepository.findItems(userId, names)
+                : fileRepository.findItemsInFolder(userId, folderId, names);
+    }
+
+    private void checkSize(int size) {
+        if (size > maxItems) {
+            throw new IllegalArgumentException("Слишком много элементов в пакете: " + size + ", максимум " + maxItems);
+        }
+    }
+
+    private static List<List<String>> chunks(List<String> items) {
+        List<List<String>> chunks = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += CHUNK_SIZE) {
+            chunks.add(items.subList(from, Math.min(from + CHUNK_SIZE, items.size())));
+        }
+        return chunks;
+    }
+
+    @FunctionalInterface
+    private interface IoTask<T> {
+        void run(T item) throws IOException;
+    }
+}
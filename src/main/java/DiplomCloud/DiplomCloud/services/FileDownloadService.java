@@ -0,0 +1,468 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.models.ContentCodec;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+
+/*Отдача файла клиенту с поддержкой Range / If-Range (206, multipart/byteranges).
+Если Tomcat поддерживает sendfile, файл на локальном томе отдает контейнер и байты не проходят
+через heap. Иначе - без sendfile, для нескольких диапазонов и для объектов удаленного хранилища,
+прочитанных ранжированным запросом, - байты копируются через буфер 64 КБ.
+Сжатые при хранении файлы отдаются с Content-Encoding или распаковываются на лету
+* */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FileDownloadService {
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final String CRLF = "\r\n";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final StorageMetrics storageMetrics;
+
+    public void sendFile(Path file, String filename, HttpServletRequest request,
+                         HttpServletResponse response) throws IOException {
+        sendFile(new StoredFile(file, ContentCodec.NONE, Files.size(file), null,
+                Files.getLastModifiedTime(file).toMillis()), filename, request, response);
+    }
+
+    public void sendFile(StoredFile storedFile, String filename, HttpServletRequest request,
+                         HttpServletResponse response) throws IOException {
+        // Валидаторы берутся из БД, поэтому 304 отдается без обращения к файлу
+        if (notModified(storedFile, request, response)) {
+            log.debug("Файл не изменился, 304 - файл: {}", filename);
+            return;
+        }
+        if (storedFile.getCodec() != ContentCodec.NONE) {
+            sendEncoded(storedFile, filename, request, response);
+            return;
+        }
+        long length = storedFile.getSize();
+        long lastModified = storedFile.getLastModified();
+        String etag = etag(storedFile, false);
+        String contentType = probeContentType(storedFile.getPath(), filename);
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        writeValidators(response, etag, lastModified);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(filename, StandardCharsets.UTF_8)
+                .build()
+                .toString());
+
+        List<long[]> ranges;
+        try {
+            ranges = resolveRanges(request, length, lastModified, etag);
+        } catch (IllegalArgumentException e) {
+            log.warn("Недопустимый диапазон для файла {}: {}", filename, e.getMessage());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+        boolean head = "HEAD".equalsIgnoreCase(request.getMethod());
+
+        if (ranges.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(contentType);
+            response.setContentLengthLong(length);
+            if (!head) {
+                transfer(storedFile, 0, length, request, response);
+            }
+        } else if (ranges.size() == 1) {
+            long start = ranges.get(0)[0];
+            long end = ranges.get(0)[1];
+            log.debug("Отдача диапазона {}-{} из {} bytes - файл: {}", start, end, length, filename);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setContentType(contentType);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            response.setContentLengthLong(end - start + 1);
+            if (!head) {
+                transfer(storedFile, start, end + 1, request, response);
+            }
+        } else {
+            log.debug("Отдача {} диапазонов (multipart/byteranges) - файл: {}", ranges.size(), filename);
+            sendMultipart(storedFile, contentType, length, ranges, head, response);
+        }
+    }
+
+    /*Файл хранится сжатым. Клиенту, принимающему этот Content-Encoding, байты с диска отдаются
+    как есть (в том числе через sendfile), остальным - распаковываются на лету.
+    Диапазоны относятся к несжатому содержимому, поэтому всегда обслуживаются распаковкой
+    * */
+    private void sendEncoded(StoredFile storedFile, String filename, HttpServletRequest request,
+                             HttpServletResponse response) throws IOException {
+        ContentCodec codec = storedFile.getCodec();
+        long length = storedFile.getSize();
+        long lastModified = storedFile.getLastModified();
+        String etag = etag(storedFile, false);
+        String contentType = MediaTypeFactory.getMediaType(filename)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                .toString();
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(filename, StandardCharsets.UTF_8)
+                .build()
+                .toString());
+        response.setContentType(contentType);
+
+        List<long[]> ranges;
+        try {
+            ranges = resolveRanges(request, length, lastModified, etag);
+        } catch (IllegalArgumentException e) {
+            log.warn("Недопустимый диапазон для файла {}: {}", filename, e.getMessage());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+        boolean head = "HEAD".equalsIgnoreCase(request.getMethod());
+
+        if (ranges.isEmpty() && acceptsEncoding(request, codec.contentEncoding())) {
+            long storedLength = storedFile.storedLength();
+            log.debug("Отдача без распаковки ({}), {} из {} bytes - файл: {}",
+                    codec.contentEncoding(), storedLength, length, filename);
+            // Сжатое представление - другие байты, поэтому и ETag у него свой
+            writeValidators(response, etag(storedFile, true), lastModified);
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, codec.contentEncoding());
+            response.setContentLengthLong(storedLength);
+            if (!head) {
+                transfer(storedFile, 0, storedLength, request, response);
+            }
+            return;
+        }
+        writeValidators(response, etag, lastModified);
+        if (ranges.size() == 1) {
+            long start = ranges.get(0)[0];
+            long end = ranges.get(0)[1];
+            log.debug("Отдача диапазона {}-{} из {} bytes с распаковкой - файл: {}", start, end, length, filename);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            response.setContentLengthLong(end - start + 1);
+            if (!head) {
+                transferDecoded(storedFile, codec, start, end + 1, response);
+            }
+        } else {
+            // Несколько диапазонов потребовали бы распаковки с начала для каждого - отдается весь файл
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentLengthLong(length);
+            if (!head) {
+                transferDecoded(storedFile, codec, 0, length, response);
+            }
+        }
+    }
+
+    /*If-None-Match сравнивается слабо и имеет приоритет, If-Modified-Since учитывается только без него.
+    Совпадение с ETag любого представления (сжатого или нет) означает, что содержимое у клиента актуально
+    * */
+    private boolean notModified(StoredFile storedFile, HttpServletRequest request, HttpServletResponse response) {
+        String identity = etag(storedFile, false);
+        String encoded = storedFile.getCodec() != ContentCodec.NONE ? etag(storedFile, true) : null;
+        String matched;
+        Enumeration<String> ifNoneMatch = request.getHeaders(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && ifNoneMatch.hasMoreElements()) {
+            matched = matchingEtag(ifNoneMatch, identity, encoded);
+            if (matched == null) {
+                return false;
+            }
+        } else {
+            long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+            if (ifModifiedSince < 0 || storedFile.getLastModified() / 1000 > ifModifiedSince / 1000) {
+                return false;
+            }
+            matched = encoded != null && acceptsEncoding(request, storedFile.getCodec().contentEncoding())
+                    ? encoded : identity;
+        }
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        if (encoded != null) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        writeValidators(response, matched, storedFile.getLastModified());
+        return true;
+    }
+
+    // Возвращает совпавший ETag; "*" совпадает с любым существующим файлом
+    private static String matchingEtag(Enumeration<String> ifNoneMatch, String identity, String encoded) {
+        while (ifNoneMatch.hasMoreElements()) {
+            for (String token : ifNoneMatch.nextElement().split(",")) {
+                String tag = token.trim();
+                if (tag.equals("*")) {
+                    return identity;
+                }
+                tag = weak(tag);
+                if (tag.equals(weak(identity))) {
+                    return identity;
+                }
+                if (encoded != null && tag.equals(weak(encoded))) {
+                    return encoded;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String weak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /*Строгий ETag - хеш содержимого, у сжатого представления с суффиксом кодировки.
+    У файлов без блоба хеша нет: для них слабый ETag из размера и времени загрузки
+    * */
+    static String etag(StoredFile storedFile, boolean encoded) {
+        if (storedFile.getHash() == null) {
+            return "W/\"" + Long.toHexString(storedFile.getSize()) + "-"
+                    + Long.toHexString(storedFile.getLastModified()) + "\"";
+        }
+        return "\"" + storedFile.getHash()
+                + (encoded ? "-" + storedFile.getCodec().contentEncoding() : "") + "\"";
+    }
+
+    // no-cache, а не no-store: клиент хранит файл и перепроверяет его условным запросом
+    private static void writeValidators(HttpServletResponse response, String etag, long lastModified) {
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+    }
+
+    // HTTP-date; -1, если заголовка нет или он не разбирается
+    private static long dateHeader(HttpServletRequest request, String name) {
+        Enumeration<String> values = request.getHeaders(name);
+        if (values == null || !values.hasMoreElements()) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(values.nextElement().trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                    .toInstant()
+                    .toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    // Учитываются q-значения: "gzip;q=0" означает отказ от кодировки
+    static boolean acceptsEncoding(HttpServletRequest request, String encoding) {
+        Enumeration<String> headers = request.getHeaders(HttpHeaders.ACCEPT_ENCODING);
+        if (headers == null) {
+            return false;
+        }
+        while (headers.hasMoreElements()) {
+            for (String token : headers.nextElement().split(",")) {
+                String[] parts = token.trim().split(";");
+                String name = parts[0].trim();
+                if (!name.equalsIgnoreCase(encoding) && !name.equals("*")) {
+                    continue;
+                }
+                boolean refused = false;
+                for (int i = 1; i < parts.length; i++) {
+                    String param = parts[i].trim();
+                    if (param.startsWith("q=")) {
+                        try {
+                            refused = Double.parseDouble(param.substring(2)) <= 0;
+                        } catch (NumberFormatException e) {
+                            refused = true;
+                        }
+                    }
+                }
+                return !refused;
+            }
+        }
+        return false;
+    }
+
+    /*Пустой список означает отдачу всего файла: Range отсутствует, If-Range не совпал или диапазоны
+    в сумме длиннее самого файла. Пересекающиеся и смежные диапазоны склеиваются и идут по возрастанию,
+    поэтому один короткий заголовок не заставит отдать файл многократно
+    * */
+    List<long[]> resolveRanges(HttpServletRequest request, long length, long lastModified, String etag) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null || !ifRangeMatches(request, lastModified, etag)) {
+            return List.of();
+        }
+
+        List<long[]> ranges = new ArrayList<>();
+        long requested = 0;
+        for (HttpRange range : HttpRange.parseRanges(rangeHeader)) {
+            long start = range.getRangeStart(length);
+            long end = range.getRangeEnd(length);
+            if (start >= length || end < start) {
+                throw new IllegalArgumentException("Диапазон за пределами файла: " + range);
+            }
+            ranges.add(new long[]{start, end});
+            requested += end - start + 1;
+        }
+        if (requested > length) {
+            return List.of();
+        }
+        ranges.sort(Comparator.comparingLong(range -> range[0]));
+        List<long[]> merged = new ArrayList<>(ranges.size());
+        for (long[] range : ranges) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1] + 1) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(range);
+            }
+        }
+        return merged;
+    }
+
+    private boolean ifRangeMatches(HttpServletRequest request, long lastModified, String etag) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        try {
+            // Сравнение дат с точностью до секунды, как в формате HTTP-date
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            // Значение - ETag: диапазон отдается только при строгом совпадении, иначе весь файл
+            return !etag.startsWith("W/") && etag.equals(ifRange.trim());
+        }
+    }
+
+    private void sendMultipart(StoredFile storedFile, String contentType, long length, List<long[]> ranges,
+                               boolean head, HttpServletResponse response) throws IOException {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = 0;
+        for (long[] range : ranges) {
+            byte[] partHeader = (CRLF + "--" + boundary + CRLF
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + CRLF
+                    + HttpHeaders.CONTENT_RANGE + ": bytes " + range[0] + "-" + range[1] + "/" + length + CRLF
+                    + CRLF).getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + range[1] - range[0] + 1;
+        }
+        byte[] closing = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+        contentLength += closing.length;
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if (head) {
+            return;
+        }
+
+        OutputStream out = response.getOutputStream();
+        for (int i = 0; i < ranges.size(); i++) {
+            out.write(partHeaders.get(i));
+            long[] range = ranges.get(i);
+            copyRange(storedFile, range[0], range[1] + 1, out);
+        }
+        out.write(closing);
+        out.flush();
+    }
+
+    private void transfer(StoredFile storedFile, long start, long end, HttpServletRequest request,
+                          HttpServletResponse response) throws IOException {
+        Path file = storedFile.getPath();
+        if (file != null && supportsSendfile(request)) {
+            // Контейнер сам отправит файл через sendfile после выхода из обработчика
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            storageMetrics.downloadDelegated(end - start);
+            return;
+        }
+        // transferTo в канал поверх ServletOutputStream все равно копирует через массив в heap,
+        // поэтому без sendfile - обычное копирование большими блоками
+        OutputStream out = response.getOutputStream();
+        copyRange(storedFile, start, end, out);
+        out.flush();
+    }
+
+    private void transferDecoded(StoredFile storedFile, ContentCodec codec, long start, long end,
+                                 HttpServletResponse response) throws IOException {
+        long position = start;
+        long startedAt = storageMetrics.downloadStarted();
+        try (InputStream in = codec.decode(storedFile.open(0, -1))) {
+            in.skipNBytes(start);
+            OutputStream out = response.getOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (position < end) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, end - position));
+                if (read < 0) {
+                    throw new IOException("Файл был укорочен во время отдачи");
+                }
+                out.write(buffer, 0, read);
+                position += read;
+            }
+            out.flush();
+        } catch (EOFException e) {
+            throw new IOException("Файл был укорочен во время отдачи", e);
+        } finally {
+            storageMetrics.downloadFinished(startedAt, position - start);
+        }
+    }
+
+    // Диапазон хранимых байтов открывается одним чтением (у S3 - одним запросом) и копируется через буфер
+    private void copyRange(StoredFile storedFile, long start, long end, OutputStream out) throws IOException {
+        long position = start;
+        long startedAt = storageMetrics.downloadStarted();
+        try (InputStream in = storedFile.open(start, end - start)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (position < end) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, end - position));
+                if (read < 0) {
+                    throw new IOException("Файл был укорочен во время отдачи");
+                }
+                out.write(buffer, 0, read);
+                position += read;
+            }
+        } finally {
+            storageMetrics.downloadFinished(startedAt, position - start);
+        }
+    }
+
+    // Для асинхронного запроса контейнер sendfile не выполняет - байты пишет поток дискового планировщика
+    public boolean supportsSendfile(HttpServletRequest request) {
+        return Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT)) && !request.isAsyncStarted();
+    }
+
+    // Без локального файла тип определяется только по имени
+    private String probeContentType(Path file, String filename) {
+        if (file == null) {
+            return MediaTypeFactory.getMediaType(filename)
+                    .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                    .toString();
+        }
+        try {
+            String type = Files.probeContentType(file);
+            if (type != null) {
+                return type;
+            }
+        } catch (IOException e) {
+            log.debug("Не удалось определить тип содержимого: {}", e.getMessage());
+        }
+        return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+    }
+}
@@ -0,0 +1,57 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.dto.FileListItem;
+import DiplomCloud.DiplomCloud.repositories.FileSort;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/*Курсор keyset-пагинации: поле сортировки, id и значение ключа последней отданной строки.
+Для клиента это непрозрачная строка (base64url)
+* */
+public class FileListCursor {
+    private final Long id;
+    private final Object value;
+
+    private FileListCursor(Long id, Object value) {
+        this.id = id;
+        this.value = value;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public static String encode(FileSort sort, FileListItem last) {
+        String value = switch (sort) {
+            case NAME -> last.getFilename();
+            case SIZE -> String.valueOf(last.getSize());
+            case UPLOADED -> last.getUploadedAt().toString();
+        };
+        String raw = sort.name() + "\n" + last.getId() + "\n" + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static FileListCursor decode(String cursor, FileSort sort) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\n", 3);
+            if (parts.length != 3 || FileSort.valueOf(parts[0]) != sort) {
+                throw new IllegalArgumentException("Курсор не соответствует сортировке");
+            }
+            Object value = switch (sort) {
+                case NAME -> parts[2];
+                case SIZE -> Long.valueOf(parts[2]);
+                case UPLOADED -> Instant.parse(parts[2]);
+            };
+            return new FileListCursor(Long.valueOf(parts[1]), value);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Недопустимый курсор: " + cursor, e);
+        }
+    }
+}
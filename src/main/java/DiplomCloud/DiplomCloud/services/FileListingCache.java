@@ -0,0 +1,103 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.dto.FileListPage;
+import DiplomCloud.DiplomCloud.repositories.FileSort;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/*Кеш списков файлов по пользователям. Ключ страницы содержит версию списка пользователя:
+изменение файлов выдает пользователю новую версию после коммита, и старые страницы
+становятся недостижимы сразу, а память освобождают при вытеснении по размеру.
+Версии берутся из общего счетчика, поэтому вытесненная версия не может повториться.
+Та же версия служит ETag списка; метка запуска в нем не дает совпасть версиям до и после перезапуска
+* */
+@Component
+@Slf4j
+public class FileListingCache {
+    private final AtomicLong versionSequence = new AtomicLong();
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    private final Cache<Long, Long> versions;
+    private final Cache<PageKey, FileListPage> pages;
+
+    public FileListingCache(@Value("${file.listing-cache.max-files}") long maxFiles,
+                            @Value("${file.listing-cache.max-users}") long maxUsers,
+                            MeterRegistry meterRegistry) {
+        this.versions = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .build();
+        // Вес страницы - число файлов в ней, чтобы ограничить память, а не число запросов
+        this.pages = Caffeine.newBuilder()
+                .maximumWeight(maxFiles)
+                .weigher((PageKey key, FileListPage page) -> page.getFiles().size() + 1)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, pages, "file.listing");
+    }
+
+    public FileListPage get(Long userId, int limit, FileSort sort, boolean descending, String cursor,
+                            Supplier<FileListPage> loader) {
+        return get(userId, null, limit, sort, descending, cursor, loader);
+    }
+
+    // Одновременные промахи по одной странице ждут одну загрузку; folderId == null - корень.
+    // Версия общая на все каталоги пользователя: перенос каталога меняет списки нескольких каталогов сразу
+    public FileListPage get(Long userId, Long folderId, int limit, FileSort sort, boolean descending, String cursor,
+                            Supplier<FileListPage> loader) {
+        PageKey key = new PageKey(userId, version(userId), folderId, limit, sort, descending, cursor);
+        return pages.get(key, k -> loader.get());
+    }
+
+    public long version(Long userId) {
+        return versions.get(userId, id -> versionSequence.incrementAndGet());
+    }
+
+    // Проверка условного запроса не обращается к БД: версия меняется при каждом изменении списка
+    public String etag(Long userId) {
+        return "\"" + epoch + "." + version(userId) + "\"";
+    }
+
+    // Внутри транзакции версия меняется только после коммита: иначе параллельное чтение
+    // успело бы закешировать незакоммиченное состояние под новой версией
+    public void invalidate(Long userId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bump(userId);
+                }
+            });
+        } else {
+            bump(userId);
+        }
+    }
+
+    private void bump(Long userId) {
+        versions.put(userId, versionSequence.incrementAndGet());
+        log.debug("Список файлов пользователя {} изменен", userId);
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static final class PageKey {
+        private final Long userId;
+        private final long version;
+        private final Long folderId;
+        private final int limit;
+        private final FileSort sort;
+        private final boolean descending;
+        private final String cursor;
+    }
+}
@@ -0,0 +1,52 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.dto.FileSearchItem;
+import DiplomCloud.DiplomCloud.repositories.FileSearchMode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/*Курсор страницы поиска: вид поиска, ранг, id и ключ сортировки последней отданной строки.
+Для клиента это непрозрачная строка (base64url), как у курсора списка
+* */
+public class FileSearchCursor {
+    private final int rank;
+    private final Long id;
+    private final String key;
+
+    private FileSearchCursor(int rank, Long id, String key) {
+        this.rank = rank;
+        this.id = id;
+        this.key = key;
+    }
+
+    public int getRank() {
+        return rank;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public static String encode(FileSearchMode mode, FileSearchItem last) {
+        String raw = mode.name() + "\n" + last.getRank() + "\n" + last.getId() + "\n" + last.getSortKey();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static FileSearchCursor decode(String cursor, FileSearchMode mode) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\n", 4);
+            if (parts.length != 4 || FileSearchMode.valueOf(parts[0]) != mode) {
+                throw new IllegalArgumentException("Курсор не соответствует виду поиска");
+            }
+            return new FileSearchCursor(Integer.parseInt(parts[1]), Long.valueOf(parts[2]), parts[3]);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Недопустимый курсор: " + cursor, e);
+        }
+    }
+}
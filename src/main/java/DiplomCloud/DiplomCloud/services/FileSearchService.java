@@ -0,0 +1,73 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.dto.FileInfoResponse;
+import DiplomCloud.DiplomCloud.dto.FileListPage;
+import DiplomCloud.DiplomCloud.dto.FileSearchItem;
+import DiplomCloud.DiplomCloud.repositories.FileRepository;
+import DiplomCloud.DiplomCloud.repositories.FileSearchMode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/*Поиск файлов по имени во всех каталогах пользователя. Страница - один запрос по индексу
+с LIMIT и keyset-курсором: префикс читается из упорядоченного btree, подстрока и расширение -
+из триграммного GIN, поэтому время не зависит от числа файлов, не подходящих под запрос
+* */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FileSearchService {
+    // Короче трех символов у подстроки нет триграмм - индекс не сузил бы выборку
+    static final int MIN_SUBSTRING_LENGTH = 3;
+    private static final int MAX_LIMIT = 1000;
+
+    private final FileRepository fileRepository;
+    private final UserCache userCache;
+
+    public FileListPage search(String username, String query, FileSearchMode mode, int limit, String cursor) {
+        log.info("Поиск файлов - пользователь: {}, запрос: {}, вид: {}", username, query, mode);
+
+        String normalized = normalize(query, mode);
+        int pageSize = limit > 0 ? Math.min(limit, MAX_LIMIT) : MAX_LIMIT;
+        FileSearchCursor after = cursor != null ? FileSearchCursor.decode(cursor, mode) : null;
+        Long userId = userCache.resolveUserId(username);
+
+        // Одна лишняя строка показывает, есть ли следующая страница
+        List<FileSearchItem> items = fileRepository.search(userId, mode, normalized,
+                after != null ? after.getRank() : null,
+                after != null ? after.getKey() : null,
+                after != null ? after.getId() : null,
+                pageSize + 1);
+
+        String nextCursor = null;
+        if (items.size() > pageSize) {
+            items = items.subList(0, pageSize);
+            nextCursor = FileSearchCursor.encode(mode, items.get(pageSize - 1));
+        }
+        List<FileInfoResponse> files = items.stream()
+                .map(item -> new FileInfoResponse(FolderPaths.display(item.getFolderPath(), item.getFilename()),
+                        item.getSize()))
+                .collect(Collectors.toUnmodifiableList());
+        log.debug("Найдено {} файлов по запросу {} у пользователя: {}", files.size(), query, username);
+        return new FileListPage(files, nextCursor);
+    }
+
+    private static String normalize(String query, FileSearchMode mode) {
+        String normalized = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+        if (mode == FileSearchMode.EXTENSION && normalized.startsWith(".")) {
+            normalized = normalized.substring(1);
+        }
+        if (normalized.isEmpty()) {
+            throw new IllegalArgumentException("Пустой поисковый запрос");
+        }
+        if (mode == FileSearchMode.SUBSTRING && normalized.length() < MIN_SUBSTRING_LENGTH) {
+            throw new IllegalArgumentException("Поиск по подстроке требует не менее "
+                    + MIN_SUBSTRING_LENGTH + " символов");
+        }
+        return normalized;
+    }
+}
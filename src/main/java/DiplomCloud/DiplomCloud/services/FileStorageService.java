@@ -1,27 +1,40 @@
 package DiplomCloud.DiplomCloud.services;
 
 
+import DiplomCloud.DiplomCloud.dto.FileInfoResponse;
+import DiplomCloud.DiplomCloud.dto.FileListItem;
+import DiplomCloud.DiplomCloud.dto.FileListPage;
 import DiplomCloud.DiplomCloud.exception.*;
+import DiplomCloud.DiplomCloud.models.Blob;
+import DiplomCloud.DiplomCloud.models.ContentCodec;
 import DiplomCloud.DiplomCloud.models.FileEntity;
+import DiplomCloud.DiplomCloud.models.Folder;
+import DiplomCloud.DiplomCloud.models.StorageTier;
 import DiplomCloud.DiplomCloud.models.User;
 import DiplomCloud.DiplomCloud.repositories.FileRepository;
+import DiplomCloud.DiplomCloud.repositories.FileSort;
 import DiplomCloud.DiplomCloud.repositories.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.nio.file.Files;
+import java.io.InputStream;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Service
@@ -31,34 +44,53 @@ public class FileStorageService {
     private final FileRepository fileRepository;
     private final UserRepository userRepository;
     private final FileSystemStorageService fileSystemStorageService;
-
-    @Value("${file.storage.path}")
-    private String storagePath;
+    private final BlobService blobService;
+    private final UserCache userCache;
+    private final FileListingCache fileListingCache;
+    private final FolderService folderService;
+    private final QuotaService quotaService;
+    private final RenameJournal renameJournal;
+    private final TransactionTemplate transactionTemplate;
 
     public void uploadFile(String username, String filename, MultipartFile file) {
+        uploadFile(username, filename, file, null);
+    }
+
+    // compression == null - режим по умолчанию из настроек
+    public void uploadFile(String username, String filename, MultipartFile file, CompressionMode compression) {
         log.info("Запрос на загрузку - Пользователь: {}, имя файла: {}, размер: {} bytes",
                 username, filename, file.getSize());
 
-        User user = userRepository.findByLogin(username)
-                .orElseThrow(() -> {
-                    log.error("Пользователь не найден: {}", username);
-                    return new UserNotFoundException(username);
-                });
+        Long userId = userCache.resolveUserId(username);
 
-        Path userDir = Paths.get(storagePath, username);
+        resolveSafeKey(username, filename);
+        quotaService.checkAvailable(userId, file.getSize());
         try {
-            Files.createDirectories(userDir);
-            Path destination = userDir.resolve(filename);
-            file.transferTo(destination);
-
-            FileEntity fileEntity = new FileEntity();
-            fileEntity.setFilename(filename);
-            fileEntity.setFilePath(destination.toString());
-            fileEntity.setSize(file.getSize());
-            fileEntity.setOwner(user);
+            commitUpload(username, filename, blobService.stage(file.getInputStream(), -1, filename, compression));
+        } catch (IOException e) {
+            log.error("Не удалось загрузить файл - пользователь: {}, имя файла: {}, ошибка: {}",
+                    username, filename, e.getMessage());
+            throw new FileStorageException("Не удалось сохранить файл " + filename, e);
+        }
+    }
 
-            fileRepository.save(fileEntity);
-            log.info("Файл успешно загружен - пользователь: {}, имя файла: {}", username, filename);
+    // Загрузка из тела запроса без multipart: байты читаются один раз и пишутся сразу на том хранилища
+    public void uploadFile(String username, String filename, InputStream content, long contentLength) {
+        uploadFile(username, filename, content, contentLength, null);
+    }
+
+    public void uploadFile(String username, String filename, InputStream content, long contentLength,
+                           CompressionMode compression) {
+        log.info("Потоковая загрузка - пользователь: {}, имя файла: {}, размер: {} bytes",
+                username, filename, contentLength);
+
+        Long userId = userCache.resolveUserId(username);
+
+        resolveSafeKey(username, filename);
+        // Объявленный Content-Length сверяется с квотой до чтения тела
+        quotaService.checkAvailable(userId, contentLength);
+        try {
+            commitUpload(username, filename, blobService.stage(content, contentLength, filename, compression));
         } catch (IOException e) {
             log.error("Не удалось загрузить файл - пользователь: {}, имя файла: {}, ошибка: {}",
                     username, filename, e.getMessage());
@@ -66,45 +98,194 @@ public class FileStorageService {
         }
     }
 
+    /*Тело загрузки уже принято и захешировано вне транзакции. Соединение с БД берется только здесь:
+    строка блоба, перенос временного файла в хранилище, квота и строка файла - на время нескольких запросов,
+    а не на время передачи гигабайта. Временные байты, не ставшие блобом, удаляются после транзакции
+    * */
+    private void commitUpload(String username, String filename, StagedContent staged) {
+        try {
+            StoredContent stored = transactionTemplate.execute(status -> {
+                try {
+                    StoredContent content = blobService.publish(staged);
+                    saveFileEntity(currentUser(username), username, filename, content);
+                    return content;
+                } catch (IOException e) {
+                    log.error("Не удалось загрузить файл - пользователь: {}, имя файла: {}, ошибка: {}",
+                            username, filename, e.getMessage());
+                    throw new FileStorageException("Не удалось сохранить файл " + filename, e);
+                }
+            });
+            log.info("Файл успешно загружен - пользователь: {}, имя файла: {}, блоб: {}, кодек: {}",
+                    username, filename, stored.getBlob().getHash(), stored.getCodec());
+        } finally {
+            blobService.discard(staged);
+        }
+    }
+
+    // Загрузка по хешу: если такое содержимое уже хранится, байты передавать не нужно
+    @Transactional
+    public boolean uploadFileByHash(String username, String filename, String hash, long size) {
+        log.info("Запрос на загрузку по хешу - пользователь: {}, имя файла: {}, хеш: {}", username, filename, hash);
+
+        User user = currentUser(username);
+
+        resolveSafeKey(username, filename);
+        quotaService.checkAvailable(user.getId(), size);
+        Optional<StoredContent> stored = blobService.acquireExisting(hash, size);
+        if (stored.isEmpty()) {
+            log.debug("Блоб не найден, требуется передача содержимого: {}", hash);
+            return false;
+        }
+        try {
+            saveFileEntity(user, username, filename, stored.get());
+        } catch (IOException e) {
+            log.error("Не удалось заменить файл - пользователь: {}, имя файла: {}, ошибка: {}",
+                    username, filename, e.getMessage());
+            throw new FileStorageException("Не удалось сохранить файл " + filename, e);
+        }
+        log.info("Файл добавлен без передачи содержимого - пользователь: {}, имя файла: {}", username, filename);
+        return true;
+    }
+
+    // Содержимое читается через хранилище уровня, сжатое - распаковывается
     public Resource downloadFile(String username, String filename) {
-        log.info("Запрос на загрузку - пользователь: {}, имя файла: {}", username, filename);
+        StoredFile storedFile = resolveStoredFile(username, filename);
+        try {
+            return new InputStreamResource(storedFile.getCodec().decode(storedFile.open(0, -1)));
+        } catch (IOException ex) {
+            log.error("Не удалось открыть файл - ключ: {}, ошибка: {}", storedFile.getKey(), ex.getMessage());
+            throw new FileStorageException("Не удалось прочитать файл " + filename, ex);
+        }
+    }
 
-        Path rootLocation = Paths.get(storagePath).normalize();
-        Path filePath = rootLocation.resolve(username).resolve(filename).normalize();
+    public StoredFile resolveStoredFile(String username, String filename) {
+        log.info("Запрос на загрузку - пользователь: {}, имя файла: {}", username, filename);
 
-        if (!filePath.startsWith(rootLocation)) {
-            log.error("Нарушение безопасности - попытка доступа за пределы каталога хранилища: {}", filePath);
-            throw new SecurityException("Не удается получить доступ к файлу");
+        resolveSafeKey(username, filename);
+        FileEntity fileEntity = findFile(userCache.resolveUserId(username), filename).orElse(null);
+        StoredFile storedFile = fileEntity != null
+                ? storedFile(username, filename, fileEntity.getFilePath(), fileEntity.getTier(),
+                fileEntity.getBlob() != null ? fileEntity.getBlob().getHash() : null, fileEntity.getCodec(),
+                fileEntity.getSize(), fileEntity.getUploadedAt(), fileEntity.getId())
+                : null;
+        String key = storedFile != null ? storedFile.getKey() : null;
+        if (storedFile != null && readable(storedFile)) {
+            log.debug("Файл найден и доступен для чтения - ключ: {}, кодек: {}", key, storedFile.getCodec());
+            return storedFile;
         }
+        log.warn("Файл не найден или недоступен для чтения - имя файла: {}, ключ: {}", filename, key);
+        FileNotFoundException ex = new FileNotFoundException("Файл не найден или недоступен для чтения: " + filename);
+        log.error("Не удалось загрузить файл - ключ: {}, ошибка: {}", key, ex.getMessage());
+        throw new FileStorageException("Неверный путь к файлу: " + key, ex);
+    }
+
+    // Регистрирует файл, собранный сессией загрузки. Файл сессии не трогается: в хранилище блобов
+    // попадает ссылка на него, поэтому после отката сессия может повторить завершение
+    public void storeUploadedFile(String username, String filename, Path source, long size) {
+        log.info("Завершение сессии загрузки - пользователь: {}, имя файла: {}, размер: {} bytes",
+                username, filename, size);
 
+        Long userId = userCache.resolveUserId(username);
+
+        resolveSafeKey(username, filename);
+        if (findFile(userId, filename).isPresent()) {
+            throw new FileAlreadyExistsRuntimeException("Файл уже существует: " + filename);
+        }
+        StagedContent staged;
+        try {
+            staged = blobService.stage(source);
+        } catch (IOException e) {
+            log.error("Не удалось завершить загрузку - пользователь: {}, имя файла: {}, ошибка: {}",
+                    username, filename, e.getMessage());
+            throw new FileStorageException("Не удалось сохранить файл " + filename, e);
+        }
         try {
-            Resource resource = new UrlResource(filePath.toUri());
-            if (resource.exists() && resource.isReadable()) {
-                log.debug("Файл найден и доступен для чтения - путь: {}", filePath);
-                return resource;
+            transactionTemplate.executeWithoutResult(status -> {
+                // Повторная проверка под транзакцией: файл мог появиться, пока считался хеш
+                if (findFile(userId, filename).isPresent()) {
+                    throw new FileAlreadyExistsRuntimeException("Файл уже существует: " + filename);
+                }
+                try {
+                    saveFileEntity(currentUser(username), username, filename, blobService.publish(staged));
+                } catch (IOException e) {
+                    log.error("Не удалось завершить загрузку - пользователь: {}, имя файла: {}, ошибка: {}",
+                            username, filename, e.getMessage());
+                    throw new FileStorageException("Не удалось сохранить файл " + filename, e);
+                }
+            });
+            log.info("Файл успешно загружен по частям - пользователь: {}, имя файла: {}", username, filename);
+        } finally {
+            blobService.discard(staged);
+        }
+    }
+
+    public boolean fileExists(String username, String filename) {
+        return findFile(userCache.resolveUserId(username), filename).isPresent();
+    }
+
+    /*Ключ файла в каталоге пользователя: "user/docs/a.txt". Имя разбирается как строка, без путей
+    файловой системы, поэтому проверка одинакова для локального тома и S3. "." и ".." внутри имени
+    допустимы, пока не выводят за каталог пользователя; выход за него - SecurityException
+    * */
+    public String resolveSafeKey(String username, String filename) {
+        if (username == null || username.isEmpty() || username.indexOf('\0') >= 0
+                || filename.indexOf('\0') >= 0) {
+            throw new IllegalArgumentException("Недопустимое имя файла: " + filename);
+        }
+        Deque<String> segments = new ArrayDeque<>();
+        boolean escapes = filename.startsWith("/") || isRelative(username);
+        for (String segment : filename.split("/")) {
+            if (escapes || segment.isEmpty() || segment.equals(".")) {
+                continue;
+            }
+            if (segment.equals("..")) {
+                escapes = segments.pollLast() == null;
             } else {
-                log.warn("Файл не найден или недоступен для чтения - путь: {}", filePath);
-                throw new FileNotFoundException("Файл не найден или недоступен для чтения: " + filename);
+                segments.addLast(segment);
+            }
+        }
+        if (escapes) {
+            log.error("Нарушение безопасности - попытка доступа за пределы каталога хранилища: {}/{}",
+                    username, filename);
+            throw new SecurityException("Не удается получить доступ к файлу");
+        }
+        return segments.isEmpty() ? username : username + "/" + String.join("/", segments);
+    }
+
+    // Логин - один каталог: "." и ".." в нем адресовали бы чужой каталог или корень хранилища
+    private static boolean isRelative(String username) {
+        for (String segment : username.split("/", -1)) {
+            if (segment.isEmpty() || segment.equals(".") || segment.equals("..")) {
+                return true;
             }
-        } catch (MalformedURLException | FileNotFoundException ex) {
-            log.error("Не удалось загрузить файл - путь: {}, ошибка: {}", filePath, ex.getMessage());
-            throw new FileStorageException("Неверный путь к файлу: " + filePath, ex);
         }
+        return false;
     }
 
+    @Transactional
     public void deleteFile(String username, String filename) {
         log.info("Запрос на удаление - пользователь: {}, имя файла: {}", username, filename);
 
-        User user = userRepository.findByLogin(username)
-                .orElseThrow(() -> {
-                    log.error("Пользователь не найден: {}", username);
-                    return new UserNotFoundException(username);
-                });
+        User user = currentUser(username);
 
-        Path filePath = Paths.get(storagePath, username, filename);
+        Optional<FileEntity> fileEntity = findFile(user.getId(), filename);
         try {
-            Files.deleteIfExists(filePath);
-            fileRepository.deleteByOwnerAndFilename(user, filename);
+            if (fileEntity.isPresent() && fileEntity.get().getBlob() != null) {
+                // Блоб удалит сборщик, когда на него не останется ссылок
+                blobService.release(fileEntity.get().getBlob());
+            } else if (fileEntity.isPresent()) {
+                deleteAfterCommit(fileSystemStorageService.backend(fileEntity.get().getTier()),
+                        storageKey(username, filename, fileEntity.get()));
+            } else {
+                resolveSafeKey(username, filename);
+                fileSystemStorageService.backend(StorageTier.HOT)
+                        .delete(fileSystemStorageService.userFileKey(username, filename));
+            }
+            fileEntity.ifPresent(entity -> {
+                fileRepository.delete(entity);
+                quotaService.release(user.getId(), entity.getSize(), 1);
+            });
+            fileListingCache.invalidate(user.getId());
             log.info("Файл успешно удален - пользователь: {}, имя файла: {}", username, filename);
         } catch (IOException e) {
             log.error("Не удалось удалить файл - пользователь: {}, имя файла: {}, ошибка: {}",
@@ -113,88 +294,220 @@ public class FileStorageService {
         }
     }
 
+    // Имя меняется одним условным UPDATE. Файл старого формата еще и переносится на диске:
+    // намерение пишется в журнал до переноса, поэтому сбой между переносом и коммитом восстановим
     @Transactional
     public void renameFile(String username, String filename, String newName) {
         log.info("Запуск операции переименования: {} -> {}", filename, newName);
 
-        User user = userRepository.findByLogin(username)
-                .orElseThrow(() -> new UserNotFoundException(username));
-
-        // 1. Проверка существования целевого файла
-        if (fileSystemStorageService.checkFileExists(username, newName)) {
-            throw new FileAlreadyExistsException("Файл уже существует: " + newName);
-        }
-
-        // 2. Получаем текущую запись
-        FileEntity fileEntity = fileRepository.findByOwnerAndFilename(user, filename)
+        Long userId = userCache.resolveUserId(username);
+        String targetKey = resolveSafeKey(username, newName);
+        FileEntity fileEntity = findFile(userId, filename)
                 .orElseThrow(() -> new FileNotFoundRuntimeException("Файл не найден: " + filename));
 
-        // 3. Сохраняем оригинальные значения ТОЛЬКО для логов
-        String originalName = fileEntity.getFilename();
-        String originalPath = fileEntity.getFilePath();
-
-        // 5. Обновляем запись в БД (в рамках транзакции)
-        fileEntity.setFilename(newName);
-        fileEntity.setFilePath(Paths.get(storagePath, username, newName).toString());
-        fileRepository.save(fileEntity);
-        log.debug("Обновлена запись в базе данных: {} -> {}", originalName, newName);
+        // Имя с другим путем переносит файл в другой каталог; недостающие каталоги создаются
+        Folder targetFolder = folderService.ensureFolder(userId, FolderPaths.folderOf(newName));
+        // Файл в блобе переименовывается только в БД, содержимое не перемещается
+        boolean legacy = fileEntity.getBlob() == null;
+        StorageBackend storage = fileSystemStorageService.backend(StorageTier.HOT);
+        // Путь на томе строка хранит только у локального хранилища; в S3 ключ выводится из имени
+        Optional<Path> target = legacy ? storage.localPath(targetKey) : Optional.empty();
+        int renamed;
+        try {
+            renamed = fileRepository.renameIfAbsent(userId, fileEntity.getId(),
+                    targetFolder != null ? targetFolder.getId() : null, FolderPaths.nameOf(newName),
+                    target.map(Path::toString).orElse(null));
+        } catch (DataIntegrityViolationException e) {
+            if (!FileRepository.isNameConflict(e)) {
+                throw e;
+            }
+            // Имя заняла соседняя транзакция между проверкой и коммитом
+            renamed = 0;
+        }
+        if (renamed == 0) {
+            throw new FileAlreadyExistsException(newName);
+        }
+        // Сработает только после коммита; при откате список не меняется
+        fileListingCache.invalidate(userId);
+
+        if (legacy) {
+            String sourceKey = storageKey(username, filename, fileEntity);
+            // Журнал восстанавливает перенос по путям на томе - он нужен только локальному хранилищу
+            storage.localPath(sourceKey).ifPresent(source -> renameJournal.begin(List.of(
+                    new RenameJournal.Intent(fileEntity.getId(), source.toString(), target.orElseThrow().toString()))));
+            try {
+                storage.move(sourceKey, targetKey);
+            } catch (IOException e) {
+                log.error("Сбой в работе файловой системы, транзакция будет откачена: {}", e.getMessage());
+                throw new FileStorageException("Не удалось выполнить операцию переименования файла", e);
+            }
+        }
+        log.info("Файл переименован: {} -> {}", filename, newName);
+    }
 
+    private void saveFileEntity(User user, String username, String filename, StoredContent stored)
+            throws IOException {
+        Blob blob = stored.getBlob();
+        FileEntity fileEntity = findFile(user.getId(), filename).orElse(null);
+        // Перезапись меняет занятое место на разницу размеров, число файлов не меняется
+        boolean created = fileEntity == null;
+        long replacedSize = created ? 0 : fileEntity.getSize();
+        if (created) {
+            fileEntity = new FileEntity();
+            fileEntity.setFilename(FolderPaths.nameOf(filename));
+            fileEntity.setFolder(folderService.ensureFolder(user.getId(), FolderPaths.folderOf(filename)));
+            fileEntity.setOwner(user);
+        } else if (fileEntity.getBlob() != null) {
+            // Перезапись: старое содержимое теряет ссылку
+            blobService.release(fileEntity.getBlob());
+        } else {
+            deleteAfterCommit(fileSystemStorageService.backend(fileEntity.getTier()),
+                    storageKey(username, filename, fileEntity));
+        }
+        fileEntity.setBlob(blob);
+        fileEntity.setFilePath(fileSystemStorageService.blobLocation(blob.getHash(), stored.getCodec()));
+        fileEntity.setSize(blob.getSize());
+        fileEntity.setCodec(stored.getCodec());
+        fileEntity.setStoredSize(stored.getStoredSize());
+        fileEntity.setUploadedAt(Instant.now());
         try {
-            // 6. Выполняем операцию в файловой системе
-            fileSystemStorageService.renameFileInFS(username, filename, newName);
-            log.info("Файл успешно переименован в файловой системе");
+            fileRepository.save(fileEntity);
+        } catch (DataIntegrityViolationException e) {
+            if (!FileRepository.isNameConflict(e)) {
+                throw e;
+            }
+            // Файл с тем же именем вставила соседняя загрузка: строка не найдена, но и вставить ее нельзя
+            throw new FileAlreadyExistsRuntimeException("Файл уже существует: " + filename);
+        }
+        quotaService.charge(user.getId(), blob.getSize() - replacedSize, created ? 1 : 0);
+        fileListingCache.invalidate(user.getId());
+    }
 
-            // 7. Проверка целостности после операции
-            if (!integrityCheckAfterRename(username, newName, fileEntity.getId())) {
-                throw new ConsistencyException("Не удалось выполнить проверку целостности после переименования");
+    // Файл старого формата удаляется только после коммита: при откате строка снова ссылается на него
+    private static void deleteAfterCommit(StorageBackend storage, String key) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            deleteQuietly(storage, key);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                deleteQuietly(storage, key);
             }
-        } catch (Exception e) {
-            log.error("Сбой в работе файловой системы приведет к автоматическому откату транзакции");
-            // Spring автоматически откатит транзакцию БД из-за @Transactional
-            throw new FileStorageException("Не удалось выполнить операцию переименования файла", e);
+        });
+    }
+
+    private static void deleteQuietly(StorageBackend storage, String key) {
+        try {
+            storage.delete(key);
+        } catch (IOException e) {
+            log.warn("Запись изменена, старый файл в хранилище не удален: {}, ошибка: {}", key, e.getMessage());
         }
     }
 
-    private boolean integrityCheckAfterRename(String username, String filename, Long fileId) {
-        // Проверяем существование файла в ФС
-        boolean fsExists = fileSystemStorageService.checkFileExists(username, filename);
+    // Ссылка на пользователя без запроса к БД: запросам по владельцу нужен только id
+    private User currentUser(String username) {
+        return userRepository.getReferenceById(userCache.resolveUserId(username));
+    }
 
-        // Проверяем существование записи в БД
-        boolean dbExists = fileRepository.existsByIdAndFilename(fileId, filename);
+    // Клиентское имя "docs/a.txt": каталог по пути и файл в нем - один запрос
+    private Optional<FileEntity> findFile(Long userId, String filename) {
+        String folder = FolderPaths.folderOf(filename);
+        String name = FolderPaths.nameOf(filename);
+        return folder == null
+                ? fileRepository.findInRoot(userId, name)
+                : fileRepository.findInFolder(userId, folder, name);
+    }
 
-        if (!fsExists || !dbExists) {
-            log.error("Не удалось выполнить проверку целостности - FS существует: {}, DB существует: {}", fsExists, dbExists);
-            return false;
+    // Файл из страницы архива: строка уже прочитана, проверки пути те же, что у отдачи одного файла.
+    // Есть ли файл в хранилище, выяснится при открытии
+    public StoredFile resolveArchiveFile(String username, String filename, FileRepository.ArchiveFile file) {
+        resolveSafeKey(username, filename);
+        return storedFile(username, filename, file.getFilePath(), file.getTier(), file.getHash(), file.getCodec(),
+                file.getSize(), file.getUploadedAt(), null);
+    }
+
+    private StoredFile storedFile(String username, String filename, String storedPath, StorageTier tier,
+                                  String hash, ContentCodec codec, long size, Instant uploadedAt, Long fileId) {
+        StorageBackend storage = fileSystemStorageService.backend(tier);
+        String key = storageKey(username, filename, storedPath, tier, hash, codec);
+        return new StoredFile(storage.localPath(key).orElse(null), codec, size, hash, uploadedAt.toEpochMilli(),
+                fileId, tier, storage, key);
+    }
+
+    private static boolean readable(StoredFile storedFile) {
+        try {
+            return storedFile.getBackend().readable(storedFile.getKey());
+        } catch (IOException e) {
+            throw new FileStorageException("Хранилище недоступно: " + e.getMessage(), e);
         }
+    }
 
-        // Дополнительные проверки, если нужно
-        FileEntity entity = fileRepository.findById(fileId).orElse(null);
-        if (entity != null) {
-            Path expectedPath = Paths.get(storagePath, username, filename);
-            if (!expectedPath.toString().equals(entity.getFilePath())) {
-                log.error("Несоответствие пути - ожидаемый: {}, фактический: {}",
-                        expectedPath, entity.getFilePath());
-                return false;
-            }
+    private String storageKey(String username, String filename, FileEntity fileEntity) {
+        return storageKey(username, filename, fileEntity.getFilePath(), fileEntity.getTier(),
+                fileEntity.getBlob() != null ? fileEntity.getBlob().getHash() : null, fileEntity.getCodec());
+    }
+
+    // Ключ содержимого в хранилище уровня: по пути из БД, по хешу блоба или в каталоге пользователя
+    private String storageKey(String username, String filename, String storedPath, StorageTier tier, String hash,
+                              ContentCodec codec) {
+        if (storedPath != null) {
+            return fileSystemStorageService.storageKey(tier, storedPath);
+        }
+        if (hash != null) {
+            return fileSystemStorageService.blobLocation(hash, codec);
         }
+        return fileSystemStorageService.userFileKey(username, filename);
+    }
 
-        return true;
-     }
+    public List<FileInfoResponse> listFiles(String username, int limit) {
+        return listFiles(username, limit, FileSort.NAME, false, null).getFiles();
+    }
 
-    public List<FileEntity> listFiles(String username, int limit) {
-        log.info("Запрос списка файлов - пользователь: {}, limit: {}", username, limit);
+    // ETag списков пользователя: меняется при загрузке, удалении и переименовании
+    public String listingEtag(String username) {
+        return fileListingCache.etag(userCache.resolveUserId(username));
+    }
 
-        User user = userRepository.findByLogin(username)
-                .orElseThrow(() -> {
-                    log.error("Пользователь не найден: {}", username);
-                    return new UserNotFoundException(username);
-                });
+    public FileListPage listFiles(String username, int limit, FileSort sort, boolean descending, String cursor) {
+        return listFiles(username, null, limit, sort, descending, cursor);
+    }
 
-        List<FileEntity> files = fileRepository.findByOwner(user).stream()
-                .limit(limit > 0 ? limit : Long.MAX_VALUE)
-                .collect(Collectors.toList());
+    // Страницы кешируются по пользователю; загрузка, удаление и переименование сбрасывают его список.
+    // folder == null - корень; имена в ответе - полные, с путем каталога
+    public FileListPage listFiles(String username, String folder, int limit, FileSort sort, boolean descending,
+                                  String cursor) {
+        log.info("Запрос списка файлов - пользователь: {}, каталог: {}, limit: {}, сортировка: {}",
+                username, folder, limit, sort);
+
+        Long userId = userCache.resolveUserId(username);
+        String path = FolderPaths.normalize(folder);
+        Long folderId = path != null ? folderService.require(userId, path).getId() : null;
+        FileListCursor after = cursor != null ? FileListCursor.decode(cursor, sort) : null;
+        FileListPage page = fileListingCache.get(userId, folderId, limit, sort, descending, cursor,
+                () -> loadPage(userId, folderId, path, limit, sort, descending, after));
+
+        log.debug("Найдено {} файло у пользователя: {}", page.getFiles().size(), username);
+        return page;
+    }
 
-        log.debug("Найдено {} файло у пользователя: {}", files.size(), username);
-        return files;
+    // Список строится одним запросом-проекцией с LIMIT и keyset-курсором, сущности не загружаются
+    private FileListPage loadPage(Long userId, Long folderId, String path, int limit, FileSort sort,
+                                  boolean descending, FileListCursor after) {
+        // Одна лишняя строка показывает, есть ли следующая страница
+        List<FileListItem> items = fileRepository.findPage(userId, folderId, sort, descending,
+                after != null ? after.getValue() : null,
+                after != null ? after.getId() : null,
+                limit > 0 ? limit + 1 : 0);
+
+        String nextCursor = null;
+        if (limit > 0 && items.size() > limit) {
+            items = items.subList(0, limit);
+            nextCursor = FileListCursor.encode(sort, items.get(limit - 1));
+        }
+        List<FileInfoResponse> files = items.stream()
+                .map(item -> new FileInfoResponse(FolderPaths.display(path, item.getFilename()), item.getSize()))
+                .collect(Collectors.toUnmodifiableList());
+        return new FileListPage(files, nextCursor);
     }
 }
@@ -1,8 +1,10 @@
 package DiplomCloud.DiplomCloud.services;
 
-
 import DiplomCloud.DiplomCloud.exception.FileNotFoundException;
 import DiplomCloud.DiplomCloud.exception.FileStorageException;
+import DiplomCloud.DiplomCloud.models.ContentCodec;
+import DiplomCloud.DiplomCloud.models.StorageTier;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.beans.factory.annotation.Value;
@@ -10,10 +12,16 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.UUID;
 
 
 /*Для улучшения механизмама обеспечения целостности, реализовано резделение "зон" ответственности и
@@ -22,10 +30,32 @@ import java.nio.file.Paths;
 @Service
 @Slf4j
 public class FileSystemStorageService {
+    static final String BLOBS_DIR = ".blobs";
+
     private final String storagePath;
+    private final StorageLayout layout;
+    // Корень холодного уровня; пусто - уровень не настроен
+    private final String coldPath;
+    // Хранилище блобов основного уровня: локальный том или S3 (file.storage.backend)
+    private final StorageBackend backend;
+    private final StorageBackend coldBackend;
+
+    public FileSystemStorageService(String storagePath, StorageLayout layout) {
+        this(storagePath, layout, "");
+    }
 
-    public FileSystemStorageService(@Value("${file.storage.path}") String storagePath) {
+    public FileSystemStorageService(String storagePath, StorageLayout layout, String coldPath) {
+        this(storagePath, layout, coldPath, new LocalStorageBackend(storagePath));
+    }
+
+    @Autowired
+    public FileSystemStorageService(@Value("${file.storage.path}") String storagePath, StorageLayout layout,
+                                    @Value("${file.tiering.cold-path}") String coldPath, StorageBackend backend) {
         this.storagePath = storagePath;
+        this.layout = layout;
+        this.coldPath = coldPath;
+        this.backend = backend;
+        this.coldBackend = coldPath != null && !coldPath.isBlank() ? new LocalStorageBackend(coldPath) : null;
     }
 
     @Transactional(propagation = Propagation.REQUIRES_NEW)
@@ -59,6 +89,15 @@ public class FileSystemStorageService {
         log.debug("Успешное переименование файла в файловой системе: {} -> {}", sourceName, targetName);
     }
 
+    // Перенос файла старого формата внутри хранилища одним rename; занятый путь не перезаписывается
+    public void moveFile(Path source, Path target) throws IOException {
+        if (Files.exists(target)) {
+            throw new FileAlreadyExistsException("Целевой файл существует: " + target);
+        }
+        Files.createDirectories(target.getParent());
+        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
     public boolean checkFileExists(String username, String filename) {
         Path filePath = Paths.get(storagePath, username, filename);
         return Files.exists(filePath);
@@ -78,4 +117,292 @@ public class FileSystemStorageService {
             throw new FileStorageException("Откат не удался", e);
         }
     }
+
+    // Блобы лежат в <storage>/.blobs/<каталоги раскладки>/<хеш>
+    public Path blobPath(String hash) {
+        return blobPath(hash, ContentCodec.NONE);
+    }
+
+    // Сжатый вариант лежит рядом: <хеш><суффикс кодека>
+    public Path blobPath(String hash, ContentCodec codec) {
+        return Paths.get(storagePath).resolve(blobLocation(hash, codec));
+    }
+
+    // Путь относительно корня хранилища; его же хранит FileEntity.filePath
+    public String blobLocation(String hash) {
+        return blobLocation(hash, ContentCodec.NONE);
+    }
+
+    public String blobLocation(String hash, ContentCodec codec) {
+        return BLOBS_DIR + "/" + layout.locate(hash) + codec.suffix();
+    }
+
+    // filePath из БД: относительный от корня или абсолютный у файлов до перехода на блобы
+    public Path resolveStoredPath(String filePath) {
+        Path root = Paths.get(storagePath).toAbsolutePath().normalize();
+        Path path = root.resolve(filePath).normalize();
+        if (!path.startsWith(root)) {
+            log.error("Нарушение безопасности - путь за пределами хранилища: {}", filePath);
+            throw new SecurityException("Не удается получить доступ к файлу");
+        }
+        return path;
+    }
+
+    // filePath файла на уровне tier: у горячего уровня - как выше, у холодного - от его корня
+    public Path resolveStoredPath(StorageTier tier, String filePath) {
+        if (tier == StorageTier.HOT) {
+            return resolveStoredPath(filePath);
+        }
+        Path root = tierRoot(tier).toAbsolutePath().normalize();
+        Path path = root.resolve(filePath).normalize();
+        if (!path.startsWith(root)) {
+            log.error("Нарушение безопасности - путь за пределами холодного уровня: {}", filePath);
+            throw new SecurityException("Не удается получить доступ к файлу");
+        }
+        return path;
+    }
+
+    public boolean coldTierConfigured() {
+        return coldPath != null && !coldPath.isBlank();
+    }
+
+    public Path tierRoot(StorageTier tier) {
+        if (tier == StorageTier.HOT) {
+            return Paths.get(storagePath);
+        }
+        if (!coldTierConfigured()) {
+            throw new IllegalStateException("Холодный уровень хранения не настроен: file.tiering.cold-path");
+        }
+        return Paths.get(coldPath);
+    }
+
+    // Блоб на уровне tier лежит в той же раскладке, что и на основном томе
+    public Path blobPath(StorageTier tier, String hash, ContentCodec codec) {
+        return tierRoot(tier).resolve(blobLocation(hash, codec));
+    }
+
+    public Optional<ContentCodec> storedCodec(StorageTier tier, String hash) {
+        if (tier == StorageTier.COLD && !coldTierConfigured()) {
+            return Optional.empty();
+        }
+        for (ContentCodec codec : ContentCodec.values()) {
+            if (objectExists(backend(tier), blobLocation(hash, codec))) {
+                return Optional.of(codec);
+            }
+        }
+        return Optional.empty();
+    }
+
+    // Хранилище уровня: основной - настроенный backend, холодный - всегда локальный том
+    public StorageBackend backend(StorageTier tier) {
+        if (tier == StorageTier.HOT) {
+            return backend;
+        }
+        if (coldBackend == null) {
+            throw new IllegalStateException("Холодный уровень хранения не настроен: file.tiering.cold-path");
+        }
+        return coldBackend;
+    }
+
+    // Перенос между томами, раскладка, сверка и sendfile работают только с файлами на локальном томе
+    public boolean remoteStorage() {
+        return !(backend instanceof LocalStorageBackend);
+    }
+
+    // filePath из БД как ключ в хранилище уровня: путь относительно его корня
+    public String storageKey(StorageTier tier, String filePath) {
+        Path root = tierRoot(tier).toAbsolutePath().normalize();
+        return root.relativize(resolveStoredPath(tier, filePath)).toString().replace('\\', '/');
+    }
+
+    // Файл старого формата в каталоге пользователя; имя уже проверено resolveSafeKey
+    public String userFileKey(String username, String filename) {
+        return Paths.get(username).resolve(filename).normalize().toString().replace('\\', '/');
+    }
+
+    // Размер блоба в хранилище - сжатый, если блоб хранится сжатым
+    public long storedSize(String hash, ContentCodec codec) throws IOException {
+        String key = blobLocation(hash, codec);
+        return backend.size(key).orElseThrow(() -> new NoSuchFileException(key));
+    }
+
+    /*Копия варианта блоба на другом уровне. Тома разные, поэтому rename невозможен: содержимое пишется
+    во временный файл на целевом томе, сбрасывается на диск и только затем атомарно получает свое имя.
+    Блоб неизменяем, поэтому уже лежащая копия того же размера не переписывается
+    * */
+    public void copyBlob(String hash, ContentCodec codec, StorageTier from, StorageTier to) throws IOException {
+        Path source = blobPath(from, hash, codec);
+        Path target = blobPath(to, hash, codec);
+        long size = Files.size(source);
+        if (Files.exists(target) && Files.size(target) == size) {
+            return;
+        }
+        Path tmpDir = tierRoot(to).resolve(BLOBS_DIR).resolve("tmp");
+        Files.createDirectories(tmpDir);
+        Path temp = Files.createTempFile(tmpDir, "tier-", ".tmp");
+        try {
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                long position = 0;
+                while (position < size) {
+                    long transferred = in.transferTo(position, size - position, out);
+                    if (transferred <= 0) {
+                        throw new IOException("Блоб укорочен во время копирования: " + hash);
+                    }
+                    position += transferred;
+                }
+                out.force(true);
+            }
+            Files.createDirectories(target.getParent());
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        log.debug("Блоб скопирован на уровень {}: {}", to, hash);
+    }
+
+    public void deleteBlobCopy(StorageTier tier, String hash, ContentCodec codec) throws IOException {
+        backend(tier).delete(blobLocation(hash, codec));
+    }
+
+    // Корень хранилища в том виде, в каком его возвращает resolveStoredPath
+    public Path storageRoot() {
+        return Paths.get(storagePath).toAbsolutePath().normalize();
+    }
+
+    public Path blobsRoot() {
+        return Paths.get(storagePath).resolve(BLOBS_DIR);
+    }
+
+    // Блоб мог остаться в одноуровневой раскладке, если миграция до него не дошла
+    public Path legacyBlobPath(String hash) {
+        return Paths.get(storagePath, BLOBS_DIR, hash.substring(0, 2), hash);
+    }
+
+    // Лежит ли блоб на диске в любом варианте, в любой раскладке и на любом уровне
+    public boolean blobStored(String hash) {
+        return storedCodec(hash).isPresent() || Files.exists(legacyBlobPath(hash))
+                || storedCodec(StorageTier.COLD, hash).isPresent();
+    }
+
+    public boolean blobExists(String hash) {
+        return objectExists(backend, blobLocation(hash));
+    }
+
+    // Какой вариант блоба лежит на основном уровне; несжатый предпочтительнее - его можно отдать любому клиенту
+    public Optional<ContentCodec> storedCodec(String hash) {
+        return storedCodec(StorageTier.HOT, hash);
+    }
+
+    // Временный файл создается на том же томе, что и блобы, чтобы перенос был атомарным
+    public Path createBlobTempFile() throws IOException {
+        Path tmpDir = Paths.get(storagePath, BLOBS_DIR, "tmp");
+        Files.createDirectories(tmpDir);
+        return Files.createTempFile(tmpDir, "upload-", ".tmp");
+    }
+
+    public void publishBlob(Path source, String hash) throws IOException {
+        publishBlob(source, hash, ContentCodec.NONE);
+    }
+
+    public void publishBlob(Path source, String hash, ContentCodec codec) throws IOException {
+        String key = blobLocation(hash, codec);
+        if (backend.exists(key)) {
+            // Такое содержимое уже хранится
+            Files.deleteIfExists(source);
+            return;
+        }
+        backend.put(key, source);
+        log.debug("Сохранен новый блоб: {}", hash);
+    }
+
+    // Удаленное хранилище: временный файл уходит под временный ключ до транзакции, чтобы внутри
+    // нее остался только перенос объекта. Локальный том ничего не делает - перенос файла и так атомарен
+    public String stageBlob(Path temp) throws IOException {
+        if (!remoteStorage()) {
+            return null;
+        }
+        String key = BLOBS_DIR + "/tmp/upload-" + UUID.randomUUID();
+        backend.put(key, temp);
+        return key;
+    }
+
+    public void publishStagedBlob(String stagedKey, String hash, ContentCodec codec) throws IOException {
+        String key = blobLocation(hash, codec);
+        try {
+            backend.move(stagedKey, key);
+            log.debug("Сохранен новый блоб: {}", hash);
+        } catch (FileAlreadyExistsException e) {
+            // Такое содержимое уже хранится
+            backend.delete(stagedKey);
+        }
+    }
+
+    public void discardStagedBlob(String stagedKey) throws IOException {
+        backend.delete(stagedKey);
+    }
+
+    // Кладет в хранилище блобов файл, который должен остаться на месте до коммита:
+    // жесткая ссылка, а если том ее не поддерживает - копия через временный файл
+    public void linkBlob(Path source, String hash) throws IOException {
+        linkBlob(source, hash, ContentCodec.NONE);
+    }
+
+    public void linkBlob(Path source, String hash, ContentCodec codec) throws IOException {
+        if (remoteStorage()) {
+            Path temp = createBlobTempFile();
+            try {
+                Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+                publishBlob(temp, hash, codec);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            return;
+        }
+        Path target = blobPath(hash, codec);
+        if (Files.exists(target)) {
+            return;
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            Files.createLink(target, source);
+        } catch (FileAlreadyExistsException e) {
+            return;
+        } catch (UnsupportedOperationException | IOException e) {
+            Path temp = createBlobTempFile();
+            try {
+                Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+                publishBlob(temp, hash, codec);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        log.debug("Файл перенесен в хранилище блобов: {} -> {}", source, hash);
+    }
+
+    public void deleteBlob(String hash) {
+        try {
+            for (ContentCodec codec : ContentCodec.values()) {
+                backend.delete(blobLocation(hash, codec));
+            }
+            Files.deleteIfExists(legacyBlobPath(hash));
+            if (coldTierConfigured()) {
+                for (ContentCodec codec : ContentCodec.values()) {
+                    coldBackend.delete(blobLocation(hash, codec));
+                }
+            }
+            log.debug("Удален блоб без ссылок: {}", hash);
+        } catch (IOException e) {
+            log.error("Не удалось удалить блоб {}: {}", hash, e.getMessage());
+            throw new FileStorageException("Не удалось удалить блоб", e);
+        }
+    }
+
+    private static boolean objectExists(StorageBackend storage, String key) {
+        try {
+            return storage.exists(key);
+        } catch (IOException e) {
+            throw new FileStorageException("Хранилище недоступно: " + e.getMessage(), e);
+        }
+    }
 }
@@ -0,0 +1,83 @@
+package DiplomCloud.DiplomCloud.services;
+
+/*Пути каталогов. Клиент адресует файл строкой "docs/2024/a.txt", каталог - "docs/2024";
+в БД путь каталога хранится с ведущим и завершающим '/': "/docs/2024/". Корень - null
+* */
+public final class FolderPaths {
+    // Предел индекса uq_folders_user_path и колонки folders.path
+    static final int MAX_PATH_LENGTH = 1024;
+
+    private FolderPaths() {
+    }
+
+    // Путь каталога в виде БД; null, пусто и "/" означают корень
+    public static String normalize(String folder) {
+        if (folder == null) {
+            return null;
+        }
+        String trimmed = strip(folder.trim());
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        for (String segment : trimmed.split("/", -1)) {
+            if (segment.isBlank() || segment.equals(".") || segment.equals("..") || segment.contains("\\")) {
+                throw new IllegalArgumentException("Недопустимый путь каталога: " + folder);
+            }
+        }
+        String path = "/" + trimmed + "/";
+        if (path.length() > MAX_PATH_LENGTH) {
+            throw new IllegalArgumentException("Слишком длинный путь каталога: " + folder);
+        }
+        return path;
+    }
+
+    // Каталог файла "docs/2024/a.txt" - "/docs/2024/"; у файла в корне - null
+    public static String folderOf(String filename) {
+        int slash = filename.lastIndexOf('/');
+        return slash <= 0 ? null : normalize(filename.substring(0, slash));
+    }
+
+    // Имя файла внутри каталога
+    public static String nameOf(String filename) {
+        String name = filename.substring(filename.lastIndexOf('/') + 1);
+        if (name.isBlank()) {
+            throw new IllegalArgumentException("Не указано имя файла: " + filename);
+        }
+        return name;
+    }
+
+    public static String parentOf(String path) {
+        int slash = path.lastIndexOf('/', path.length() - 2);
+        return slash == 0 ? null : path.substring(0, slash + 1);
+    }
+
+    public static String nameOfFolder(String path) {
+        return path.substring(path.lastIndexOf('/', path.length() - 2) + 1, path.length() - 1);
+    }
+
+    // Обратно к виду клиента: "/docs/2024/" + "a.txt" -> "docs/2024/a.txt"
+    public static String display(String path, String name) {
+        return path == null ? name : path.substring(1) + name;
+    }
+
+    public static String displayFolder(String path) {
+        return path == null ? "" : path.substring(1, path.length() - 1);
+    }
+
+    // Шаблон LIKE для поддерева: спецсимволы LIKE в именах экранируются
+    public static String subtreePattern(String path) {
+        return path.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    private static String strip(String folder) {
+        int start = 0;
+        int end = folder.length();
+        while (start < end && folder.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && folder.charAt(end - 1) == '/') {
+            end--;
+        }
+        return folder.substring(start, end);
+    }
+}
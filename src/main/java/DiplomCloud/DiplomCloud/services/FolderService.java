@@ -0,0 +1,198 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.dto.FolderInfoResponse;
+import DiplomCloud.DiplomCloud.exception.FileAlreadyExistsRuntimeException;
+import DiplomCloud.DiplomCloud.exception.FolderNotFoundException;
+import DiplomCloud.DiplomCloud.models.Folder;
+import DiplomCloud.DiplomCloud.repositories.BlobRepository;
+import DiplomCloud.DiplomCloud.repositories.FolderRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+/*Каталоги пользователя - материализованные пути. Файл ссылается на id каталога, поэтому
+перенос и переименование каталога меняют только строки folders его поддерева одним UPDATE
+по префиксу пути, а строки files и содержимое на диске не трогаются. Подсчет и удаление
+поддерева - несколько запросов по диапазону индекса uq_folders_user_path, без обхода дерева
+* */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FolderService {
+    private static final int CHUNK_SIZE = 1000;
+
+    private final FolderRepository folderRepository;
+    private final BlobRepository blobRepository;
+    private final FileSystemStorageService fileSystemStorageService;
+    private final UserCache userCache;
+    private final FileListingCache fileListingCache;
+    private final QuotaService quotaService;
+
+    // path в виде БД; для корня - Optional.empty()
+    public Optional<Folder> find(Long userId, String path) {
+        return path == null ? Optional.empty() : folderRepository.findByPath(userId, path);
+    }
+
+    public Folder require(Long userId, String path) {
+        return find(userId, path).orElseThrow(() -> new FolderNotFoundException(FolderPaths.displayFolder(path)));
+    }
+
+    // Каталоги пачки одним запросом; ключ - путь в виде БД
+    public Map<String, Folder> findAll(Long userId, Collection<String> paths) {
+        if (paths.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, Folder> folders = new HashMap<>();
+        for (Folder folder : folderRepository.findByPaths(userId, paths)) {
+            folders.put(folder.getPath(), folder);
+        }
+        return folders;
+    }
+
+    // mkdir -p: существующий каталог - один запрос, иначе по вставке на недостающий уровень.
+    // Вызывается внутри транзакции; для корня возвращает null
+    @Transactional
+    public Folder ensureFolder(Long userId, String path) {
+        if (path == null) {
+            return null;
+        }
+        Optional<Folder> existing = folderRepository.findByPath(userId, path);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+        Folder parent = ensureFolder(userId, FolderPaths.parentOf(path));
+        if (folderRepository.insertIfAbsent(userId, parent != null ? parent.getId() : null,
+                FolderPaths.nameOfFolder(path), path) > 0) {
+            log.debug("Создан каталог {} пользователя {}", path, userId);
+            fileListingCache.invalidate(userId);
+        }
+        return folderRepository.findByPath(userId, path)
+                .orElseThrow(() -> new IllegalStateException("Каталог не создан: " + path));
+    }
+
+    @Transactional
+    public Folder createFolder(String username, String folder) {
+        log.info("Создание каталога - пользователь: {}, каталог: {}", username, folder);
+        String path = requirePath(folder);
+        return ensureFolder(userCache.resolveUserId(username), path);
+    }
+
+    public List<Folder> children(String username, String folder) {
+        Long userId = userCache.resolveUserId(username);
+        String path = FolderPaths.normalize(folder);
+        if (path == null) {
+            return folderRepository.findRootChildren(userId);
+        }
+        return folderRepository.findChildren(userId, require(userId, path).getId());
+    }
+
+    // Три запроса независимо от размера поддерева
+    @Transactional(readOnly = true)
+    public FolderInfoResponse stat(String username, String folder) {
+        Long userId = userCache.resolveUserId(username);
+        String path = requirePath(folder);
+        require(userId, path);
+        String pattern = FolderPaths.subtreePattern(path);
+        FolderRepository.SubtreeUsage usage = folderRepository.sumSubtreeFiles(userId, pattern);
+        // Сам каталог в число вложенных не входит
+        long folders = folderRepository.countSubtree(userId, pattern) - 1;
+        return new FolderInfoResponse(FolderPaths.displayFolder(path), folders, usage.getFiles(), usage.getBytes());
+    }
+
+    @Transactional
+    public void moveFolder(String username, String folder, String target) {
+        log.info("Перенос каталога - пользователь: {}, {} -> {}", username, folder, target);
+        Long userId = userCache.resolveUserId(username);
+        String source = requirePath(folder);
+        String destination = requirePath(target);
+        if (destination.startsWith(source)) {
+            throw new IllegalArgumentException("Каталог нельзя перенести в самого себя: " + target);
+        }
+
+        String pattern = FolderPaths.subtreePattern(source);
+        if (folderRepository.lockSubtree(userId, pattern).isEmpty()) {
+            throw new FolderNotFoundException(folder);
+        }
+        if (folderRepository.findByPath(userId, destination).isPresent()) {
+            throw new FileAlreadyExistsRuntimeException("Каталог уже существует: " + target);
+        }
+        Folder parent = ensureFolder(userId, FolderPaths.parentOf(destination));
+
+        // Сначала строка самого каталога: после нее под шаблон источника попадают только вложенные
+        Folder moved = require(userId, source);
+        moved.setParent(parent);
+        moved.setName(FolderPaths.nameOfFolder(destination));
+        moved.setPath(destination);
+        folderRepository.saveAndFlush(moved);
+        int nested = folderRepository.movePaths(userId, source, destination, pattern);
+
+        fileListingCache.invalidate(userId);
+        log.info("Каталог перенесен: {} -> {}, вложенных каталогов: {}", source, destination, nested);
+    }
+
+    @Transactional
+    public void deleteFolder(String username, String folder) {
+        log.info("Удаление каталога - пользователь: {}, каталог: {}", username, folder);
+        Long userId = userCache.resolveUserId(username);
+        String path = requirePath(folder);
+        String pattern = FolderPaths.subtreePattern(path);
+        if (folderRepository.lockSubtree(userId, pattern).isEmpty()) {
+            throw new FolderNotFoundException(folder);
+        }
+
+        // Ссылки на блобы снимаются пачками по числу ссылок: обычно это один UPDATE
+        Map<Integer, List<String>> byCount = new HashMap<>();
+        for (FolderRepository.BlobReferences references : folderRepository.countSubtreeBlobs(userId, pattern)) {
+            byCount.computeIfAbsent(references.getRefs(), c -> new ArrayList<>()).add(references.getHash());
+        }
+        byCount.forEach((count, hashes) -> {
+            for (int from = 0; from < hashes.size(); from += CHUNK_SIZE) {
+                blobRepository.releaseAll(hashes.subList(from, Math.min(from + CHUNK_SIZE, hashes.size())), count);
+            }
+        });
+        List<String> legacyPaths = folderRepository.findSubtreeLegacyPaths(userId, pattern);
+        // Новые файлы в заблокированные каталоги не добавятся; редкое расхождение из-за
+        // параллельного удаления отдельного файла исправит сверка квот
+        FolderRepository.SubtreeUsage usage = folderRepository.sumSubtreeFiles(userId, pattern);
+
+        int files = folderRepository.deleteSubtreeFiles(userId, pattern);
+        quotaService.release(userId, usage.getBytes(), usage.getFiles());
+        int folders = folderRepository.deleteSubtree(userId, pattern);
+        fileListingCache.invalidate(userId);
+        if (!legacyPaths.isEmpty()) {
+            deleteAfterCommit(legacyPaths);
+        }
+        log.info("Каталог удален: {}, файлов: {}, каталогов: {}", path, files, folders);
+    }
+
+    private void deleteAfterCommit(List<String> storedPaths) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                for (String storedPath : storedPaths) {
+                    try {
+                        Files.deleteIfExists(fileSystemStorageService.resolveStoredPath(storedPath));
+                    } catch (IOException e) {
+                        log.warn("Запись удалена, файл на диске не удален: {}, ошибка: {}", storedPath, e.getMessage());
+                    }
+                }
+            }
+        });
+    }
+
+    // Корень нельзя создать, перенести или удалить
+    private static String requirePath(String folder) {
+        String path = FolderPaths.normalize(folder);
+        if (path == null) {
+            throw new IllegalArgumentException("Не указан каталог");
+        }
+        return path;
+    }
+}
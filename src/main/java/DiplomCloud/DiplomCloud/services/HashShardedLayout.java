@@ -0,0 +1,32 @@
+package DiplomCloud.DiplomCloud.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/*Многоуровневое разбиение по префиксам хеша: при levels=2, width=2 блоб лежит в ab/cd/<хеш>,
+то есть 65536 каталогов, и даже миллионы файлов дают сотни записей на каталог
+* */
+@Component
+public class HashShardedLayout implements StorageLayout {
+    private final int levels;
+    private final int width;
+
+    public HashShardedLayout(@Value("${file.storage.layout.levels}") int levels,
+                             @Value("${file.storage.layout.width}") int width) {
+        if (levels < 0 || width < 1 || levels * width > 16) {
+            throw new IllegalArgumentException("Недопустимая раскладка хранилища: levels=" + levels
+                    + ", width=" + width);
+        }
+        this.levels = levels;
+        this.width = width;
+    }
+
+    @Override
+    public String locate(String hash) {
+        StringBuilder path = new StringBuilder(hash.length() + levels * (width + 1));
+        for (int level = 0; level < levels; level++) {
+            path.append(hash, level * width, (level + 1) * width).append('/');
+        }
+        return path.append(hash).toString();
+    }
+}
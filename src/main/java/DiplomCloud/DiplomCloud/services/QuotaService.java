@@ -0,0 +1,134 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.dto.QuotaResponse;
+import DiplomCloud.DiplomCloud.exception.QuotaExceededException;
+import DiplomCloud.DiplomCloud.models.UserUsage;
+import DiplomCloud.DiplomCloud.repositories.UserUsageRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/*Квота пользователя. Занятое место и число файлов хранятся счетчиками в user_usage и меняются
+приращением в транзакции, которая меняет files, поэтому SUM по файлам при загрузке не нужен.
+Объявленный размер проверяется до чтения тела запроса; окончательная проверка - условие
+того же UPDATE, что увеличивает счетчик. Сверщик исправляет расхождения по одному пользователю
+в короткой транзакции и пропускает пользователей, у которых сейчас идет запись
+* */
+@Service
+@Slf4j
+public class QuotaService {
+    private final UserUsageRepository userUsageRepository;
+    private final UserCache userCache;
+    private final TransactionTemplate transactionTemplate;
+    private final long defaultQuota;
+    private final int reconcileBatch;
+
+    public QuotaService(UserUsageRepository userUsageRepository,
+                        UserCache userCache,
+                        TransactionTemplate transactionTemplate,
+                        @Value("${file.quota.default-bytes}") long defaultQuota,
+                        @Value("${file.quota.reconcile-batch}") int reconcileBatch) {
+        this.userUsageRepository = userUsageRepository;
+        this.userCache = userCache;
+        this.transactionTemplate = transactionTemplate;
+        // 0 и меньше - без ограничения
+        this.defaultQuota = defaultQuota > 0 ? defaultQuota : Long.MAX_VALUE;
+        this.reconcileBatch = reconcileBatch;
+    }
+
+    // Предварительная проверка по объявленному размеру, до записи байтов; size < 0 - размер неизвестен
+    public void checkAvailable(Long userId, long size) {
+        if (size <= 0) {
+            return;
+        }
+        UserUsage usage = userUsageRepository.findById(userId).orElse(null);
+        long used = usage != null ? usage.getUsedBytes() : 0;
+        long quota = quotaOf(usage);
+        if (size > quota - used) {
+            log.warn("Загрузка отклонена по квоте - пользователь: {}, размер: {}, занято: {}, квота: {}",
+                    userId, size, used, quota);
+            throw new QuotaExceededException(size, quota - used);
+        }
+    }
+
+    public void checkAvailable(String username, long size) {
+        checkAvailable(userCache.resolveUserId(username), size);
+    }
+
+    // Вызывается внутри транзакции, меняющей files. Рост места сверх квоты откатывает транзакцию
+    public void charge(Long userId, long bytes, long files) {
+        if (bytes == 0 && files == 0) {
+            return;
+        }
+        int updated = userUsageRepository.add(userId, bytes, files, defaultQuota);
+        if (updated == 0 && userUsageRepository.createIfAbsent(userId) > 0) {
+            updated = userUsageRepository.add(userId, bytes, files, defaultQuota);
+        }
+        if (updated == 0) {
+            UserUsage usage = userUsageRepository.findById(userId).orElse(null);
+            long available = quotaOf(usage) - (usage != null ? usage.getUsedBytes() : 0);
+            log.warn("Квота превышена при фиксации - пользователь: {}, прирост: {} bytes", userId, bytes);
+            throw new QuotaExceededException(bytes, available);
+        }
+    }
+
+    public void release(Long userId, long bytes, long files) {
+        charge(userId, -bytes, -files);
+    }
+
+    public QuotaResponse usage(String username) {
+        Long userId = userCache.resolveUserId(username);
+        UserUsage usage = userUsageRepository.findById(userId).orElse(null);
+        long quota = quotaOf(usage);
+        return new QuotaResponse(usage != null ? usage.getUsedBytes() : 0,
+                usage != null ? usage.getFileCount() : 0,
+                quota == Long.MAX_VALUE ? null : quota);
+    }
+
+    @Scheduled(fixedDelayString = "${file.quota.reconcile-interval}", initialDelayString = "${file.quota.reconcile-interval}")
+    public void reconcile() {
+        int corrected = 0;
+        int skipped = 0;
+        long afterId = 0;
+        List<Long> userIds;
+        do {
+            userIds = userUsageRepository.findUserIds(afterId, reconcileBatch);
+            for (Long userId : userIds) {
+                Boolean result = transactionTemplate.execute(status -> reconcileUser(userId));
+                if (result == null) {
+                    skipped++;
+                } else if (result) {
+                    corrected++;
+                }
+            }
+            if (!userIds.isEmpty()) {
+                afterId = userIds.get(userIds.size() - 1);
+            }
+        } while (userIds.size() == reconcileBatch);
+
+        if (corrected > 0 || skipped > 0) {
+            log.info("Сверка квот: исправлено счетчиков: {}, пропущено занятых: {}", corrected, skipped);
+        }
+    }
+
+    // null - строка занята записью пользователя, он будет сверен в следующий раз
+    private Boolean reconcileUser(Long userId) {
+        userUsageRepository.createIfAbsent(userId);
+        if (userUsageRepository.tryLock(userId).isEmpty()) {
+            return null;
+        }
+        if (userUsageRepository.recompute(userId) > 0) {
+            log.warn("Счетчики места пользователя {} разошлись с files и пересчитаны", userId);
+            return true;
+        }
+        return false;
+    }
+
+    private long quotaOf(UserUsage usage) {
+        return usage != null && usage.getQuotaBytes() != null ? usage.getQuotaBytes() : defaultQuota;
+    }
+}
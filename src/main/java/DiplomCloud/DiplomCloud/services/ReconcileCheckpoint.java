@@ -0,0 +1,103 @@
+package DiplomCloud.DiplomCloud.services;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*Контрольная точка сверки хранилища: шарды блобов, пройденные целиком, и последний сверенный
+каталог пользователя. Файл заменяется атомарно после каждого шага; потерянная точка означает
+только повторную работу, поэтому fsync не делается
+* */
+@Slf4j
+final class ReconcileCheckpoint {
+    private static final String SHARDS = "shards";
+    private static final String LEGACY_AFTER = "legacy.after";
+
+    private final Path file;
+    private final Set<String> shards = ConcurrentHashMap.newKeySet();
+    private volatile String legacyAfter;
+
+    private ReconcileCheckpoint(Path file) {
+        this.file = file;
+    }
+
+    static ReconcileCheckpoint load(Path file) {
+        ReconcileCheckpoint checkpoint = new ReconcileCheckpoint(file);
+        if (!Files.isRegularFile(file)) {
+            return checkpoint;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            log.warn("Контрольная точка сверки не прочитана, проход начнется заново: {}", e.getMessage());
+            return checkpoint;
+        }
+        String shards = properties.getProperty(SHARDS, "");
+        if (!shards.isEmpty()) {
+            checkpoint.shards.addAll(Arrays.asList(shards.split(",")));
+        }
+        checkpoint.legacyAfter = properties.getProperty(LEGACY_AFTER);
+        return checkpoint;
+    }
+
+    boolean shardDone(String prefix) {
+        return shards.contains(prefix);
+    }
+
+    int shardsDone() {
+        return shards.size();
+    }
+
+    synchronized void markShard(String prefix) {
+        shards.add(prefix);
+        save();
+    }
+
+    // Каталоги пользователей обходятся по возрастанию имени
+    boolean legacyDone(String name) {
+        String after = legacyAfter;
+        return after != null && name.compareTo(after) <= 0;
+    }
+
+    synchronized void markLegacy(String name) {
+        legacyAfter = name;
+        save();
+    }
+
+    void clear() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Не удалось удалить контрольную точку сверки: {}", e.getMessage());
+        }
+    }
+
+    private void save() {
+        Properties properties = new Properties();
+        properties.setProperty(SHARDS, String.join(",", new TreeSet<>(shards)));
+        if (legacyAfter != null) {
+            properties.setProperty(LEGACY_AFTER, legacyAfter);
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (Writer writer = Files.newBufferedWriter(temp)) {
+                properties.store(writer, null);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Не удалось записать контрольную точку сверки: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package DiplomCloud.DiplomCloud.services;
+
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*Итог прохода сверки хранилища: сколько файлов просмотрено, сколько расхождений каждого вида
+и первые из них целиком. Заполняется из нескольких потоков обхода
+* */
+public class ReconcileReport {
+    static final int SAMPLE_LIMIT = 100;
+
+    public enum Kind {
+        BLOB_FILE, // файл блоба, у которого нет строки в blobs
+        BLOB_ROW, // строка блоба со ссылками, у которой нет файла
+        LEGACY_FILE, // файл в каталоге пользователя, на который не ссылается ни одна строка
+        LEGACY_ROW, // строка файла старого формата, у которой нет файла
+        TEMP_FILE // брошенный временный файл загрузки
+    }
+
+    private final Instant startedAt;
+    private final int resumedShards;
+    private volatile Instant finishedAt;
+    private final LongAdder scanned = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final Map<Kind, LongAdder> orphans = new EnumMap<>(Kind.class);
+    private final Queue<String> samples = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger sampled = new AtomicInteger();
+
+    public ReconcileReport(Instant startedAt, int resumedShards) {
+        this.startedAt = startedAt;
+        this.resumedShards = resumedShards;
+        for (Kind kind : Kind.values()) {
+            orphans.put(kind, new LongAdder());
+        }
+    }
+
+    // true - расхождение попало в число первых и его стоит записать в журнал
+    boolean add(Kind kind, String what) {
+        orphans.get(kind).increment();
+        if (sampled.getAndIncrement() < SAMPLE_LIMIT) {
+            samples.add(kind + " " + what);
+            return true;
+        }
+        return false;
+    }
+
+    void scanned() {
+        scanned.increment();
+    }
+
+    void failed() {
+        failures.increment();
+    }
+
+    void finish(Instant at) {
+        finishedAt = at;
+    }
+
+    public long orphans(Kind kind) {
+        return orphans.get(kind).sum();
+    }
+
+    public long totalOrphans() {
+        return orphans.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    public long scannedFiles() {
+        return scanned.sum();
+    }
+
+    public long failures() {
+        return failures.sum();
+    }
+
+    public List<String> samples() {
+        return List.copyOf(samples);
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("startedAt", startedAt);
+        state.put("finishedAt", finishedAt);
+        state.put("resumedShards", resumedShards);
+        state.put("scannedFiles", scannedFiles());
+        state.put("failures", failures());
+        Map<String, Long> counts = new LinkedHashMap<>();
+        orphans.forEach((kind, count) -> counts.put(kind.name().toLowerCase(), count.sum()));
+        state.put("orphans", counts);
+        state.put("samples", samples());
+        return state;
+    }
+}
@@ -0,0 +1,186 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.exception.FileStorageException;
+import DiplomCloud.DiplomCloud.repositories.FileRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/*Журнал намерений для переноса файлов старого формата на диске. Перенос файла и коммит строки
+не атомарны вместе, поэтому до переноса намерение (id строки, старый и новый путь) пишется
+на диск с fsync, а после завершения транзакции удаляется; при откате файлы возвращаются на место.
+Если процесс упал между переносом и коммитом, при старте файл кладется туда, куда указывает
+строка в БД, - проверок целостности после каждого переименования не нужно
+* */
+@Component
+@Slf4j
+public class RenameJournal {
+    static final String JOURNAL_DIR = ".journal";
+    private static final String SUFFIX = ".rename";
+
+    private final FileRepository fileRepository;
+    private final FileSystemStorageService fileSystemStorageService;
+    private final Path journalDir;
+
+    public RenameJournal(FileRepository fileRepository,
+                         FileSystemStorageService fileSystemStorageService,
+                         @Value("${file.storage.path}") String storagePath) {
+        this.fileRepository = fileRepository;
+        this.fileSystemStorageService = fileSystemStorageService;
+        this.journalDir = Paths.get(storagePath, JOURNAL_DIR);
+    }
+
+    // Вызывается внутри транзакции до переноса файлов; запись живет до конца транзакции
+    public void begin(List<Intent> intents) {
+        if (intents.isEmpty()) {
+            return;
+        }
+        Path entry = write(intents);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                boolean settled = true;
+                if (status != STATUS_COMMITTED) {
+                    // Строки остались со старыми путями - файлы возвращаются к ним
+                    for (Intent intent : intents) {
+                        settled &= settle(intent, intent.getSource());
+                    }
+                }
+                // Неудачный возврат остается в журнале и будет повторен при старте
+                if (settled) {
+                    delete(entry);
+                }
+            }
+        });
+    }
+
+    // Вызывается до приема запросов: незавершенные записи сверяются с путями строк в БД
+    @PostConstruct
+    public void replay() {
+        if (!Files.isDirectory(journalDir)) {
+            return;
+        }
+        int replayed = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(journalDir, "*" + SUFFIX)) {
+            for (Path entry : entries) {
+                boolean settled = true;
+                for (Intent intent : read(entry)) {
+                    // Строки нет - файл удален вместе с ней, переносить нечего
+                    String expected = fileRepository.findFilePath(intent.getFileId()).orElse(null);
+                    if (expected != null) {
+                        settled &= settle(intent, expected);
+                    }
+                }
+                if (settled) {
+                    delete(entry);
+                    replayed++;
+                }
+            }
+        } catch (IOException e) {
+            log.error("Не удалось прочитать журнал переименований: {}", e.getMessage());
+        }
+        if (replayed > 0) {
+            log.warn("Восстановлено незавершенных переименований после сбоя: {}", replayed);
+        }
+    }
+
+    // Файл переносится туда, куда указывает expected, если он лежит по другому пути намерения
+    private boolean settle(Intent intent, String expected) {
+        Path source = fileSystemStorageService.resolveStoredPath(intent.getSource());
+        Path target = fileSystemStorageService.resolveStoredPath(intent.getTarget());
+        Path wanted = fileSystemStorageService.resolveStoredPath(expected);
+        Path other = wanted.equals(target) ? source : target;
+        if (!wanted.equals(source) && !wanted.equals(target)) {
+            log.warn("Строка {} указывает на другой путь, запись журнала пропущена: {}", intent.getFileId(), expected);
+            return true;
+        }
+        if (Files.exists(wanted) || !Files.exists(other)) {
+            return true;
+        }
+        try {
+            fileSystemStorageService.moveFile(other, wanted);
+            log.info("Файл возвращен по пути из БД: {} -> {}", other, wanted);
+            return true;
+        } catch (IOException e) {
+            log.error("Не удалось вернуть файл {} -> {}: {}", other, wanted, e.getMessage());
+            return false;
+        }
+    }
+
+    private Path write(List<Intent> intents) {
+        Path entry = journalDir.resolve(UUID.randomUUID() + SUFFIX);
+        try {
+            Files.createDirectories(journalDir);
+            try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+                out.writeInt(intents.size());
+                for (Intent intent : intents) {
+                    out.writeLong(intent.getFileId());
+                    out.writeUTF(intent.getSource());
+                    out.writeUTF(intent.getTarget());
+                }
+                out.flush();
+                channel.force(true);
+            }
+            syncDirectory();
+            return entry;
+        } catch (IOException e) {
+            log.error("Не удалось записать журнал переименований: {}", e.getMessage());
+            throw new FileStorageException("Не удалось записать журнал переименований", e);
+        }
+    }
+
+    // Запись, оборванная сбоем во время создания, неполна: переносов по ней еще не было
+    private static List<Intent> read(Path entry) {
+        List<Intent> intents = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                intents.add(new Intent(in.readLong(), in.readUTF(), in.readUTF()));
+            }
+            return intents;
+        } catch (IOException e) {
+            log.warn("Неполная запись журнала переименований пропущена: {}", entry.getFileName());
+            return List.of();
+        }
+    }
+
+    private void syncDirectory() {
+        // Новое имя файла в каталоге тоже должно пережить сбой; не на всех ОС каталог открывается
+        try (FileChannel dir = FileChannel.open(journalDir, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            log.debug("fsync каталога журнала недоступен: {}", e.getMessage());
+        }
+    }
+
+    private static void delete(Path entry) {
+        try {
+            Files.deleteIfExists(entry);
+        } catch (IOException e) {
+            log.warn("Не удалось удалить запись журнала {}: {}", entry.getFileName(), e.getMessage());
+        }
+    }
+
+    // Пути - в виде file_path строки в БД
+    @Getter
+    @AllArgsConstructor
+    public static final class Intent {
+        private final Long fileId;
+        private final String source;
+        private final String target;
+    }
+}
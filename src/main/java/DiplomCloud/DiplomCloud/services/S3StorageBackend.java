@@ -0,0 +1,422 @@
+package DiplomCloud.DiplomCloud.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*Объекты в бакете S3-совместимого хранилища (AWS S3, MinIO, Ceph RGW), адресация path-style:
+<endpoint>/<bucket>/<prefix><ключ>. Клиент - java.net.http, запросы подписываются S3Signer.
+Файл больше одной части загружается multipart: части читаются прямо с диска и отправляются
+параллельно в общем пуле, при ошибке оставшиеся части и сама загрузка отменяются. Чтение диапазона - GET с Range.
+Переименования в S3 нет: move - копия на сервере и удаление исходного объекта. Объект больше 5 ГБ
+одним запросом не копируется - он переносится multipart-копией (UploadPartCopy) частями
+* */
+@Slf4j
+public class S3StorageBackend implements StorageBackend, AutoCloseable {
+    // Меньше не принимает S3: все части, кроме последней, не короче 5 МБ
+    public static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    // Предел CopyObject одним запросом
+    static final long MAX_COPY_SIZE = 5L * 1024 * 1024 * 1024;
+    // Часть multipart-копии: копирует сам S3, через сервер приложения байты не идут
+    static final long COPY_PART_SIZE = 512L * 1024 * 1024;
+    private static final int MAX_PARTS = 10_000;
+
+    private final URI endpoint;
+    private final String bucket;
+    private final String prefix;
+    private final long partSize;
+    private final long copyLimit;
+    private final long copyPartSize;
+    private final Duration timeout;
+    private final S3Signer signer;
+    private final HttpClient http;
+    private final ExecutorService uploadPool;
+
+    public S3StorageBackend(String endpoint, String region, String bucket, String accessKey, String secretKey,
+                            String prefix, long partSize, int uploadThreads, long timeoutMillis) {
+        this(endpoint, region, bucket, accessKey, secretKey, prefix, partSize, uploadThreads, timeoutMillis,
+                MAX_COPY_SIZE, COPY_PART_SIZE);
+    }
+
+    // Пределы копирования задаются явно только в тестах: объект в 5 ГБ в них не создать
+    public S3StorageBackend(String endpoint, String region, String bucket, String accessKey, String secretKey,
+                            String prefix, long partSize, int uploadThreads, long timeoutMillis,
+                            long copyLimit, long copyPartSize) {
+        if (bucket == null || bucket.isBlank()) {
+            throw new IllegalArgumentException("Не указан бакет S3: file.storage.s3.bucket");
+        }
+        if (partSize < MIN_PART_SIZE) {
+            throw new IllegalArgumentException("Размер части multipart меньше 5 МБ: " + partSize);
+        }
+        this.endpoint = URI.create(endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint);
+        this.bucket = bucket;
+        this.prefix = prefix == null ? "" : prefix;
+        this.partSize = partSize;
+        this.copyLimit = copyLimit;
+        this.copyPartSize = copyPartSize;
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        this.signer = new S3Signer(accessKey, secretKey, region);
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+        AtomicInteger threads = new AtomicInteger();
+        this.uploadPool = Executors.newFixedThreadPool(uploadThreads, task -> {
+            Thread thread = new Thread(task, "s3-upload-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        long size = Files.size(source);
+        if (size <= partSize) {
+            HttpResponse<byte[]> response = send("PUT", key, Map.of(), Map.of(),
+                    HttpRequest.BodyPublishers.ofFile(source));
+            check(response, "PUT", key);
+        } else {
+            putMultipart(key, source, size);
+        }
+        Files.deleteIfExists(source);
+        log.debug("Объект записан в S3: {}, {} bytes", key, size);
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        if (length == 0) {
+            return InputStream.nullInputStream();
+        }
+        Map<String, String> headers = offset > 0 || length > 0
+                ? Map.of("range", "bytes=" + offset + "-" + (length > 0 ? offset + length - 1 : ""))
+                : Map.of();
+        HttpRequest request = request("GET", key, Map.of(), headers, HttpRequest.BodyPublishers.noBody());
+        HttpResponse<InputStream> response = execute(request, HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() == 206 || response.statusCode() == 200 && headers.isEmpty()) {
+            return response.body();
+        }
+        if (response.statusCode() == 200) {
+            // Range проигнорирован (так бывает у S3-совместимых хранилищ и прокси) - пришел весь объект,
+            // иначе клиент получил бы начало файла вместо запрошенного диапазона
+            InputStream whole = response.body();
+            try {
+                whole.skipNBytes(offset);
+            } catch (IOException e) {
+                whole.close();
+                throw e;
+            }
+            return length > 0 ? new LimitedInputStream(whole, length) : whole;
+        }
+        byte[] body;
+        try (InputStream in = response.body()) {
+            body = in.readAllBytes();
+        }
+        if (response.statusCode() == 404) {
+            throw new NoSuchFileException(key);
+        }
+        throw failure("GET", key, response.statusCode(), body);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        HttpResponse<byte[]> response = send("DELETE", key, Map.of(), Map.of(), HttpRequest.BodyPublishers.noBody());
+        if (response.statusCode() != 404) {
+            check(response, "DELETE", key);
+        }
+    }
+
+    // Проверка занятости и копия не атомарны: условной записи в S3 нет, ключи выбирает сервер приложения
+    @Override
+    public void move(String sourceKey, String targetKey) throws IOException {
+        if (exists(targetKey)) {
+            throw new FileAlreadyExistsException("Целевой объект существует: " + targetKey);
+        }
+        long size = size(sourceKey).orElseThrow(() -> new NoSuchFileException(sourceKey));
+        if (size > copyLimit) {
+            copyMultipart(sourceKey, targetKey, size);
+            delete(sourceKey);
+            return;
+        }
+        HttpResponse<byte[]> response = send("PUT", targetKey, Map.of(),
+                Map.of("x-amz-copy-source", S3Signer.encode("/" + bucket + "/" + prefix + sourceKey, true)),
+                HttpRequest.BodyPublishers.noBody());
+        if (response.statusCode() == 404) {
+            throw new NoSuchFileException(sourceKey);
+        }
+        check(response, "COPY", sourceKey);
+        delete(sourceKey);
+    }
+
+    @Override
+    public OptionalLong size(String key) throws IOException {
+        HttpRequest request = request("HEAD", key, Map.of(), Map.of(), HttpRequest.BodyPublishers.noBody());
+        HttpResponse<Void> response = execute(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() == 404) {
+            return OptionalLong.empty();
+        }
+        if (response.statusCode() != 200) {
+            throw failure("HEAD", key, response.statusCode(), new byte[0]);
+        }
+        return response.headers().firstValueAsLong("content-length");
+    }
+
+    @Override
+    public List<String> list(String keyPrefix, String after, int limit) throws IOException {
+        Map<String, String> query = new LinkedHashMap<>();
+        query.put("list-type", "2");
+        query.put("prefix", prefix + keyPrefix);
+        query.put("max-keys", String.valueOf(limit));
+        if (after != null) {
+            query.put("start-after", prefix + after);
+        }
+        HttpResponse<byte[]> response = send("GET", null, query, Map.of(), HttpRequest.BodyPublishers.noBody());
+        check(response, "LIST", keyPrefix);
+        List<String> keys = new ArrayList<>();
+        for (String key : xmlValues(response.body(), "Key")) {
+            keys.add(key.substring(prefix.length()));
+        }
+        return keys;
+    }
+
+    @Override
+    public void close() {
+        uploadPool.shutdownNow();
+    }
+
+    private void putMultipart(String key, Path source, long size) throws IOException {
+        multipart(key, size, partSize, (uploadId, partNumber, offset, length) ->
+                uploadPart(key, uploadId, partNumber, source, offset, length));
+    }
+
+    private void copyMultipart(String sourceKey, String targetKey, long size) throws IOException {
+        // Частей в одной загрузке не больше 10 000
+        long part = Math.max(copyPartSize, (size + MAX_PARTS - 1) / MAX_PARTS);
+        multipart(targetKey, size, part, (uploadId, partNumber, offset, length) ->
+                copyPart(sourceKey, targetKey, uploadId, partNumber, offset, length));
+    }
+
+    private void multipart(String key, long size, long partLength, PartTransfer transfer) throws IOException {
+        HttpResponse<byte[]> created = send("POST", key, Map.of("uploads", ""), Map.of(),
+                HttpRequest.BodyPublishers.noBody());
+        check(created, "CREATE MULTIPART", key);
+        String uploadId = xmlValues(created.body(), "UploadId").stream().findFirst()
+                .orElseThrow(() -> new IOException("S3 не вернул UploadId для " + key));
+        int parts = (int) ((size + partLength - 1) / partLength);
+        List<Future<String>> etags = new ArrayList<>(parts);
+        try {
+            for (int part = 1; part <= parts; part++) {
+                long offset = (part - 1) * partLength;
+                long length = Math.min(partLength, size - offset);
+                int partNumber = part;
+                etags.add(uploadPool.submit(() -> transfer.send(uploadId, partNumber, offset, length)));
+            }
+            StringBuilder complete = new StringBuilder("<CompleteMultipartUpload>");
+            for (int part = 1; part <= parts; part++) {
+                complete.append("<Part><PartNumber>").append(part).append("</PartNumber><ETag>")
+                        .append(await(etags.get(part - 1))).append("</ETag></Part>");
+            }
+            complete.append("</CompleteMultipartUpload>");
+            HttpResponse<byte[]> completed = send("POST", key, Map.of("uploadId", uploadId), Map.of(),
+                    HttpRequest.BodyPublishers.ofString(complete.toString()));
+            check(completed, "COMPLETE MULTIPART", key);
+            log.debug("Multipart-загрузка завершена: {}, частей: {}", key, parts);
+        } catch (IOException | RuntimeException e) {
+            // Сначала отменяются оставшиеся части: иначе они продолжали бы занимать общий пул
+            // и могли бы дойти до S3 уже после отмены загрузки
+            etags.forEach(etag -> etag.cancel(true));
+            abort(key, uploadId);
+            throw e;
+        }
+    }
+
+    // Часть читается с диска потоком при отправке: в памяти держится только буфер клиента
+    private String uploadPart(String key, String uploadId, int partNumber, Path source, long offset, long length)
+            throws IOException {
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.fromPublisher(
+                HttpRequest.BodyPublishers.ofInputStream(() -> {
+                    try {
+                        FileChannel channel = FileChannel.open(source, StandardOpenOption.READ);
+                        channel.position(offset);
+                        return new LimitedInputStream(Channels.newInputStream(channel), length);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Не удалось прочитать часть " + partNumber, e);
+                    }
+                }), length);
+        HttpResponse<byte[]> response = send("PUT", key,
+                Map.of("partNumber", String.valueOf(partNumber), "uploadId", uploadId), Map.of(), body);
+        check(response, "UPLOAD PART", key);
+        return response.headers().firstValue("etag")
+                .orElseThrow(() -> new IOException("S3 не вернул ETag части " + partNumber));
+    }
+
+    private String copyPart(String sourceKey, String targetKey, String uploadId, int partNumber, long offset,
+                            long length) throws IOException {
+        HttpResponse<byte[]> response = send("PUT", targetKey,
+                Map.of("partNumber", String.valueOf(partNumber), "uploadId", uploadId),
+                Map.of("x-amz-copy-source", S3Signer.encode("/" + bucket + "/" + prefix + sourceKey, true),
+                        "x-amz-copy-source-range", "bytes=" + offset + "-" + (offset + length - 1)),
+                HttpRequest.BodyPublishers.noBody());
+        check(response, "UPLOAD PART COPY", sourceKey);
+        return xmlValues(response.body(), "ETag").stream().findFirst()
+                .orElseThrow(() -> new IOException("S3 не вернул ETag части " + partNumber));
+    }
+
+    private void abort(String key, String uploadId) {
+        try {
+            send("DELETE", key, Map.of("uploadId", uploadId), Map.of(), HttpRequest.BodyPublishers.noBody());
+        } catch (IOException | RuntimeException e) {
+            // Незавершенные части удалит правило жизненного цикла бакета
+            log.warn("Не удалось отменить multipart-загрузку {}: {}", key, e.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    private interface PartTransfer {
+        String send(String uploadId, int partNumber, long offset, long length) throws IOException;
+    }
+
+    private static String await(Future<String> etag) throws IOException {
+        try {
+            return etag.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Загрузка прервана");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Ошибка загрузки части: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private HttpResponse<byte[]> send(String method, String key, Map<String, String> query,
+                                      Map<String, String> headers, HttpRequest.BodyPublisher body)
+            throws IOException {
+        return execute(request(method, key, query, headers, body), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private <T> HttpResponse<T> execute(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+            throws IOException {
+        try {
+            return http.send(request, handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Запрос к S3 прерван");
+        }
+    }
+
+    // key == null - запрос к бакету целиком (список объектов)
+    private HttpRequest request(String method, String key, Map<String, String> query, Map<String, String> headers,
+                                HttpRequest.BodyPublisher body) {
+        String path = "/" + bucket + (key != null ? "/" + prefix + key : "");
+        String canonicalUri = S3Signer.encode(endpoint.getPath() + path, true);
+        String canonicalQuery = S3Signer.canonicalQuery(query);
+        Instant now = Instant.now();
+
+        SortedMap<String, String> signed = new TreeMap<>(headers);
+        signed.put("host", host());
+        signed.put("x-amz-date", S3Signer.amzDate(now));
+        signed.put("x-amz-content-sha256", S3Signer.UNSIGNED_PAYLOAD);
+        String authorization = signer.authorization(method, canonicalUri, canonicalQuery, signed,
+                S3Signer.UNSIGNED_PAYLOAD, now);
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(endpoint.getScheme() + "://" + endpoint.getRawAuthority() + canonicalUri
+                        + (canonicalQuery.isEmpty() ? "" : "?" + canonicalQuery)))
+                .timeout(timeout)
+                .method(method, body)
+                .header("authorization", authorization);
+        // host выставляет сам клиент
+        signed.forEach((name, value) -> {
+            if (!name.equals("host")) {
+                builder.header(name, value);
+            }
+        });
+        return builder.build();
+    }
+
+    // Так же, как заголовок Host у java.net.http: порт только нестандартный
+    private String host() {
+        int port = endpoint.getPort();
+        boolean defaultPort = port == -1 || port == ("https".equalsIgnoreCase(endpoint.getScheme()) ? 443 : 80);
+        return defaultPort ? endpoint.getHost() : endpoint.getHost() + ":" + port;
+    }
+
+    // CompleteMultipartUpload и копирование могут вернуть 200 с ошибкой в теле
+    private static void check(HttpResponse<byte[]> response, String operation, String key) throws IOException {
+        int status = response.statusCode();
+        if (status < 200 || status >= 300 || startsWithError(response.body())) {
+            throw failure(operation, key, status, response.body());
+        }
+    }
+
+    private static boolean startsWithError(byte[] body) {
+        String head = new String(body, 0, Math.min(body.length, 256), StandardCharsets.UTF_8);
+        return head.contains("<Error>");
+    }
+
+    private static IOException failure(String operation, String key, int status, byte[] body) {
+        String code = "";
+        try {
+            code = xmlValues(body, "Code").stream().findFirst().orElse("");
+        } catch (IOException e) {
+            // Тело не XML - достаточно статуса
+        }
+        return new IOException("S3 " + operation + " " + key + ": HTTP " + status + (code.isEmpty() ? "" : " " + code));
+    }
+
+    private static List<String> xmlValues(byte[] body, String element) throws IOException {
+        if (body.length == 0) {
+            return List.of();
+        }
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            Document document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(body));
+            NodeList nodes = document.getElementsByTagName(element);
+            List<String> values = new ArrayList<>(nodes.getLength());
+            for (int i = 0; i < nodes.getLength(); i++) {
+                values.add(nodes.item(i).getTextContent());
+            }
+            return values;
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Некорректный ответ S3: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.models.ContentCodec;
+import lombok.Getter;
+
+import java.nio.file.Path;
+
+// Содержимое загрузки, принятое до транзакции: хеш и размер посчитаны, байты лежат во временном
+// файле на томе хранилища (file) или в удаленном хранилище под временным ключом (stagedKey)
+@Getter
+public class StagedContent {
+    private final String hash;
+    private final long size;
+    private final ContentCodec codec;
+    private final Path file;
+    private final String stagedKey;
+    // Файл принадлежит вызывающему (сессии загрузки): в хранилище попадает ссылка, файл не удаляется
+    private final boolean keepFile;
+    // Байты перенесены в хранилище блобов - удалять после транзакции нечего
+    private boolean published;
+
+    StagedContent(String hash, long size, ContentCodec codec, Path file, String stagedKey, boolean keepFile) {
+        this.hash = hash;
+        this.size = size;
+        this.codec = codec;
+        this.file = file;
+        this.stagedKey = stagedKey;
+        this.keepFile = keepFile;
+    }
+
+    void markPublished() {
+        published = true;
+    }
+}
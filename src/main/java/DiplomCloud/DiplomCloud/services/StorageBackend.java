@@ -0,0 +1,45 @@
+package DiplomCloud.DiplomCloud.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/*Хранилище содержимого: объекты по ключу вида ".blobs/ab/cd/<хеш>" - тот же относительный путь,
+что хранит FileEntity.filePath. Реализация выбирается настройкой file.storage.backend.
+Отсутствующий объект при чтении - NoSuchFileException, удаление отсутствующего - не ошибка
+* */
+public interface StorageBackend {
+    // Забирает локальный файл под ключ: после успешного вызова source больше нет
+    void put(String key, Path source) throws IOException;
+
+    // Байты [offset, offset + length); length < 0 - до конца объекта
+    InputStream get(String key, long offset, long length) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    // Занятый target не перезаписывается: FileAlreadyExistsException
+    void move(String sourceKey, String targetKey) throws IOException;
+
+    // Размер объекта; пусто - объекта нет
+    OptionalLong size(String key) throws IOException;
+
+    default boolean exists(String key) throws IOException {
+        return size(key).isPresent();
+    }
+
+    // Объект есть и процесс может его прочитать
+    default boolean readable(String key) throws IOException {
+        return exists(key);
+    }
+
+    // Ключи с префиксом по возрастанию, строго после after (null - с начала), не больше limit
+    List<String> list(String prefix, String after, int limit) throws IOException;
+
+    // Путь на локальном диске, если объект там лежит: отдача через sendfile и FileChannel
+    default Optional<Path> localPath(String key) {
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,6 @@
+package DiplomCloud.DiplomCloud.services;
+
+// Раскладка блобов по каталогам: путь относительно каталога блобов по хешу содержимого
+public interface StorageLayout {
+    String locate(String hash);
+}
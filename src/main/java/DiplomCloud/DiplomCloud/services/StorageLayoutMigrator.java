@@ -0,0 +1,165 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.models.Blob;
+import DiplomCloud.DiplomCloud.models.ContentCodec;
+import DiplomCloud.DiplomCloud.models.FileEntity;
+import DiplomCloud.DiplomCloud.repositories.BlobRepository;
+import DiplomCloud.DiplomCloud.repositories.FileRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/*Онлайн-миграция в текущую раскладку: файлы из плоских каталогов пользователей переходят
+в хранилище блобов, блобы из прежней раскладки - на новое место. За запуск обрабатывается
+не больше batch-size файлов, паузу между запусками задает interval.
+Каждый файл переносится в своей транзакции под блокировкой строки: новое место появляется
+как жесткая ссылка, запись в БД переключается, старый путь удаляется только после коммита,
+поэтому чтения по старому пути работают до самого переключения
+* */
+@Service
+@Slf4j
+public class StorageLayoutMigrator {
+    private final FileRepository fileRepository;
+    private final BlobRepository blobRepository;
+    private final BlobService blobService;
+    private final FileSystemStorageService fileSystemStorageService;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+
+    private volatile long lastId;
+    private volatile boolean finished;
+
+    public StorageLayoutMigrator(FileRepository fileRepository,
+                                 BlobRepository blobRepository,
+                                 BlobService blobService,
+                                 FileSystemStorageService fileSystemStorageService,
+                                 TransactionTemplate transactionTemplate,
+                                 @Value("${file.storage.migration.enabled}") boolean enabled,
+                                 @Value("${file.storage.migration.batch-size}") int batchSize) {
+        this.fileRepository = fileRepository;
+        this.blobRepository = blobRepository;
+        this.blobService = blobService;
+        this.fileSystemStorageService = fileSystemStorageService;
+        this.transactionTemplate = transactionTemplate;
+        // Старые файлы лежат на локальном томе - переносить в удаленное хранилище их некуда
+        this.enabled = enabled && !fileSystemStorageService.remoteStorage();
+        this.batchSize = batchSize;
+        if (enabled && !this.enabled) {
+            log.warn("Миграция раскладки отключена: хранилище блобов не локальное");
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${file.storage.migration.interval}")
+    public void migrateBatch() {
+        if (!enabled || finished) {
+            return;
+        }
+        List<Long> ids = fileRepository.findIdsAfter(lastId, PageRequest.of(0, batchSize));
+        if (ids.isEmpty()) {
+            finished = true;
+            log.info("Миграция раскладки хранилища завершена");
+            return;
+        }
+
+        int moved = 0;
+        for (Long id : ids) {
+            try {
+                Boolean result = transactionTemplate.execute(status -> migrate(id));
+                if (Boolean.TRUE.equals(result)) {
+                    moved++;
+                }
+            } catch (RuntimeException e) {
+                // Файл останется на старом месте и будет доступен по старому пути
+                log.error("Не удалось перенести файл {}: {}", id, e.getMessage());
+            }
+        }
+        lastId = ids.get(ids.size() - 1);
+        if (moved > 0) {
+            log.info("Перенесено в новую раскладку файлов: {}", moved);
+        }
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    private boolean migrate(Long id) {
+        FileEntity fileEntity = fileRepository.lockById(id).orElse(null);
+        if (fileEntity == null) {
+            log.debug("Файл {} занят или удален, пропуск", id);
+            return false;
+        }
+        try {
+            return fileEntity.getBlob() != null ? relocateBlob(fileEntity) : adoptLegacyFile(fileEntity);
+        } catch (IOException e) {
+            throw new IllegalStateException("Ошибка файловой системы: " + e.getMessage(), e);
+        }
+    }
+
+    // Файл из плоского каталога пользователя становится блобом
+    private boolean adoptLegacyFile(FileEntity fileEntity) throws IOException {
+        Path source = fileSystemStorageService.resolveStoredPath(fileEntity.getFilePath());
+        if (!Files.isRegularFile(source)) {
+            log.warn("Файл не найден на диске, пропуск: {}", source);
+            return false;
+        }
+        Blob blob = blobService.adopt(source);
+        fileEntity.setBlob(blob);
+        fileEntity.setFilePath(fileSystemStorageService.blobLocation(blob.getHash()));
+        fileRepository.save(fileEntity);
+        deleteAfterCommit(source);
+        return true;
+    }
+
+    // Блоб из прежней раскладки: переносится один раз для всех ссылающихся файлов
+    private boolean relocateBlob(FileEntity fileEntity) throws IOException {
+        String hash = fileEntity.getBlob().getHash();
+        ContentCodec codec = fileEntity.getCodec();
+        String location = fileSystemStorageService.blobLocation(hash, codec);
+        if (location.equals(fileEntity.getFilePath())) {
+            return false;
+        }
+        blobRepository.lock(hash);
+
+        Path target = fileSystemStorageService.blobPath(hash, codec);
+        Path source = fileEntity.getFilePath() != null
+                ? fileSystemStorageService.resolveStoredPath(fileEntity.getFilePath())
+                : null;
+        if (!Files.exists(target)) {
+            if (source == null || !Files.isRegularFile(source)) {
+                log.warn("Блоб не найден на диске, пропуск: {}", hash);
+                return false;
+            }
+            fileSystemStorageService.linkBlob(source, hash, codec);
+        }
+        fileRepository.updateFilePathByBlob(hash, codec, location);
+        if (source != null && !source.equals(target)) {
+            deleteAfterCommit(source);
+        }
+        return true;
+    }
+
+    private void deleteAfterCommit(Path path) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    log.warn("Не удалось удалить старую копию {}: {}", path, e.getMessage());
+                }
+            }
+        });
+    }
+}
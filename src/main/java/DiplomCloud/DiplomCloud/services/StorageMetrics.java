@@ -0,0 +1,95 @@
+package DiplomCloud.DiplomCloud.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*Метрики работы с файлами: время операций с диском, переданные байты и активные передачи.
+Все счетчики создаются один раз; на горячем пути - только System.nanoTime и атомарные инкременты.
+Время в БД считают метрики репозиториев Spring Data (spring.data.repository.invocations),
+ожидание соединения - пул Hikari (hikaricp.connections.acquire)
+* */
+@Component
+public class StorageMetrics {
+    private final Timer uploadTimer;
+    private final Timer downloadTimer;
+    private final Timer publishTimer;
+    private final Timer deleteTimer;
+    private final Counter uploadedBytes;
+    private final Counter downloadedBytes;
+    private final AtomicInteger activeUploads = new AtomicInteger();
+    private final AtomicInteger activeDownloads = new AtomicInteger();
+
+    public StorageMetrics(MeterRegistry meterRegistry) {
+        this.uploadTimer = ioTimer(meterRegistry, "upload");
+        this.downloadTimer = ioTimer(meterRegistry, "download");
+        this.publishTimer = ioTimer(meterRegistry, "publish");
+        this.deleteTimer = ioTimer(meterRegistry, "delete");
+        this.uploadedBytes = bytesCounter(meterRegistry, "upload");
+        this.downloadedBytes = bytesCounter(meterRegistry, "download");
+        Gauge.builder("cloud.storage.transfers.active", activeUploads, AtomicInteger::get)
+                .description("Загрузки, которые сейчас пишут на диск")
+                .tag("direction", "upload")
+                .register(meterRegistry);
+        Gauge.builder("cloud.storage.transfers.active", activeDownloads, AtomicInteger::get)
+                .description("Отдачи, которые сейчас читают с диска")
+                .tag("direction", "download")
+                .register(meterRegistry);
+    }
+
+    public long uploadStarted() {
+        activeUploads.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void uploadFinished(long startedAt, long bytes) {
+        activeUploads.decrementAndGet();
+        uploadTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        uploadedBytes.increment(bytes);
+    }
+
+    public long downloadStarted() {
+        activeDownloads.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void downloadFinished(long startedAt, long bytes) {
+        activeDownloads.decrementAndGet();
+        downloadTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        downloadedBytes.increment(bytes);
+    }
+
+    // Отдачу выполнит контейнер через sendfile: время не измерить, учитываются только байты
+    public void downloadDelegated(long bytes) {
+        downloadedBytes.increment(bytes);
+    }
+
+    public void publishFinished(long startedAt) {
+        publishTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    }
+
+    public void deleteFinished(long startedAt) {
+        deleteTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    }
+
+    private static Timer ioTimer(MeterRegistry meterRegistry, String operation) {
+        return Timer.builder("cloud.storage.io")
+                .description("Время операций с файловой системой")
+                .tag("op", operation)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static Counter bytesCounter(MeterRegistry meterRegistry, String direction) {
+        return Counter.builder("cloud.storage.bytes")
+                .description("Переданные байты содержимого файлов")
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,609 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.exception.FileStorageException;
+import DiplomCloud.DiplomCloud.models.ContentCodec;
+import DiplomCloud.DiplomCloud.repositories.BlobRepository;
+import DiplomCloud.DiplomCloud.repositories.FileRepository;
+import DiplomCloud.DiplomCloud.repositories.UserRepository;
+import DiplomCloud.DiplomCloud.services.ReconcileReport.Kind;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/*Фоновая сверка хранилища с БД. Хранилище блобов обходится параллельно: каждый шард верхнего
+уровня раскладки - отдельная задача ForkJoinPool. Внутри шарда каталоги читаются по возрастанию
+имени, то есть в порядке хешей, и сливаются со строками blobs того же диапазона, прочитанными
+страницами, - ни дерево, ни таблица целиком в память не попадают. Файл без строки - сирота
+на диске, строка со ссылками без файла - потерянный блоб. Файлы старого формата сверяются
+по каталогам пользователей. Скорость обхода ограничена, пройденные шарды и каталоги пишутся
+в контрольную точку, и прерванный перезапуском проход продолжается с нее.
+В режиме quarantine сироты на диске переносятся в .quarantine с тем же относительным путем;
+строки БД сверка никогда не меняет, расхождения с их стороны только попадают в отчет
+* */
+@Service
+@Slf4j
+public class StorageReconciler {
+    static final String QUARANTINE_DIR = ".quarantine";
+    static final String CHECKPOINT_FILE = ".reconcile/checkpoint";
+    private static final String TEMP_DIR = "tmp";
+    private static final int HASH_LENGTH = 64;
+    // Шире - шарды берутся из существующих каталогов, а не перебором всех префиксов
+    private static final int MAX_ENUMERATED_WIDTH = 3;
+
+    private final BlobRepository blobRepository;
+    private final FileRepository fileRepository;
+    private final UserRepository userRepository;
+    private final FileSystemStorageService fileSystemStorageService;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long minAgeMillis;
+    private final boolean quarantine;
+    private final int batchSize;
+    private final int levels;
+    private final int width;
+    private final Path checkpointFile;
+    private final ForkJoinPool pool;
+    private final Throttle throttle;
+    private final Counter scannedFiles;
+    private final Map<Kind, Counter> orphanCounters = new EnumMap<>(Kind.class);
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile boolean stopping;
+    private volatile ReconcileReport currentReport;
+    private volatile ReconcileReport lastReport;
+
+    public StorageReconciler(BlobRepository blobRepository,
+                             FileRepository fileRepository,
+                             UserRepository userRepository,
+                             FileSystemStorageService fileSystemStorageService,
+                             StorageLayout layout,
+                             TransactionTemplate transactionTemplate,
+                             MeterRegistry meterRegistry,
+                             @Value("${file.reconcile.enabled}") boolean enabled,
+                             @Value("${file.reconcile.threads}") int threads,
+                             @Value("${file.reconcile.max-files-per-second}") int maxFilesPerSecond,
+                             @Value("${file.reconcile.min-age}") long minAgeMillis,
+                             @Value("${file.reconcile.action}") String action,
+                             @Value("${file.reconcile.batch-size}") int batchSize) {
+        if (!"report".equalsIgnoreCase(action) && !"quarantine".equalsIgnoreCase(action)) {
+            throw new IllegalArgumentException("Недопустимое действие сверки: " + action);
+        }
+        this.blobRepository = blobRepository;
+        this.fileRepository = fileRepository;
+        this.userRepository = userRepository;
+        this.fileSystemStorageService = fileSystemStorageService;
+        this.transactionTemplate = transactionTemplate;
+        // Сверка обходит каталоги тома; удаленное хранилище так не обойти
+        this.enabled = enabled && !fileSystemStorageService.remoteStorage();
+        if (enabled && !this.enabled) {
+            log.warn("Сверка хранилища отключена: хранилище блобов не локальное");
+        }
+        this.minAgeMillis = minAgeMillis;
+        this.quarantine = "quarantine".equalsIgnoreCase(action);
+        this.batchSize = batchSize;
+        // Глубина и ширина уровней раскладки видны по пути любого хеша
+        String sample = layout.locate("0".repeat(HASH_LENGTH));
+        this.levels = (int) sample.chars().filter(c -> c == '/').count();
+        this.width = levels == 0 ? 0 : sample.indexOf('/');
+        this.checkpointFile = fileSystemStorageService.storageRoot().resolve(CHECKPOINT_FILE);
+        this.pool = new ForkJoinPool(threads);
+        this.throttle = new Throttle(maxFilesPerSecond);
+        this.scannedFiles = Counter.builder("cloud.reconcile.scanned")
+                .description("Файлы, просмотренные сверкой хранилища")
+                .register(meterRegistry);
+        for (Kind kind : Kind.values()) {
+            orphanCounters.put(kind, Counter.builder("cloud.reconcile.orphans")
+                    .description("Расхождения хранилища и БД, найденные сверкой")
+                    .tag("kind", kind.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    // Единственный поток планировщика только ставит проход в свой пул и сразу освобождается
+    @Scheduled(fixedDelayString = "${file.reconcile.interval}", initialDelayString = "${file.reconcile.initial-delay}")
+    public void scheduleReconcile() {
+        if (!enabled || !running.compareAndSet(false, true)) {
+            return;
+        }
+        pool.execute(() -> {
+            try {
+                reconcile();
+            } catch (RuntimeException e) {
+                log.error("Сверка хранилища прервана: {}", e.getMessage(), e);
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    public ReconcileReport reconcile() {
+        ReconcileCheckpoint checkpoint = ReconcileCheckpoint.load(checkpointFile);
+        ReconcileReport report = new ReconcileReport(Instant.now(), checkpoint.shardsDone());
+        currentReport = report;
+        if (checkpoint.shardsDone() > 0) {
+            log.info("Сверка хранилища продолжается с контрольной точки, пройдено шардов: {}",
+                    checkpoint.shardsDone());
+        }
+
+        List<ShardTask> tasks = new ArrayList<>();
+        for (String prefix : shards()) {
+            if (!checkpoint.shardDone(prefix)) {
+                tasks.add(new ShardTask(prefix, report, checkpoint));
+            }
+        }
+        invokeAll(tasks);
+        try {
+            reconcileTempFiles(report);
+            reconcileLegacy(report, checkpoint);
+        } catch (IOException | RuntimeException e) {
+            if (!(e instanceof CancellationException)) {
+                log.error("Ошибка сверки файлов старого формата: {}", e.getMessage());
+                report.failed();
+            }
+        }
+
+        report.finish(Instant.now());
+        currentReport = null;
+        lastReport = report;
+        // С ошибками точка остается: следующий проход повторит только незавершенные шарды
+        if (!stopping && report.failures() == 0) {
+            checkpoint.clear();
+        }
+        log.info("Сверка хранилища завершена: просмотрено файлов {}, расхождений {}, ошибок {}",
+                report.scannedFiles(), report.totalOrphans(), report.failures());
+        return report;
+    }
+
+    public boolean isRunning() {
+        return running.get() || currentReport != null;
+    }
+
+    public ReconcileReport currentReport() {
+        return currentReport;
+    }
+
+    public ReconcileReport lastReport() {
+        return lastReport;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopping = true;
+        pool.shutdownNow();
+    }
+
+    private void invokeAll(List<ShardTask> tasks) {
+        RecursiveAction all = new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        };
+        try {
+            // Проход, поставленный планировщиком, уже выполняется в пуле
+            if (ForkJoinTask.getPool() == pool) {
+                all.invoke();
+            } else {
+                pool.invoke(all);
+            }
+        } catch (CancellationException e) {
+            // Остановка приложения отменяет задачи в очереди пула; пройденные шарды уже в контрольной точке
+            if (!stopping) {
+                throw e;
+            }
+        }
+    }
+
+    // Префиксы каталогов верхнего уровня; без уровней - один шард на все хранилище
+    private List<String> shards() {
+        if (levels == 0) {
+            return List.of("");
+        }
+        if (width <= MAX_ENUMERATED_WIDTH) {
+            int count = 1 << (4 * width);
+            List<String> shards = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String hex = Integer.toHexString(i);
+                shards.add("0".repeat(width - hex.length()) + hex);
+            }
+            return shards;
+        }
+        try (Stream<Path> entries = Files.list(fileSystemStorageService.blobsRoot())) {
+            return entries.map(entry -> entry.getFileName().toString())
+                    .filter(name -> name.length() == width && isHex(name))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            return List.of();
+        }
+    }
+
+    // Сверка шарда: файлы и строки идут по возрастанию хеша и сливаются за один проход
+    private final class ShardTask extends RecursiveAction {
+        private final String prefix;
+        private final ReconcileReport report;
+        private final ReconcileCheckpoint checkpoint;
+        private final BlobCursor rows;
+        private String previous;
+
+        private ShardTask(String prefix, ReconcileReport report, ReconcileCheckpoint checkpoint) {
+            this.prefix = prefix;
+            this.report = report;
+            this.checkpoint = checkpoint;
+            this.rows = new BlobCursor(prefix);
+        }
+
+        @Override
+        protected void compute() {
+            Path root = fileSystemStorageService.blobsRoot();
+            Path dir = prefix.isEmpty() ? root : root.resolve(prefix);
+            try {
+                if (Files.isDirectory(dir)) {
+                    walk(dir, prefix.isEmpty() ? 0 : 1);
+                }
+                for (BlobRepository.BlobState row = rows.next(); row != null; row = rows.next()) {
+                    missingBlob(row, report);
+                }
+                checkpoint.markShard(prefix);
+            } catch (CancellationException e) {
+                log.debug("Сверка шарда {} остановлена", prefix);
+            } catch (IOException | RuntimeException e) {
+                log.error("Ошибка сверки шарда {}: {}", prefix, e.getMessage());
+                report.failed();
+            }
+        }
+
+        // Файлы лежат только на глубине levels; файлы выше - прежняя раскладка, их переносит миграция
+        private void walk(Path dir, int depth) throws IOException {
+            for (Path entry : sortedEntries(dir)) {
+                if (depth < levels) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        walk(entry, depth + 1);
+                    }
+                } else if (Files.isRegularFile(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    visit(entry);
+                }
+            }
+        }
+
+        private void visit(Path file) throws IOException {
+            throttle.acquire();
+            scannedFiles.increment();
+            report.scanned();
+            String hash = hashOf(file);
+            // Второй вариант того же блоба (<хеш> и <хеш>.gz) идет сразу за первым
+            if (hash == null || hash.equals(previous)) {
+                return;
+            }
+            previous = hash;
+            while (rows.peek() != null && rows.peek().getHash().compareTo(hash) < 0) {
+                missingBlob(rows.next(), report);
+            }
+            if (rows.peek() != null && rows.peek().getHash().equals(hash)) {
+                rows.next();
+                return;
+            }
+            orphanBlobFile(hash, file, report);
+        }
+    }
+
+    // Строки blobs диапазона шарда по возрастанию хеша, страницами по batch-size
+    private final class BlobCursor {
+        private final String upper;
+        private String after;
+        private List<BlobRepository.BlobState> page = List.of();
+        private int index;
+        private boolean exhausted;
+
+        private BlobCursor(String prefix) {
+            // Любой хеш с этим префиксом больше самого префикса и меньше префикса с символом после 'f'
+            this.after = prefix;
+            this.upper = prefix + "g";
+        }
+
+        BlobRepository.BlobState peek() {
+            if (index == page.size()) {
+                if (exhausted) {
+                    return null;
+                }
+                page = blobRepository.findRange(after, upper, batchSize);
+                index = 0;
+                exhausted = page.size() < batchSize;
+                if (page.isEmpty()) {
+                    return null;
+                }
+                after = page.get(page.size() - 1).getHash();
+            }
+            return page.get(index);
+        }
+
+        BlobRepository.BlobState next() {
+            BlobRepository.BlobState row = peek();
+            if (row != null) {
+                index++;
+            }
+            return row;
+        }
+    }
+
+    // Имя файла - хеш блоба с суффиксом кодека, и лежит файл там, куда его положила бы раскладка
+    private String hashOf(Path file) {
+        String name = file.getFileName().toString();
+        for (ContentCodec codec : ContentCodec.values()) {
+            if (!codec.suffix().isEmpty() && name.endsWith(codec.suffix())) {
+                String hash = name.substring(0, name.length() - codec.suffix().length());
+                return isBlobFile(file, hash, codec) ? hash : null;
+            }
+        }
+        return isBlobFile(file, name, ContentCodec.NONE) ? name : null;
+    }
+
+    private boolean isBlobFile(Path file, String hash, ContentCodec codec) {
+        if (hash.length() != HASH_LENGTH || !isHex(hash)) {
+            return false;
+        }
+        if (!fileSystemStorageService.blobPath(hash, codec).equals(file)) {
+            log.debug("Файл не на своем месте в раскладке, пропуск: {}", file);
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean isHex(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Строка без ссылок - забота сборщика блобов; файл мог остаться в прежней раскладке
+    private void missingBlob(BlobRepository.BlobState row, ReconcileReport report) {
+        if (row.getRefCount() <= 0 || fileSystemStorageService.blobStored(row.getHash())) {
+            return;
+        }
+        record(report, Kind.BLOB_ROW, row.getHash() + " (ссылок: " + row.getRefCount() + ")");
+    }
+
+    private void orphanBlobFile(String hash, Path file, ReconcileReport report) throws IOException {
+        // Строка могла появиться после чтения страницы
+        if (!oldEnough(file) || blobRepository.existsById(hash)) {
+            return;
+        }
+        if (quarantine) {
+            long size = Files.size(file);
+            // Загрузка сначала вставляет строку, потом кладет файл: пока наша строка без ссылок
+            // не зафиксирована, параллельная загрузка того же содержимого ждет ее
+            Boolean claimed = transactionTemplate.execute(status -> {
+                if (blobRepository.claimOrphan(hash, size) == 0) {
+                    return false;
+                }
+                for (ContentCodec codec : ContentCodec.values()) {
+                    Path variant = fileSystemStorageService.blobPath(hash, codec);
+                    if (Files.exists(variant)) {
+                        moveToQuarantine(variant);
+                    }
+                }
+                blobRepository.deleteUnreferenced(hash);
+                return true;
+            });
+            if (!Boolean.TRUE.equals(claimed)) {
+                return;
+            }
+        }
+        record(report, Kind.BLOB_FILE, relative(file));
+    }
+
+    // Временные файлы загрузок, переживших самую долгую загрузку
+    private void reconcileTempFiles(ReconcileReport report) throws IOException {
+        Path tmpDir = fileSystemStorageService.blobsRoot().resolve(TEMP_DIR);
+        if (!Files.isDirectory(tmpDir)) {
+            return;
+        }
+        for (Path file : sortedEntries(tmpDir)) {
+            checkStopping();
+            if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS) || !oldEnough(file)) {
+                continue;
+            }
+            if (quarantine) {
+                moveToQuarantine(file);
+            }
+            record(report, Kind.TEMP_FILE, relative(file));
+        }
+    }
+
+    // Каталоги пользователей по возрастанию имени; служебные каталоги хранилища начинаются с точки
+    private void reconcileLegacy(ReconcileReport report, ReconcileCheckpoint checkpoint) throws IOException {
+        Path root = fileSystemStorageService.storageRoot();
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        for (Path dir : sortedEntries(root)) {
+            String login = dir.getFileName().toString();
+            if (login.startsWith(".") || !Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)
+                    || checkpoint.legacyDone(login)) {
+                continue;
+            }
+            checkStopping();
+            reconcileUserDirectory(login, dir, report);
+            checkpoint.markLegacy(login);
+        }
+        // Строки пользователей, у которых каталога нет вовсе
+        for (FileRepository.LegacyOwner owner : fileRepository.findLegacyOwners()) {
+            if (!Files.isDirectory(root.resolve(owner.getLogin()))) {
+                forEachLegacyFile(owner.getId(), row -> checkLegacyRow(row, report));
+            }
+        }
+    }
+
+    private void reconcileUserDirectory(String login, Path dir, ReconcileReport report) throws IOException {
+        Set<Path> onDisk = new HashSet<>();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.filter(file -> Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)).forEach(file -> {
+                throttle.acquire();
+                scannedFiles.increment();
+                report.scanned();
+                onDisk.add(file);
+            });
+        }
+        Long userId = userRepository.findIdByLogin(login).orElse(null);
+        if (userId != null) {
+            forEachLegacyFile(userId, row -> {
+                Path path = storedPath(row);
+                if (path != null && !onDisk.remove(path)) {
+                    checkLegacyRow(row, report);
+                }
+            });
+        }
+        if (onDisk.isEmpty()) {
+            return;
+        }
+        // Переименование могло зафиксироваться между обходом и чтением строк - строки читаются еще раз
+        if (userId != null) {
+            forEachLegacyFile(userId, row -> onDisk.remove(storedPath(row)));
+        }
+        List<Path> orphans = new ArrayList<>(onDisk);
+        orphans.sort(Comparator.naturalOrder());
+        for (Path file : orphans) {
+            if (!Files.exists(file) || !oldEnough(file)) {
+                continue;
+            }
+            if (quarantine) {
+                moveToQuarantine(file);
+            }
+            record(report, Kind.LEGACY_FILE, relative(file));
+        }
+    }
+
+    // Перед записью в отчет строка перечитывается: файл мог уйти в хранилище блобов
+    private void checkLegacyRow(FileRepository.LegacyFile row, ReconcileReport report) {
+        Path path = storedPath(row);
+        if (path == null || Files.exists(path)) {
+            return;
+        }
+        String current = fileRepository.findFilePath(row.getId()).orElse(null);
+        if (row.getFilePath().equals(current)) {
+            record(report, Kind.LEGACY_ROW, "файл " + row.getId() + ": " + row.getFilePath());
+        }
+    }
+
+    private Path storedPath(FileRepository.LegacyFile row) {
+        if (row.getFilePath() == null) {
+            return null;
+        }
+        try {
+            return fileSystemStorageService.resolveStoredPath(row.getFilePath());
+        } catch (SecurityException e) {
+            return null;
+        }
+    }
+
+    private void forEachLegacyFile(Long ownerId, Consumer<FileRepository.LegacyFile> action) {
+        long afterId = 0;
+        List<FileRepository.LegacyFile> page;
+        do {
+            checkStopping();
+            page = fileRepository.findLegacyFiles(ownerId, afterId, PageRequest.of(0, batchSize));
+            page.forEach(action);
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == batchSize);
+    }
+
+    // Свежий файл может принадлежать операции, которая еще не зафиксировала строку
+    private boolean oldEnough(Path file) throws IOException {
+        return Files.getLastModifiedTime(file).toMillis() < System.currentTimeMillis() - minAgeMillis;
+    }
+
+    private void moveToQuarantine(Path file) {
+        Path target = fileSystemStorageService.storageRoot().resolve(QUARANTINE_DIR).resolve(relative(file));
+        if (Files.exists(target)) {
+            // Тот же путь уже попадал в карантин прежними проходами
+            target = target.resolveSibling(target.getFileName() + "." + System.currentTimeMillis());
+        }
+        try {
+            fileSystemStorageService.moveFile(file, target);
+            log.info("Файл перенесен в карантин: {}", target);
+        } catch (IOException e) {
+            throw new FileStorageException("Не удалось перенести в карантин " + file, e);
+        }
+    }
+
+    private String relative(Path file) {
+        return fileSystemStorageService.storageRoot().relativize(file.toAbsolutePath().normalize()).toString();
+    }
+
+    private void record(ReconcileReport report, Kind kind, String what) {
+        orphanCounters.get(kind).increment();
+        if (report.add(kind, what)) {
+            log.warn("Сверка хранилища: {} {}", kind, what);
+        }
+    }
+
+    private void checkStopping() {
+        if (stopping) {
+            throw new CancellationException("Сверка хранилища остановлена");
+        }
+    }
+
+    private List<Path> sortedEntries(Path dir) throws IOException {
+        checkStopping();
+        try (Stream<Path> entries = Files.list(dir)) {
+            return entries.sorted(Comparator.comparing(entry -> entry.getFileName().toString())).toList();
+        }
+    }
+
+    // Общий для всех потоков обхода предел файлов в секунду; 0 - без ограничения
+    private final class Throttle {
+        private final long intervalNanos;
+        private final AtomicLong nextSlot = new AtomicLong(System.nanoTime());
+
+        private Throttle(int perSecond) {
+            this.intervalNanos = perSecond > 0 ? 1_000_000_000L / perSecond : 0;
+        }
+
+        void acquire() {
+            checkStopping();
+            if (intervalNanos == 0) {
+                return;
+            }
+            long slot = nextSlot.getAndAccumulate(intervalNanos,
+                    (next, step) -> Math.max(next, System.nanoTime()) + step);
+            long wait = slot - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+}
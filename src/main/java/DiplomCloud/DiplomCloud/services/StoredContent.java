@@ -0,0 +1,15 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.models.Blob;
+import DiplomCloud.DiplomCloud.models.ContentCodec;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Блоб, на который ссылается файл, и вариант его хранения на диске
+@Getter
+@AllArgsConstructor
+public class StoredContent {
+    private final Blob blob;
+    private final ContentCodec codec;
+    private final long storedSize;
+}
@@ -0,0 +1,85 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.models.ContentCodec;
+import DiplomCloud.DiplomCloud.models.StorageTier;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Проверенное расположение содержимого файла; size - размер до сжатия, который видит клиент
+@Getter
+@AllArgsConstructor
+public class StoredFile {
+    // Путь на локальном томе; null - содержимое доступно только через backend (S3)
+    private final Path path;
+    private final ContentCodec codec;
+    private final long size;
+    // SHA-256 содержимого; null у файлов, еще не перенесенных в блобы
+    private final String hash;
+    // Время загрузки файла, мс - его отдает Last-Modified
+    private final long lastModified;
+    // Строка files, по которой учитываются скачивания; null - файл вне БД
+    private final Long fileId;
+    private final StorageTier tier;
+    // Хранилище и ключ содержимого; null - файл задан только путем
+    private final StorageBackend backend;
+    private final String key;
+
+    public StoredFile(Path path, ContentCodec codec, long size, String hash, long lastModified, Long fileId,
+                      StorageTier tier) {
+        this(path, codec, size, hash, lastModified, fileId, tier, null, null);
+    }
+
+    public StoredFile(Path path, ContentCodec codec, long size, String hash, long lastModified) {
+        this(path, codec, size, hash, lastModified, null, StorageTier.HOT);
+    }
+
+    // Байты в хранимом виде (сжатый файл - сжатыми), length < 0 - до конца
+    public InputStream open(long offset, long length) throws IOException {
+        if (path == null) {
+            return backend.get(key, offset, length);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        InputStream in = Channels.newInputStream(channel);
+        return length < 0 ? in : new LimitedInputStream(in, length);
+    }
+
+    // Канал для чтения целиком; удаленный объект сначала копируется во временный файл,
+    // который исчезнет при закрытии канала
+    public FileChannel channel() throws IOException {
+        if (path != null) {
+            return FileChannel.open(path, StandardOpenOption.READ);
+        }
+        Path staged = Files.createTempFile("stored-", ".tmp");
+        try (InputStream in = backend.get(key, 0, -1)) {
+            Files.copy(in, staged, StandardCopyOption.REPLACE_EXISTING);
+            return FileChannel.open(staged, StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(staged);
+            throw e;
+        }
+    }
+
+    // Размер в хранилище: у сжатого файла отличается от size
+    public long storedLength() throws IOException {
+        if (path == null) {
+            return backend.size(key).orElseThrow(() -> new NoSuchFileException(key));
+        }
+        return Files.size(path);
+    }
+}
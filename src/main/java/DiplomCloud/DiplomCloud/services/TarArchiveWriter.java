@@ -0,0 +1,194 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.models.ContentCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*TAR (ustar) потоком: заголовок в 512 байт, содержимое, выравнивание до 512. Размер нужен до содержимого,
+он берется из записи в БД; сжатые при хранении файлы распаковываются на лету. Имена длиннее ustar
+и файлы от 8 GB получают расширенный заголовок PAX
+* */
+final class TarArchiveWriter implements ArchiveWriter {
+    private static final int BLOCK = 512;
+    private static final int NAME_LENGTH = 100;
+    private static final int PREFIX_LENGTH = 155;
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+    private static final byte REGULAR = '0';
+    private static final byte PAX = 'x';
+    private static final byte[] ZERO_BLOCK = new byte[BLOCK];
+
+    private final OutputStream out;
+    private final WritableByteChannel target;
+    private final byte[] buffer = new byte[64 * 1024];
+
+    TarArchiveWriter(OutputStream out) {
+        this.out = out;
+        this.target = Channels.newChannel(out);
+    }
+
+    @Override
+    public void add(String name, StoredFile file, FileChannel channel) throws IOException {
+        long size = file.getSize();
+        // До заголовка: файл другого размера испортил бы архив, а пропустить его еще можно
+        if (file.getCodec() == ContentCodec.NONE && channel.size() != size) {
+            throw new IOException("Размер файла на диске " + channel.size() + " не совпадает с записью " + size);
+        }
+        long mtime = file.getLastModified() / 1000;
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int split = split(nameBytes);
+
+        Map<String, String> extended = new LinkedHashMap<>();
+        if (split < 0) {
+            extended.put("path", name);
+        }
+        if (size > MAX_OCTAL_SIZE) {
+            extended.put("size", Long.toString(size));
+        }
+        if (!extended.isEmpty()) {
+            byte[] records = paxRecords(extended);
+            writeHeader(new byte[0], "PaxHeader".getBytes(StandardCharsets.US_ASCII), records.length, mtime, PAX);
+            out.write(records);
+            pad(records.length);
+        }
+
+        if (split < 0) {
+            // Имя из PAX главнее; в ustar остается хвост для старых читателей
+            writeHeader(new byte[0], tail(nameBytes), size, mtime, REGULAR);
+        } else {
+            writeHeader(slice(nameBytes, 0, split), slice(nameBytes, split == 0 ? 0 : split + 1, nameBytes.length),
+                    size, mtime, REGULAR);
+        }
+        if (file.getCodec() == ContentCodec.NONE) {
+            copy(channel, size);
+        } else {
+            try (InputStream in = file.getCodec().decode(Channels.newInputStream(channel))) {
+                copy(in, size);
+            }
+        }
+        pad(size);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        out.write(ZERO_BLOCK);
+        out.write(ZERO_BLOCK);
+        out.flush();
+    }
+
+    /*Позиция '/', по которой имя делится на prefix и name ustar; 0 - имя целиком влезает в name,
+    -1 - не делится никак. '/' в UTF-8 не встречается внутри многобайтовых символов
+    * */
+    static int split(byte[] name) {
+        if (name.length <= NAME_LENGTH) {
+            return 0;
+        }
+        for (int i = Math.min(PREFIX_LENGTH, name.length - 1); i > 0; i--) {
+            if (name[i] == '/') {
+                int rest = name.length - i - 1;
+                return rest > 0 && rest <= NAME_LENGTH ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    private void writeHeader(byte[] prefix, byte[] name, long size, long mtime, byte type) throws IOException {
+        byte[] header = new byte[BLOCK];
+        System.arraycopy(name, 0, header, 0, Math.min(name.length, NAME_LENGTH));
+        octal(header, 100, 8, 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        // Размер больше восьмеричного поля уже записан в PAX
+        octal(header, 124, 12, size > MAX_OCTAL_SIZE ? 0 : size);
+        octal(header, 136, 12, mtime);
+        header[156] = type;
+        System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+        header[263] = '0';
+        header[264] = '0';
+        System.arraycopy(prefix, 0, header, 345, Math.min(prefix.length, PREFIX_LENGTH));
+        // Контрольная сумма считается с полем суммы, заполненным пробелами
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        octal(header, 148, 7, checksum);
+        header[155] = ' ';
+        out.write(header);
+    }
+
+    // Запись PAX: "<длина> <ключ>=<значение>\n", длина считает и собственные цифры
+    static byte[] paxRecords(Map<String, String> values) {
+        StringBuilder records = new StringBuilder();
+        values.forEach((key, value) -> {
+            int body = (" " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8).length;
+            int length = body + Integer.toString(body).length();
+            if (Integer.toString(length).length() > Integer.toString(body).length()) {
+                length++;
+            }
+            records.append(length).append(' ').append(key).append('=').append(value).append('\n');
+        });
+        return records.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void copy(FileChannel channel, long size) throws IOException {
+        long position = 0;
+        while (position < size) {
+            long transferred = channel.transferTo(position, size - position, target);
+            if (transferred <= 0) {
+                throw new IOException("Файл был укорочен во время отдачи");
+            }
+            position += transferred;
+        }
+    }
+
+    private void copy(InputStream in, long size) throws IOException {
+        long remaining = size;
+        while (remaining > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                throw new IOException("Содержимое файла короче записи " + size);
+            }
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    private void pad(long size) throws IOException {
+        int tail = (int) (size % BLOCK);
+        if (tail > 0) {
+            out.write(ZERO_BLOCK, 0, BLOCK - tail);
+        }
+    }
+
+    private static void octal(byte[] header, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        int start = offset + length - 1 - digits.length();
+        for (int i = offset; i < start; i++) {
+            header[i] = '0';
+        }
+        for (int i = 0; i < digits.length(); i++) {
+            header[start + i] = (byte) digits.charAt(i);
+        }
+        header[offset + length - 1] = 0;
+    }
+
+    private static byte[] tail(byte[] name) {
+        return slice(name, Math.max(0, name.length - NAME_LENGTH), name.length);
+    }
+
+    private static byte[] slice(byte[] bytes, int from, int to) {
+        byte[] slice = new byte[to - from];
+        System.arraycopy(bytes, from, slice, 0, slice.length);
+        return slice;
+    }
+}
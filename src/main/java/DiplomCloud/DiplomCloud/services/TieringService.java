@@ -0,0 +1,295 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.models.ContentCodec;
+import DiplomCloud.DiplomCloud.models.StorageTier;
+import DiplomCloud.DiplomCloud.repositories.BlobRepository;
+import DiplomCloud.DiplomCloud.repositories.FileRepository;
+import DiplomCloud.DiplomCloud.services.FileAccessTracker.BlobVariant;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*Горячий и холодный уровни хранения. Блобы, к файлам которых давно не обращались, переносятся
+в корень холодного уровня, а скачанные оттуда возвращаются на основной том. Единица переноса -
+вариант блоба (содержимое и кодек): все его файлы меняют уровень одним UPDATE.
+Перенос в три шага: копия на целевом уровне заранее записывается в tier_cleanup, затем пишется
+на диск, затем под блокировкой строки блоба (ее же берут загрузка, удаление и сборщик) строки files
+переключаются, а прежняя копия ставится в очередь очистки. Очистка удаляет копию через grace после
+переключения и только если на ее уровне не осталось файлов, поэтому скачивания, уже открывшие
+или разрешившие старый путь, дочитывают его, а прерванный перенос не оставляет мусора
+* */
+@Service
+@Slf4j
+public class TieringService {
+    private final FileRepository fileRepository;
+    private final BlobRepository blobRepository;
+    private final FileSystemStorageService fileSystemStorageService;
+    private final FileAccessTracker fileAccessTracker;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long coldAfterMillis;
+    private final long graceMillis;
+    private final int batchSize;
+    private final ExecutorService executor;
+    private final Map<StorageTier, Counter> moveCounters = new EnumMap<>(StorageTier.class);
+    private final Counter failures;
+    private final AtomicBoolean demoting = new AtomicBoolean();
+    private final AtomicBoolean promoting = new AtomicBoolean();
+
+    private volatile boolean stopping;
+
+    public TieringService(FileRepository fileRepository,
+                          BlobRepository blobRepository,
+                          FileSystemStorageService fileSystemStorageService,
+                          FileAccessTracker fileAccessTracker,
+                          TransactionTemplate transactionTemplate,
+                          MeterRegistry meterRegistry,
+                          @Value("${file.tiering.enabled}") boolean enabled,
+                          @Value("${file.tiering.cold-after}") long coldAfterMillis,
+                          @Value("${file.tiering.grace}") long graceMillis,
+                          @Value("${file.tiering.batch-size}") int batchSize) {
+        this.fileRepository = fileRepository;
+        this.blobRepository = blobRepository;
+        this.fileSystemStorageService = fileSystemStorageService;
+        this.fileAccessTracker = fileAccessTracker;
+        this.transactionTemplate = transactionTemplate;
+        // Копия между уровнями пишется с тома на том; горячий уровень в удаленном хранилище не поддерживается
+        this.enabled = enabled && !fileSystemStorageService.remoteStorage();
+        if (enabled && !this.enabled) {
+            log.warn("Уровни хранения отключены: хранилище блобов не локальное");
+        }
+        this.coldAfterMillis = coldAfterMillis;
+        this.graceMillis = graceMillis;
+        this.batchSize = batchSize;
+        this.executor = Executors.newSingleThreadExecutor(task -> new Thread(task, "storage-tiering"));
+        for (StorageTier tier : StorageTier.values()) {
+            moveCounters.put(tier, Counter.builder("cloud.tiering.moves")
+                    .description("Блобы, перенесенные между уровнями хранения")
+                    .tag("to", tier.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+        this.failures = Counter.builder("cloud.tiering.failures")
+                .description("Переносы между уровнями, прерванные ошибкой")
+                .register(meterRegistry);
+    }
+
+    // Потоки планировщика только ставят работу в свой поток: копирование между томами может быть долгим
+    @Scheduled(fixedDelayString = "${file.tiering.interval}")
+    public void scheduleDemotion() {
+        submit(demoting, () -> {
+            demote();
+            sweep();
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${file.tiering.promote-interval}")
+    public void schedulePromotion() {
+        submit(promoting, this::promote);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopping = true;
+        executor.shutdownNow();
+    }
+
+    // Горячие блобы, к файлам которых не обращались дольше cold-after, уходят на холодный уровень
+    public int demote() {
+        fileAccessTracker.flush();
+        Instant cutoff = Instant.now().minusMillis(coldAfterMillis);
+        Instant afterAt = Instant.EPOCH;
+        Long afterId = 0L;
+        int moved = 0;
+        List<FileRepository.TierCandidate> page;
+        do {
+            page = fileRepository.findColdCandidates(cutoff, afterAt, afterId, PageRequest.of(0, batchSize));
+            Set<BlobVariant> variants = new LinkedHashSet<>();
+            for (FileRepository.TierCandidate candidate : page) {
+                variants.add(new BlobVariant(candidate.getHash(), candidate.getCodec()));
+                afterAt = candidate.getAccessedAt();
+                afterId = candidate.getId();
+            }
+            for (BlobVariant variant : variants) {
+                if (stopping) {
+                    return moved;
+                }
+                if (moveSafely(variant, StorageTier.HOT, StorageTier.COLD, cutoff)) {
+                    moved++;
+                }
+            }
+        } while (page.size() == batchSize);
+
+        if (moved > 0) {
+            log.info("Перенесено на холодный уровень блобов: {}", moved);
+        }
+        return moved;
+    }
+
+    // Холодные блобы, файлы которых скачивали, возвращаются на основной том
+    public int promote() {
+        int moved = 0;
+        List<BlobVariant> variants;
+        do {
+            variants = fileAccessTracker.drainPromotions(batchSize);
+            for (BlobVariant variant : variants) {
+                if (stopping) {
+                    return moved;
+                }
+                if (moveSafely(variant, StorageTier.COLD, StorageTier.HOT, null)) {
+                    moved++;
+                }
+            }
+        } while (variants.size() == batchSize);
+
+        if (moved > 0) {
+            log.info("Возвращено на основной уровень блобов: {}", moved);
+        }
+        return moved;
+    }
+
+    // Копии, ожидающие очистки: удаляются, если на их уровне не осталось файлов
+    public int sweep() {
+        int deleted = 0;
+        List<BlobRepository.TierCleanup> due;
+        do {
+            due = blobRepository.findDueCleanups(Instant.now(), batchSize);
+            for (BlobRepository.TierCleanup cleanup : due) {
+                try {
+                    Boolean result = transactionTemplate.execute(status -> clean(cleanup.getHash(),
+                            ContentCodec.valueOf(cleanup.getCodec()), StorageTier.valueOf(cleanup.getTier())));
+                    if (Boolean.TRUE.equals(result)) {
+                        deleted++;
+                    }
+                } catch (RuntimeException e) {
+                    // Запись останется в очереди, очистка повторится следующим проходом
+                    failures.increment();
+                    log.warn("Не удалось очистить копию блоба {} на уровне {}: {}", cleanup.getHash(),
+                            cleanup.getTier(), e.getMessage());
+                    return deleted;
+                }
+            }
+        } while (due.size() == batchSize);
+
+        if (deleted > 0) {
+            log.info("Удалено копий блобов, оставшихся без файлов: {}", deleted);
+        }
+        return deleted;
+    }
+
+    private void submit(AtomicBoolean running, Runnable work) {
+        if (!enabled || !fileSystemStorageService.coldTierConfigured() || !running.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                work.run();
+            } catch (RuntimeException e) {
+                log.error("Перенос между уровнями хранения прерван: {}", e.getMessage(), e);
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    private boolean moveSafely(BlobVariant variant, StorageTier from, StorageTier to, Instant cutoff) {
+        try {
+            boolean moved = move(variant, from, to, cutoff);
+            if (moved) {
+                moveCounters.get(to).increment();
+            }
+            return moved;
+        } catch (IOException | RuntimeException e) {
+            // Файлы остаются на прежнем уровне; недописанную копию уберет очистка
+            failures.increment();
+            log.warn("Не удалось перенести блоб {} на уровень {}: {}", variant.getHash(), to, e.getMessage());
+            return false;
+        }
+    }
+
+    // cutoff != null - перенос только если к файлам блоба так и не обращались после cutoff
+    private boolean move(BlobVariant variant, StorageTier from, StorageTier to, Instant cutoff) throws IOException {
+        String hash = variant.getHash();
+        ContentCodec codec = variant.getCodec();
+        transactionTemplate.executeWithoutResult(status ->
+                blobRepository.scheduleCleanup(hash, codec.name(), to.name(), dueAt()));
+        try {
+            fileSystemStorageService.copyBlob(hash, codec, from, to);
+        } catch (NoSuchFileException e) {
+            // Блоб удален или еще лежит в прежней раскладке - его файлы не переносятся
+            log.debug("Копии блоба {} нет на уровне {}, пропуск", hash, from);
+            return false;
+        }
+
+        String location = fileSystemStorageService.blobLocation(hash, codec);
+        Boolean switched = transactionTemplate.execute(status -> {
+            if (blobRepository.lock(hash).isEmpty()) {
+                return false;
+            }
+            if (cutoff != null) {
+                Instant lastAccess = fileRepository.findLastAccess(hash, codec, from);
+                if (lastAccess == null || !lastAccess.isBefore(cutoff)) {
+                    return false;
+                }
+            }
+            if (!Files.isRegularFile(fileSystemStorageService.blobPath(to, hash, codec))) {
+                return false;
+            }
+            if (fileRepository.moveTier(hash, codec, location, from, to) == 0) {
+                return false;
+            }
+            blobRepository.scheduleCleanup(hash, codec.name(), from.name(), dueAt());
+            blobRepository.deleteCleanup(hash, codec.name(), to.name());
+            return true;
+        });
+        if (Boolean.TRUE.equals(switched)) {
+            log.debug("Блоб {} перенесен на уровень {}", hash, to);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean clean(String hash, ContentCodec codec, StorageTier tier) {
+        boolean deleted = false;
+        try {
+            if (blobRepository.lock(hash).isPresent()) {
+                if (fileRepository.countOnTier(hash, codec, tier) == 0) {
+                    fileSystemStorageService.deleteBlobCopy(tier, hash, codec);
+                    deleted = true;
+                }
+            } else if (blobRepository.claimOrphan(hash, 0) == 1) {
+                // Блоб удален во время переноса: строка-заглушка держит блокировку до конца транзакции
+                // и не переживет ее, так что загрузка того же содержимого дождется удаления копии
+                fileSystemStorageService.deleteBlobCopy(tier, hash, codec);
+                blobRepository.deleteUnreferenced(hash);
+                deleted = true;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Ошибка файловой системы: " + e.getMessage(), e);
+        }
+        blobRepository.deleteCleanup(hash, codec.name(), tier.name());
+        return deleted;
+    }
+
+    private Instant dueAt() {
+        return Instant.now().plusMillis(graceMillis);
+    }
+}
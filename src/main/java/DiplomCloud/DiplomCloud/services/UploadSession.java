@@ -0,0 +1,125 @@
+package DiplomCloud.DiplomCloud.services;
+
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*Состояние одной сессии загрузки по частям. Принятые диапазоны хранятся как
+непересекающиеся полуинтервалы [start, end), соседние объединяются при добавлении
+* */
+public class UploadSession {
+    @Getter
+    private final String id;
+    @Getter
+    private final String username;
+    @Getter
+    private final String filename;
+    @Getter
+    private final long size;
+    @Getter
+    private final Path dataFile;
+    @Getter
+    private volatile long lastActivity;
+
+    private final TreeMap<Long, Long> ranges = new TreeMap<>();
+    private int activeWrites;
+    private boolean closed;
+
+    public UploadSession(String id, String username, String filename, long size, Path dataFile) {
+        this.id = id;
+        this.username = username;
+        this.filename = filename;
+        this.size = size;
+        this.dataFile = dataFile;
+        this.lastActivity = System.currentTimeMillis();
+    }
+
+    public void touch() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    synchronized boolean beginWrite() {
+        if (closed) {
+            return false;
+        }
+        activeWrites++;
+        touch();
+        return true;
+    }
+
+    synchronized void endWrite(long start, long end) {
+        activeWrites--;
+        touch();
+        if (end > start) {
+            addRange(start, end);
+        }
+    }
+
+    synchronized void endWrite() {
+        activeWrites--;
+    }
+
+    // Закрывает сессию для новых частей, если она полностью получена и запись не идет
+    synchronized boolean tryClose() {
+        if (closed || activeWrites > 0 || !isComplete()) {
+            return false;
+        }
+        closed = true;
+        return true;
+    }
+
+    synchronized void reopen() {
+        closed = false;
+        touch();
+    }
+
+    // Для сборщика: закрывает сессию, если в нее не пишут
+    synchronized boolean closeIfIdle() {
+        if (closed || activeWrites > 0) {
+            return false;
+        }
+        closed = true;
+        return true;
+    }
+
+    public synchronized boolean isComplete() {
+        Map.Entry<Long, Long> first = ranges.firstEntry();
+        return size == 0 || (first != null && first.getKey() == 0 && first.getValue() == size);
+    }
+
+    public synchronized long getReceivedBytes() {
+        long total = 0;
+        for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+            total += range.getValue() - range.getKey();
+        }
+        return total;
+    }
+
+    // Принятые диапазоны в виде включительных пар [start, end], как в HTTP Range
+    public synchronized List<long[]> getReceivedRanges() {
+        List<long[]> result = new ArrayList<>(ranges.size());
+        for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+            result.add(new long[]{range.getKey(), range.getValue() - 1});
+        }
+        return result;
+    }
+
+    private void addRange(long start, long end) {
+        Map.Entry<Long, Long> floor = ranges.floorEntry(start);
+        if (floor != null && floor.getValue() >= start) {
+            start = floor.getKey();
+            end = Math.max(end, floor.getValue());
+        }
+        Map.Entry<Long, Long> next = ranges.ceilingEntry(start);
+        while (next != null && next.getKey() <= end) {
+            end = Math.max(end, next.getValue());
+            ranges.remove(next.getKey());
+            next = ranges.ceilingEntry(start);
+        }
+        ranges.put(start, end);
+    }
+}
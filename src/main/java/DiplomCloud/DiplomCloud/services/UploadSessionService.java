@@ -0,0 +1,223 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.exception.FileAlreadyExistsRuntimeException;
+import DiplomCloud.DiplomCloud.exception.FileStorageException;
+import DiplomCloud.DiplomCloud.exception.UploadSessionException;
+import DiplomCloud.DiplomCloud.exception.UploadSessionNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*Загрузка больших файлов по частям: части пишутся позиционно (FileChannel) в один
+заранее выделенный файл в каталоге хранилища, поэтому при завершении ничего не склеивается,
+а в хранилище блобов попадает жесткая ссылка на файл. Запись в БД появляется только при завершении
+* */
+@Service
+@Slf4j
+public class UploadSessionService {
+    static final String UPLOADS_DIR = ".uploads";
+
+    private final FileStorageService fileStorageService;
+    private final QuotaService quotaService;
+    private final Path uploadsDir;
+    private final long sessionTimeout;
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    public UploadSessionService(FileStorageService fileStorageService,
+                                QuotaService quotaService,
+                                @Value("${file.storage.path}") String storagePath,
+                                @Value("${file.upload.session-timeout}") long sessionTimeout) {
+        this.fileStorageService = fileStorageService;
+        this.quotaService = quotaService;
+        this.uploadsDir = Paths.get(storagePath, UPLOADS_DIR);
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    public UploadSession openSession(String username, String filename, long size) {
+        log.info("Открытие сессии загрузки - пользователь: {}, имя файла: {}, размер: {} bytes",
+                username, filename, size);
+        if (size < 0) {
+            throw new UploadSessionException("Размер файла не может быть отрицательным");
+        }
+        fileStorageService.resolveSafeKey(username, filename);
+        if (fileStorageService.fileExists(username, filename)) {
+            throw new FileAlreadyExistsRuntimeException("Файл уже существует: " + filename);
+        }
+        // Место под файл выделяется только в пределах квоты; при завершении она проверяется еще раз
+        quotaService.checkAvailable(username, size);
+
+        String id = UUID.randomUUID().toString();
+        Path dataFile = uploadsDir.resolve(id);
+        try {
+            Files.createDirectories(uploadsDir);
+            // Место под файл выделяется сразу, части дописываются по смещению
+            try (RandomAccessFile raf = new RandomAccessFile(dataFile.toFile(), "rw")) {
+                raf.setLength(size);
+            }
+        } catch (IOException e) {
+            log.error("Не удалось создать файл сессии загрузки: {}", e.getMessage());
+            throw new FileStorageException("Не удалось открыть сессию загрузки для " + filename, e);
+        }
+
+        UploadSession session = new UploadSession(id, username, filename, size, dataFile);
+        sessions.put(id, session);
+        log.debug("Сессия загрузки открыта: {}", id);
+        return session;
+    }
+
+    public UploadSession writeChunk(String username, String sessionId, long offset, long contentLength,
+                                    InputStream body) {
+        UploadSession session = getSession(username, sessionId);
+        if (offset < 0 || offset > session.getSize()) {
+            throw new UploadSessionException("Недопустимое смещение: " + offset);
+        }
+        long maxLength = session.getSize() - offset;
+        if (contentLength > maxLength) {
+            throw new UploadSessionException("Часть выходит за пределы объявленного размера файла");
+        }
+        if (!session.beginWrite()) {
+            throw new UploadSessionNotFoundException(sessionId);
+        }
+
+        long written = 0;
+        try (FileChannel channel = FileChannel.open(session.getDataFile(), StandardOpenOption.WRITE)) {
+            ReadableByteChannel source = Channels.newChannel(body);
+            long transferred;
+            while (written < maxLength
+                    && (transferred = channel.transferFrom(source, offset + written, maxLength - written)) > 0) {
+                written += transferred;
+            }
+            if (written == maxLength && body.read() != -1) {
+                session.endWrite();
+                throw new UploadSessionException("Часть выходит за пределы объявленного размера файла");
+            }
+        } catch (IOException e) {
+            // Частично записанный фрагмент не учитывается, клиент повторит его целиком
+            session.endWrite();
+            log.error("Не удалось записать часть - сессия: {}, смещение: {}, ошибка: {}",
+                    sessionId, offset, e.getMessage());
+            throw new FileStorageException("Не удалось записать часть файла", e);
+        }
+
+        session.endWrite(offset, offset + written);
+        log.debug("Принята часть - сессия: {}, смещение: {}, размер: {} bytes", sessionId, offset, written);
+        return session;
+    }
+
+    public UploadSession getSession(String username, String sessionId) {
+        UploadSession session = sessions.get(sessionId);
+        if (session == null || !session.getUsername().equals(username)) {
+            throw new UploadSessionNotFoundException(sessionId);
+        }
+        return session;
+    }
+
+    public void commit(String username, String sessionId) {
+        UploadSession session = getSession(username, sessionId);
+        if (!session.tryClose()) {
+            throw new UploadSessionException("Файл получен не полностью: "
+                    + session.getReceivedBytes() + " из " + session.getSize() + " bytes");
+        }
+
+        try {
+            fileStorageService.storeUploadedFile(username, session.getFilename(), session.getDataFile(),
+                    session.getSize());
+        } catch (RuntimeException e) {
+            // Сессия остается открытой, чтобы клиент мог повторить завершение. Неудачное завершение
+            // могло оставить блоб жесткой ссылкой на файл сессии: новые части пишутся уже в свою копию
+            try {
+                detachDataFile(session.getDataFile());
+            } catch (IOException detachError) {
+                log.error("Не удалось отделить файл сессии {} от хранилища блобов, сессия закрыта: {}",
+                        sessionId, detachError.getMessage());
+                sessions.remove(sessionId);
+                deleteDataFile(session.getDataFile());
+                e.addSuppressed(detachError);
+                throw e;
+            }
+            session.reopen();
+            throw e;
+        }
+        sessions.remove(sessionId);
+        // Файл сессии удаляется только после коммита: до него в хранилище блобов - лишь ссылка на файл
+        deleteDataFile(session.getDataFile());
+        log.info("Сессия загрузки завершена: {}", sessionId);
+    }
+
+    public void abort(String username, String sessionId) {
+        UploadSession session = getSession(username, sessionId);
+        if (!session.closeIfIdle()) {
+            throw new UploadSessionException("Сессия загрузки занята: " + sessionId);
+        }
+        sessions.remove(sessionId);
+        deleteDataFile(session.getDataFile());
+        log.info("Сессия загрузки отменена: {}", sessionId);
+    }
+
+    // Удаляет брошенные сессии и файлы, оставшиеся от сессий до перезапуска
+    @Scheduled(fixedDelayString = "${file.upload.sweep-interval}")
+    public void sweepExpiredSessions() {
+        long deadline = System.currentTimeMillis() - sessionTimeout;
+        int removed = 0;
+        for (UploadSession session : sessions.values()) {
+            if (session.getLastActivity() < deadline && session.closeIfIdle()) {
+                sessions.remove(session.getId());
+                deleteDataFile(session.getDataFile());
+                removed++;
+            }
+        }
+
+        if (Files.isDirectory(uploadsDir)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(uploadsDir)) {
+                for (Path file : files) {
+                    if (!sessions.containsKey(file.getFileName().toString())
+                            && Files.getLastModifiedTime(file).toMillis() < deadline) {
+                        deleteDataFile(file);
+                        removed++;
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Не удалось просмотреть каталог сессий загрузки: {}", e.getMessage());
+            }
+        }
+        if (removed > 0) {
+            log.info("Удалено брошенных сессий загрузки: {}", removed);
+        }
+    }
+
+    // Заменяет файл сессии копией с тем же содержимым: прежний inode остается только у блоба
+    private void detachDataFile(Path dataFile) throws IOException {
+        Path copy = Files.createTempFile(uploadsDir, dataFile.getFileName().toString(), ".tmp");
+        try {
+            Files.copy(dataFile, copy, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(copy, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(copy);
+        }
+    }
+
+    private void deleteDataFile(Path dataFile) {
+        try {
+            Files.deleteIfExists(dataFile);
+        } catch (IOException e) {
+            log.warn("Не удалось удалить файл сессии {}: {}", dataFile, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.exception.UserNotFoundException;
+import DiplomCloud.DiplomCloud.repositories.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/*Логин -> id пользователя. Файловые операции работают по id владельца и не загружают User.
+Запись живет ограниченное время, поэтому удаление пользователя на другом узле
+замечается не позже чем через ttl; на этом узле запись сбрасывается сразу
+* */
+@Component
+@Slf4j
+public class UserCache {
+    private final UserRepository userRepository;
+    private final Cache<String, Long> userIds;
+
+    public UserCache(UserRepository userRepository,
+                     @Value("${auth.user-cache.size}") long cacheSize,
+                     @Value("${auth.user-cache.ttl}") long ttl) {
+        this.userRepository = userRepository;
+        this.userIds = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(Duration.ofMillis(ttl))
+                .build();
+    }
+
+    public Long resolveUserId(String username) {
+        Long userId = userIds.get(username, login -> userRepository.findIdByLogin(login).orElse(null));
+        if (userId == null) {
+            log.error("Пользователь не найден: {}", username);
+            throw new UserNotFoundException(username);
+        }
+        return userId;
+    }
+
+    // Токен выдан этому же пользователю, а не удаленному с тем же логином
+    public boolean isCurrent(String username, Long userId) {
+        try {
+            return resolveUserId(username).equals(userId);
+        } catch (UserNotFoundException e) {
+            return false;
+        }
+    }
+
+    public void remember(String username, Long userId) {
+        userIds.put(username, userId);
+    }
+
+    public void invalidate(String username) {
+        userIds.invalidate(username);
+    }
+}
@@ -0,0 +1,299 @@
+package DiplomCloud.DiplomCloud.services;
+
+import DiplomCloud.DiplomCloud.models.ContentCodec;
+import lombok.AllArgsConstructor;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/*ZIP, записываемый потоком. CRC и размеры каждого файла идут после содержимого (дескриптор данных),
+оглавление - в конце архива, и в памяти держится только оно. Все записи - deflate:
+- файл, хранящийся в gzip, отдается своим же deflate-потоком без распаковки и повторного сжатия,
+  CRC-32 и размер берутся из трейлера gzip;
+- несжатый файл (медиа и все, что хранилище решило не сжимать) пишется stored-блоками deflate -
+  копирование с заголовком в 5 байт на 64 KB без работы компрессора. Метод STORED потребовал бы
+  CRC до содержимого, то есть второго чтения файла.
+Файлы и архивы больше 4 GB получают расширения Zip64
+* */
+final class ZipArchiveWriter implements ArchiveWriter {
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int DATA_DESCRIPTOR = 0x08074b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int ZIP64_END = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int END = 0x06054b50;
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    private static final int ZIP64_ENTRIES = 0xFFFF;
+    private static final int ZIP64_EXTRA = 0x0001;
+    private static final short VERSION = 20;
+    private static final short VERSION_ZIP64 = 45;
+    // Бит 3 - CRC и размеры в дескрипторе после данных, бит 11 - имена в UTF-8
+    private static final short FLAGS = 0x0808;
+    private static final short DEFLATED = 8;
+    private static final int STORED_BLOCK = 0xFFFF;
+    private static final int STORED_BLOCK_HEADER = 5;
+    private static final int GZIP_HEADER = 10;
+    private static final int GZIP_TRAILER = 8;
+
+    private final CountingOutputStream out;
+    private final WritableByteChannel target;
+    private final byte[] buffer = new byte[STORED_BLOCK];
+    private final List<Entry> entries = new ArrayList<>();
+
+    ZipArchiveWriter(OutputStream out) {
+        this.out = new CountingOutputStream(out);
+        this.target = Channels.newChannel(this.out);
+    }
+
+    @Override
+    public void add(String name, StoredFile file, FileChannel channel) throws IOException {
+        long size = file.getSize();
+        GzipMember gzip = file.getCodec() == ContentCodec.GZIP ? gzipMember(channel, size) : null;
+        // Размер сжатых данных известен заранее, поэтому Zip64 решается до заголовка
+        long compressedSize = gzip != null ? gzip.length : storedDeflateSize(size);
+        boolean zip64 = size >= ZIP64_LIMIT || compressedSize >= ZIP64_LIMIT;
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int dosTime = dosTime(file.getLastModified());
+        long offset = out.count;
+
+        writeLocalHeader(nameBytes, dosTime, zip64);
+        long crc;
+        if (gzip != null) {
+            copy(channel, GZIP_HEADER, gzip.length);
+            crc = gzip.crc;
+        } else {
+            try (InputStream in = file.getCodec().decode(Channels.newInputStream(channel))) {
+                crc = writeStoredBlocks(in, size);
+            }
+        }
+        writeDataDescriptor(crc, compressedSize, size, zip64);
+        entries.add(new Entry(nameBytes, dosTime, crc, compressedSize, size, offset));
+    }
+
+    @Override
+    public void finish() throws IOException {
+        long directoryOffset = out.count;
+        for (Entry entry : entries) {
+            writeCentralHeader(entry);
+        }
+        long directorySize = out.count - directoryOffset;
+        int count = entries.size();
+        if (count >= ZIP64_ENTRIES || directoryOffset >= ZIP64_LIMIT || directorySize >= ZIP64_LIMIT) {
+            long zip64End = out.count;
+            write(buffer(56).putInt(ZIP64_END).putLong(44).putShort(VERSION_ZIP64).putShort(VERSION_ZIP64)
+                    .putInt(0).putInt(0).putLong(count).putLong(count)
+                    .putLong(directorySize).putLong(directoryOffset));
+            write(buffer(20).putInt(ZIP64_LOCATOR).putInt(0).putLong(zip64End).putInt(1));
+        }
+        short entryCount = (short) Math.min(count, ZIP64_ENTRIES);
+        write(buffer(22).putInt(END).putShort((short) 0).putShort((short) 0)
+                .putShort(entryCount).putShort(entryCount)
+                .putInt(narrow(directorySize)).putInt(narrow(directoryOffset))
+                .putShort((short) 0));
+        out.flush();
+    }
+
+    private void writeLocalHeader(byte[] name, int dosTime, boolean zip64) throws IOException {
+        // Сами CRC и размеры - в дескрипторе; у Zip64 здесь только метка, что они 8-байтовые
+        ByteBuffer header = buffer(30 + name.length + (zip64 ? 20 : 0))
+                .putInt(LOCAL_HEADER).putShort(zip64 ? VERSION_ZIP64 : VERSION).putShort(FLAGS).putShort(DEFLATED)
+                .putInt(dosTime).putInt(0)
+                .putInt(zip64 ? -1 : 0).putInt(zip64 ? -1 : 0)
+                .putShort((short) name.length).putShort((short) (zip64 ? 20 : 0))
+                .put(name);
+        if (zip64) {
+            header.putShort((short) ZIP64_EXTRA).putShort((short) 16).putLong(0).putLong(0);
+        }
+        write(header);
+    }
+
+    private void writeDataDescriptor(long crc, long compressedSize, long size, boolean zip64) throws IOException {
+        ByteBuffer descriptor = buffer(zip64 ? 24 : 16).putInt(DATA_DESCRIPTOR).putInt((int) crc);
+        if (zip64) {
+            descriptor.putLong(compressedSize).putLong(size);
+        } else {
+            descriptor.putInt((int) compressedSize).putInt((int) size);
+        }
+        write(descriptor);
+    }
+
+    private void writeCentralHeader(Entry entry) throws IOException {
+        boolean bigSize = entry.size >= ZIP64_LIMIT;
+        boolean bigCompressed = entry.compressedSize >= ZIP64_LIMIT;
+        boolean bigOffset = entry.offset >= ZIP64_LIMIT;
+        int extra = (bigSize ? 8 : 0) + (bigCompressed ? 8 : 0) + (bigOffset ? 8 : 0);
+        short version = extra > 0 ? VERSION_ZIP64 : VERSION;
+        ByteBuffer header = buffer(46 + entry.name.length + (extra > 0 ? extra + 4 : 0))
+                .putInt(CENTRAL_HEADER).putShort(version).putShort(version).putShort(FLAGS).putShort(DEFLATED)
+                .putInt(entry.dosTime).putInt((int) entry.crc)
+                .putInt(narrow(entry.compressedSize)).putInt(narrow(entry.size))
+                .putShort((short) entry.name.length).putShort((short) (extra > 0 ? extra + 4 : 0))
+                .putShort((short) 0).putShort((short) 0).putShort((short) 0).putInt(0)
+                .putInt(narrow(entry.offset))
+                .put(entry.name);
+        if (extra > 0) {
+            // Порядок полей Zip64 фиксирован: размер, сжатый размер, смещение - только переполненные
+            header.putShort((short) ZIP64_EXTRA).putShort((short) extra);
+            if (bigSize) {
+                header.putLong(entry.size);
+            }
+            if (bigCompressed) {
+                header.putLong(entry.compressedSize);
+            }
+            if (bigOffset) {
+                header.putLong(entry.offset);
+            }
+        }
+        write(header);
+    }
+
+    // Блоки без сжатия: байт заголовка, длина и ее дополнение; последний блок - пустой с флагом конца
+    private long writeStoredBlocks(InputStream in, long expectedSize) throws IOException {
+        CRC32 crc = new CRC32();
+        long written = 0;
+        int read;
+        while ((read = in.readNBytes(buffer, 0, STORED_BLOCK)) > 0) {
+            writeBlockHeader(false, read);
+            out.write(buffer, 0, read);
+            crc.update(buffer, 0, read);
+            written += read;
+            if (read < STORED_BLOCK) {
+                break;
+            }
+        }
+        writeBlockHeader(true, 0);
+        if (written != expectedSize) {
+            throw new IOException("Размер файла на диске " + written + " не совпадает с записью " + expectedSize);
+        }
+        return crc.getValue();
+    }
+
+    private void writeBlockHeader(boolean last, int length) throws IOException {
+        out.write(last ? 1 : 0);
+        out.write(length & 0xFF);
+        out.write(length >>> 8 & 0xFF);
+        out.write(~length & 0xFF);
+        out.write(~length >>> 8 & 0xFF);
+    }
+
+    static long storedDeflateSize(long size) {
+        long blocks = (size + STORED_BLOCK - 1) / STORED_BLOCK + 1;
+        return size + blocks * STORED_BLOCK_HEADER;
+    }
+
+    /*Хранилище пишет gzip одним членом с 10-байтовым заголовком без дополнительных полей.
+    Любой другой вид - null: такой файл распаковывается и пишется stored-блоками
+    * */
+    private static GzipMember gzipMember(FileChannel channel, long size) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < GZIP_HEADER + GZIP_TRAILER) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(GZIP_HEADER);
+        readFully(channel, header, 0);
+        if (header.get(0) != (byte) 0x1f || header.get(1) != (byte) 0x8b || header.get(2) != 8 || header.get(3) != 0) {
+            return null;
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(GZIP_TRAILER).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, trailer, fileSize - GZIP_TRAILER);
+        // ISIZE - размер исходных данных по модулю 2^32
+        if ((trailer.getInt(4) & ZIP64_LIMIT) != (size & ZIP64_LIMIT)) {
+            return null;
+        }
+        return new GzipMember(trailer.getInt(0) & ZIP64_LIMIT, fileSize - GZIP_HEADER - GZIP_TRAILER);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Файл был укорочен во время отдачи");
+            }
+        }
+    }
+
+    private void copy(FileChannel channel, long position, long count) throws IOException {
+        long end = position + count;
+        while (position < end) {
+            long transferred = channel.transferTo(position, end - position, target);
+            if (transferred <= 0) {
+                throw new IOException("Файл был укорочен во время отдачи");
+            }
+            position += transferred;
+        }
+    }
+
+    // Время в формате MS-DOS, как его пишет ZipEntry: локальное, с точностью до 2 секунд
+    static int dosTime(long millis) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            time = LocalDateTime.of(1980, 1, 1, 0, 0);
+        }
+        int date = (time.getYear() - 1980) << 9 | time.getMonthValue() << 5 | time.getDayOfMonth();
+        int clock = time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+        return date << 16 | clock;
+    }
+
+    private static int narrow(long value) {
+        return value >= ZIP64_LIMIT ? -1 : (int) value;
+    }
+
+    private static ByteBuffer buffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        out.write(buffer.array(), 0, buffer.position());
+    }
+
+    @AllArgsConstructor
+    private static final class GzipMember {
+        private final long crc;
+        private final long length;
+    }
+
+    // Запись оглавления: имя и то, что попадет в центральный заголовок
+    @AllArgsConstructor
+    private static final class Entry {
+        private final byte[] name;
+        private final int dosTime;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long offset;
+    }
+
+    // Смещения записей в архиве - число байт, уже отданных в поток
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
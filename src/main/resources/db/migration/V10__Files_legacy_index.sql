@@ -0,0 +1,3 @@
+-- Файлы старого формата (без блоба) по владельцу: сверка хранилища читает их страницами по id.
+-- Частичный индекс остается маленьким и пустеет по мере миграции в хранилище блобов
+CREATE INDEX idx_files_legacy ON files (user_id, id) WHERE blob_hash IS NULL;
@@ -0,0 +1,20 @@
+-- Уровень хранения содержимого файла: file_path отсчитывается от корня этого уровня.
+-- Все существующие файлы лежат на основном томе
+ALTER TABLE files ADD COLUMN tier VARCHAR(8) NOT NULL DEFAULT 'HOT';
+-- Последнее скачивание; NULL - файл не скачивали, давность считается от загрузки
+ALTER TABLE files ADD COLUMN last_accessed_at TIMESTAMP WITH TIME ZONE;
+
+-- Кандидаты в холодный уровень: горячие файлы в блобах по давности обращения, keyset по (время, id)
+CREATE INDEX idx_files_hot_access ON files ((coalesce(last_accessed_at, uploaded_at)), id)
+    WHERE tier = 'HOT' AND blob_hash IS NOT NULL;
+
+-- Копии блоба, которые после переноса между уровнями могли остаться без строк files.
+-- После due_at копия удаляется, если на ее уровне не осталось ни одной строки этого варианта
+CREATE TABLE tier_cleanup (
+    blob_hash VARCHAR(64) NOT NULL,
+    codec VARCHAR(16) NOT NULL,
+    tier VARCHAR(8) NOT NULL,
+    due_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    PRIMARY KEY (blob_hash, codec, tier)
+);
+CREATE INDEX idx_tier_cleanup_due ON tier_cleanup (due_at);
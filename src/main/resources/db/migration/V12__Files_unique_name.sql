@@ -0,0 +1,65 @@
+-- Одно имя в каталоге пользователя - один файл. Проверки NOT EXISTS и "найти, затем вставить"
+-- под READ COMMITTED не видят незакоммиченную строку соседней транзакции; уникальный индекс видит.
+-- Корень (folder_id IS NULL) сводится к 0: NULL в уникальном индексе не равен другому NULL
+
+-- Журнал переименований: какой файл и как назван при снятии дубликатов
+CREATE TABLE files_duplicate_renames (
+    file_id BIGINT PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    folder_id BIGINT,
+    old_filename VARCHAR(255) NOT NULL,
+    new_filename VARCHAR(255) NOT NULL,
+    renamed_at TIMESTAMP NOT NULL DEFAULT now()
+);
+
+-- Дубликаты, которые уже успели появиться. Имя сохраняет самая ранняя строка (меньший id),
+-- остальные по возрастанию id получают суффикс с id перед расширением: "report (42).pdf".
+-- Если и такое имя занято, добавляется номер попытки: "report (42-1).pdf"
+DO $$
+DECLARE
+    dup RECORD;
+    parts TEXT[];
+    stem TEXT;
+    ext TEXT;
+    suffix TEXT;
+    candidate TEXT;
+    attempt INT;
+    renamed INT := 0;
+BEGIN
+    FOR dup IN
+        SELECT f.id, f.user_id, f.folder_id, f.filename
+        FROM files f
+        WHERE EXISTS (SELECT 1 FROM files o
+                      WHERE o.user_id = f.user_id
+                        AND COALESCE(o.folder_id, 0) = COALESCE(f.folder_id, 0)
+                        AND o.filename = f.filename
+                        AND o.id < f.id)
+        ORDER BY f.id
+    LOOP
+        parts := regexp_match(dup.filename, '^(.+?)(\.[^.]{1,16})?$');
+        stem := parts[1];
+        ext := COALESCE(parts[2], '');
+        attempt := 0;
+        LOOP
+            suffix := ' (' || dup.id || CASE WHEN attempt > 0 THEN '-' || attempt ELSE '' END || ')';
+            candidate := left(stem, 255 - length(suffix) - length(ext)) || suffix || ext;
+            EXIT WHEN NOT EXISTS (SELECT 1 FROM files o
+                                  WHERE o.user_id = dup.user_id
+                                    AND COALESCE(o.folder_id, 0) = COALESCE(dup.folder_id, 0)
+                                    AND o.filename = candidate);
+            attempt := attempt + 1;
+        END LOOP;
+
+        UPDATE files SET filename = candidate WHERE id = dup.id;
+        INSERT INTO files_duplicate_renames (file_id, user_id, folder_id, old_filename, new_filename)
+        VALUES (dup.id, dup.user_id, dup.folder_id, dup.filename, candidate);
+        renamed := renamed + 1;
+    END LOOP;
+
+    IF renamed > 0 THEN
+        RAISE WARNING 'Переименовано файлов с повторяющимися именами: %, список - в таблице files_duplicate_renames',
+            renamed;
+    END IF;
+END $$;
+
+CREATE UNIQUE INDEX uq_files_user_folder_filename ON files (user_id, COALESCE(folder_id, 0), filename);
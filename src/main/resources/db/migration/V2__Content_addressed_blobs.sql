@@ -0,0 +1,14 @@
+CREATE TABLE blobs (
+    hash VARCHAR(64) PRIMARY KEY,
+    size BIGINT NOT NULL,
+    ref_count INTEGER NOT NULL DEFAULT 0
+);
+
+-- Сборщик ищет только блобы без ссылок
+CREATE INDEX idx_blobs_unreferenced ON blobs (hash) WHERE ref_count <= 0;
+
+ALTER TABLE files ADD COLUMN blob_hash VARCHAR(64);
+ALTER TABLE files ADD CONSTRAINT fk_file_blob FOREIGN KEY (blob_hash) REFERENCES blobs(hash);
+-- Для файлов в блобах физический путь определяется хешем
+ALTER TABLE files ALTER COLUMN file_path DROP NOT NULL;
+CREATE INDEX idx_files_blob_hash ON files (blob_hash);
@@ -0,0 +1,6 @@
+ALTER TABLE files ADD COLUMN uploaded_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now();
+
+-- Индексы под keyset-пагинацию списка файлов: (владелец, ключ сортировки, id)
+CREATE INDEX idx_files_user_filename ON files (user_id, filename, id);
+CREATE INDEX idx_files_user_size ON files (user_id, size, id);
+CREATE INDEX idx_files_user_uploaded_at ON files (user_id, uploaded_at, id);
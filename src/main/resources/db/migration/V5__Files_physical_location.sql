@@ -0,0 +1,6 @@
+-- file_path хранит физическое расположение содержимого и для файлов в блобах.
+-- Существующие блобы лежат в одноуровневой раскладке .blobs/<2 символа>/<хеш>;
+-- в текущую раскладку их переносит StorageLayoutMigrator
+UPDATE files
+SET file_path = '.blobs/' || substr(blob_hash, 1, 2) || '/' || blob_hash
+WHERE blob_hash IS NOT NULL AND file_path IS NULL;
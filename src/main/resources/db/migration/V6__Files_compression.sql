@@ -0,0 +1,5 @@
+-- Сжатие при хранении: кодек файла на диске и размер после сжатия.
+-- Существующие файлы хранятся без сжатия, их размер на диске равен исходному
+ALTER TABLE files ADD COLUMN codec VARCHAR(16) NOT NULL DEFAULT 'NONE';
+ALTER TABLE files ADD COLUMN stored_size BIGINT;
+UPDATE files SET stored_size = size;
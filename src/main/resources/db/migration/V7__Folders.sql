@@ -0,0 +1,52 @@
+-- Каталоги пользователя. path - материализованный путь из имен: '/docs/2024/'.
+-- Файл ссылается на свой каталог, поэтому перенос и переименование каталога меняют
+-- только строки folders своего поддерева, строки files не трогаются
+CREATE TABLE folders (
+    id BIGSERIAL PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    parent_id BIGINT,
+    name VARCHAR(255) NOT NULL,
+    path VARCHAR(1024) NOT NULL,
+    CONSTRAINT fk_folder_user FOREIGN KEY (user_id) REFERENCES users(id),
+    CONSTRAINT fk_folder_parent FOREIGN KEY (parent_id) REFERENCES folders(id) ON DELETE CASCADE
+);
+
+-- Точный поиск по пути и поддерево по префиксу (LIKE '/docs/%') - один индекс
+CREATE UNIQUE INDEX uq_folders_user_path ON folders (user_id, path varchar_pattern_ops);
+CREATE INDEX idx_folders_user_parent ON folders (user_id, parent_id, name);
+
+ALTER TABLE files ADD COLUMN folder_id BIGINT;
+ALTER TABLE files ADD CONSTRAINT fk_file_folder FOREIGN KEY (folder_id) REFERENCES folders(id);
+CREATE INDEX idx_files_folder ON files (folder_id) WHERE folder_id IS NOT NULL;
+
+-- Списки строятся по одному каталогу: (владелец, каталог, ключ сортировки, id)
+DROP INDEX idx_files_user_filename;
+DROP INDEX idx_files_user_size;
+DROP INDEX idx_files_user_uploaded_at;
+CREATE INDEX idx_files_user_folder_filename ON files (user_id, folder_id, filename, id);
+CREATE INDEX idx_files_user_folder_size ON files (user_id, folder_id, size, id);
+CREATE INDEX idx_files_user_folder_uploaded_at ON files (user_id, folder_id, uploaded_at, id);
+
+-- Клиенты имитировали каталоги префиксами имен: 'docs/2024/a.txt' становится файлом 'a.txt'
+-- в каталоге '/docs/2024/'. Имена с пустыми сегментами, '.' и '..' остаются как есть
+INSERT INTO folders (user_id, name, path)
+SELECT DISTINCT f.user_id, p.parts[i], '/' || array_to_string(p.parts[1:i], '/') || '/'
+FROM files f
+CROSS JOIN LATERAL (SELECT string_to_array(f.filename, '/') AS parts) p
+CROSS JOIN LATERAL generate_series(1, array_length(p.parts, 1) - 1) AS i
+WHERE f.filename LIKE '%/%'
+  AND f.filename !~ '(^|/)(\.{0,2})(/|$)';
+
+UPDATE folders c
+SET parent_id = p.id
+FROM folders p
+WHERE p.user_id = c.user_id
+  AND p.path = regexp_replace(c.path, '[^/]+/$', '');
+
+UPDATE files f
+SET folder_id = d.id,
+    filename = regexp_replace(f.filename, '^.*/', '')
+FROM folders d
+WHERE d.user_id = f.user_id
+  AND f.filename LIKE '%/%'
+  AND d.path = '/' || regexp_replace(f.filename, '/[^/]*$', '') || '/';
@@ -0,0 +1,8 @@
+-- Поиск файлов по имени без учета регистра.
+-- Префикс: упорядоченный btree с побайтовым сравнением - LIKE 'abc%' и ORDER BY идут по одному индексу
+CREATE INDEX idx_files_user_name_search ON files (user_id, (lower(filename)) COLLATE "C", id);
+
+-- Подстрока и расширение: триграммы имени вместе с владельцем в одном GIN (btree_gin для user_id)
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE EXTENSION IF NOT EXISTS btree_gin;
+CREATE INDEX idx_files_user_name_trgm ON files USING gin (user_id, lower(filename) gin_trgm_ops);
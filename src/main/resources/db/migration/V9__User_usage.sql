@@ -0,0 +1,16 @@
+-- Занятое место и число файлов пользователя. Счетчики меняются атомарными UPDATE в тех же
+-- транзакциях, что и строки files; сверщик периодически пересчитывает их по files
+CREATE TABLE user_usage (
+    user_id BIGINT PRIMARY KEY,
+    used_bytes BIGINT NOT NULL DEFAULT 0,
+    file_count BIGINT NOT NULL DEFAULT 0,
+    -- NULL - квота по умолчанию из настроек
+    quota_bytes BIGINT,
+    CONSTRAINT fk_usage_user FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+);
+
+INSERT INTO user_usage (user_id, used_bytes, file_count)
+SELECT u.id, COALESCE(SUM(f.size), 0), COUNT(f.id)
+FROM users u
+LEFT JOIN files f ON f.user_id = u.id
+GROUP BY u.id;
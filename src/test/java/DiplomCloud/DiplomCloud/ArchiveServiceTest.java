@@ -0,0 +1,290 @@
+package DiplomCloud.DiplomCloud;
+
+import DiplomCloud.DiplomCloud.models.Blob;
+import DiplomCloud.DiplomCloud.models.ContentCodec;
+import DiplomCloud.DiplomCloud.models.FileEntity;
+import DiplomCloud.DiplomCloud.models.Folder;
+import DiplomCloud.DiplomCloud.models.StorageTier;
+import DiplomCloud.DiplomCloud.repositories.FileRepository;
+import DiplomCloud.DiplomCloud.repositories.FolderRepository;
+import DiplomCloud.DiplomCloud.repositories.UserRepository;
+import DiplomCloud.DiplomCloud.services.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ArchiveServiceTest {
+    private static final String PHOTO = "a".repeat(64);
+    private static final String NOTES = "b".repeat(64);
+    private static final String GONE = "c".repeat(64);
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private FolderRepository folderRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private FolderService folderService;
+
+    @Mock
+    private UserCache userCache;
+
+    @TempDir
+    Path storageDir;
+
+    private FileSystemStorageService fileSystemStorageService;
+    private ArchiveService archiveService;
+
+    @BeforeEach
+    void setUp() {
+        fileSystemStorageService = new FileSystemStorageService(storageDir.toString(), new HashShardedLayout(2, 2));
+        FileStorageService fileStorageService = new FileStorageService(fileRepository, userRepository,
+                fileSystemStorageService, null, userCache, null, folderService, null, null, null);
+        archiveService = new ArchiveService(fileStorageService, fileRepository, folderRepository, folderService,
+                userCache, new StorageMetrics(new SimpleMeterRegistry()), 100, 10);
+        lenient().when(userCache.resolveUserId("testUser")).thenReturn(1L);
+    }
+
+    @Test
+    void zip_Folder_StoredAndGzipFilesReadableAndDeletedFileSkipped() throws IOException {
+        // Arrange: несжатый файл больше одного stored-блока, файл в gzip и строка, чей файл уже удален
+        byte[] photo = new byte[200_000];
+        new Random(1).nextBytes(photo);
+        byte[] notes = "заметки ".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        blob(PHOTO, ContentCodec.NONE, photo);
+        Path gzip = blob(NOTES, ContentCodec.GZIP, notes);
+        when(folderService.require(1L, "/docs/")).thenReturn(folder(5L, "/docs/"));
+        when(folderRepository.sumSubtreeFiles(1L, "/docs/%")).thenReturn(usage(3));
+        when(fileRepository.findArchivePageInFolder(eq(1L), eq(5L), eq(""), any(Pageable.class))).thenReturn(List.of(
+                row("photo.jpg", photo.length, ContentCodec.NONE, PHOTO),
+                row("notes.txt", notes.length, ContentCodec.GZIP, NOTES)));
+        when(folderRepository.findSubtreePage(1L, "/docs/", "/docs0", 500)).thenReturn(List.of(ref(6L, "/docs/sub/")));
+        when(fileRepository.findArchivePageInFolder(eq(1L), eq(6L), eq(""), any(Pageable.class)))
+                .thenReturn(List.of(row("gone.txt", 4, ContentCodec.NONE, GONE)));
+
+        // Act
+        ArchiveService.Selection selection = archiveService.select("testUser", null, "docs", ArchiveFormat.ZIP);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        archiveService.write(selection, out);
+
+        // Assert: имена начинаются с выбранного каталога, содержимое совпадает
+        assertEquals("docs", selection.getName());
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+        assertEquals(List.of("docs/photo.jpg", "docs/notes.txt"), List.copyOf(entries.keySet()));
+        assertArrayEquals(photo, entries.get("docs/photo.jpg"));
+        assertArrayEquals(notes, entries.get("docs/notes.txt"));
+
+        // Assert: оглавление читается, сжатые данные gzip перенесены без пересжатия
+        Path archive = Files.write(storageDir.resolve("docs.zip"), out.toByteArray());
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            assertEquals(2, zipFile.size());
+            assertEquals(Files.size(gzip) - 18, zipFile.getEntry("docs/notes.txt").getCompressedSize());
+            assertEquals(photo.length, zipFile.getEntry("docs/photo.jpg").getSize());
+            assertArrayEquals(notes, zipFile.getInputStream(zipFile.getEntry("docs/notes.txt")).readAllBytes());
+        }
+    }
+
+    @Test
+    void tar_Filenames_LongNamesSplitOrExtendedAndMissingSkipped() throws IOException {
+        // Arrange
+        String nested = "d".repeat(120) + "/b.txt";
+        String longName = "x".repeat(150) + ".txt";
+        byte[] nestedContent = "nested".getBytes(StandardCharsets.UTF_8);
+        byte[] longContent = "длинное имя".getBytes(StandardCharsets.UTF_8);
+        blob(PHOTO, ContentCodec.NONE, nestedContent);
+        blob(NOTES, ContentCodec.GZIP, longContent);
+        when(fileRepository.findInFolder(1L, "/" + "d".repeat(120) + "/", "b.txt"))
+                .thenReturn(Optional.of(file("b.txt", nestedContent.length, ContentCodec.NONE, PHOTO)));
+        when(fileRepository.findInRoot(1L, longName))
+                .thenReturn(Optional.of(file(longName, longContent.length, ContentCodec.GZIP, NOTES)));
+        when(fileRepository.findInRoot(1L, "missing.txt")).thenReturn(Optional.empty());
+
+        // Act
+        ArchiveService.Selection selection = archiveService.select("testUser",
+                List.of(nested, longName, "missing.txt", nested), null, ArchiveFormat.TAR);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        archiveService.write(selection, out);
+
+        // Assert
+        Map<String, byte[]> entries = readTar(out.toByteArray());
+        assertEquals(List.of(nested, longName), List.copyOf(entries.keySet()));
+        assertArrayEquals(nestedContent, entries.get(nested));
+        assertArrayEquals(longContent, entries.get(longName));
+    }
+
+    @Test
+    void select_InvalidRequests_RejectedBeforeResponse() {
+        // Arrange
+        when(fileRepository.countByOwner(1L)).thenReturn(11L);
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class,
+                () -> archiveService.select("testUser", List.of("../other/a.txt"), null, ArchiveFormat.ZIP));
+        assertThrows(IllegalArgumentException.class,
+                () -> archiveService.select("testUser", List.of("a.txt"), "docs", ArchiveFormat.ZIP));
+        assertThrows(IllegalArgumentException.class,
+                () -> archiveService.select("testUser", null, null, ArchiveFormat.ZIP));
+        // Для TAR предела нет: оглавление не копится
+        assertEquals("files", archiveService.select("testUser", null, null, ArchiveFormat.TAR).getName());
+    }
+
+    private Path blob(String hash, ContentCodec codec, byte[] content) throws IOException {
+        Path path = fileSystemStorageService.blobPath(hash, codec);
+        Files.createDirectories(path.getParent());
+        try (OutputStream out = codec == ContentCodec.GZIP
+                ? new GZIPOutputStream(Files.newOutputStream(path)) : Files.newOutputStream(path)) {
+            out.write(content);
+        }
+        return path;
+    }
+
+    // ustar и PAX: имя из prefix + name либо из записи path расширенного заголовка
+    private static Map<String, byte[]> readTar(byte[] tar) {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        String paxPath = null;
+        int offset = 0;
+        while (tar[offset] != 0) {
+            String name = field(tar, offset, 100);
+            String prefix = field(tar, offset + 345, 155);
+            int size = Integer.parseInt(field(tar, offset + 124, 12), 8);
+            byte type = tar[offset + 156];
+            byte[] content = Arrays.copyOfRange(tar, offset + 512, offset + 512 + size);
+            offset += 512 + (size + 511) / 512 * 512;
+            if (type == 'x') {
+                String record = new String(content, StandardCharsets.UTF_8);
+                paxPath = record.substring(record.indexOf("path=") + 5, record.length() - 1);
+                continue;
+            }
+            entries.put(paxPath != null ? paxPath : prefix.isEmpty() ? name : prefix + "/" + name, content);
+            paxPath = null;
+        }
+        return entries;
+    }
+
+    private static String field(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8).trim();
+    }
+
+    private static FileEntity file(String filename, long size, ContentCodec codec, String hash) {
+        Blob blob = new Blob();
+        blob.setHash(hash);
+        FileEntity fileEntity = new FileEntity();
+        fileEntity.setFilename(filename);
+        fileEntity.setSize(size);
+        fileEntity.setCodec(codec);
+        fileEntity.setBlob(blob);
+        fileEntity.setUploadedAt(Instant.now());
+        return fileEntity;
+    }
+
+    private static Folder folder(Long id, String path) {
+        Folder folder = new Folder();
+        folder.setId(id);
+        folder.setPath(path);
+        return folder;
+    }
+
+    private static FileRepository.ArchiveFile row(String filename, long size, ContentCodec codec, String hash) {
+        return new FileRepository.ArchiveFile() {
+            @Override
+            public String getFilename() {
+                return filename;
+            }
+
+            @Override
+            public long getSize() {
+                return size;
+            }
+
+            @Override
+            public ContentCodec getCodec() {
+                return codec;
+            }
+
+            @Override
+            public String getFilePath() {
+                return null;
+            }
+
+            @Override
+            public StorageTier getTier() {
+                return StorageTier.HOT;
+            }
+
+            @Override
+            public String getHash() {
+                return hash;
+            }
+
+            @Override
+            public Instant getUploadedAt() {
+                return Instant.now();
+            }
+        };
+    }
+
+    private static FolderRepository.FolderRef ref(Long id, String path) {
+        return new FolderRepository.FolderRef() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public String getPath() {
+                return path;
+            }
+        };
+    }
+
+    private static FolderRepository.SubtreeUsage usage(long files) {
+        return new FolderRepository.SubtreeUsage() {
+            @Override
+            public long getFiles() {
+                return files;
+            }
+
+            @Override
+            public long getBytes() {
+                return 0;
+            }
+        };
+    }
+}
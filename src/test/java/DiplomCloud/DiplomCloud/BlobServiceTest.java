@@ -0,0 +1,322 @@
+package DiplomCloud.DiplomCloud;
+
+import DiplomCloud.DiplomCloud.models.Blob;
+import DiplomCloud.DiplomCloud.models.ContentCodec;
+import DiplomCloud.DiplomCloud.repositories.BlobRepository;
+import DiplomCloud.DiplomCloud.services.BlobService;
+import DiplomCloud.DiplomCloud.services.CompressionMode;
+import DiplomCloud.DiplomCloud.services.CompressionPolicy;
+import DiplomCloud.DiplomCloud.services.FileSystemStorageService;
+import DiplomCloud.DiplomCloud.services.HashShardedLayout;
+import DiplomCloud.DiplomCloud.services.StagedContent;
+import DiplomCloud.DiplomCloud.services.StorageMetrics;
+import DiplomCloud.DiplomCloud.services.StoredContent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BlobServiceTest {
+    // SHA-256 строки "hello"
+    private static final String HELLO_HASH = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    @Mock
+    private BlobRepository blobRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @TempDir
+    Path storageDir;
+
+    private FileSystemStorageService fileSystemStorageService;
+    private SimpleMeterRegistry meterRegistry;
+    private BlobService blobService;
+
+    @BeforeEach
+    void setUp() {
+        fileSystemStorageService = new FileSystemStorageService(storageDir.toString(), new HashShardedLayout(2, 2));
+        meterRegistry = new SimpleMeterRegistry();
+        blobService = new BlobService(blobRepository, fileSystemStorageService, transactionTemplate,
+                new StorageMetrics(meterRegistry), new CompressionPolicy("auto", 6, 0.9));
+    }
+
+    @Test
+    void store_SameContentTwice_StoredOnce() throws IOException {
+        // Arrange
+        Blob blob = new Blob();
+        blob.setHash(HELLO_HASH);
+        when(blobRepository.getReferenceById(HELLO_HASH)).thenReturn(blob);
+
+        // Act
+        blobService.store(stream("hello"));
+        blobService.store(stream("hello"));
+
+        // Assert
+        verify(blobRepository, times(2)).acquire(HELLO_HASH, 5L);
+        assertEquals("hello", Files.readString(fileSystemStorageService.blobPath(HELLO_HASH)));
+        try (var tmp = Files.list(storageDir.resolve(".blobs").resolve("tmp"))) {
+            assertEquals(0, tmp.count());
+        }
+    }
+
+    @Test
+    void stage_DoesNotTouchDatabase() throws IOException {
+        // Act
+        StagedContent staged = blobService.stage(stream("hello"), 5, null, CompressionMode.NONE);
+
+        // Assert
+        verifyNoInteractions(blobRepository);
+        assertEquals(HELLO_HASH, staged.getHash());
+        assertEquals(5L, staged.getSize());
+        assertEquals("hello", Files.readString(staged.getFile()));
+        assertFalse(Files.exists(fileSystemStorageService.blobPath(HELLO_HASH)));
+    }
+
+    @Test
+    void publish_StagedContent_MovesTempFileIntoBlobStore() throws IOException {
+        // Arrange
+        when(blobRepository.getReferenceById(HELLO_HASH)).thenReturn(new Blob());
+        StagedContent staged = blobService.stage(stream("hello"), 5, null, CompressionMode.NONE);
+
+        // Act
+        blobService.publish(staged);
+        blobService.discard(staged);
+
+        // Assert
+        verify(blobRepository).acquire(HELLO_HASH, 5L);
+        assertEquals("hello", Files.readString(fileSystemStorageService.blobPath(HELLO_HASH)));
+        assertFalse(Files.exists(staged.getFile()));
+    }
+
+    @Test
+    void publish_SessionFile_KeepsFileUntilCallerDeletesIt() throws IOException {
+        // Arrange
+        when(blobRepository.getReferenceById(HELLO_HASH)).thenReturn(new Blob());
+        Path sessionFile = Files.writeString(storageDir.resolve("session.part"), "hello");
+        StagedContent staged = blobService.stage(sessionFile);
+
+        // Act
+        blobService.publish(staged);
+        blobService.discard(staged);
+
+        // Assert
+        verify(blobRepository).acquire(HELLO_HASH, 5L);
+        assertEquals("hello", Files.readString(fileSystemStorageService.blobPath(HELLO_HASH)));
+        assertEquals("hello", Files.readString(sessionFile));
+    }
+
+    @Test
+    void discard_NotPublished_DeletesTempFile() throws IOException {
+        // Arrange
+        StagedContent staged = blobService.stage(stream("hello"), 5, null, CompressionMode.NONE);
+
+        // Act
+        blobService.discard(staged);
+
+        // Assert
+        assertFalse(Files.exists(staged.getFile()));
+        assertFalse(Files.exists(fileSystemStorageService.blobPath(HELLO_HASH)));
+    }
+
+    @Test
+    void store_RecordsUploadMetrics() throws IOException {
+        // Arrange
+        when(blobRepository.getReferenceById(HELLO_HASH)).thenReturn(new Blob());
+
+        // Act
+        blobService.store(stream("hello"));
+
+        // Assert
+        assertEquals(5.0, meterRegistry.get("cloud.storage.bytes").tag("direction", "upload").counter().count());
+        assertEquals(1, meterRegistry.get("cloud.storage.io").tag("op", "upload").timer().count());
+        assertEquals(1, meterRegistry.get("cloud.storage.io").tag("op", "publish").timer().count());
+        assertEquals(0.0, meterRegistry.get("cloud.storage.transfers.active").tag("direction", "upload").gauge().value());
+    }
+
+    @Test
+    void store_TextContent_StoredGzippedUnderRawHash() throws IOException {
+        // Arrange
+        String text = "строка журнала\n".repeat(1000);
+        String hash = sha256(text);
+        when(blobRepository.getReferenceById(hash)).thenReturn(new Blob());
+
+        // Act
+        StoredContent stored = blobService.store(stream(text), -1, "app.log", CompressionMode.AUTO);
+
+        // Assert
+        assertEquals(ContentCodec.GZIP, stored.getCodec());
+        Path blobFile = fileSystemStorageService.blobPath(hash, ContentCodec.GZIP);
+        assertEquals(Files.size(blobFile), stored.getStoredSize());
+        assertTrue(stored.getStoredSize() < text.getBytes(StandardCharsets.UTF_8).length / 10);
+        assertFalse(Files.exists(fileSystemStorageService.blobPath(hash)));
+        try (InputStream in = ContentCodec.GZIP.decode(Files.newInputStream(blobFile))) {
+            assertEquals(text, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void store_IncompressibleContent_StoredAsIs() throws IOException {
+        // Arrange
+        byte[] random = new byte[4096];
+        new Random(1).nextBytes(random);
+        when(blobRepository.getReferenceById(any())).thenReturn(new Blob());
+
+        // Act
+        StoredContent stored = blobService.store(new ByteArrayInputStream(random), -1, "data.bin",
+                CompressionMode.GZIP);
+
+        // Assert
+        assertEquals(ContentCodec.NONE, stored.getCodec());
+        assertEquals(random.length, stored.getStoredSize());
+    }
+
+    @Test
+    void store_SameContentAlreadyGzipped_ReusesExistingVariant() throws IOException {
+        // Arrange
+        String text = "{\"key\": \"value\"}\n".repeat(500);
+        String hash = sha256(text);
+        when(blobRepository.getReferenceById(hash)).thenReturn(new Blob());
+        blobService.store(stream(text), -1, "data.json", CompressionMode.AUTO);
+
+        // Act
+        StoredContent stored = blobService.store(stream(text), -1, "data.json", CompressionMode.NONE);
+
+        // Assert
+        assertEquals(ContentCodec.GZIP, stored.getCodec());
+        assertFalse(Files.exists(fileSystemStorageService.blobPath(hash)));
+    }
+
+    @Test
+    void store_TruncatedStream_ThrowsAndLeavesNothing() throws IOException {
+        // Act & Assert
+        assertThrows(IOException.class, () -> blobService.store(stream("hel"), 5L));
+        verify(blobRepository, never()).acquire(any(), anyLong());
+        assertFalse(Files.exists(fileSystemStorageService.blobPath(HELLO_HASH)));
+        try (var tmp = Files.list(storageDir.resolve(".blobs").resolve("tmp"))) {
+            assertEquals(0, tmp.count());
+        }
+    }
+
+    @Test
+    void store_TransactionRolledBack_DeletesPublishedBlob() throws IOException {
+        // Arrange
+        when(blobRepository.getReferenceById(HELLO_HASH)).thenReturn(new Blob());
+        when(transactionTemplate.getTransactionManager()).thenReturn(mock(PlatformTransactionManager.class));
+        when(blobRepository.claimOrphan(HELLO_HASH, 0)).thenReturn(1);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            blobService.store(stream("hello"));
+            assertTrue(Files.exists(fileSystemStorageService.blobPath(HELLO_HASH)));
+
+            // Act
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Assert
+        assertFalse(Files.exists(fileSystemStorageService.blobPath(HELLO_HASH)));
+        verify(blobRepository).deleteUnreferenced(HELLO_HASH);
+    }
+
+    @Test
+    void store_TransactionRolledBack_KeepsBlobReferencedElsewhere() throws IOException {
+        // Arrange
+        when(blobRepository.getReferenceById(HELLO_HASH)).thenReturn(new Blob());
+        when(transactionTemplate.getTransactionManager()).thenReturn(mock(PlatformTransactionManager.class));
+        when(blobRepository.claimOrphan(HELLO_HASH, 0)).thenReturn(0);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            blobService.store(stream("hello"));
+
+            // Act
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Assert
+        assertTrue(Files.exists(fileSystemStorageService.blobPath(HELLO_HASH)));
+        verify(blobRepository, never()).deleteUnreferenced(any());
+    }
+
+    @Test
+    void acquireExisting_UnknownHash_ReturnsEmpty() {
+        // Arrange
+        when(blobRepository.acquireExisting(HELLO_HASH, 5L)).thenReturn(0);
+
+        // Act & Assert
+        assertTrue(blobService.acquireExisting(HELLO_HASH, 5L).isEmpty());
+    }
+
+    @Test
+    void acquireExisting_FileMissing_ReleasesReference() {
+        // Arrange
+        when(blobRepository.acquireExisting(HELLO_HASH, 5L)).thenReturn(1);
+
+        // Act & Assert
+        assertTrue(blobService.acquireExisting(HELLO_HASH, 5L).isEmpty());
+        verify(blobRepository).release(HELLO_HASH);
+    }
+
+    @Test
+    void reclaimUnreferenced_DeletesLockedBlobs() throws IOException {
+        // Arrange
+        Path blobFile = fileSystemStorageService.blobPath(HELLO_HASH);
+        Files.createDirectories(blobFile.getParent());
+        Files.writeString(blobFile, "hello");
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(blobRepository.lockUnreferenced(anyInt())).thenReturn(List.of(HELLO_HASH));
+
+        // Act
+        blobService.reclaimUnreferenced();
+
+        // Assert
+        assertFalse(Files.exists(blobFile));
+        verify(blobRepository).deleteUnreferenced(HELLO_HASH);
+    }
+
+    private static String sha256(String content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
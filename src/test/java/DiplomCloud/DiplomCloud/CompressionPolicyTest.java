@@ -0,0 +1,49 @@
+package DiplomCloud.DiplomCloud;
+
+import DiplomCloud.DiplomCloud.models.ContentCodec;
+import DiplomCloud.DiplomCloud.services.CompressionMode;
+import DiplomCloud.DiplomCloud.services.CompressionPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressionPolicyTest {
+    private final CompressionPolicy policy = new CompressionPolicy("auto", 6, 0.9);
+
+    @Test
+    void choose_TextWithoutExtension_Gzip() {
+        // Arrange
+        byte[] head = "id,name\n1,test\n".getBytes(StandardCharsets.UTF_8);
+
+        // Act & Assert
+        assertEquals(ContentCodec.GZIP, policy.choose("export", null, head, head.length));
+    }
+
+    @Test
+    void choose_BinaryContent_None() {
+        // Arrange
+        byte[] head = {0x7f, 'E', 'L', 'F', 0, 0, 1};
+
+        // Act & Assert
+        assertEquals(ContentCodec.NONE, policy.choose("program", CompressionMode.AUTO, head, head.length));
+    }
+
+    @Test
+    void choose_AlreadyCompressedFormat_NoneEvenWhenForced() {
+        // Arrange
+        byte[] head = "text".getBytes(StandardCharsets.UTF_8);
+
+        // Act & Assert
+        assertEquals(ContentCodec.NONE, policy.choose("photo.JPG", CompressionMode.GZIP, head, head.length));
+        assertEquals(ContentCodec.NONE, policy.choose("notes.txt", CompressionMode.NONE, head, head.length));
+    }
+
+    @Test
+    void fromParam_UnknownMode_Throws() {
+        // Act & Assert
+        assertEquals(CompressionMode.GZIP, CompressionMode.fromParam("gzip"));
+        assertThrows(IllegalArgumentException.class, () -> CompressionMode.fromParam("brotli"));
+    }
+}
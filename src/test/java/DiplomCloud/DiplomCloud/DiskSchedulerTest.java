@@ -0,0 +1,207 @@
+package DiplomCloud.DiplomCloud;
+
+import DiplomCloud.DiplomCloud.services.DiskScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DiskSchedulerTest {
+    private DiskScheduler diskScheduler;
+
+    @AfterEach
+    void tearDown() {
+        diskScheduler.shutdown();
+    }
+
+    @Test
+    void execute_PerUserLimit_QueuesExtraTasks() throws Exception {
+        // Arrange
+        diskScheduler = new DiskScheduler(4, 100, 2, new SimpleMeterRegistry());
+        Semaphore gate = new Semaphore(0);
+        CountDownLatch started = new CountDownLatch(2);
+
+        // Act
+        for (int i = 0; i < 4; i++) {
+            diskScheduler.execute("userA", () -> {
+                started.countDown();
+                gate.acquireUninterruptibly();
+            });
+        }
+
+        // Assert
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(Map.of("userA", 2), diskScheduler.inFlightByUser());
+        assertEquals(2, diskScheduler.queueDepth());
+        gate.release(4);
+    }
+
+    @Test
+    void execute_BusyUser_OtherUserServedNext() throws Exception {
+        // Arrange
+        diskScheduler = new DiskScheduler(2, 100, 2, new SimpleMeterRegistry());
+        Semaphore gate = new Semaphore(0);
+        CountDownLatch started = new CountDownLatch(2);
+        for (int i = 0; i < 20; i++) {
+            diskScheduler.execute("userA", () -> {
+                started.countDown();
+                gate.acquireUninterruptibly();
+            });
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Act
+        Future<String> small = diskScheduler.submit("userB", () -> "done");
+        gate.release();
+
+        // Assert: освободившийся поток берет задачу userB раньше остальных 18 задач userA
+        assertEquals("done", small.get(5, TimeUnit.SECONDS));
+        assertTrue(diskScheduler.queueDepth() >= 17);
+        gate.release(20);
+    }
+
+    @Test
+    void execute_QueueFull_Rejects() throws Exception {
+        // Arrange
+        diskScheduler = new DiskScheduler(1, 2, 1, new SimpleMeterRegistry());
+        Semaphore gate = new Semaphore(0);
+        CountDownLatch started = new CountDownLatch(1);
+        diskScheduler.execute("userA", () -> {
+            started.countDown();
+            gate.acquireUninterruptibly();
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        diskScheduler.execute("userA", () -> { });
+        diskScheduler.execute("userB", () -> { });
+
+        // Act & Assert
+        assertThrows(RejectedExecutionException.class, () -> diskScheduler.execute("userC", () -> { }));
+        assertThrows(TaskRejectedException.class, () -> diskScheduler.forUser("userC").execute(() -> { }));
+        gate.release();
+    }
+
+    @Test
+    void execute_TaskThrowsError_WorkerKeepsRunning() throws Exception {
+        // Arrange: единственный поток
+        diskScheduler = new DiskScheduler(1, 100, 1, new SimpleMeterRegistry());
+
+        // Act
+        diskScheduler.execute("userA", () -> {
+            throw new OutOfMemoryError("Недостаточно памяти для буфера");
+        });
+        Future<String> next = diskScheduler.submit("userA", () -> "done");
+
+        // Assert: поток единственный, значит следующую задачу выполнил он же
+        assertEquals("done", next.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void submit_TaskThrowsError_CompletesExceptionally() throws Exception {
+        // Arrange
+        diskScheduler = new DiskScheduler(1, 100, 1, new SimpleMeterRegistry());
+
+        // Act
+        Future<String> failed = diskScheduler.submit("userA", () -> {
+            throw new StackOverflowError();
+        });
+
+        // Assert
+        ExecutionException error = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(StackOverflowError.class, error.getCause());
+        assertEquals("done", diskScheduler.submit("userA", () -> "done").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void forUser_Cancel_InterruptsRunningTaskAndFreesWorker() throws Exception {
+        // Arrange: единственный поток занят задачей, которая ждет без конца
+        diskScheduler = new DiskScheduler(1, 100, 1, new SimpleMeterRegistry());
+        DiskScheduler.RequestExecutor executor = diskScheduler.forUser("userA");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Future<Object> stuck = executor.submit(() -> {
+            started.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Act
+        executor.cancel();
+
+        // Assert: поток прерван и свободен для следующей задачи того же пользователя
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(stuck.isCancelled());
+        assertEquals("done", diskScheduler.submit("userA", () -> "done").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void forUser_Cancel_QueuedTaskRemovedAndNeverRuns() throws Exception {
+        // Arrange: поток занят другой задачей, задача запроса ждет в очереди
+        diskScheduler = new DiskScheduler(1, 100, 1, new SimpleMeterRegistry());
+        Semaphore gate = new Semaphore(0);
+        CountDownLatch started = new CountDownLatch(1);
+        diskScheduler.execute("userA", () -> {
+            started.countDown();
+            gate.acquireUninterruptibly();
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        DiskScheduler.RequestExecutor executor = diskScheduler.forUser("userA");
+        AtomicBoolean ran = new AtomicBoolean();
+        executor.submit(() -> ran.set(true));
+        assertEquals(1, diskScheduler.queueDepth());
+
+        // Act
+        executor.cancel();
+
+        // Assert
+        assertEquals(0, diskScheduler.queueDepth());
+        gate.release();
+        assertEquals("done", diskScheduler.submit("userA", () -> "done").get(5, TimeUnit.SECONDS));
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void execute_SaturatedByLargeTransfers_SmallRequestsKeepLowLatency() throws Exception {
+        // Arrange: userA занимает все потоки долгими передачами, очередь - на ~1 секунду работы
+        diskScheduler = new DiskScheduler(2, 1000, 2, new SimpleMeterRegistry());
+        for (int i = 0; i < 80; i++) {
+            diskScheduler.execute("userA", () -> sleep(25));
+        }
+
+        // Act: userB последовательно выполняет короткие операции с метаданными
+        List<Long> latencies = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            long start = System.nanoTime();
+            diskScheduler.submit("userB", () -> {
+                sleep(1);
+                return null;
+            }).get(5, TimeUnit.SECONDS);
+            latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+
+        // Assert: в общей FIFO-очереди каждая операция ждала бы всю очередь userA (~1000 мс)
+        long worst = latencies.stream().mapToLong(Long::longValue).max().orElseThrow();
+        assertTrue(worst < 250, "Задержка коротких операций: " + latencies);
+        assertTrue(diskScheduler.queueDepth() > 0);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
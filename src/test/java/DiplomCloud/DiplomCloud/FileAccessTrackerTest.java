@@ -0,0 +1,90 @@
+package DiplomCloud.DiplomCloud;
+
+import DiplomCloud.DiplomCloud.models.ContentCodec;
+import DiplomCloud.DiplomCloud.models.StorageTier;
+import DiplomCloud.DiplomCloud.repositories.FileRepository;
+import DiplomCloud.DiplomCloud.services.FileAccessTracker;
+import DiplomCloud.DiplomCloud.services.StoredFile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class FileAccessTrackerTest {
+    private static final String HASH = "a".repeat(64);
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+    private FileAccessTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        tracker = new FileAccessTracker(fileRepository, transactionTemplate, meterRegistry, 2);
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+    }
+
+    @Test
+    void flush_RepeatedDownloads_OneUpdateWithLatestTime() {
+        // Arrange
+        tracker.record(file(1L, StorageTier.HOT));
+        Instant before = Instant.now();
+        tracker.record(file(1L, StorageTier.HOT));
+        tracker.record(file(2L, StorageTier.HOT));
+        // Очередь заполнена: обращение к третьему файлу не учитывается
+        tracker.record(file(3L, StorageTier.HOT));
+        tracker.record(file(null, StorageTier.HOT));
+
+        // Act
+        tracker.flush();
+        tracker.flush();
+
+        // Assert
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<Long, Instant>> batch = ArgumentCaptor.forClass(Map.class);
+        verify(fileRepository, times(1)).touchAll(batch.capture());
+        assertEquals(2, batch.getValue().size());
+        assertFalse(batch.getValue().get(1L).isBefore(before));
+        assertEquals(1.0, meterRegistry.get("cloud.tiering.accesses.dropped").counter().count());
+        assertTrue(tracker.drainPromotions(10).isEmpty());
+    }
+
+    @Test
+    void record_ColdFile_QueuedForPromotionOnce() {
+        // Arrange
+        tracker.record(file(1L, StorageTier.COLD));
+        tracker.record(file(2L, StorageTier.COLD));
+
+        // Act
+        List<FileAccessTracker.BlobVariant> variants = tracker.drainPromotions(10);
+
+        // Assert: файлы с одним содержимым - один перенос
+        assertEquals(List.of(new FileAccessTracker.BlobVariant(HASH, ContentCodec.GZIP)), variants);
+        assertTrue(tracker.drainPromotions(10).isEmpty());
+    }
+
+    private static StoredFile file(Long id, StorageTier tier) {
+        return new StoredFile(Path.of("file.txt"), ContentCodec.GZIP, 10, HASH, 0, id, tier);
+    }
+}
@@ -0,0 +1,280 @@
+package DiplomCloud.DiplomCloud;
+
+import DiplomCloud.DiplomCloud.dto.BatchItemResult;
+import DiplomCloud.DiplomCloud.dto.BatchItemStatus;
+import DiplomCloud.DiplomCloud.dto.BatchMoveRequest;
+import DiplomCloud.DiplomCloud.dto.BatchStatItem;
+import DiplomCloud.DiplomCloud.dto.FileListItem;
+import DiplomCloud.DiplomCloud.models.Blob;
+import DiplomCloud.DiplomCloud.models.FileEntity;
+import DiplomCloud.DiplomCloud.models.Folder;
+import DiplomCloud.DiplomCloud.repositories.BlobRepository;
+import DiplomCloud.DiplomCloud.repositories.FileRepository;
+import DiplomCloud.DiplomCloud.repositories.UserRepository;
+import DiplomCloud.DiplomCloud.services.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class FileBatchServiceTest {
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private BlobRepository blobRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private UserCache userCache;
+
+    @Mock
+    private FolderService folderService;
+
+    @Mock
+    private QuotaService quotaService;
+
+    @TempDir
+    Path storageDir;
+
+    private DiskScheduler diskScheduler;
+    private FileListingCache fileListingCache;
+    private FileBatchService fileBatchService;
+
+    @BeforeEach
+    void setUp() {
+        diskScheduler = new DiskScheduler(2, 100, 2, new SimpleMeterRegistry());
+        FileSystemStorageService fileSystemStorageService =
+                new FileSystemStorageService(storageDir.toString(), new HashShardedLayout(2, 2));
+        fileListingCache = new FileListingCache(1000, 100, new SimpleMeterRegistry());
+        RenameJournal renameJournal = new RenameJournal(fileRepository, fileSystemStorageService, storageDir.toString());
+        FileStorageService fileStorageService = new FileStorageService(fileRepository, userRepository,
+                fileSystemStorageService, null, userCache, fileListingCache, folderService, quotaService,
+                renameJournal, new TransactionTemplate(new NoOpTransactionManager()));
+        fileBatchService = new FileBatchService(fileRepository, blobRepository, fileStorageService,
+                fileSystemStorageService, userCache, fileListingCache, folderService, quotaService, renameJournal,
+                new TransactionTemplate(new NoOpTransactionManager()), diskScheduler, 100);
+        lenient().when(userCache.resolveUserId("testUser")).thenReturn(1L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        diskScheduler.shutdown();
+    }
+
+    @Test
+    void deleteFiles_MixedItems_OneStatementPerKindAndPerItemResults() throws IOException {
+        // Arrange
+        Path legacy = storageDir.resolve("testUser").resolve("old.txt");
+        Files.createDirectories(legacy.getParent());
+        Files.writeString(legacy, "old");
+        FileEntity first = blobFile(10L, "a.txt", "hash-a");
+        FileEntity second = blobFile(11L, "b.txt", "hash-a");
+        FileEntity old = new FileEntity();
+        old.setId(12L);
+        old.setFilename("old.txt");
+        old.setFilePath(legacy.toString());
+        old.setSize(3L);
+        when(fileRepository.lockByOwnerIdAndFilenameIn(eq(1L), anyList())).thenReturn(List.of(first, second, old));
+        long version = fileListingCache.version(1L);
+
+        // Act
+        List<BatchItemResult> results = fileBatchService.deleteFiles("testUser",
+                List.of("a.txt", "b.txt", "old.txt", "missing.txt", "../escape.txt"));
+
+        // Assert
+        assertEquals(List.of(BatchItemStatus.OK, BatchItemStatus.OK, BatchItemStatus.OK,
+                BatchItemStatus.NOT_FOUND, BatchItemStatus.INVALID), statuses(results));
+        verify(blobRepository).releaseAll(List.of("hash-a"), 2);
+        verify(fileRepository).deleteAllByIdInBatch(List.of(10L, 11L, 12L));
+        verify(quotaService).release(1L, 15L, 3);
+        assertFalse(Files.exists(legacy));
+        assertNotEquals(version, fileListingCache.version(1L));
+        verifyNoInteractions(folderService);
+    }
+
+    @Test
+    void deleteFiles_NestedNames_OneFolderLookupAndFullNamesInResults() {
+        // Arrange
+        Folder docs = folder(5L, "/docs/");
+        when(folderService.findAll(eq(1L), anyList())).thenReturn(Map.of("/docs/", docs));
+        when(fileRepository.lockInFolder(1L, 5L, List.of("a.txt", "b.txt")))
+                .thenReturn(List.of(blobFile(10L, "a.txt", "hash-a")));
+
+        // Act
+        List<BatchItemResult> results = fileBatchService.deleteFiles("testUser",
+                List.of("docs/a.txt", "docs/b.txt", "missing/c.txt"));
+
+        // Assert
+        assertEquals("docs/a.txt", results.get(0).getFilename());
+        assertEquals(List.of(BatchItemStatus.OK, BatchItemStatus.NOT_FOUND, BatchItemStatus.NOT_FOUND),
+                statuses(results));
+        verify(folderService).findAll(1L, List.of("/docs/", "/missing/"));
+        verify(fileRepository, never()).lockByOwnerIdAndFilenameIn(any(), any());
+        verify(fileRepository).deleteAllByIdInBatch(List.of(10L));
+    }
+
+    @Test
+    void moveFiles_ToOtherFolder_RelocatesRowWithoutBulkRename() {
+        // Arrange
+        Folder archive = folder(7L, "/archive/");
+        FileEntity file = blobFile(10L, "a.txt", "hash-a");
+        when(folderService.findAll(eq(1L), anyList())).thenReturn(Map.of());
+        when(folderService.ensureFolder(1L, "/archive/")).thenReturn(archive);
+        when(fileRepository.lockByOwnerIdAndFilenameIn(1L, List.of("a.txt"))).thenReturn(List.of(file));
+
+        // Act
+        List<BatchItemResult> results = fileBatchService.moveFiles("testUser",
+                List.of(move("a.txt", "archive/b.txt")));
+
+        // Assert
+        assertEquals(List.of(BatchItemStatus.OK), statuses(results));
+        assertSame(archive, file.getFolder());
+        assertEquals("b.txt", file.getFilename());
+        verify(fileRepository).renameAll(1L, Map.of());
+        verify(fileRepository, never()).findExistingInFolder(any(), any(), any());
+    }
+
+    @Test
+    void moveFiles_LegacyFile_MovedOnDiskAndJournalCleared() throws IOException {
+        // Arrange
+        Path legacy = storageDir.resolve("testUser").resolve("old.txt");
+        Files.createDirectories(legacy.getParent());
+        Files.writeString(legacy, "old");
+        FileEntity old = new FileEntity();
+        old.setId(12L);
+        old.setFilename("old.txt");
+        old.setFilePath(legacy.toString());
+        when(folderService.findAll(eq(1L), anyList())).thenReturn(Map.of());
+        when(fileRepository.lockByOwnerIdAndFilenameIn(1L, List.of("old.txt"))).thenReturn(List.of(old));
+
+        // Act
+        List<BatchItemResult> results = fileBatchService.moveFiles("testUser",
+                List.of(move("old.txt", "docs/new.txt")));
+
+        // Assert
+        Path moved = storageDir.resolve("testUser").resolve("docs").resolve("new.txt");
+        assertEquals(List.of(BatchItemStatus.OK), statuses(results));
+        assertEquals("old", Files.readString(moved));
+        assertEquals(moved.toString(), old.getFilePath());
+        try (var journal = Files.list(storageDir.resolve(".journal"))) {
+            assertEquals(0, journal.count());
+        }
+    }
+
+    @Test
+    void moveFiles_ConflictsAndDuplicates_ReportedPerItem() {
+        // Arrange
+        FileEntity first = blobFile(10L, "a.txt", "hash-a");
+        FileEntity second = blobFile(11L, "b.txt", "hash-b");
+        when(fileRepository.lockByOwnerIdAndFilenameIn(eq(1L), anyList())).thenReturn(List.of(first, second));
+        when(fileRepository.findExistingFilenames(eq(1L), anyList())).thenReturn(List.of("taken.txt"));
+
+        // Act
+        List<BatchItemResult> results = fileBatchService.moveFiles("testUser", List.of(
+                move("a.txt", "c.txt"),
+                move("b.txt", "taken.txt"),
+                move("x.txt", "c.txt"),
+                move("y.txt", "z.txt")));
+
+        // Assert
+        assertEquals(List.of(BatchItemStatus.OK, BatchItemStatus.ALREADY_EXISTS,
+                BatchItemStatus.ALREADY_EXISTS, BatchItemStatus.NOT_FOUND), statuses(results));
+        verify(fileRepository).renameAll(1L, Map.of("a.txt", "c.txt"));
+    }
+
+    @Test
+    void statFiles_ReturnsRequestOrder() {
+        // Arrange
+        Instant uploadedAt = Instant.now();
+        when(fileRepository.findItems(eq(1L), anyList()))
+                .thenReturn(List.of(new FileListItem(10L, "b.txt", 3L, uploadedAt)));
+
+        // Act
+        List<BatchStatItem> stats = fileBatchService.statFiles("testUser", List.of("a.txt", "b.txt"));
+
+        // Assert
+        assertFalse(stats.get(0).isExists());
+        assertTrue(stats.get(1).isExists());
+        assertEquals(3L, stats.get(1).getSize());
+        assertEquals(uploadedAt, stats.get(1).getUploadedAt());
+    }
+
+    @Test
+    void deleteFiles_TooManyItems_Rejected() {
+        // Act & Assert
+        List<String> filenames = java.util.stream.IntStream.range(0, 101).mapToObj(i -> "f" + i).toList();
+        assertThrows(IllegalArgumentException.class, () -> fileBatchService.deleteFiles("testUser", filenames));
+    }
+
+    private static FileEntity blobFile(Long id, String filename, String hash) {
+        Blob blob = new Blob();
+        blob.setHash(hash);
+        FileEntity fileEntity = new FileEntity();
+        fileEntity.setId(id);
+        fileEntity.setFilename(filename);
+        fileEntity.setBlob(blob);
+        fileEntity.setSize(6L);
+        return fileEntity;
+    }
+
+    private static Folder folder(Long id, String path) {
+        Folder folder = new Folder();
+        folder.setId(id);
+        folder.setPath(path);
+        return folder;
+    }
+
+    private static BatchMoveRequest.Move move(String from, String to) {
+        BatchMoveRequest.Move move = new BatchMoveRequest.Move();
+        move.setFrom(from);
+        move.setTo(to);
+        return move;
+    }
+
+    private static List<BatchItemStatus> statuses(List<BatchItemResult> results) {
+        return results.stream().map(BatchItemResult::getStatus).toList();
+    }
+
+    // Транзакции без ресурса: нужен только жизненный цикл синхронизаций
+    private static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
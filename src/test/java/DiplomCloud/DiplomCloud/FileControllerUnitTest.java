@@ -1,36 +1,72 @@
 package DiplomCloud.DiplomCloud;
 
 import DiplomCloud.DiplomCloud.dto.FileInfoResponse;
+import DiplomCloud.DiplomCloud.dto.FileListItem;
+import DiplomCloud.DiplomCloud.exception.FileAlreadyExistsException;
+import DiplomCloud.DiplomCloud.exception.FileAlreadyExistsRuntimeException;
+import DiplomCloud.DiplomCloud.exception.FileNotFoundRuntimeException;
 import DiplomCloud.DiplomCloud.exception.FileStorageException;
+import DiplomCloud.DiplomCloud.exception.QuotaExceededException;
 import DiplomCloud.DiplomCloud.exception.UserNotFoundException;
+import DiplomCloud.DiplomCloud.models.Blob;
+import DiplomCloud.DiplomCloud.models.ContentCodec;
 import DiplomCloud.DiplomCloud.models.FileEntity;
+import DiplomCloud.DiplomCloud.models.StorageTier;
 import DiplomCloud.DiplomCloud.models.User;
 import DiplomCloud.DiplomCloud.repositories.FileRepository;
+import DiplomCloud.DiplomCloud.repositories.FileSort;
 import DiplomCloud.DiplomCloud.repositories.UserRepository;
-import DiplomCloud.DiplomCloud.security.JwtTokenProvider;
+import DiplomCloud.DiplomCloud.services.BlobService;
+import DiplomCloud.DiplomCloud.services.FileListingCache;
 import DiplomCloud.DiplomCloud.services.FileStorageService;
+import DiplomCloud.DiplomCloud.services.FileSystemStorageService;
+import DiplomCloud.DiplomCloud.services.FolderService;
+import DiplomCloud.DiplomCloud.services.HashShardedLayout;
+import DiplomCloud.DiplomCloud.services.QuotaService;
+import DiplomCloud.DiplomCloud.services.RenameJournal;
+import DiplomCloud.DiplomCloud.services.StagedContent;
+import DiplomCloud.DiplomCloud.services.StoredContent;
+import DiplomCloud.DiplomCloud.services.UserCache;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.core.io.Resource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.FileNotFoundException;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 
-import static org.junit.Assert.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 public class FileControllerUnitTest {
+    // SHA-256 строки "hello"
+    private static final String HELLO_HASH = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
     @Mock
     private FileRepository fileRepository;
 
@@ -38,219 +74,399 @@ public class FileControllerUnitTest {
     private UserRepository userRepository;
 
     @Mock
-    private JwtTokenProvider jwtTokenProvider;
+    private BlobService blobService;
 
     @Mock
-    private MultipartFile multipartFile;
+    private UserCache userCache;
+
+    @Mock
+    private FileListingCache fileListingCache;
+
+    @Mock
+    private FolderService folderService;
+
+    @Mock
+    private QuotaService quotaService;
+
+    @Mock
+    private RenameJournal renameJournal;
 
     @Mock
-    private Resource resource;
+    private TransactionTemplate transactionTemplate;
 
-    @InjectMocks
+    @Mock
+    private MultipartFile multipartFile;
+
+    @TempDir
+    Path storageDir;
+
+    private FileSystemStorageService fileSystemStorageService;
     private FileStorageService fileStorageService;
 
+    private final Long testUserId = 1L;
     private final String testUsername = "testUser";
-    private final String testToken = "testToken";
     private final String testFilename = "test.txt";
     private final String testNewFilename = "newTest.txt";
-    private final long testFileSize = 1024L;
     private User testUser;
 
     @BeforeEach
     void setUp() {
         testUser = new User();
+        testUser.setId(testUserId);
         testUser.setLogin(testUsername);
-        fileStorageService.setStoragePath("test-storage"); // теперь можем установить значение
+        fileSystemStorageService = new FileSystemStorageService(storageDir.toString(), new HashShardedLayout(2, 2));
+        fileStorageService = new FileStorageService(fileRepository, userRepository, fileSystemStorageService,
+                blobService, userCache, fileListingCache, folderService, quotaService, renameJournal,
+                transactionTemplate);
     }
 
     @Test
     void uploadFile_Success() throws IOException {
         // Arrange
-        when(jwtTokenProvider.getUsername(testToken)).thenReturn(testUsername);
-        when(userRepository.findByLogin(testUsername)).thenReturn(Optional.of(testUser));
-        when(multipartFile.getSize()).thenReturn(testFileSize);
-
-        Path mockPath = mock(Path.class);
-        when(mockPath.resolve(testFilename)).thenReturn(mockPath);
-        when(mockPath.toString()).thenReturn("test-path");
-
-        // Mock Files.createDirectories and file transfer
-        doNothing().when(multipartFile).transferTo(any(Path.class));
+        InputStream content = stream("hello");
+        StagedContent staged = mock(StagedContent.class);
+        when(userCache.resolveUserId(testUsername)).thenReturn(testUserId);
+        when(userRepository.getReferenceById(testUserId)).thenReturn(testUser);
+        when(multipartFile.getSize()).thenReturn(5L);
+        when(multipartFile.getInputStream()).thenReturn(content);
+        when(blobService.stage(content, -1, testFilename, null)).thenReturn(staged);
+        when(blobService.publish(staged)).thenReturn(new StoredContent(blob(), ContentCodec.NONE, 5));
+        when(fileRepository.findInRoot(testUserId, testFilename)).thenReturn(Optional.empty());
+        runTransactions();
 
         // Act
-        fileStorageService.uploadFile(testToken, testFilename, multipartFile);
+        fileStorageService.uploadFile(testUsername, testFilename, multipartFile);
 
         // Assert
-        verify(jwtTokenProvider).getUsername(testToken);
-        verify(userRepository).findByLogin(testUsername);
-        verify(fileRepository).save(any(FileEntity.class));
+        ArgumentCaptor<FileEntity> saved = ArgumentCaptor.forClass(FileEntity.class);
+        verify(fileRepository).save(saved.capture());
+        assertSame(testUser, saved.getValue().getOwner());
+        assertEquals(testFilename, saved.getValue().getFilename());
+        assertEquals(5L, saved.getValue().getSize());
+        verify(userCache, atLeastOnce()).resolveUserId(testUsername);
+        verify(userRepository).getReferenceById(testUserId);
+        verify(userRepository, never()).findByLogin(any());
+        verify(quotaService).checkAvailable(testUserId, 5L);
+        verify(quotaService).charge(testUserId, 5L, 1);
+        verify(fileListingCache).invalidate(testUserId);
+        verify(blobService).discard(staged);
     }
 
     @Test
     void uploadFile_UserNotFound_ThrowsException() {
         // Arrange
-        when(jwtTokenProvider.getUsername(testToken)).thenReturn(testUsername);
-        when(userRepository.findByLogin(testUsername)).thenReturn(Optional.empty());
+        when(userCache.resolveUserId(testUsername)).thenThrow(new UserNotFoundException(testUsername));
 
         // Act & Assert
         assertThrows(UserNotFoundException.class, () ->
-                fileStorageService.uploadFile(testToken, testFilename, multipartFile));
+                fileStorageService.uploadFile(testUsername, testFilename, multipartFile));
+        verifyNoInteractions(blobService, transactionTemplate, fileRepository);
     }
 
     @Test
     void uploadFile_IOException_ThrowsFileStorageException() throws IOException {
         // Arrange
-        when(jwtTokenProvider.getUsername(testToken)).thenReturn(testUsername);
-        when(userRepository.findByLogin(testUsername)).thenReturn(Optional.of(testUser));
-        doThrow(IOException.class).when(multipartFile).transferTo(any(Path.class));
+        when(userCache.resolveUserId(testUsername)).thenReturn(testUserId);
+        when(multipartFile.getInputStream()).thenThrow(new IOException("Соединение прервано"));
 
         // Act & Assert
         assertThrows(FileStorageException.class, () ->
-                fileStorageService.uploadFile(testToken, testFilename, multipartFile));
+                fileStorageService.uploadFile(testUsername, testFilename, multipartFile));
+        verifyNoInteractions(transactionTemplate);
+        verify(fileRepository, never()).save(any());
     }
 
     @Test
     void downloadFile_Success() throws IOException {
         // Arrange
-        Path mockPath = mock(Path.class);
-        when(mockPath.toUri()).thenReturn(Paths.get(testFilename).toUri());
-        when(mockPath.normalize()).thenReturn(mockPath);
-
-        // Mock resource behavior
-        when(resource.exists()).thenReturn(true);
-        when(resource.isReadable()).thenReturn(true);
+        Path blobFile = fileSystemStorageService.blobPath(HELLO_HASH);
+        Files.createDirectories(blobFile.getParent());
+        Files.writeString(blobFile, "hello");
+        when(userCache.resolveUserId(testUsername)).thenReturn(testUserId);
+        when(fileRepository.findInRoot(testUserId, testFilename)).thenReturn(Optional.of(storedFile()));
 
         // Act
-        Resource result = fileStorageService.downloadFile(testToken, testFilename);
+        Resource result = fileStorageService.downloadFile(testUsername, testFilename);
 
         // Assert
-        assertNotNull(result);
+        try (InputStream in = result.getInputStream()) {
+            assertEquals("hello", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
     }
 
     @Test
-    void downloadFile_FileNotReadable_ThrowsException() throws IOException {
+    void downloadFile_FileMissing_ThrowsException() {
         // Arrange
-        Path mockPath = mock(Path.class);
-        when(mockPath.toUri()).thenReturn(Paths.get(testFilename).toUri());
-        when(mockPath.normalize()).thenReturn(mockPath);
-
-        // Mock resource behavior
-        when(resource.exists()).thenReturn(true);
-        when(resource.isReadable()).thenReturn(false);
+        when(userCache.resolveUserId(testUsername)).thenReturn(testUserId);
+        when(fileRepository.findInRoot(testUserId, testFilename)).thenReturn(Optional.of(storedFile()));
 
         // Act & Assert
-        assertThrows(FileNotFoundException.class, () ->
-                fileStorageService.downloadFile(testToken, testFilename));
+        assertThrows(FileStorageException.class, () ->
+                fileStorageService.downloadFile(testUsername, testFilename));
     }
 
     @Test
-    void deleteFile_Success() throws IOException {
+    void deleteFile_Success() {
         // Arrange
-        when(jwtTokenProvider.getUsername(testToken)).thenReturn(testUsername);
-        when(userRepository.findByLogin(testUsername)).thenReturn(Optional.of(testUser));
-
-        Path mockPath = mock(Path.class);
-        when(Files.deleteIfExists(mockPath)).thenReturn(true);
+        FileEntity fileEntity = storedFile();
+        when(userCache.resolveUserId(testUsername)).thenReturn(testUserId);
+        when(userRepository.getReferenceById(testUserId)).thenReturn(testUser);
+        when(fileRepository.findInRoot(testUserId, testFilename)).thenReturn(Optional.of(fileEntity));
 
         // Act
-        fileStorageService.deleteFile(testToken, testFilename);
+        fileStorageService.deleteFile(testUsername, testFilename);
 
         // Assert
-        verify(fileRepository).deleteByOwnerAndFilename(testUser, testFilename);
+        verify(blobService).release(fileEntity.getBlob());
+        verify(fileRepository).delete(fileEntity);
+        verify(quotaService).release(testUserId, 5L, 1);
+        verify(fileListingCache).invalidate(testUserId);
     }
 
     @Test
     void deleteFile_UserNotFound_ThrowsException() {
         // Arrange
-        when(jwtTokenProvider.getUsername(testToken)).thenReturn(testUsername);
-        when(userRepository.findByLogin(testUsername)).thenReturn(Optional.empty());
+        when(userCache.resolveUserId(testUsername)).thenThrow(new UserNotFoundException(testUsername));
 
         // Act & Assert
         assertThrows(UserNotFoundException.class, () ->
-                fileStorageService.deleteFile(testToken, testFilename));
+                fileStorageService.deleteFile(testUsername, testFilename));
+        verify(fileRepository, never()).delete(any());
     }
 
     @Test
-    void renameFile_Success() throws IOException {
+    void renameFile_Success() {
         // Arrange
-        when(jwtTokenProvider.getUsername(testToken)).thenReturn(testUsername);
-        when(userRepository.findByLogin(testUsername)).thenReturn(Optional.of(testUser));
-
-        FileEntity fileEntity = new FileEntity();
-        fileEntity.setFilename(testFilename);
-        when(fileRepository.findByOwnerAndFilename(testUser, testFilename))
-                .thenReturn(Optional.of(fileEntity));
-
-        Path mockSource = mock(Path.class);
-        Path mockTarget = mock(Path.class);
-        when(mockTarget.toString()).thenReturn("new-path");
+        FileEntity fileEntity = storedFile();
+        when(userCache.resolveUserId(testUsername)).thenReturn(testUserId);
+        when(fileRepository.findInRoot(testUserId, testFilename)).thenReturn(Optional.of(fileEntity));
+        when(fileRepository.renameIfAbsent(testUserId, fileEntity.getId(), null, testNewFilename, null))
+                .thenReturn(1);
 
         // Act
-        fileStorageService.renameFile(testToken, testFilename, testNewFilename);
+        fileStorageService.renameFile(testUsername, testFilename, testNewFilename);
 
         // Assert
-        verify(fileRepository).save(fileEntity);
-        assertEquals(testNewFilename, fileEntity.getFilename());
+        verify(fileListingCache).invalidate(testUserId);
+        verifyNoInteractions(renameJournal);
     }
 
     @Test
-    void renameFile_FileNotFound_ThrowsException() {
+    void renameFile_TargetExists_ThrowsException() {
         // Arrange
-        when(jwtTokenProvider.getUsername(testToken)).thenReturn(testUsername);
-        when(userRepository.findByLogin(testUsername)).thenReturn(Optional.of(testUser));
-        when(fileRepository.findByOwnerAndFilename(testUser, testFilename))
-                .thenReturn(Optional.empty());
+        FileEntity fileEntity = storedFile();
+        when(userCache.resolveUserId(testUsername)).thenReturn(testUserId);
+        when(fileRepository.findInRoot(testUserId, testFilename)).thenReturn(Optional.of(fileEntity));
+        when(fileRepository.renameIfAbsent(testUserId, fileEntity.getId(), null, testNewFilename, null))
+                .thenReturn(0);
 
         // Act & Assert
-        assertThrows(FileNotFoundException.class, () ->
-                fileStorageService.renameFile(testToken, testFilename, testNewFilename));
+        assertThrows(FileAlreadyExistsException.class, () ->
+                fileStorageService.renameFile(testUsername, testFilename, testNewFilename));
+        verify(fileListingCache, never()).invalidate(any());
     }
 
     @Test
-    void listFiles_Success() {
+    void renameFile_NameTakenConcurrently_ThrowsAlreadyExists() {
+        // Arrange
+        FileEntity fileEntity = storedFile();
+        when(userCache.resolveUserId(testUsername)).thenReturn(testUserId);
+        when(fileRepository.findInRoot(testUserId, testFilename)).thenReturn(Optional.of(fileEntity));
+        when(fileRepository.renameIfAbsent(testUserId, fileEntity.getId(), null, testNewFilename, null))
+                .thenThrow(nameConflict());
+
+        // Act & Assert
+        assertThrows(FileAlreadyExistsException.class, () ->
+                fileStorageService.renameFile(testUsername, testFilename, testNewFilename));
+        verify(fileListingCache, never()).invalidate(any());
+    }
+
+    @Test
+    void uploadFile_NameTakenConcurrently_ThrowsAlreadyExists() throws IOException {
+        // Arrange
+        InputStream content = stream("hello");
+        StagedContent staged = mock(StagedContent.class);
+        when(userCache.resolveUserId(testUsername)).thenReturn(testUserId);
+        when(userRepository.getReferenceById(testUserId)).thenReturn(testUser);
+        when(multipartFile.getInputStream()).thenReturn(content);
+        when(blobService.stage(content, -1, testFilename, null)).thenReturn(staged);
+        when(blobService.publish(staged)).thenReturn(new StoredContent(blob(), ContentCodec.NONE, 5));
+        when(fileRepository.findInRoot(testUserId, testFilename)).thenReturn(Optional.empty());
+        when(fileRepository.save(any(FileEntity.class))).thenThrow(nameConflict());
+        runTransactions();
+
+        // Act & Assert
+        assertThrows(FileAlreadyExistsRuntimeException.class, () ->
+                fileStorageService.uploadFile(testUsername, testFilename, multipartFile));
+        verify(quotaService, never()).charge(any(), anyLong(), anyInt());
+        verify(blobService).discard(staged);
+    }
+
+    @Test
+    void uploadFile_OverwritesLegacyFile_DeletesOldFileAfterCommit() throws IOException {
+        // Arrange
+        Path legacyFile = legacyFile();
+        arrangeOverwrite();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            fileStorageService.uploadFile(testUsername, testFilename, multipartFile);
+            assertTrue(Files.exists(legacyFile), "до коммита старый файл нужен строке в БД");
+
+            // Act
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Assert
+        assertFalse(Files.exists(legacyFile));
+    }
+
+    @Test
+    void uploadFile_OverwritesLegacyFile_RolledBack_KeepsOldFile() throws IOException {
         // Arrange
-        when(jwtTokenProvider.getUsername(testToken)).thenReturn(testUsername);
-        when(userRepository.findByLogin(testUsername)).thenReturn(Optional.of(testUser));
+        Path legacyFile = legacyFile();
+        arrangeOverwrite();
+        doThrow(new QuotaExceededException(5, 0)).when(quotaService).charge(testUserId, 0L, 0);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // Act
+            assertThrows(QuotaExceededException.class, () ->
+                    fileStorageService.uploadFile(testUsername, testFilename, multipartFile));
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Assert
+        assertEquals("hello", Files.readString(legacyFile));
+    }
+
+    @Test
+    void resolveSafeKey_NormalizesNameWithoutLeavingUserDirectory() {
+        // Act & Assert
+        assertEquals("testUser/docs/2024/report.pdf",
+                fileStorageService.resolveSafeKey(testUsername, "docs/./2024/../2024/report.pdf"));
+        assertEquals("testUser/a.txt", fileStorageService.resolveSafeKey(testUsername, "docs/../a.txt"));
+        assertThrows(SecurityException.class, () -> fileStorageService.resolveSafeKey(testUsername, "../otherUser/a.txt"));
+        assertThrows(SecurityException.class, () -> fileStorageService.resolveSafeKey(testUsername, "docs/../../a.txt"));
+        assertThrows(SecurityException.class, () -> fileStorageService.resolveSafeKey(testUsername, "/etc/passwd"));
+        assertThrows(SecurityException.class, () -> fileStorageService.resolveSafeKey("..", "a.txt"));
+    }
 
-        FileEntity file1 = new FileEntity();
-        file1.setFilename("file1.txt");
-        file1.setSize(100L);
+    @Test
+    void renameFile_FileNotFound_ThrowsException() {
+        // Arrange
+        when(userCache.resolveUserId(testUsername)).thenReturn(testUserId);
+        when(fileRepository.findInRoot(testUserId, testFilename)).thenReturn(Optional.empty());
 
-        FileEntity file2 = new FileEntity();
-        file2.setFilename("file2.txt");
-        file2.setSize(200L);
+        // Act & Assert
+        assertThrows(FileNotFoundRuntimeException.class, () ->
+                fileStorageService.renameFile(testUsername, testFilename, testNewFilename));
+        verify(fileRepository, never()).renameIfAbsent(any(), any(), any(), any(), any());
+    }
 
-        when(fileRepository.findByOwner(testUser)).thenReturn(List.of(file1, file2));
+    @Test
+    void listFiles_Success() {
+        // Arrange
+        when(userCache.resolveUserId(testUsername)).thenReturn(testUserId);
+        loadListingsThroughCache();
+        FileListItem file1 = new FileListItem(1L, "file1.txt", 100L, Instant.now());
+        FileListItem file2 = new FileListItem(2L, "file2.txt", 200L, Instant.now());
+        when(fileRepository.findPage(testUserId, null, FileSort.NAME, false, null, null, 3))
+                .thenReturn(List.of(file1, file2));
 
         // Act
-        List<FileInfoResponse> result = fileStorageService.listFiles(testToken, 2);
+        List<FileInfoResponse> result = fileStorageService.listFiles(testUsername, 2);
 
         // Assert
         assertEquals(2, result.size());
         assertEquals("file1.txt", result.get(0).getFilename());
         assertEquals(Long.valueOf(100L), result.get(0).getSize());
+        verify(userRepository, never()).findByLogin(any());
     }
 
     @Test
     void listFiles_WithLimit() {
         // Arrange
-        when(jwtTokenProvider.getUsername(testToken)).thenReturn(testUsername);
-        when(userRepository.findByLogin(testUsername)).thenReturn(Optional.of(testUser));
-
-        FileEntity file1 = new FileEntity();
-        file1.setFilename("file1.txt");
-        file1.setSize(100L);
-
-        FileEntity file2 = new FileEntity();
-        file2.setFilename("file2.txt");
-        file2.setSize(200L);
-
-        when(fileRepository.findByOwner(testUser)).thenReturn(List.of(file1, file2));
+        when(userCache.resolveUserId(testUsername)).thenReturn(testUserId);
+        loadListingsThroughCache();
+        FileListItem file1 = new FileListItem(1L, "file1.txt", 100L, Instant.now());
+        FileListItem file2 = new FileListItem(2L, "file2.txt", 200L, Instant.now());
+        when(fileRepository.findPage(testUserId, null, FileSort.NAME, false, null, null, 2))
+                .thenReturn(List.of(file1, file2));
 
         // Act
-        List<FileInfoResponse> result = fileStorageService.listFiles(testToken, 1);
+        List<FileInfoResponse> result = fileStorageService.listFiles(testUsername, 1);
 
         // Assert
         assertEquals(1, result.size());
     }
+
+    private FileEntity storedFile() {
+        FileEntity fileEntity = new FileEntity();
+        fileEntity.setId(7L);
+        fileEntity.setFilename(testFilename);
+        fileEntity.setOwner(testUser);
+        fileEntity.setBlob(blob());
+        fileEntity.setFilePath(fileSystemStorageService.blobLocation(HELLO_HASH));
+        fileEntity.setSize(5L);
+        fileEntity.setUploadedAt(Instant.now());
+        return fileEntity;
+    }
+
+    // Файл старого формата: без блоба, в каталоге пользователя
+    private Path legacyFile() throws IOException {
+        Path legacyFile = fileSystemStorageService.backend(StorageTier.HOT)
+                .localPath(fileSystemStorageService.userFileKey(testUsername, testFilename)).orElseThrow();
+        Files.createDirectories(legacyFile.getParent());
+        return Files.writeString(legacyFile, "hello");
+    }
+
+    private void arrangeOverwrite() throws IOException {
+        FileEntity legacy = storedFile();
+        legacy.setBlob(null);
+        legacy.setFilePath(null);
+        InputStream content = stream("hello");
+        StagedContent staged = mock(StagedContent.class);
+        when(userCache.resolveUserId(testUsername)).thenReturn(testUserId);
+        when(userRepository.getReferenceById(testUserId)).thenReturn(testUser);
+        when(multipartFile.getInputStream()).thenReturn(content);
+        when(blobService.stage(content, -1, testFilename, null)).thenReturn(staged);
+        when(blobService.publish(staged)).thenReturn(new StoredContent(blob(), ContentCodec.NONE, 5));
+        when(fileRepository.findInRoot(testUserId, testFilename)).thenReturn(Optional.of(legacy));
+        runTransactions();
+    }
+
+    private static DataIntegrityViolationException nameConflict() {
+        return new DataIntegrityViolationException("duplicate key", new ConstraintViolationException(
+                "duplicate key", new SQLException("duplicate key", "23505"), FileRepository.UNIQUE_NAME_INDEX));
+    }
+
+    private static Blob blob() {
+        Blob blob = new Blob();
+        blob.setHash(HELLO_HASH);
+        blob.setSize(5L);
+        return blob;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void runTransactions() {
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.getArgument(0, TransactionCallback.class).doInTransaction(null));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void loadListingsThroughCache() {
+        when(fileListingCache.get(eq(testUserId), isNull(), anyInt(), eq(FileSort.NAME), eq(false), isNull(), any()))
+                .thenAnswer(invocation -> invocation.getArgument(6, Supplier.class).get());
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
 }
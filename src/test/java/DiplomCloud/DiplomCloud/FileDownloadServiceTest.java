@@ -0,0 +1,340 @@
+package DiplomCloud.DiplomCloud;
+
+import DiplomCloud.DiplomCloud.models.ContentCodec;
+import DiplomCloud.DiplomCloud.models.StorageTier;
+import DiplomCloud.DiplomCloud.services.FileDownloadService;
+import DiplomCloud.DiplomCloud.services.LocalStorageBackend;
+import DiplomCloud.DiplomCloud.services.StorageMetrics;
+import DiplomCloud.DiplomCloud.services.StoredFile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class FileDownloadServiceTest {
+    private static final String HASH = "0f1e2d3c";
+    private static final long MODIFIED = 1_700_000_000_000L;
+
+    @Mock
+    private HttpServletRequest request;
+
+    @Mock
+    private HttpServletResponse response;
+
+    @TempDir
+    Path tempDir;
+
+    private final FileDownloadService fileDownloadService = new FileDownloadService(new StorageMetrics(new SimpleMeterRegistry()));
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = tempDir.resolve("test.txt");
+        Files.writeString(file, "0123456789abcdefghij");
+        lenient().when(request.getMethod()).thenReturn("GET");
+        lenient().when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        });
+    }
+
+    @Test
+    void sendFile_NoRange_ReturnsWholeFile() throws IOException {
+        // Act
+        fileDownloadService.sendFile(file, "test.txt", request, response);
+
+        // Assert
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        verify(response).setContentLengthLong(20L);
+        assertEquals("0123456789abcdefghij", body.toString());
+    }
+
+    @Test
+    void sendFile_SingleRange_ReturnsPartialContent() throws IOException {
+        // Arrange
+        when(request.getHeader("Range")).thenReturn("bytes=2-5");
+
+        // Act
+        fileDownloadService.sendFile(file, "test.txt", request, response);
+
+        // Assert
+        verify(response).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        verify(response).setHeader("Content-Range", "bytes 2-5/20");
+        assertEquals("2345", body.toString());
+    }
+
+    @Test
+    void sendFile_SingleRange_UsesSendfileWhenSupported() throws IOException {
+        // Arrange
+        when(request.getHeader("Range")).thenReturn("bytes=-3");
+        when(request.getAttribute("org.apache.tomcat.sendfile.support")).thenReturn(Boolean.TRUE);
+
+        // Act
+        fileDownloadService.sendFile(file, "test.txt", request, response);
+
+        // Assert
+        verify(request).setAttribute("org.apache.tomcat.sendfile.start", 17L);
+        verify(request).setAttribute("org.apache.tomcat.sendfile.end", 20L);
+        assertEquals(0, body.size());
+    }
+
+    @Test
+    void sendFile_MultipleRanges_ReturnsMultipart() throws IOException {
+        // Arrange
+        when(request.getHeader("Range")).thenReturn("bytes=0-1,10-12");
+
+        // Act
+        fileDownloadService.sendFile(file, "test.txt", request, response);
+
+        // Assert
+        verify(response).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        String content = body.toString();
+        assertTrue(content.contains("Content-Range: bytes 0-1/20\r\n\r\n01\r\n"));
+        assertTrue(content.contains("Content-Range: bytes 10-12/20\r\n\r\nabc\r\n"));
+    }
+
+    @Test
+    void sendFile_OverlappingRanges_CoalescedIntoOne() throws IOException {
+        // Arrange
+        when(request.getHeader("Range")).thenReturn("bytes=8-11,2-5,4-7");
+
+        // Act
+        fileDownloadService.sendFile(file, "test.txt", request, response);
+
+        // Assert
+        verify(response).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        verify(response).setHeader("Content-Range", "bytes 2-11/20");
+        assertEquals("23456789ab", body.toString());
+    }
+
+    @Test
+    void sendFile_RangesLongerThanFile_ReturnsWholeFileOnce() throws IOException {
+        // Arrange: один и тот же диапазон много раз
+        when(request.getHeader("Range")).thenReturn("bytes=" + String.join(",", Collections.nCopies(50, "0-")));
+
+        // Act
+        fileDownloadService.sendFile(file, "test.txt", request, response);
+
+        // Assert
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        verify(response).setContentLengthLong(20L);
+        assertEquals("0123456789abcdefghij", body.toString());
+    }
+
+    @Test
+    void sendFile_UnsatisfiableRange_Returns416() throws IOException {
+        // Arrange
+        when(request.getHeader("Range")).thenReturn("bytes=50-60");
+
+        // Act
+        fileDownloadService.sendFile(file, "test.txt", request, response);
+
+        // Assert
+        verify(response).setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        verify(response).setHeader("Content-Range", "bytes */20");
+    }
+
+    @Test
+    void sendFile_IfRangeMismatch_ReturnsWholeFile() throws IOException {
+        // Arrange
+        when(request.getHeader("Range")).thenReturn("bytes=2-5");
+        when(request.getHeader("If-Range")).thenReturn("\"etag\"");
+        when(request.getDateHeader("If-Range")).thenThrow(IllegalArgumentException.class);
+
+        // Act
+        fileDownloadService.sendFile(file, "test.txt", request, response);
+
+        // Assert
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        assertEquals("0123456789abcdefghij", body.toString());
+    }
+
+    @Test
+    void sendFile_GzipStoredAndAccepted_PassesThroughEncodedBytes() throws IOException {
+        // Arrange
+        Path gzipped = gzip("0123456789abcdefghij");
+        lenient().when(request.getHeaders("Accept-Encoding")).thenReturn(Collections.enumeration(List.of("br, gzip")));
+
+        // Act
+        fileDownloadService.sendFile(stored(gzipped, ContentCodec.GZIP), "test.txt", request, response);
+
+        // Assert
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        verify(response).setHeader("Content-Encoding", "gzip");
+        verify(response).setContentLengthLong(Files.size(gzipped));
+        assertArrayEquals(Files.readAllBytes(gzipped), body.toByteArray());
+    }
+
+    @Test
+    void sendFile_GzipStoredNotAccepted_DecodesOnTheFly() throws IOException {
+        // Arrange
+        Path gzipped = gzip("0123456789abcdefghij");
+        lenient().when(request.getHeaders("Accept-Encoding")).thenReturn(Collections.enumeration(List.of("gzip;q=0")));
+
+        // Act
+        fileDownloadService.sendFile(stored(gzipped, ContentCodec.GZIP), "test.txt", request, response);
+
+        // Assert
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        verify(response, never()).setHeader(eq("Content-Encoding"), any());
+        verify(response).setContentLengthLong(20L);
+        assertEquals("0123456789abcdefghij", body.toString());
+    }
+
+    @Test
+    void sendFile_GzipStoredWithRange_ServesDecodedRange() throws IOException {
+        // Arrange
+        Path gzipped = gzip("0123456789abcdefghij");
+        when(request.getHeader("Range")).thenReturn("bytes=10-12");
+
+        // Act
+        fileDownloadService.sendFile(stored(gzipped, ContentCodec.GZIP), "test.txt", request, response);
+
+        // Assert
+        verify(response).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        verify(response).setHeader("Content-Range", "bytes 10-12/20");
+        assertEquals("abc", body.toString());
+    }
+
+    @Test
+    void sendFile_IfNoneMatchCurrentHash_Returns304WithoutReadingFile() throws IOException {
+        // Arrange
+        StoredFile missing = new StoredFile(tempDir.resolve("missing"), ContentCodec.NONE, 20L, HASH, MODIFIED);
+        when(request.getHeaders("If-None-Match")).thenReturn(headers("\"other\", W/\"" + HASH + "\""));
+
+        // Act
+        fileDownloadService.sendFile(missing, "test.txt", request, response);
+
+        // Assert
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(response).setHeader("ETag", "\"" + HASH + "\"");
+        assertEquals(0, body.size());
+    }
+
+    @Test
+    void sendFile_IfNoneMatchGzipVariant_Returns304() throws IOException {
+        // Arrange
+        when(request.getHeaders("If-None-Match")).thenReturn(headers("\"" + HASH + "-gzip\""));
+
+        // Act
+        fileDownloadService.sendFile(stored(gzip("0123456789abcdefghij"), ContentCodec.GZIP),
+                "test.txt", request, response);
+
+        // Assert
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(response).setHeader("ETag", "\"" + HASH + "-gzip\"");
+        verify(response).setHeader("Vary", "Accept-Encoding");
+    }
+
+    @Test
+    void sendFile_IfNoneMatchStale_ReturnsWholeFileWithValidators() throws IOException {
+        // Arrange
+        when(request.getHeaders("If-None-Match")).thenReturn(headers("\"stale\""));
+
+        // Act
+        fileDownloadService.sendFile(stored(file, ContentCodec.NONE), "test.txt", request, response);
+
+        // Assert
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+        verify(response).setHeader("ETag", "\"" + HASH + "\"");
+        verify(response).setDateHeader("Last-Modified", MODIFIED);
+        assertEquals("0123456789abcdefghij", body.toString());
+    }
+
+    @Test
+    void sendFile_IfModifiedSinceNotOlder_Returns304() throws IOException {
+        // Arrange
+        lenient().when(request.getHeaders("If-Modified-Since"))
+                .thenReturn(headers("Tue, 14 Nov 2023 22:13:20 GMT"));
+
+        // Act
+        fileDownloadService.sendFile(stored(file, ContentCodec.NONE), "test.txt", request, response);
+
+        // Assert
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        assertEquals(0, body.size());
+    }
+
+    @Test
+    void sendFile_IfRangeMatchingEtag_ReturnsPartialContent() throws IOException {
+        // Arrange
+        when(request.getHeader("Range")).thenReturn("bytes=2-5");
+        when(request.getHeader("If-Range")).thenReturn("\"" + HASH + "\"");
+        when(request.getDateHeader("If-Range")).thenThrow(IllegalArgumentException.class);
+
+        // Act
+        fileDownloadService.sendFile(stored(file, ContentCodec.NONE), "test.txt", request, response);
+
+        // Assert
+        verify(response).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        assertEquals("2345", body.toString());
+    }
+
+    @Test
+    void sendFile_RemoteObject_StreamsRangeFromBackendWithoutSendfile() throws IOException {
+        // Arrange
+        when(request.getHeader("Range")).thenReturn("bytes=2-5");
+        lenient().when(request.getAttribute("org.apache.tomcat.sendfile.support")).thenReturn(Boolean.TRUE);
+        StoredFile remote = new StoredFile(null, ContentCodec.NONE, 20L, HASH, MODIFIED, null, StorageTier.HOT,
+                new LocalStorageBackend(tempDir.toString()), "test.txt");
+
+        // Act
+        fileDownloadService.sendFile(remote, "test.txt", request, response);
+
+        // Assert
+        verify(response).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        verify(request, never()).setAttribute(eq("org.apache.tomcat.sendfile.filename"), any());
+        assertEquals("2345", body.toString());
+    }
+
+    private static Enumeration<String> headers(String value) {
+        return Collections.enumeration(List.of(value));
+    }
+
+    private StoredFile stored(Path path, ContentCodec codec) {
+        return new StoredFile(path, codec, 20L, HASH, MODIFIED);
+    }
+
+    private Path gzip(String content) throws IOException {
+        Path gzipped = tempDir.resolve("test.txt.gz");
+        try (OutputStream out = ContentCodec.GZIP.encode(Files.newOutputStream(gzipped), 6)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return gzipped;
+    }
+}
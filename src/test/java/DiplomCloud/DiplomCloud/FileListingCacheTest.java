@@ -0,0 +1,140 @@
+package DiplomCloud.DiplomCloud;
+
+import DiplomCloud.DiplomCloud.dto.FileInfoResponse;
+import DiplomCloud.DiplomCloud.dto.FileListPage;
+import DiplomCloud.DiplomCloud.repositories.FileSort;
+import DiplomCloud.DiplomCloud.services.FileListingCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileListingCacheTest {
+    private SimpleMeterRegistry meterRegistry;
+    private FileListingCache fileListingCache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        fileListingCache = new FileListingCache(1000, 100, meterRegistry);
+    }
+
+    @Test
+    void get_RepeatedRequest_LoadsOnceAndCountsHit() {
+        // Arrange
+        AtomicInteger loads = new AtomicInteger();
+
+        // Act
+        fileListingCache.get(1L, 10, FileSort.NAME, false, null, () -> page(loads, "a.txt"));
+        FileListPage page = fileListingCache.get(1L, 10, FileSort.NAME, false, null, () -> page(loads, "b.txt"));
+
+        // Assert
+        assertEquals(1, loads.get());
+        assertEquals("a.txt", page.getFiles().get(0).getFilename());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void etag_ChangesOnlyWhenListChanges() {
+        // Arrange
+        String before = fileListingCache.etag(1L);
+
+        // Act
+        String repeated = fileListingCache.etag(1L);
+        fileListingCache.invalidate(2L);
+        String otherUserChanged = fileListingCache.etag(1L);
+        fileListingCache.invalidate(1L);
+
+        // Assert
+        assertEquals(before, repeated);
+        assertEquals(before, otherUserChanged);
+        assertNotEquals(before, fileListingCache.etag(1L));
+        // После перезапуска счетчик версий начинается заново, но ETag не повторяется
+        assertNotEquals(before, new FileListingCache(1000, 100, meterRegistry).etag(1L));
+    }
+
+    @Test
+    void invalidate_OutsideTransaction_NextRequestReloads() {
+        // Arrange
+        AtomicInteger loads = new AtomicInteger();
+        fileListingCache.get(1L, 10, FileSort.NAME, false, null, () -> page(loads, "a.txt"));
+        long version = fileListingCache.version(1L);
+
+        // Act
+        fileListingCache.invalidate(1L);
+        FileListPage page = fileListingCache.get(1L, 10, FileSort.NAME, false, null, () -> page(loads, "b.txt"));
+
+        // Assert
+        assertEquals(2, loads.get());
+        assertEquals("b.txt", page.getFiles().get(0).getFilename());
+        assertNotEquals(version, fileListingCache.version(1L));
+    }
+
+    @Test
+    void invalidate_OtherUser_KeepsCachedPage() {
+        // Arrange
+        AtomicInteger loads = new AtomicInteger();
+        fileListingCache.get(1L, 10, FileSort.NAME, false, null, () -> page(loads, "a.txt"));
+
+        // Act
+        fileListingCache.invalidate(2L);
+        fileListingCache.get(1L, 10, FileSort.NAME, false, null, () -> page(loads, "b.txt"));
+
+        // Assert
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void get_ConcurrentMisses_CoalescedIntoOneLoad() throws Exception {
+        // Arrange
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            // Act
+            Future<FileListPage> first = executor.submit(() ->
+                    fileListingCache.get(1L, 10, FileSort.NAME, false, null, () -> {
+                        loading.countDown();
+                        await(release);
+                        return page(loads, "a.txt");
+                    }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Future<FileListPage> second = executor.submit(() ->
+                    fileListingCache.get(1L, 10, FileSort.NAME, false, null, () -> page(loads, "b.txt")));
+            Thread.sleep(50);
+            release.countDown();
+
+            // Assert
+            assertEquals("a.txt", first.get(5, TimeUnit.SECONDS).getFiles().get(0).getFilename());
+            assertEquals("a.txt", second.get(5, TimeUnit.SECONDS).getFiles().get(0).getFilename());
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static FileListPage page(AtomicInteger loads, String filename) {
+        loads.incrementAndGet();
+        return new FileListPage(List.of(new FileInfoResponse(filename, 1L)), null);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package DiplomCloud.DiplomCloud;
+
+import DiplomCloud.DiplomCloud.dto.FileListPage;
+import DiplomCloud.DiplomCloud.dto.FileSearchItem;
+import DiplomCloud.DiplomCloud.repositories.FileRepository;
+import DiplomCloud.DiplomCloud.repositories.FileSearchMode;
+import DiplomCloud.DiplomCloud.services.FileSearchService;
+import DiplomCloud.DiplomCloud.services.UserCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class FileSearchServiceTest {
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private UserCache userCache;
+
+    private FileSearchService fileSearchService;
+
+    @BeforeEach
+    void setUp() {
+        fileSearchService = new FileSearchService(fileRepository, userCache);
+        lenient().when(userCache.resolveUserId("testUser")).thenReturn(1L);
+    }
+
+    @Test
+    void search_FullPage_ReturnsFullNamesAndCursorOfLastRow() {
+        // Arrange
+        when(fileRepository.search(1L, FileSearchMode.SUBSTRING, "report", null, null, null, 3))
+                .thenReturn(List.of(
+                        item(10L, "Report.txt", null, 0),
+                        item(11L, "report-2024.pdf", "/docs/2024/", 1),
+                        item(12L, "old-report.txt", "/archive/", 2)));
+        when(fileRepository.search(1L, FileSearchMode.SUBSTRING, "report", 1, "report-2024.pdf", 11L, 3))
+                .thenReturn(List.of(item(12L, "old-report.txt", "/archive/", 2)));
+
+        // Act
+        FileListPage first = fileSearchService.search("testUser", " Report ", FileSearchMode.SUBSTRING, 2, null);
+        FileListPage second = fileSearchService.search("testUser", "report", FileSearchMode.SUBSTRING, 2,
+                first.getNextCursor());
+
+        // Assert
+        assertEquals(List.of("Report.txt", "docs/2024/report-2024.pdf"),
+                first.getFiles().stream().map(file -> file.getFilename()).toList());
+        assertNotNull(first.getNextCursor());
+        assertEquals("archive/old-report.txt", second.getFiles().get(0).getFilename());
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void search_ExtensionWithDot_NormalizedToBareExtension() {
+        // Arrange
+        when(fileRepository.search(eq(1L), eq(FileSearchMode.EXTENSION), eq("pdf"), any(), any(), any(), anyInt()))
+                .thenReturn(List.of());
+
+        // Act
+        FileListPage page = fileSearchService.search("testUser", ".PDF", FileSearchMode.EXTENSION, 50, null);
+
+        // Assert
+        assertTrue(page.getFiles().isEmpty());
+    }
+
+    @Test
+    void search_ShortSubstring_RejectedWithoutQuery() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class,
+                () -> fileSearchService.search("testUser", "ab", FileSearchMode.SUBSTRING, 50, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> fileSearchService.search("testUser", "  ", FileSearchMode.PREFIX, 50, null));
+        verifyNoInteractions(fileRepository);
+    }
+
+    @Test
+    void search_CursorOfOtherMode_Rejected() {
+        // Arrange
+        when(fileRepository.search(eq(1L), eq(FileSearchMode.PREFIX), eq("a"), any(), any(), any(), eq(2)))
+                .thenReturn(List.of(item(1L, "a1", null, 0), item(2L, "a2", null, 0)));
+        String cursor = fileSearchService.search("testUser", "a", FileSearchMode.PREFIX, 1, null).getNextCursor();
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class,
+                () -> fileSearchService.search("testUser", "abc", FileSearchMode.SUBSTRING, 1, cursor));
+    }
+
+    private static FileSearchItem item(Long id, String filename, String folderPath, int rank) {
+        return new FileSearchItem(id, filename, folderPath, 1L, rank, filename.toLowerCase());
+    }
+}
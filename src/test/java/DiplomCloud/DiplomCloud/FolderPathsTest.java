@@ -0,0 +1,51 @@
+package DiplomCloud.DiplomCloud;
+
+import DiplomCloud.DiplomCloud.services.FolderPaths;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FolderPathsTest {
+
+    @Test
+    void normalize_ClientForms_SameStoredPath() {
+        // Act & Assert
+        assertEquals("/docs/2024/", FolderPaths.normalize("docs/2024"));
+        assertEquals("/docs/2024/", FolderPaths.normalize("/docs/2024/"));
+        assertNull(FolderPaths.normalize("/"));
+        assertNull(FolderPaths.normalize(null));
+    }
+
+    @Test
+    void normalize_TraversalOrEmptySegments_Rejected() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> FolderPaths.normalize("docs/../secret"));
+        assertThrows(IllegalArgumentException.class, () -> FolderPaths.normalize("docs//2024"));
+        assertThrows(IllegalArgumentException.class, () -> FolderPaths.normalize("a/" + "x".repeat(1100)));
+    }
+
+    @Test
+    void folderAndName_SplitFullFilename() {
+        // Act & Assert
+        assertEquals("/docs/2024/", FolderPaths.folderOf("docs/2024/a.txt"));
+        assertEquals("a.txt", FolderPaths.nameOf("docs/2024/a.txt"));
+        assertNull(FolderPaths.folderOf("a.txt"));
+        assertEquals("docs/2024/a.txt", FolderPaths.display("/docs/2024/", "a.txt"));
+        assertThrows(IllegalArgumentException.class, () -> FolderPaths.nameOf("docs/"));
+    }
+
+    @Test
+    void parentAndName_OfStoredPath() {
+        // Act & Assert
+        assertEquals("/docs/", FolderPaths.parentOf("/docs/2024/"));
+        assertNull(FolderPaths.parentOf("/docs/"));
+        assertEquals("2024", FolderPaths.nameOfFolder("/docs/2024/"));
+        assertEquals("docs/2024", FolderPaths.displayFolder("/docs/2024/"));
+    }
+
+    @Test
+    void subtreePattern_EscapesLikeWildcards() {
+        // Act & Assert
+        assertEquals("/a\\_b/100\\%/%", FolderPaths.subtreePattern("/a_b/100%/"));
+    }
+}
@@ -0,0 +1,205 @@
+package DiplomCloud.DiplomCloud;
+
+import DiplomCloud.DiplomCloud.dto.FolderInfoResponse;
+import DiplomCloud.DiplomCloud.exception.FileAlreadyExistsRuntimeException;
+import DiplomCloud.DiplomCloud.exception.FolderNotFoundException;
+import DiplomCloud.DiplomCloud.models.Folder;
+import DiplomCloud.DiplomCloud.repositories.BlobRepository;
+import DiplomCloud.DiplomCloud.repositories.FolderRepository;
+import DiplomCloud.DiplomCloud.services.FileListingCache;
+import DiplomCloud.DiplomCloud.services.FileSystemStorageService;
+import DiplomCloud.DiplomCloud.services.FolderService;
+import DiplomCloud.DiplomCloud.services.HashShardedLayout;
+import DiplomCloud.DiplomCloud.services.QuotaService;
+import DiplomCloud.DiplomCloud.services.UserCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class FolderServiceTest {
+    @Mock
+    private FolderRepository folderRepository;
+
+    @Mock
+    private BlobRepository blobRepository;
+
+    @Mock
+    private UserCache userCache;
+
+    @Mock
+    private QuotaService quotaService;
+
+    @TempDir
+    Path storageDir;
+
+    private FileListingCache fileListingCache;
+    private FolderService folderService;
+
+    @BeforeEach
+    void setUp() {
+        fileListingCache = new FileListingCache(1000, 100, new SimpleMeterRegistry());
+        folderService = new FolderService(folderRepository, blobRepository,
+                new FileSystemStorageService(storageDir.toString(), new HashShardedLayout(2, 2)),
+                userCache, fileListingCache, quotaService);
+        lenient().when(userCache.resolveUserId("testUser")).thenReturn(1L);
+    }
+
+    @Test
+    void ensureFolder_MissingLevels_CreatedTopDown() {
+        // Arrange
+        Folder docs = folder(5L, "/docs/");
+        Folder year = folder(6L, "/docs/2024/");
+        when(folderRepository.findByPath(1L, "/docs/2024/"))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(year));
+        when(folderRepository.findByPath(1L, "/docs/")).thenReturn(Optional.of(docs));
+        when(folderRepository.insertIfAbsent(1L, 5L, "2024", "/docs/2024/")).thenReturn(1);
+
+        // Act
+        Folder created = folderService.ensureFolder(1L, "/docs/2024/");
+
+        // Assert
+        assertSame(year, created);
+        verify(folderRepository, never()).insertIfAbsent(any(), any(), eq("docs"), any());
+    }
+
+    @Test
+    void moveFolder_RewritesSubtreePathsOnly() {
+        // Arrange
+        Folder docs = folder(5L, "/docs/");
+        when(folderRepository.lockSubtree(1L, "/docs/%")).thenReturn(List.of(5L, 6L));
+        when(folderRepository.findByPath(1L, "/archive/docs/")).thenReturn(Optional.empty());
+        when(folderRepository.findByPath(1L, "/archive/")).thenReturn(Optional.empty())
+                .thenReturn(Optional.of(folder(7L, "/archive/")));
+        when(folderRepository.insertIfAbsent(1L, null, "archive", "/archive/")).thenReturn(1);
+        when(folderRepository.findByPath(1L, "/docs/")).thenReturn(Optional.of(docs));
+        long version = fileListingCache.version(1L);
+
+        // Act
+        folderService.moveFolder("testUser", "docs", "archive/docs");
+
+        // Assert
+        assertEquals("/archive/docs/", docs.getPath());
+        assertEquals(7L, docs.getParent().getId());
+        InOrder order = inOrder(folderRepository);
+        order.verify(folderRepository).saveAndFlush(docs);
+        order.verify(folderRepository).movePaths(1L, "/docs/", "/archive/docs/", "/docs/%");
+        assertNotEquals(version, fileListingCache.version(1L));
+    }
+
+    @Test
+    void moveFolder_IntoOwnSubtree_Rejected() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class,
+                () -> folderService.moveFolder("testUser", "docs", "docs/inner"));
+        verifyNoInteractions(folderRepository);
+    }
+
+    @Test
+    void moveFolder_TargetExists_Conflict() {
+        // Arrange
+        when(folderRepository.lockSubtree(1L, "/docs/%")).thenReturn(List.of(5L));
+        when(folderRepository.findByPath(1L, "/other/")).thenReturn(Optional.of(folder(8L, "/other/")));
+
+        // Act & Assert
+        assertThrows(FileAlreadyExistsRuntimeException.class,
+                () -> folderService.moveFolder("testUser", "docs", "other"));
+        verify(folderRepository, never()).movePaths(any(), any(), any(), any());
+    }
+
+    @Test
+    void deleteFolder_ReleasesBlobsGroupedByReferenceCount() {
+        // Arrange
+        when(folderRepository.lockSubtree(1L, "/docs/%")).thenReturn(List.of(5L, 6L));
+        when(folderRepository.countSubtreeBlobs(1L, "/docs/%")).thenReturn(List.of(
+                references("hash-a", 1), references("hash-b", 1), references("hash-c", 3)));
+        when(folderRepository.findSubtreeLegacyPaths(1L, "/docs/%")).thenReturn(List.of());
+        when(folderRepository.sumSubtreeFiles(1L, "/docs/%")).thenReturn(usage(5, 1024));
+
+        // Act
+        folderService.deleteFolder("testUser", "docs");
+
+        // Assert
+        verify(blobRepository).releaseAll(List.of("hash-a", "hash-b"), 1);
+        verify(blobRepository).releaseAll(List.of("hash-c"), 3);
+        verify(folderRepository).deleteSubtreeFiles(1L, "/docs/%");
+        verify(folderRepository).deleteSubtree(1L, "/docs/%");
+        verify(quotaService).release(1L, 1024, 5);
+    }
+
+    @Test
+    void deleteFolder_Missing_NotFound() {
+        // Arrange
+        when(folderRepository.lockSubtree(1L, "/docs/%")).thenReturn(List.of());
+
+        // Act & Assert
+        assertThrows(FolderNotFoundException.class, () -> folderService.deleteFolder("testUser", "docs"));
+        verify(folderRepository, never()).deleteSubtreeFiles(any(), any());
+    }
+
+    @Test
+    void stat_CountsSubtreeWithoutFolderItself() {
+        // Arrange
+        when(folderRepository.findByPath(1L, "/docs/")).thenReturn(Optional.of(folder(5L, "/docs/")));
+        when(folderRepository.countSubtree(1L, "/docs/%")).thenReturn(3L);
+        when(folderRepository.sumSubtreeFiles(1L, "/docs/%")).thenReturn(usage(4, 1024));
+
+        // Act
+        FolderInfoResponse info = folderService.stat("testUser", "docs");
+
+        // Assert
+        assertEquals("docs", info.getPath());
+        assertEquals(2, info.getFolders());
+        assertEquals(4, info.getFiles());
+        assertEquals(1024, info.getSize());
+    }
+
+    private static Folder folder(Long id, String path) {
+        Folder folder = new Folder();
+        folder.setId(id);
+        folder.setPath(path);
+        return folder;
+    }
+
+    private static FolderRepository.SubtreeUsage usage(long files, long bytes) {
+        return new FolderRepository.SubtreeUsage() {
+            @Override
+            public long getFiles() {
+                return files;
+            }
+
+            @Override
+            public long getBytes() {
+                return bytes;
+            }
+        };
+    }
+
+    private static FolderRepository.BlobReferences references(String hash, int refs) {
+        return new FolderRepository.BlobReferences() {
+            @Override
+            public String getHash() {
+                return hash;
+            }
+
+            @Override
+            public int getRefs() {
+                return refs;
+            }
+        };
+    }
+}
@@ -0,0 +1,106 @@
+package DiplomCloud.DiplomCloud;
+
+import DiplomCloud.DiplomCloud.repositories.RevokedTokenRepository;
+import DiplomCloud.DiplomCloud.security.JwtPrincipal;
+import DiplomCloud.DiplomCloud.security.JwtTokenProvider;
+import DiplomCloud.DiplomCloud.security.TokenRevocationStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class JwtTokenProviderTest {
+    private static final String SECRET = "mysecretkeywithatleast32characterslength123";
+
+    @Mock
+    private RevokedTokenRepository revokedTokenRepository;
+
+    private TokenRevocationStore revocationStore;
+    private JwtTokenProvider jwtTokenProvider;
+
+    @BeforeEach
+    void setUp() {
+        revocationStore = new TokenRevocationStore(revokedTokenRepository, 60_000);
+        jwtTokenProvider = new JwtTokenProvider(SECRET, 60_000, 100, revocationStore);
+    }
+
+    @Test
+    void authenticate_ValidToken_ReturnsPrincipal() {
+        // Arrange
+        String token = jwtTokenProvider.generateToken("testUser");
+
+        // Act
+        JwtPrincipal first = jwtTokenProvider.authenticate(token);
+        JwtPrincipal second = jwtTokenProvider.authenticate(token);
+
+        // Assert
+        assertNotNull(first);
+        assertEquals("testUser", first.getUsername());
+        assertSame(first, second);
+        assertEquals("testUser", jwtTokenProvider.getUsername(token));
+    }
+
+    @Test
+    void authenticate_TokenWithUserId_CarriesUserId() {
+        // Arrange
+        String token = jwtTokenProvider.generateToken("testUser", 42L);
+
+        // Act
+        JwtPrincipal principal = jwtTokenProvider.authenticate(token);
+
+        // Assert
+        assertNotNull(principal);
+        assertEquals(42L, principal.getUserId());
+        assertNull(jwtTokenProvider.authenticate(jwtTokenProvider.generateToken("testUser")).getUserId());
+    }
+
+    @Test
+    void authenticate_InvalidatedToken_ReturnsNull() {
+        // Arrange
+        String token = jwtTokenProvider.generateToken("testUser");
+        assertNotNull(jwtTokenProvider.authenticate(token));
+
+        // Act
+        jwtTokenProvider.invalidateToken(token);
+
+        // Assert
+        JwtPrincipal principal = jwtTokenProvider.authenticate(token);
+        assertNull(principal);
+        assertFalse(jwtTokenProvider.validateToken(token));
+        assertEquals(1, revocationStore.size());
+        verify(revokedTokenRepository).revoke(any(String.class), any(Instant.class));
+    }
+
+    @Test
+    void authenticate_ForeignSignature_ReturnsNull() {
+        // Arrange
+        JwtTokenProvider other = new JwtTokenProvider(SECRET + "-other", 60_000, 100, revocationStore);
+        String token = other.generateToken("testUser");
+
+        // Act & Assert
+        assertNull(jwtTokenProvider.authenticate(token));
+        assertNull(jwtTokenProvider.authenticate("not-a-token"));
+    }
+
+    @Test
+    void authenticate_SameUserNewToken_NotAffectedByRevocation() {
+        // Arrange
+        String revoked = jwtTokenProvider.generateToken("testUser");
+        String fresh = jwtTokenProvider.generateToken("testUser");
+
+        // Act
+        jwtTokenProvider.invalidateToken(revoked);
+
+        // Assert
+        assertNull(jwtTokenProvider.authenticate(revoked));
+        assertNotNull(jwtTokenProvider.authenticate(fresh));
+    }
+}
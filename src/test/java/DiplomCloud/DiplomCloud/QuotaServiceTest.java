@@ -0,0 +1,130 @@
+package DiplomCloud.DiplomCloud;
+
+import DiplomCloud.DiplomCloud.dto.QuotaResponse;
+import DiplomCloud.DiplomCloud.exception.QuotaExceededException;
+import DiplomCloud.DiplomCloud.models.UserUsage;
+import DiplomCloud.DiplomCloud.repositories.UserUsageRepository;
+import DiplomCloud.DiplomCloud.services.QuotaService;
+import DiplomCloud.DiplomCloud.services.UserCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class QuotaServiceTest {
+    private static final long QUOTA = 1000;
+
+    @Mock
+    private UserUsageRepository userUsageRepository;
+
+    @Mock
+    private UserCache userCache;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private QuotaService quotaService;
+
+    @BeforeEach
+    void setUp() {
+        quotaService = new QuotaService(userUsageRepository, userCache, transactionTemplate, QUOTA, 2);
+        lenient().when(userCache.resolveUserId("testUser")).thenReturn(1L);
+    }
+
+    @Test
+    void checkAvailable_DeclaredSizeOverQuota_Rejected() {
+        // Arrange
+        when(userUsageRepository.findById(1L)).thenReturn(Optional.of(usage(1L, 900, null)));
+
+        // Act & Assert
+        assertThrows(QuotaExceededException.class, () -> quotaService.checkAvailable("testUser", 101));
+        assertDoesNotThrow(() -> quotaService.checkAvailable("testUser", 100));
+    }
+
+    @Test
+    void checkAvailable_UnknownSize_NoQuery() {
+        // Act
+        quotaService.checkAvailable(1L, -1);
+
+        // Assert
+        verifyNoInteractions(userUsageRepository);
+    }
+
+    @Test
+    void charge_MissingRow_CreatedAndRetried() {
+        // Arrange
+        when(userUsageRepository.add(1L, 10L, 1L, QUOTA)).thenReturn(0).thenReturn(1);
+        when(userUsageRepository.createIfAbsent(1L)).thenReturn(1);
+
+        // Act
+        quotaService.charge(1L, 10, 1);
+
+        // Assert
+        verify(userUsageRepository, times(2)).add(1L, 10L, 1L, QUOTA);
+    }
+
+    @Test
+    void charge_OverQuotaAtCommit_Throws() {
+        // Arrange
+        when(userUsageRepository.add(1L, 200L, 1L, QUOTA)).thenReturn(0);
+        when(userUsageRepository.createIfAbsent(1L)).thenReturn(0);
+        when(userUsageRepository.findById(1L)).thenReturn(Optional.of(usage(1L, 900, null)));
+
+        // Act & Assert
+        assertThrows(QuotaExceededException.class, () -> quotaService.charge(1L, 200, 1));
+    }
+
+    @Test
+    void usage_OwnQuotaOverridesDefault() {
+        // Arrange
+        when(userUsageRepository.findById(1L)).thenReturn(Optional.of(usage(1L, 10, 5000L)));
+
+        // Act
+        QuotaResponse response = quotaService.usage("testUser");
+
+        // Assert
+        assertEquals(10, response.getUsed());
+        assertEquals(5000L, response.getQuota());
+    }
+
+    @Test
+    void reconcile_BusyUserSkipped_OthersRecomputed() {
+        // Arrange
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(userUsageRepository.findUserIds(0L, 2)).thenReturn(List.of(1L, 2L));
+        when(userUsageRepository.findUserIds(2L, 2)).thenReturn(List.of(3L));
+        when(userUsageRepository.tryLock(anyLong())).thenAnswer(invocation -> {
+            Long userId = invocation.getArgument(0);
+            return userId == 2L ? Optional.empty() : Optional.of(userId);
+        });
+
+        // Act
+        quotaService.reconcile();
+
+        // Assert
+        verify(userUsageRepository).recompute(1L);
+        verify(userUsageRepository, never()).recompute(2L);
+        verify(userUsageRepository).recompute(3L);
+    }
+
+    private static UserUsage usage(Long userId, long used, Long quota) {
+        UserUsage usage = new UserUsage();
+        usage.setUserId(userId);
+        usage.setUsedBytes(used);
+        usage.setQuotaBytes(quota);
+        return usage;
+    }
+}
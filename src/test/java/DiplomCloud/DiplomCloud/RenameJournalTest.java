@@ -0,0 +1,116 @@
+package DiplomCloud.DiplomCloud;
+
+import DiplomCloud.DiplomCloud.repositories.FileRepository;
+import DiplomCloud.DiplomCloud.services.FileSystemStorageService;
+import DiplomCloud.DiplomCloud.services.HashShardedLayout;
+import DiplomCloud.DiplomCloud.services.RenameJournal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class RenameJournalTest {
+    @Mock
+    private FileRepository fileRepository;
+
+    @TempDir
+    Path storageDir;
+
+    private FileSystemStorageService fileSystemStorageService;
+    private RenameJournal renameJournal;
+    private Path source;
+    private Path target;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        fileSystemStorageService = new FileSystemStorageService(storageDir.toString(), new HashShardedLayout(2, 2));
+        renameJournal = new RenameJournal(fileRepository, fileSystemStorageService, storageDir.toString());
+        source = storageDir.resolve("testUser").resolve("a.txt");
+        target = storageDir.resolve("testUser").resolve("docs").resolve("b.txt");
+        Files.createDirectories(source.getParent());
+        Files.writeString(source, "content");
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    void begin_Rollback_MovesFileBackAndClearsJournal() throws IOException {
+        // Arrange
+        renameJournal.begin(List.of(intent()));
+        fileSystemStorageService.moveFile(source, target);
+
+        // Act
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        // Assert
+        assertEquals("content", Files.readString(source));
+        assertFalse(Files.exists(target));
+        assertJournalEmpty();
+    }
+
+    @Test
+    void replay_CrashBeforeCommit_FileReturnedToPathInDatabase() throws IOException {
+        // Arrange: перенос выполнен, коммита не было - строка указывает на старый путь
+        renameJournal.begin(List.of(intent()));
+        fileSystemStorageService.moveFile(source, target);
+        when(fileRepository.findFilePath(12L)).thenReturn(Optional.of(source.toString()));
+
+        // Act
+        new RenameJournal(fileRepository, fileSystemStorageService, storageDir.toString()).replay();
+
+        // Assert
+        assertTrue(Files.exists(source));
+        assertFalse(Files.exists(target));
+        assertJournalEmpty();
+    }
+
+    @Test
+    void replay_CrashAfterCommit_FileKeptAtNewPath() throws IOException {
+        // Arrange: коммит прошел, запись журнала удалить не успели
+        renameJournal.begin(List.of(intent()));
+        fileSystemStorageService.moveFile(source, target);
+        when(fileRepository.findFilePath(12L)).thenReturn(Optional.of(target.toString()));
+
+        // Act
+        renameJournal.replay();
+
+        // Assert
+        assertEquals("content", Files.readString(target));
+        assertJournalEmpty();
+    }
+
+    private RenameJournal.Intent intent() {
+        return new RenameJournal.Intent(12L, source.toString(), target.toString());
+    }
+
+    private static void complete(int status) {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(status);
+        }
+    }
+
+    private void assertJournalEmpty() throws IOException {
+        try (var journal = Files.list(storageDir.resolve(".journal"))) {
+            assertEquals(0, journal.count());
+        }
+    }
+}
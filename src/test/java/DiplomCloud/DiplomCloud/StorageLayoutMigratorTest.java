@@ -0,0 +1,139 @@
+package DiplomCloud.DiplomCloud;
+
+import DiplomCloud.DiplomCloud.models.Blob;
+import DiplomCloud.DiplomCloud.models.ContentCodec;
+import DiplomCloud.DiplomCloud.models.FileEntity;
+import DiplomCloud.DiplomCloud.repositories.BlobRepository;
+import DiplomCloud.DiplomCloud.repositories.FileRepository;
+import DiplomCloud.DiplomCloud.services.BlobService;
+import DiplomCloud.DiplomCloud.services.CompressionPolicy;
+import DiplomCloud.DiplomCloud.services.FileSystemStorageService;
+import DiplomCloud.DiplomCloud.services.HashShardedLayout;
+import DiplomCloud.DiplomCloud.services.StorageLayoutMigrator;
+import DiplomCloud.DiplomCloud.services.StorageMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class StorageLayoutMigratorTest {
+    // SHA-256 строки "hello"
+    private static final String HELLO_HASH = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private BlobRepository blobRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @TempDir
+    Path storageDir;
+
+    private FileSystemStorageService fileSystemStorageService;
+    private StorageLayoutMigrator migrator;
+
+    @BeforeEach
+    void setUp() {
+        fileSystemStorageService = new FileSystemStorageService(storageDir.toString(), new HashShardedLayout(2, 2));
+        BlobService blobService = new BlobService(blobRepository, fileSystemStorageService, transactionTemplate,
+                new StorageMetrics(new SimpleMeterRegistry()), new CompressionPolicy("auto", 6, 0.9));
+        migrator = new StorageLayoutMigrator(fileRepository, blobRepository, blobService,
+                fileSystemStorageService, transactionTemplate, true, 10);
+        // Колбэк выполняется как в транзакции, afterCommit вызывается сразу после него
+        when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            TransactionSynchronizationManager.initSynchronization();
+            try {
+                Object result = invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null);
+                TransactionSynchronizationManager.getSynchronizations()
+                        .forEach(TransactionSynchronization::afterCommit);
+                return result;
+            } finally {
+                TransactionSynchronizationManager.clearSynchronization();
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void migrateBatch_FlatUserFile_MovedIntoShardedBlobStore() throws IOException {
+        // Arrange
+        Path legacy = storageDir.resolve("testUser").resolve("a.txt");
+        Files.createDirectories(legacy.getParent());
+        Files.writeString(legacy, "hello");
+        FileEntity fileEntity = new FileEntity();
+        fileEntity.setId(1L);
+        fileEntity.setFilePath(legacy.toString());
+        Blob blob = new Blob();
+        blob.setHash(HELLO_HASH);
+        when(fileRepository.findIdsAfter(eq(0L), any())).thenReturn(List.of(1L));
+        when(fileRepository.lockById(1L)).thenReturn(Optional.of(fileEntity));
+        when(blobRepository.getReferenceById(HELLO_HASH)).thenReturn(blob);
+
+        // Act
+        migrator.migrateBatch();
+
+        // Assert
+        Path sharded = storageDir.resolve(".blobs/2c/f2/" + HELLO_HASH);
+        assertEquals("hello", Files.readString(sharded));
+        assertFalse(Files.exists(legacy));
+        assertEquals(".blobs/2c/f2/" + HELLO_HASH, fileEntity.getFilePath());
+        assertSame(blob, fileEntity.getBlob());
+        verify(blobRepository).acquire(HELLO_HASH, 5L);
+    }
+
+    @Test
+    void migrateBatch_BlobInOldLayout_RelocatedForAllReferences() throws IOException {
+        // Arrange
+        Path old = storageDir.resolve(".blobs/2c/" + HELLO_HASH);
+        Files.createDirectories(old.getParent());
+        Files.writeString(old, "hello");
+        Blob blob = new Blob();
+        blob.setHash(HELLO_HASH);
+        FileEntity fileEntity = new FileEntity();
+        fileEntity.setId(1L);
+        fileEntity.setBlob(blob);
+        fileEntity.setFilePath(".blobs/2c/" + HELLO_HASH);
+        when(fileRepository.findIdsAfter(eq(0L), any())).thenReturn(List.of(1L));
+        when(fileRepository.lockById(1L)).thenReturn(Optional.of(fileEntity));
+
+        // Act
+        migrator.migrateBatch();
+        when(fileRepository.findIdsAfter(eq(1L), any())).thenReturn(List.of());
+        migrator.migrateBatch();
+
+        // Assert
+        assertEquals("hello", Files.readString(storageDir.resolve(".blobs/2c/f2/" + HELLO_HASH)));
+        assertFalse(Files.exists(old));
+        verify(blobRepository).lock(HELLO_HASH);
+        verify(fileRepository).updateFilePathByBlob(HELLO_HASH, ContentCodec.NONE, ".blobs/2c/f2/" + HELLO_HASH);
+        assertTrue(migrator.isFinished());
+    }
+}
@@ -0,0 +1,196 @@
+package DiplomCloud.DiplomCloud;
+
+import DiplomCloud.DiplomCloud.repositories.BlobRepository;
+import DiplomCloud.DiplomCloud.repositories.FileRepository;
+import DiplomCloud.DiplomCloud.repositories.UserRepository;
+import DiplomCloud.DiplomCloud.services.FileSystemStorageService;
+import DiplomCloud.DiplomCloud.services.HashShardedLayout;
+import DiplomCloud.DiplomCloud.services.ReconcileReport;
+import DiplomCloud.DiplomCloud.services.StorageReconciler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class StorageReconcilerTest {
+    private static final long MIN_AGE = 60_000;
+    private static final String ORPHAN = "a".repeat(64);
+    private static final String LOST = "b".repeat(64);
+    private static final String KEPT = "bc" + "0".repeat(62);
+
+    @Mock
+    private BlobRepository blobRepository;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @TempDir
+    Path storageDir;
+
+    private FileSystemStorageService fileSystemStorageService;
+
+    @BeforeEach
+    void setUp() {
+        fileSystemStorageService = new FileSystemStorageService(storageDir.toString(), new HashShardedLayout(1, 1));
+        lenient().when(blobRepository.findRange(anyString(), anyString(), anyInt())).thenReturn(List.of());
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+    }
+
+    @Test
+    void reconcile_OldOrphanBlobFile_MovedToQuarantine() throws IOException {
+        // Arrange
+        Path orphan = blob(ORPHAN, Duration.ofHours(1));
+        Path fresh = blob("c".repeat(64), Duration.ZERO);
+        when(blobRepository.claimOrphan(eq(ORPHAN), anyLong())).thenReturn(1);
+
+        // Act
+        ReconcileReport report = reconciler("quarantine").reconcile();
+
+        // Assert
+        assertFalse(Files.exists(orphan));
+        assertTrue(Files.exists(storageDir.resolve(".quarantine").resolve(storageDir.relativize(orphan))));
+        assertTrue(Files.exists(fresh));
+        verify(blobRepository).deleteUnreferenced(ORPHAN);
+        assertEquals(1, report.orphans(ReconcileReport.Kind.BLOB_FILE));
+    }
+
+    @Test
+    void reconcile_RowCreatedByUploadInFlight_FileKept() throws IOException {
+        // Arrange: загрузка вставила строку раньше, чем сверка успела ее занять
+        Path file = blob(ORPHAN, Duration.ofHours(1));
+        when(blobRepository.claimOrphan(eq(ORPHAN), anyLong())).thenReturn(0);
+
+        // Act
+        ReconcileReport report = reconciler("quarantine").reconcile();
+
+        // Assert
+        assertTrue(Files.exists(file));
+        verify(blobRepository, never()).deleteUnreferenced(any());
+        assertEquals(0, report.totalOrphans());
+    }
+
+    @Test
+    void reconcile_MergesFilesWithRowsInHashOrder() throws IOException {
+        // Arrange: строка без файла стоит между двумя файлами со строками
+        blob(KEPT, Duration.ofHours(1));
+        blob(KEPT.replace("bc0", "bc1"), Duration.ofHours(1));
+        when(blobRepository.findRange("b", "bg", 1000)).thenReturn(List.of(
+                row(LOST, 2), row(KEPT, 1), row("bc05" + "0".repeat(60), 0), row(KEPT.replace("bc0", "bc1"), 1)));
+
+        // Act
+        ReconcileReport report = reconciler("report").reconcile();
+
+        // Assert: строка без ссылок - забота сборщика, в отчет не попадает
+        assertEquals(1, report.orphans(ReconcileReport.Kind.BLOB_ROW));
+        assertEquals(0, report.orphans(ReconcileReport.Kind.BLOB_FILE));
+        assertTrue(report.samples().get(0).contains(LOST));
+    }
+
+    @Test
+    void reconcile_Checkpoint_ResumesWithUnfinishedShardsAndIsClearedAfterPass() throws IOException {
+        // Arrange: прошлый проход успел пройти все шарды, кроме "f"
+        Path checkpoint = storageDir.resolve(".reconcile").resolve("checkpoint");
+        Files.createDirectories(checkpoint.getParent());
+        Files.writeString(checkpoint, "shards=0,1,2,3,4,5,6,7,8,9,a,b,c,d,e\n");
+
+        // Act
+        ReconcileReport report = reconciler("report").reconcile();
+
+        // Assert
+        verify(blobRepository).findRange(eq("f"), eq("fg"), anyInt());
+        verify(blobRepository, times(1)).findRange(anyString(), anyString(), anyInt());
+        assertEquals(0, report.failures());
+        assertFalse(Files.exists(checkpoint));
+    }
+
+    @Test
+    void reconcile_LegacyDirectory_ReportsFileWithoutRowAndRowWithoutFile() throws IOException {
+        // Arrange
+        Path userDir = Files.createDirectories(storageDir.resolve("testUser"));
+        Path known = Files.writeString(userDir.resolve("known.txt"), "known");
+        Path stray = Files.writeString(userDir.resolve("stray.txt"), "stray");
+        Files.setLastModifiedTime(stray, FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+        String missing = userDir.resolve("missing.txt").toString();
+        when(userRepository.findIdByLogin("testUser")).thenReturn(Optional.of(1L));
+        when(fileRepository.findLegacyFiles(eq(1L), eq(0L), any(Pageable.class)))
+                .thenReturn(List.of(legacy(10L, known.toString()), legacy(11L, missing)));
+        when(fileRepository.findFilePath(11L)).thenReturn(Optional.of(missing));
+
+        // Act
+        ReconcileReport report = reconciler("report").reconcile();
+
+        // Assert: в режиме отчета файлы остаются на месте
+        assertEquals(1, report.orphans(ReconcileReport.Kind.LEGACY_FILE));
+        assertEquals(1, report.orphans(ReconcileReport.Kind.LEGACY_ROW));
+        assertTrue(Files.exists(stray));
+    }
+
+    private StorageReconciler reconciler(String action) {
+        return new StorageReconciler(blobRepository, fileRepository, userRepository, fileSystemStorageService,
+                new HashShardedLayout(1, 1), transactionTemplate, new SimpleMeterRegistry(),
+                true, 2, 0, MIN_AGE, action, 1000);
+    }
+
+    private Path blob(String hash, Duration age) throws IOException {
+        Path path = fileSystemStorageService.blobPath(hash);
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, hash);
+        Files.setLastModifiedTime(path, FileTime.from(Instant.now().minus(age)));
+        return path;
+    }
+
+    private static BlobRepository.BlobState row(String hash, int refCount) {
+        return new BlobRepository.BlobState() {
+            @Override
+            public String getHash() {
+                return hash;
+            }
+
+            @Override
+            public int getRefCount() {
+                return refCount;
+            }
+        };
+    }
+
+    private static FileRepository.LegacyFile legacy(Long id, String filePath) {
+        return new FileRepository.LegacyFile() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public String getFilePath() {
+                return filePath;
+            }
+        };
+    }
+}
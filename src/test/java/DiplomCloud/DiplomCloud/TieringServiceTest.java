@@ -0,0 +1,221 @@
+package DiplomCloud.DiplomCloud;
+
+import DiplomCloud.DiplomCloud.models.ContentCodec;
+import DiplomCloud.DiplomCloud.models.StorageTier;
+import DiplomCloud.DiplomCloud.repositories.BlobRepository;
+import DiplomCloud.DiplomCloud.repositories.FileRepository;
+import DiplomCloud.DiplomCloud.services.FileAccessTracker;
+import DiplomCloud.DiplomCloud.services.FileSystemStorageService;
+import DiplomCloud.DiplomCloud.services.HashShardedLayout;
+import DiplomCloud.DiplomCloud.services.StoredFile;
+import DiplomCloud.DiplomCloud.services.TieringService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class TieringServiceTest {
+    private static final long COLD_AFTER = Duration.ofDays(30).toMillis();
+    private static final String IDLE = "a".repeat(64);
+    private static final String BUSY = "b".repeat(64);
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private BlobRepository blobRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @TempDir
+    Path hotDir;
+
+    @TempDir
+    Path coldDir;
+
+    private FileSystemStorageService fileSystemStorageService;
+    private FileAccessTracker fileAccessTracker;
+    private TieringService tieringService;
+
+    @BeforeEach
+    void setUp() {
+        fileSystemStorageService = new FileSystemStorageService(hotDir.toString(), new HashShardedLayout(2, 2),
+                coldDir.toString());
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        fileAccessTracker = new FileAccessTracker(fileRepository, transactionTemplate, meterRegistry, 100);
+        tieringService = new TieringService(fileRepository, blobRepository, fileSystemStorageService,
+                fileAccessTracker, transactionTemplate, meterRegistry, true, COLD_AFTER, 0, 10);
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        lenient().doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @Test
+    void demote_IdleBlob_CopiedToColdAndRowsSwitched() throws IOException {
+        // Arrange
+        Path hot = blob(StorageTier.HOT, IDLE, "давно не скачивали");
+        Instant accessedAt = Instant.now().minus(Duration.ofDays(60));
+        when(fileRepository.findColdCandidates(any(), eq(Instant.EPOCH), eq(0L), any(Pageable.class)))
+                .thenReturn(List.of(candidate(1L, IDLE, accessedAt), candidate(2L, IDLE, accessedAt)));
+        when(blobRepository.lock(IDLE)).thenReturn(Optional.of(IDLE));
+        when(fileRepository.findLastAccess(IDLE, ContentCodec.NONE, StorageTier.HOT)).thenReturn(accessedAt);
+        String location = fileSystemStorageService.blobLocation(IDLE, ContentCodec.NONE);
+        when(fileRepository.moveTier(IDLE, ContentCodec.NONE, location, StorageTier.HOT, StorageTier.COLD))
+                .thenReturn(2);
+
+        // Act
+        int moved = tieringService.demote();
+
+        // Assert: вариант переносится один раз, горячая копия ждет очистки после grace
+        assertEquals(1, moved);
+        Path cold = fileSystemStorageService.blobPath(StorageTier.COLD, IDLE, ContentCodec.NONE);
+        assertEquals("давно не скачивали", Files.readString(cold, StandardCharsets.UTF_8));
+        assertTrue(Files.exists(hot));
+        verify(blobRepository).scheduleCleanup(eq(IDLE), eq("NONE"), eq("HOT"), any());
+        verify(blobRepository).deleteCleanup(IDLE, "NONE", "COLD");
+    }
+
+    @Test
+    void demote_AccessedWhileCopying_RowsStayHot() throws IOException {
+        // Arrange: скачивание записалось после выборки кандидатов
+        blob(StorageTier.HOT, BUSY, "скачали только что");
+        when(fileRepository.findColdCandidates(any(), any(), any(), any(Pageable.class)))
+                .thenReturn(List.of(candidate(3L, BUSY, Instant.now().minus(Duration.ofDays(60)))));
+        when(blobRepository.lock(BUSY)).thenReturn(Optional.of(BUSY));
+        when(fileRepository.findLastAccess(BUSY, ContentCodec.NONE, StorageTier.HOT)).thenReturn(Instant.now());
+
+        // Act
+        int moved = tieringService.demote();
+
+        // Assert: лишняя холодная копия остается в очереди очистки
+        assertEquals(0, moved);
+        verify(fileRepository, never()).moveTier(any(), any(), any(), any(), any());
+        verify(blobRepository).scheduleCleanup(eq(BUSY), eq("NONE"), eq("COLD"), any());
+        verify(blobRepository, never()).deleteCleanup(any(), any(), any());
+    }
+
+    @Test
+    void sweep_CopyDeletedOnlyWhenNoFilesLeftOnTier() throws IOException {
+        // Arrange
+        Path idleHot = blob(StorageTier.HOT, IDLE, "перенесен");
+        Path busyCold = blob(StorageTier.COLD, BUSY, "возвращен не весь");
+        String gone = "c".repeat(64);
+        Path goneCold = blob(StorageTier.COLD, gone, "удален во время переноса");
+        when(blobRepository.findDueCleanups(any(), eq(10))).thenReturn(List.of(
+                cleanup(IDLE, StorageTier.HOT), cleanup(BUSY, StorageTier.COLD), cleanup(gone, StorageTier.COLD)));
+        when(blobRepository.lock(IDLE)).thenReturn(Optional.of(IDLE));
+        when(blobRepository.lock(BUSY)).thenReturn(Optional.of(BUSY));
+        when(blobRepository.lock(gone)).thenReturn(Optional.empty());
+        when(fileRepository.countOnTier(IDLE, ContentCodec.NONE, StorageTier.HOT)).thenReturn(0L);
+        when(fileRepository.countOnTier(BUSY, ContentCodec.NONE, StorageTier.COLD)).thenReturn(1L);
+        when(blobRepository.claimOrphan(gone, 0)).thenReturn(1);
+
+        // Act
+        int deleted = tieringService.sweep();
+
+        // Assert
+        assertEquals(2, deleted);
+        assertFalse(Files.exists(idleHot));
+        assertTrue(Files.exists(busyCold));
+        assertFalse(Files.exists(goneCold));
+        verify(blobRepository).deleteUnreferenced(gone);
+        verify(blobRepository, times(3)).deleteCleanup(any(), eq("NONE"), any());
+    }
+
+    @Test
+    void promote_DownloadedColdFile_ReturnsToHot() throws IOException {
+        // Arrange
+        Path cold = blob(StorageTier.COLD, IDLE, "снова нужен");
+        fileAccessTracker.record(new StoredFile(cold, ContentCodec.NONE, 11, IDLE, 0, 7L, StorageTier.COLD));
+        when(blobRepository.lock(IDLE)).thenReturn(Optional.of(IDLE));
+        String location = fileSystemStorageService.blobLocation(IDLE, ContentCodec.NONE);
+        when(fileRepository.moveTier(IDLE, ContentCodec.NONE, location, StorageTier.COLD, StorageTier.HOT))
+                .thenReturn(1);
+
+        // Act
+        int moved = tieringService.promote();
+
+        // Assert: время обращения не проверяется, очередь возврата пуста
+        assertEquals(1, moved);
+        Path hot = fileSystemStorageService.blobPath(StorageTier.HOT, IDLE, ContentCodec.NONE);
+        assertEquals("снова нужен", Files.readString(hot, StandardCharsets.UTF_8));
+        verify(fileRepository, never()).findLastAccess(any(), any(), any());
+        verify(blobRepository).scheduleCleanup(eq(IDLE), eq("NONE"), eq("COLD"), any());
+        assertEquals(0, tieringService.promote());
+    }
+
+    private Path blob(StorageTier tier, String hash, String content) throws IOException {
+        Path path = fileSystemStorageService.blobPath(tier, hash, ContentCodec.NONE);
+        Files.createDirectories(path.getParent());
+        return Files.writeString(path, content, StandardCharsets.UTF_8);
+    }
+
+    private static FileRepository.TierCandidate candidate(Long id, String hash, Instant accessedAt) {
+        return new FileRepository.TierCandidate() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public String getHash() {
+                return hash;
+            }
+
+            @Override
+            public ContentCodec getCodec() {
+                return ContentCodec.NONE;
+            }
+
+            @Override
+            public Instant getAccessedAt() {
+                return accessedAt;
+            }
+        };
+    }
+
+    private static BlobRepository.TierCleanup cleanup(String hash, StorageTier tier) {
+        return new BlobRepository.TierCleanup() {
+            @Override
+            public String getHash() {
+                return hash;
+            }
+
+            @Override
+            public String getCodec() {
+                return ContentCodec.NONE.name();
+            }
+
+            @Override
+            public String getTier() {
+                return tier.name();
+            }
+        };
+    }
+}
@@ -0,0 +1,127 @@
+package DiplomCloud.DiplomCloud;
+
+import DiplomCloud.DiplomCloud.models.RevokedToken;
+import DiplomCloud.DiplomCloud.repositories.RevokedTokenRepository;
+import DiplomCloud.DiplomCloud.security.TokenRevocationStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class TokenRevocationStoreTest {
+    @Mock
+    private RevokedTokenRepository revokedTokenRepository;
+
+    private TokenRevocationStore revocationStore;
+
+    @BeforeEach
+    void setUp() {
+        revocationStore = new TokenRevocationStore(revokedTokenRepository, 60_000);
+    }
+
+    @Test
+    void revoke_ManyTokens_AllRevokedOthersNot() {
+        // Act: больше начальной емкости фильтра, чтобы он пересобрался
+        for (int i = 0; i < 5000; i++) {
+            revocationStore.revoke("token-" + i, System.currentTimeMillis() + 60_000);
+        }
+
+        // Assert
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(revocationStore.isRevoked("token-" + i));
+        }
+        assertFalse(revocationStore.isRevoked("token-5000"));
+        assertEquals(5000, revocationStore.size());
+    }
+
+    @Test
+    void revoke_BeyondFilterLimit_CheckedThroughCacheWithoutGrowingFilter() {
+        // Arrange
+        revocationStore = new TokenRevocationStore(revokedTokenRepository, 60_000, 2048);
+
+        // Act
+        for (int i = 0; i < 5000; i++) {
+            revocationStore.revoke("token-" + i, System.currentTimeMillis() + 60_000);
+        }
+
+        // Assert: фильтр остался в пределе, ответы по-прежнему точные
+        assertEquals(2048, revocationStore.filterCapacity());
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(revocationStore.isRevoked("token-" + i));
+        }
+        assertFalse(revocationStore.isRevoked("token-5000"));
+    }
+
+    @Test
+    void purgeExpired_BelowFilterLimitAgain_FilterRebuilt() throws InterruptedException {
+        // Arrange: переполнение из записей, которые скоро истекут
+        revocationStore = new TokenRevocationStore(revokedTokenRepository, 60_000, 2048);
+        for (int i = 0; i < 3000; i++) {
+            revocationStore.revoke("short-" + i, System.currentTimeMillis() + 50);
+        }
+        revocationStore.revoke("long", System.currentTimeMillis() + 60_000);
+        Thread.sleep(100);
+
+        // Act: Caffeine вытесняет истекшие записи с шагом около секунды, очистка повторяется
+        long deadline = System.currentTimeMillis() + 5000;
+        revocationStore.purgeExpired();
+        while (revocationStore.filterCapacity() != 1024 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+            revocationStore.purgeExpired();
+        }
+
+        // Assert
+        assertTrue(revocationStore.isRevoked("long"));
+        assertFalse(revocationStore.isRevoked("short-0"));
+        assertEquals(1024, revocationStore.filterCapacity());
+    }
+
+    @Test
+    void revoke_AlreadyExpired_NotStored() {
+        // Act
+        revocationStore.revoke("expired", System.currentTimeMillis() - 1);
+
+        // Assert
+        assertFalse(revocationStore.isRevoked("expired"));
+        verify(revokedTokenRepository, never()).revoke(any(), any());
+    }
+
+    @Test
+    void syncFromDatabase_RevocationFromOtherNode_Applied() {
+        // Arrange
+        RevokedToken token = new RevokedToken();
+        token.setTokenId("remote");
+        token.setExpiresAt(Instant.now().plusSeconds(60));
+        token.setRevokedAt(Instant.now());
+        when(revokedTokenRepository.findRevokedSince(any(), any())).thenReturn(List.of(token));
+
+        // Act
+        revocationStore.syncFromDatabase();
+
+        // Assert
+        assertTrue(revocationStore.isRevoked("remote"));
+    }
+
+    @Test
+    void purgeExpired_DeletesExpiredRows() throws InterruptedException {
+        // Arrange
+        revocationStore.revoke("short", System.currentTimeMillis() + 20);
+        Thread.sleep(50);
+
+        // Act
+        revocationStore.purgeExpired();
+
+        // Assert
+        assertFalse(revocationStore.isRevoked("short"));
+        verify(revokedTokenRepository).deleteExpired(any());
+    }
+}
@@ -0,0 +1,166 @@
+package DiplomCloud.DiplomCloud;
+
+import DiplomCloud.DiplomCloud.exception.FileStorageException;
+import DiplomCloud.DiplomCloud.exception.UploadSessionException;
+import DiplomCloud.DiplomCloud.exception.UploadSessionNotFoundException;
+import DiplomCloud.DiplomCloud.services.FileStorageService;
+import DiplomCloud.DiplomCloud.services.QuotaService;
+import DiplomCloud.DiplomCloud.services.UploadSession;
+import DiplomCloud.DiplomCloud.services.UploadSessionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class UploadSessionServiceTest {
+    @Mock
+    private FileStorageService fileStorageService;
+
+    @Mock
+    private QuotaService quotaService;
+
+    @TempDir
+    Path storageDir;
+
+    private UploadSessionService uploadSessionService;
+
+    private final String testUsername = "testUser";
+    private final String testFilename = "test.txt";
+
+    @BeforeEach
+    void setUp() {
+        uploadSessionService = new UploadSessionService(fileStorageService, quotaService, storageDir.toString(), 0L);
+    }
+
+    @Test
+    void writeChunk_OutOfOrderChunks_AreMergedAndCommitted() throws IOException {
+        // Arrange
+        UploadSession session = uploadSessionService.openSession(testUsername, testFilename, 10);
+
+        // Act
+        uploadSessionService.writeChunk(testUsername, session.getId(), 6, 4, stream("6789"));
+        uploadSessionService.writeChunk(testUsername, session.getId(), 0, 3, stream("012"));
+        assertFalse(session.isComplete());
+        assertEquals(2, session.getReceivedRanges().size());
+
+        uploadSessionService.writeChunk(testUsername, session.getId(), 3, 3, stream("345"));
+        StringBuilder committed = new StringBuilder();
+        doAnswer(invocation -> committed.append(Files.readString(invocation.getArgument(2, Path.class))))
+                .when(fileStorageService).storeUploadedFile(any(), any(), any(), anyLong());
+        uploadSessionService.commit(testUsername, session.getId());
+
+        // Assert
+        assertEquals(1, session.getReceivedRanges().size());
+        assertEquals("0123456789", committed.toString());
+        verify(fileStorageService).storeUploadedFile(eq(testUsername), eq(testFilename),
+                eq(session.getDataFile()), eq(10L));
+        assertFalse(Files.exists(session.getDataFile()));
+    }
+
+    @Test
+    void commit_StoreFails_KeepsDataFileForRetry() {
+        // Arrange
+        UploadSession session = uploadSessionService.openSession(testUsername, testFilename, 4);
+        uploadSessionService.writeChunk(testUsername, session.getId(), 0, 4, stream("0123"));
+        doThrow(new FileStorageException("Сбой коммита", null)).doNothing()
+                .when(fileStorageService).storeUploadedFile(any(), any(), any(), anyLong());
+
+        // Act
+        assertThrows(FileStorageException.class, () ->
+                uploadSessionService.commit(testUsername, session.getId()));
+
+        // Assert
+        assertTrue(Files.exists(session.getDataFile()));
+        uploadSessionService.commit(testUsername, session.getId());
+        verify(fileStorageService, times(2)).storeUploadedFile(eq(testUsername), eq(testFilename),
+                eq(session.getDataFile()), eq(4L));
+        assertFalse(Files.exists(session.getDataFile()));
+    }
+
+    @Test
+    void commit_FailsAfterBlobLinked_NewChunksDoNotChangeBlob() throws IOException {
+        // Arrange: завершение успело связать файл сессии с блобом и откатилось
+        UploadSession session = uploadSessionService.openSession(testUsername, testFilename, 4);
+        uploadSessionService.writeChunk(testUsername, session.getId(), 0, 4, stream("0123"));
+        Path blob = storageDir.resolve("blob");
+        doAnswer(invocation -> {
+            Files.createLink(blob, invocation.getArgument(2, Path.class));
+            throw new FileStorageException("Сбой коммита", null);
+        }).when(fileStorageService).storeUploadedFile(any(), any(), any(), anyLong());
+        assertThrows(FileStorageException.class, () ->
+                uploadSessionService.commit(testUsername, session.getId()));
+
+        // Act
+        uploadSessionService.writeChunk(testUsername, session.getId(), 0, 4, stream("abcd"));
+
+        // Assert
+        assertEquals("0123", Files.readString(blob));
+        assertEquals("abcd", Files.readString(session.getDataFile()));
+    }
+
+    @Test
+    void writeChunk_BeyondDeclaredSize_ThrowsException() {
+        // Arrange
+        UploadSession session = uploadSessionService.openSession(testUsername, testFilename, 4);
+
+        // Act & Assert
+        assertThrows(UploadSessionException.class, () ->
+                uploadSessionService.writeChunk(testUsername, session.getId(), 2, -1, stream("234")));
+        assertEquals(0, session.getReceivedBytes());
+    }
+
+    @Test
+    void commit_IncompleteSession_ThrowsException() {
+        // Arrange
+        UploadSession session = uploadSessionService.openSession(testUsername, testFilename, 4);
+        uploadSessionService.writeChunk(testUsername, session.getId(), 0, 2, stream("01"));
+
+        // Act & Assert
+        assertThrows(UploadSessionException.class, () ->
+                uploadSessionService.commit(testUsername, session.getId()));
+        verify(fileStorageService, never()).storeUploadedFile(any(), any(), any(), anyLong());
+    }
+
+    @Test
+    void getSession_OtherUser_ThrowsNotFound() {
+        // Arrange
+        UploadSession session = uploadSessionService.openSession(testUsername, testFilename, 4);
+
+        // Act & Assert
+        assertThrows(UploadSessionNotFoundException.class, () ->
+                uploadSessionService.getSession("otherUser", session.getId()));
+    }
+
+    @Test
+    void sweepExpiredSessions_RemovesIdleSessionAndFile() throws InterruptedException {
+        // Arrange
+        UploadSession session = uploadSessionService.openSession(testUsername, testFilename, 4);
+        Thread.sleep(5);
+
+        // Act
+        uploadSessionService.sweepExpiredSessions();
+
+        // Assert
+        assertFalse(Files.exists(session.getDataFile()));
+        assertThrows(UploadSessionNotFoundException.class, () ->
+                uploadSessionService.getSession(testUsername, session.getId()));
+    }
+
+    private ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,66 @@
+package DiplomCloud.DiplomCloud;
+
+import DiplomCloud.DiplomCloud.exception.UserNotFoundException;
+import DiplomCloud.DiplomCloud.repositories.UserRepository;
+import DiplomCloud.DiplomCloud.services.UserCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class UserCacheTest {
+    @Mock
+    private UserRepository userRepository;
+
+    private UserCache userCache;
+
+    @BeforeEach
+    void setUp() {
+        userCache = new UserCache(userRepository, 100, 60_000);
+    }
+
+    @Test
+    void resolveUserId_RepeatedCalls_QueriesDatabaseOnce() {
+        // Arrange
+        when(userRepository.findIdByLogin("testUser")).thenReturn(Optional.of(7L));
+
+        // Act
+        Long first = userCache.resolveUserId("testUser");
+        Long second = userCache.resolveUserId("testUser");
+
+        // Assert
+        assertEquals(7L, first);
+        assertEquals(7L, second);
+        verify(userRepository, times(1)).findIdByLogin("testUser");
+    }
+
+    @Test
+    void resolveUserId_UnknownUser_ThrowsAndIsNotCached() {
+        // Arrange
+        when(userRepository.findIdByLogin("ghost")).thenReturn(Optional.empty());
+
+        // Act & Assert
+        assertThrows(UserNotFoundException.class, () -> userCache.resolveUserId("ghost"));
+        assertThrows(UserNotFoundException.class, () -> userCache.resolveUserId("ghost"));
+        verify(userRepository, times(2)).findIdByLogin("ghost");
+    }
+
+    @Test
+    void isCurrent_UserRecreatedWithSameLogin_RejectsOldId() {
+        // Arrange
+        userCache.remember("testUser", 7L);
+        userCache.invalidate("testUser");
+        when(userRepository.findIdByLogin("testUser")).thenReturn(Optional.of(8L));
+
+        // Act & Assert
+        assertFalse(userCache.isCurrent("testUser", 7L));
+        assertTrue(userCache.isCurrent("testUser", 8L));
+    }
+}